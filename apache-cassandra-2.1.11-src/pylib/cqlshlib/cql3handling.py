@@ -472,6 +472,11 @@ def cf_prop_val_mapkey_completer(ctxt, cass):
             opts.add('max_sstable_age_days')
             opts.add('timestamp_resolution')
             opts.add('min_threshold')
+        elif csc == 'TimeWindowCompactionStrategy':
+            opts.add('compaction_window_unit')
+            opts.add('compaction_window_size')
+            opts.add('timestamp_resolution')
+            opts.add('min_threshold')
         return map(escape_value, opts)
     return ()
 
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.metrics.CacheMetrics;
+
+/**
+ * An off-heap cache of decompressed chunks of compressed data files, keyed by the id of the opened file (see
+ * {@link #nextFileId()}) and the chunk's position in the compressed file. Its capacity is bounded by the total size of
+ * the cached chunks; a capacity of zero disables it.
+ *
+ * Files are identified by an id rather than their path as the same path may be opened more than once, like the
+ * temporary files of sstables opened early, and closing one of them must only drop its own chunks.
+ *
+ * Chunks are copied in and out of the cache, so a cached chunk is never referenced by a reader after it is evicted.
+ */
+public class ChunkCache implements CacheSize
+{
+    private static final int DEFAULT_CONCURENCY_LEVEL = 64;
+
+    public static final ChunkCache instance = new ChunkCache(DatabaseDescriptor.getChunkCacheSizeInMB() * 1024 * 1024);
+
+    private final ConcurrentLinkedHashMap<Key, RefCountedMemory> map;
+    private final AtomicLong lastFileId = new AtomicLong();
+
+    public final CacheMetrics metrics;
+
+    private ChunkCache(long capacity)
+    {
+        map = new ConcurrentLinkedHashMap.Builder<Key, RefCountedMemory>()
+              .weigher(new Weigher<RefCountedMemory>()
+              {
+                  public int weightOf(RefCountedMemory value)
+                  {
+                      return (int) value.size();
+                  }
+              })
+              .maximumWeightedCapacity(capacity)
+              .concurrencyLevel(DEFAULT_CONCURENCY_LEVEL)
+              .listener(new EvictionListener<Key, RefCountedMemory>()
+              {
+                  public void onEviction(Key key, RefCountedMemory mem)
+                  {
+                      mem.unreference();
+                  }
+              })
+              .build();
+        metrics = new CacheMetrics("ChunkCache", this);
+    }
+
+    public boolean isEnabled()
+    {
+        return map.capacity() > 0;
+    }
+
+    /**
+     * @return a new id to cache the chunks of an opened file under
+     */
+    public long nextFileId()
+    {
+        return lastFileId.incrementAndGet();
+    }
+
+    /**
+     * Copies the cached chunk, if any, into the start of buffer.
+     *
+     * @return the length of the chunk, or -1 if it is not cached
+     */
+    public int get(Key key, byte[] buffer)
+    {
+        metrics.requests.mark();
+        RefCountedMemory mem = map.get(key);
+        if (mem == null || !mem.reference())
+            return -1;
+        try
+        {
+            int length = (int) mem.size();
+            mem.getBytes(0, buffer, 0, length);
+            metrics.hits.mark();
+            return length;
+        }
+        finally
+        {
+            mem.unreference();
+        }
+    }
+
+    /**
+     * Caches a copy of the first length bytes of buffer as the chunk for key.
+     */
+    public void put(Key key, byte[] buffer, int length)
+    {
+        if (length <= 0)
+            return;
+
+        RefCountedMemory mem;
+        try
+        {
+            mem = new RefCountedMemory(length);
+        }
+        catch (OutOfMemoryError e)
+        {
+            return; // out of off-heap memory; never mind
+        }
+        mem.setBytes(0, buffer, 0, length);
+
+        RefCountedMemory old;
+        try
+        {
+            old = map.put(key, mem);
+        }
+        catch (Throwable t)
+        {
+            mem.unreference();
+            throw t;
+        }
+        if (old != null)
+            old.unreference();
+    }
+
+    /**
+     * Drops the cached chunk for key, if any.
+     */
+    public void invalidate(Key key)
+    {
+        RefCountedMemory mem = map.remove(key);
+        if (mem != null)
+            mem.unreference();
+    }
+
+    /**
+     * Drops all the cached chunks of the file with the given id, in a single pass over the cache.
+     */
+    public void invalidateFile(long fileId)
+    {
+        for (Key key : map.keySet())
+        {
+            if (key.fileId == fileId)
+                invalidate(key);
+        }
+    }
+
+    public void clear()
+    {
+        for (Key key : map.keySet())
+        {
+            RefCountedMemory mem = map.remove(key);
+            if (mem != null)
+                mem.unreference();
+        }
+    }
+
+    public long capacity()
+    {
+        return map.capacity();
+    }
+
+    public void setCapacity(long capacity)
+    {
+        map.setCapacity(capacity);
+    }
+
+    public int size()
+    {
+        return map.size();
+    }
+
+    public long weightedSize()
+    {
+        return map.weightedSize();
+    }
+
+    public static final class Key
+    {
+        public final long fileId;
+        public final long position;
+
+        public Key(long fileId, long position)
+        {
+            this.fileId = fileId;
+            this.position = position;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key that = (Key) o;
+            return position == that.position && fileId == that.fileId;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (int) (fileId ^ (fileId >>> 32)) + (int) (position ^ (position >>> 32));
+        }
+
+        @Override
+        public String toString()
+        {
+            return fileId + "@" + position;
+        }
+    }
+}
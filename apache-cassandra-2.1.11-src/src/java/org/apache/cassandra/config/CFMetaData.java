@@ -22,6 +22,7 @@ import org.apache.cassandra.thrift.CqlRow;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.FilterFactory;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.UUIDGen;
 import org.github.jamm.Unmetered;
@@ -49,6 +50,7 @@ public final class CFMetaData
     public final static SpeculativeRetry DEFAULT_SPECULATIVE_RETRY = new SpeculativeRetry(SpeculativeRetry.RetryType.PERCENTILE, 0.99);
     public final static int DEFAULT_MIN_INDEX_INTERVAL = 128;
     public final static int DEFAULT_MAX_INDEX_INTERVAL = 2048;
+    public final static double DEFAULT_CLUSTERING_FILTER_FP_CHANCE = 1.0;
 
     // Note that this is the default only for user created tables
     public final static String DEFAULT_COMPRESSOR = LZ4Compressor.class.getCanonicalName();
@@ -94,6 +96,8 @@ public final class CFMetaData
                                                                     + "memtable_flush_period_in_ms int,"
                                                                     + "key_aliases text,"
                                                                     + "bloom_filter_fp_chance double,"
+                                                                    + "bloom_filter_type text,"
+                                                                    + "clustering_filter_fp_chance double,"
                                                                     + "caching text,"
                                                                     + "default_time_to_live int,"
                                                                     + "compaction_strategy_class text,"
@@ -340,6 +344,8 @@ public final class CFMetaData
     private volatile int minCompactionThreshold = DEFAULT_MIN_COMPACTION_THRESHOLD;
     private volatile int maxCompactionThreshold = DEFAULT_MAX_COMPACTION_THRESHOLD;
     private volatile Double bloomFilterFpChance = null;
+    private volatile FilterFactory.Type bloomFilterType = FilterFactory.Type.STANDARD;
+    private volatile double clusteringFilterFpChance = DEFAULT_CLUSTERING_FILTER_FP_CHANCE;
     private volatile CachingOptions caching = DEFAULT_CACHING_STRATEGY;
     private volatile int minIndexInterval = DEFAULT_MIN_INDEX_INTERVAL;
     private volatile int maxIndexInterval = DEFAULT_MAX_INDEX_INTERVAL;
@@ -390,6 +396,8 @@ public final class CFMetaData
     public CFMetaData compactionStrategyOptions(Map<String, String> prop) {compactionStrategyOptions = prop; return this;}
     public CFMetaData compressionParameters(CompressionParameters prop) {compressionParameters = prop; return this;}
     public CFMetaData bloomFilterFpChance(Double prop) {bloomFilterFpChance = prop; return this;}
+    public CFMetaData bloomFilterType(FilterFactory.Type prop) {bloomFilterType = prop; return this;}
+    public CFMetaData clusteringFilterFpChance(double prop) {clusteringFilterFpChance = prop; return this;}
     public CFMetaData caching(CachingOptions prop) {caching = prop; return this;}
     public CFMetaData minIndexInterval(int prop) {minIndexInterval = prop; return this;}
     public CFMetaData maxIndexInterval(int prop) {maxIndexInterval = prop; return this;}
@@ -573,6 +581,8 @@ public final class CFMetaData
                       .compactionStrategyOptions(new HashMap<>(oldCFMD.compactionStrategyOptions))
                       .compressionParameters(oldCFMD.compressionParameters.copy())
                       .bloomFilterFpChance(oldCFMD.bloomFilterFpChance)
+                      .bloomFilterType(oldCFMD.bloomFilterType)
+                      .clusteringFilterFpChance(oldCFMD.clusteringFilterFpChance)
                       .caching(oldCFMD.caching)
                       .defaultTimeToLive(oldCFMD.defaultTimeToLive)
                       .minIndexInterval(oldCFMD.minIndexInterval)
@@ -780,6 +790,20 @@ public final class CFMetaData
                : bloomFilterFpChance;
     }
 
+    public FilterFactory.Type getBloomFilterType()
+    {
+        return bloomFilterType;
+    }
+
+    /**
+     * @return the false positive chance of the filter on the first clustering column of sstables, 1.0 if they don't
+     * have one
+     */
+    public double getClusteringFilterFpChance()
+    {
+        return clusteringFilterFpChance;
+    }
+
     public CachingOptions getCaching()
     {
         return caching;
@@ -849,6 +873,8 @@ public final class CFMetaData
             && Objects.equal(compactionStrategyOptions, other.compactionStrategyOptions)
             && Objects.equal(compressionParameters, other.compressionParameters)
             && Objects.equal(bloomFilterFpChance, other.bloomFilterFpChance)
+            && Objects.equal(bloomFilterType, other.bloomFilterType)
+            && Objects.equal(clusteringFilterFpChance, other.clusteringFilterFpChance)
             && Objects.equal(memtableFlushPeriod, other.memtableFlushPeriod)
             && Objects.equal(caching, other.caching)
             && Objects.equal(defaultTimeToLive, other.defaultTimeToLive)
@@ -882,6 +908,8 @@ public final class CFMetaData
             .append(compactionStrategyOptions)
             .append(compressionParameters)
             .append(bloomFilterFpChance)
+            .append(bloomFilterType)
+            .append(clusteringFilterFpChance)
             .append(memtableFlushPeriod)
             .append(caching)
             .append(defaultTimeToLive)
@@ -948,7 +976,9 @@ public final class CFMetaData
 
     public static CFMetaData fromThriftForUpdate(CfDef cf_def, CFMetaData toUpdate) throws InvalidRequestException, ConfigurationException
     {
-        return internalFromThrift(cf_def, toUpdate.allColumns());
+        // thrift doesn't know about the bloom filter type and clustering filter, which must not be reset by the update
+        return internalFromThrift(cf_def, toUpdate.allColumns()).bloomFilterType(toUpdate.bloomFilterType)
+                                                                 .clusteringFilterFpChance(toUpdate.clusteringFilterFpChance);
     }
 
     // Convert a thrift CfDef, given a list of ColumnDefinitions to copy over to the created CFMetadata before the CQL metadata are rebuild
@@ -1126,6 +1156,8 @@ public final class CFMetaData
         maxCompactionThreshold = cfm.maxCompactionThreshold;
 
         bloomFilterFpChance = cfm.bloomFilterFpChance;
+        bloomFilterType = cfm.bloomFilterType;
+        clusteringFilterFpChance = cfm.clusteringFilterFpChance;
         caching = cfm.caching;
         minIndexInterval = cfm.minIndexInterval;
         maxIndexInterval = cfm.maxIndexInterval;
@@ -1489,6 +1521,9 @@ public final class CFMetaData
         if (bloomFilterFpChance != null && bloomFilterFpChance == 0)
             throw new ConfigurationException("Zero false positives is impossible; bloom filter false positive chance bffpc must be 0 < bffpc <= 1");
 
+        if (clusteringFilterFpChance <= 0 || clusteringFilterFpChance > 1)
+            throw new ConfigurationException("Clustering filter false positive chance must be 0 < chance <= 1");
+
         validateIndexIntervalThresholds();
 
         return this;
@@ -1545,6 +1580,13 @@ public final class CFMetaData
 
         newState.toSchemaNoColumnsNoTriggers(mutation, modificationTimestamp);
 
+        // the properties only written when not the default have to be removed when reset to it
+        CFRowAdder adder = new CFRowAdder(mutation.addOrGet(SchemaColumnFamiliesCf), SchemaColumnFamiliesCf.comparator.make(cfName), modificationTimestamp);
+        if (bloomFilterType != FilterFactory.Type.STANDARD && newState.bloomFilterType == FilterFactory.Type.STANDARD)
+            adder.add("bloom_filter_type", null);
+        if (clusteringFilterFpChance < 1.0 && newState.clusteringFilterFpChance >= 1.0)
+            adder.add("clustering_filter_fp_chance", null);
+
         MapDifference<ByteBuffer, ColumnDefinition> columnDiff = Maps.difference(columnMetadata, newState.columnMetadata);
 
         // columns that are no longer needed
@@ -1667,6 +1709,12 @@ public final class CFMetaData
         adder.add("min_compaction_threshold", minCompactionThreshold);
         adder.add("max_compaction_threshold", maxCompactionThreshold);
         adder.add("bloom_filter_fp_chance", bloomFilterFpChance);
+        // only written when not the default, so that the schema of the tables keeping them, and so its digest, remain
+        // the same as on the nodes that don't know about these properties
+        if (bloomFilterType != FilterFactory.Type.STANDARD)
+            adder.add("bloom_filter_type", bloomFilterType.toString());
+        if (clusteringFilterFpChance < 1.0)
+            adder.add("clustering_filter_fp_chance", clusteringFilterFpChance);
 
         adder.add("memtable_flush_period_in_ms", memtableFlushPeriod);
         adder.add("caching", caching.toString());
@@ -1735,6 +1783,10 @@ public final class CFMetaData
                 cfm.comment(result.getString("comment"));
             if (result.has("bloom_filter_fp_chance"))
                 cfm.bloomFilterFpChance(result.getDouble("bloom_filter_fp_chance"));
+            if (result.has("bloom_filter_type"))
+                cfm.bloomFilterType(FilterFactory.Type.fromString(result.getString("bloom_filter_type")));
+            if (result.has("clustering_filter_fp_chance"))
+                cfm.clusteringFilterFpChance(result.getDouble("clustering_filter_fp_chance"));
             if (result.has("memtable_flush_period_in_ms"))
                 cfm.memtableFlushPeriod(result.getInt("memtable_flush_period_in_ms"));
             cfm.caching(CachingOptions.fromString(result.getString("caching")));
@@ -2225,6 +2277,8 @@ public final class CFMetaData
             .append("compactionStrategyOptions", compactionStrategyOptions)
             .append("compressionParameters", compressionParameters.asThriftOptions())
             .append("bloomFilterFpChance", bloomFilterFpChance)
+            .append("bloomFilterType", bloomFilterType)
+            .append("clusteringFilterFpChance", clusteringFilterFpChance)
             .append("memtableFlushPeriod", memtableFlushPeriod)
             .append("caching", caching)
             .append("defaultTimeToLive", defaultTimeToLive)
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.config;
+
+import java.util.Set;
+
+/**
+ * A commit log dedicated to a group of keyspaces, kept apart from the node-wide commit log so that segments
+ * are only pinned (and memtables only flushed early) by writes to the keyspaces in the group.
+ *
+ * The sync and space settings default to those of the node-wide commit log when left unset.
+ */
+public class CommitLogGroupOptions
+{
+    public String name;
+    public String directory;
+    public Set<String> keyspaces;
+
+    public Config.CommitLogSync commitlog_sync;
+    public Double commitlog_sync_batch_window_in_ms;
+    public Double commitlog_sync_group_window_in_ms;
+    public Integer commitlog_sync_period_in_ms;
+    public Integer commitlog_total_space_in_mb;
+
+    @Override
+    public String toString()
+    {
+        return String.format("CommitLogGroupOptions(name=%s, directory=%s, keyspaces=%s, sync=%s)", name, directory, keyspaces, commitlog_sync);
+    }
+}
@@ -113,8 +113,11 @@ public class Config
     public Integer column_index_size_in_kb = 64;
     public Integer batch_size_warn_threshold_in_kb = 5;
     public Integer concurrent_compactors;
+    public Integer compaction_subranges;
     public volatile Integer compaction_throughput_mb_per_sec = 16;
+    public volatile Boolean compaction_throughput_adaptive = false;
     public volatile Integer compaction_large_partition_warning_threshold_mb = 100;
+    public Integer major_compaction_slice_size_in_mb = 1024;
 
     public Integer max_streaming_retries = 3;
 
@@ -130,9 +133,12 @@ public class Config
     public Integer commitlog_total_space_in_mb;
     public CommitLogSync commitlog_sync;
     public Double commitlog_sync_batch_window_in_ms;
+    public Double commitlog_sync_group_window_in_ms;
     public Integer commitlog_sync_period_in_ms;
     public int commitlog_segment_size_in_mb = 32;
     public boolean commitlog_segment_recycling = false;
+    public ParameterizedClass commitlog_compression;
+    public List<CommitLogGroupOptions> commitlog_groups;
 
     @Deprecated
     public int commitlog_periodic_queue_size = -1;
@@ -183,6 +189,7 @@ public class Config
     private static boolean isClientMode = false;
 
     public Integer file_cache_size_in_mb;
+    public long chunk_cache_size_in_mb = 0;
 
     public boolean inter_dc_tcp_nodelay = true;
 
@@ -195,6 +202,8 @@ public class Config
 
     public volatile Long index_summary_capacity_in_mb;
     public volatile int index_summary_resize_interval_in_minutes = 60;
+    public boolean trie_partition_index = false;
+    public boolean prefetch_sstable_reads = false;
 
     public int gc_warn_threshold_in_ms = 0;
 
@@ -272,7 +281,8 @@ public class Config
     public static enum CommitLogSync
     {
         periodic,
-        batch
+        batch,
+        group
     }
     public static enum InternodeCompression
     {
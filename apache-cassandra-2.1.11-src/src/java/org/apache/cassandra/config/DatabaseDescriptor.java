@@ -174,21 +174,33 @@ public class DatabaseDescriptor
             {
                 throw new ConfigurationException("Missing value for commitlog_sync_batch_window_in_ms: Double expected.");
             }
-            else if (conf.commitlog_sync_period_in_ms != null)
+            else if (conf.commitlog_sync_period_in_ms != null || conf.commitlog_sync_group_window_in_ms != null)
             {
-                throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync");
+                throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms or commitlog_sync_group_window_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync");
             }
             logger.debug("Syncing log with a batch window of {}", conf.commitlog_sync_batch_window_in_ms);
         }
+        else if (conf.commitlog_sync == Config.CommitLogSync.group)
+        {
+            if (conf.commitlog_sync_group_window_in_ms == null)
+            {
+                throw new ConfigurationException("Missing value for commitlog_sync_group_window_in_ms: Double expected.");
+            }
+            else if (conf.commitlog_sync_batch_window_in_ms != null || conf.commitlog_sync_period_in_ms != null)
+            {
+                throw new ConfigurationException("Group sync specified, but commitlog_sync_batch_window_in_ms or commitlog_sync_period_in_ms found. Only specify commitlog_sync_group_window_in_ms when using group sync");
+            }
+            logger.debug("Syncing log with a group window of {}", conf.commitlog_sync_group_window_in_ms);
+        }
         else
         {
             if (conf.commitlog_sync_period_in_ms == null)
             {
                 throw new ConfigurationException("Missing value for commitlog_sync_period_in_ms: Integer expected");
             }
-            else if (conf.commitlog_sync_batch_window_in_ms != null)
+            else if (conf.commitlog_sync_batch_window_in_ms != null || conf.commitlog_sync_group_window_in_ms != null)
             {
-                throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.");
+                throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms or commitlog_sync_group_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.");
             }
             logger.debug("Syncing log with a period of {}", conf.commitlog_sync_period_in_ms);
         }
@@ -196,6 +208,13 @@ public class DatabaseDescriptor
         if (conf.commitlog_total_space_in_mb == null)
             conf.commitlog_total_space_in_mb = hasLargeAddressSpace() ? 8192 : 32;
 
+        if (conf.commitlog_compression != null)
+        {
+            // fail fast on an unknown compressor class or unsupported options
+            CompressionParameters.createCompressor(conf.commitlog_compression);
+            logger.debug("Compressing commit log with {}", conf.commitlog_compression);
+        }
+
         // Always force standard mode access on Windows - CASSANDRA-6993. Windows won't allow deletion of hard-links to files that
         // are memory-mapped which causes trouble with snapshots.
         if (FBUtilities.isWindows())
@@ -296,6 +315,9 @@ public class DatabaseDescriptor
         if (conf.file_cache_size_in_mb == null)
             conf.file_cache_size_in_mb = Math.min(512, (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576)));
 
+        if (conf.chunk_cache_size_in_mb < 0)
+            throw new ConfigurationException("chunk_cache_size_in_mb must be >= 0");
+
         if (conf.memtable_offheap_space_in_mb == null)
             conf.memtable_offheap_space_in_mb = (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576));
         if (conf.memtable_offheap_space_in_mb < 0)
@@ -415,6 +437,10 @@ public class DatabaseDescriptor
         if (conf.commitlog_directory.equals(conf.saved_caches_directory))
             throw new ConfigurationException("saved_caches_directory must not be the same as the commitlog_directory");
 
+        if (conf.commitlog_groups == null)
+            conf.commitlog_groups = Collections.emptyList();
+        applyCommitLogGroups();
+
         if (conf.memtable_flush_writers == null)
             conf.memtable_flush_writers = Math.min(8, Math.max(2, Math.min(FBUtilities.getAvailableProcessors(), conf.data_file_directories.length)));
 
@@ -437,6 +463,15 @@ public class DatabaseDescriptor
         if (conf.concurrent_compactors <= 0)
             throw new ConfigurationException("concurrent_compactors should be strictly greater than 0");
 
+        if (conf.compaction_subranges == null)
+            conf.compaction_subranges = Math.max(1, FBUtilities.getAvailableProcessors() / conf.concurrent_compactors);
+
+        if (conf.compaction_subranges <= 0)
+            throw new ConfigurationException("compaction_subranges should be strictly greater than 0");
+
+        if (conf.major_compaction_slice_size_in_mb <= 0)
+            throw new ConfigurationException("major_compaction_slice_size_in_mb should be strictly greater than 0");
+
         if (conf.initial_token != null)
             for (String token : tokensFromString(conf.initial_token))
                 partitioner.getTokenFactory().validate(token);
@@ -634,6 +669,68 @@ public class DatabaseDescriptor
         return conf.thrift_framed_transport_size_in_mb * 1024 * 1024;
     }
 
+    private static void applyCommitLogGroups() throws ConfigurationException
+    {
+        Set<String> names = new HashSet<>();
+        Set<String> directories = new HashSet<>();
+        Set<String> keyspaces = new HashSet<>();
+        for (CommitLogGroupOptions group : conf.commitlog_groups)
+        {
+            if (group.name == null || group.name.isEmpty())
+                throw new ConfigurationException("Missing name for commit log group " + group);
+            if (!names.add(group.name))
+                throw new ConfigurationException("Duplicate commit log group name " + group.name);
+
+            if (group.directory == null)
+                throw new ConfigurationException("Missing directory for commit log group " + group.name);
+            if (group.directory.equals(conf.commitlog_directory) || !directories.add(group.directory))
+                throw new ConfigurationException("Commit log group " + group.name + " must have a directory of its own");
+            if (group.directory.equals(conf.saved_caches_directory) || Arrays.asList(conf.data_file_directories).contains(group.directory))
+                throw new ConfigurationException("Commit log group " + group.name + " directory must not be the same as any data or saved caches directory");
+
+            if (group.keyspaces == null || group.keyspaces.isEmpty())
+                throw new ConfigurationException("Commit log group " + group.name + " must list at least one keyspace");
+            for (String keyspace : group.keyspaces)
+            {
+                if (keyspace.equals(Keyspace.SYSTEM_KS))
+                    throw new ConfigurationException("System keyspace " + keyspace + " cannot be moved to commit log group " + group.name);
+                if (!keyspaces.add(keyspace))
+                    throw new ConfigurationException("Keyspace " + keyspace + " belongs to more than one commit log group");
+            }
+
+            // sync settings are inherited as a whole, as batch and periodic take different parameters
+            if (group.commitlog_sync == null)
+            {
+                if (group.commitlog_sync_batch_window_in_ms != null || group.commitlog_sync_group_window_in_ms != null || group.commitlog_sync_period_in_ms != null)
+                    throw new ConfigurationException("Commit log group " + group.name + " sets a sync window or period but no commitlog_sync");
+                group.commitlog_sync = conf.commitlog_sync;
+                group.commitlog_sync_batch_window_in_ms = conf.commitlog_sync_batch_window_in_ms;
+                group.commitlog_sync_group_window_in_ms = conf.commitlog_sync_group_window_in_ms;
+                group.commitlog_sync_period_in_ms = conf.commitlog_sync_period_in_ms;
+            }
+            else if (group.commitlog_sync == Config.CommitLogSync.batch)
+            {
+                if (group.commitlog_sync_batch_window_in_ms == null || group.commitlog_sync_group_window_in_ms != null || group.commitlog_sync_period_in_ms != null)
+                    throw new ConfigurationException("Commit log group " + group.name + " uses batch sync, so must specify commitlog_sync_batch_window_in_ms only");
+            }
+            else if (group.commitlog_sync == Config.CommitLogSync.group)
+            {
+                if (group.commitlog_sync_group_window_in_ms == null || group.commitlog_sync_batch_window_in_ms != null || group.commitlog_sync_period_in_ms != null)
+                    throw new ConfigurationException("Commit log group " + group.name + " uses group sync, so must specify commitlog_sync_group_window_in_ms only");
+            }
+            else
+            {
+                if (group.commitlog_sync_period_in_ms == null || group.commitlog_sync_batch_window_in_ms != null || group.commitlog_sync_group_window_in_ms != null)
+                    throw new ConfigurationException("Commit log group " + group.name + " uses periodic sync, so must specify commitlog_sync_period_in_ms only");
+            }
+
+            if (group.commitlog_total_space_in_mb == null)
+                group.commitlog_total_space_in_mb = conf.commitlog_total_space_in_mb;
+
+            logger.debug("Logging writes to keyspaces {} in commit log group {} at {}", group.keyspaces, group.name, group.directory);
+        }
+    }
+
     /**
      * Creates all storage-related directories.
      */
@@ -653,6 +750,8 @@ public class DatabaseDescriptor
                 throw new ConfigurationException("commitlog_directory must be specified");
 
             FileUtils.createDirectory(conf.commitlog_directory);
+            for (CommitLogGroupOptions group : conf.commitlog_groups)
+                FileUtils.createDirectory(group.directory);
 
             if (conf.saved_caches_directory == null)
                 throw new ConfigurationException("saved_caches_directory must be specified");
@@ -949,6 +1048,11 @@ public class DatabaseDescriptor
         return conf.concurrent_compactors;
     }
 
+    public static int getCompactionSubranges()
+    {
+        return conf.compaction_subranges;
+    }
+
     public static int getCompactionThroughputMbPerSec()
     {
         return conf.compaction_throughput_mb_per_sec;
@@ -959,6 +1063,21 @@ public class DatabaseDescriptor
         conf.compaction_throughput_mb_per_sec = value;
     }
 
+    public static boolean getCompactionThroughputAdaptive()
+    {
+        return conf.compaction_throughput_adaptive;
+    }
+
+    public static void setCompactionThroughputAdaptive(boolean value)
+    {
+        conf.compaction_throughput_adaptive = value;
+    }
+
+    public static long getMajorCompactionSliceSize()
+    {
+        return conf.major_compaction_slice_size_in_mb * 1024L * 1024L;
+    }
+
     public static int getCompactionLargePartitionWarningThreshold() { return conf.compaction_large_partition_warning_threshold_mb * 1024 * 1024; }
 
     public static boolean getDisableSTCSInL0()
@@ -1021,6 +1140,16 @@ public class DatabaseDescriptor
         return conf.commitlog_segment_recycling;
     }
 
+    public static ParameterizedClass getCommitLogCompression()
+    {
+        return conf.commitlog_compression;
+    }
+
+    public static void setCommitLogCompression(ParameterizedClass compressor)
+    {
+        conf.commitlog_compression = compressor;
+    }
+
     /**
      * size of commitlog segments to allocate
      */
@@ -1163,6 +1292,11 @@ public class DatabaseDescriptor
         return conf.commitlog_sync_batch_window_in_ms;
     }
 
+    public static double getCommitLogSyncGroupWindow()
+    {
+        return conf.commitlog_sync_group_window_in_ms;
+    }
+
     public static int getCommitLogSyncPeriod()
     {
         return conf.commitlog_sync_period_in_ms;
@@ -1178,6 +1312,11 @@ public class DatabaseDescriptor
         return conf.commitlog_sync;
     }
 
+    public static List<CommitLogGroupOptions> getCommitLogGroups()
+    {
+        return conf.commitlog_groups;
+    }
+
     public static Config.DiskAccessMode getDiskAccessMode()
     {
         return conf.disk_access_mode;
@@ -1368,6 +1507,11 @@ public class DatabaseDescriptor
         return conf.file_cache_size_in_mb;
     }
 
+    public static long getChunkCacheSizeInMB()
+    {
+        return conf.chunk_cache_size_in_mb;
+    }
+
     public static long getTotalCommitlogSpaceInMB()
     {
         return conf.commitlog_total_space_in_mb;
@@ -1533,6 +1677,22 @@ public class DatabaseDescriptor
         return conf.index_summary_resize_interval_in_minutes;
     }
 
+    public static boolean isTriePartitionIndexEnabled()
+    {
+        return conf.trie_partition_index;
+    }
+
+    public static boolean isSSTableReadPrefetchEnabled()
+    {
+        return conf.prefetch_sstable_reads;
+    }
+
+    @VisibleForTesting
+    public static void setSSTableReadPrefetchEnabled(boolean enabled)
+    {
+        conf.prefetch_sstable_reads = enabled;
+    }
+
     public static boolean hasLargeAddressSpace()
     {
         // currently we just check if it's a 64bit arch, but any we only really care if the address space is large
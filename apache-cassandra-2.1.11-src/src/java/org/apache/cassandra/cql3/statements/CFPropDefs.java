@@ -29,6 +29,7 @@ import org.apache.cassandra.db.compaction.AbstractCompactionStrategy;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.exceptions.SyntaxException;
 import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.utils.FilterFactory;
 
 public class CFPropDefs extends PropertyDefinitions
 {
@@ -44,6 +45,8 @@ public class CFPropDefs extends PropertyDefinitions
     public static final String KW_MAX_INDEX_INTERVAL = "max_index_interval";
     public static final String KW_SPECULATIVE_RETRY = "speculative_retry";
     public static final String KW_BF_FP_CHANCE = "bloom_filter_fp_chance";
+    public static final String KW_BF_TYPE = "bloom_filter_type";
+    public static final String KW_CLUSTERING_FILTER_FP_CHANCE = "clustering_filter_fp_chance";
     public static final String KW_MEMTABLE_FLUSH_PERIOD = "memtable_flush_period_in_ms";
 
     public static final String KW_COMPACTION = "compaction";
@@ -66,6 +69,8 @@ public class CFPropDefs extends PropertyDefinitions
         keywords.add(KW_MAX_INDEX_INTERVAL);
         keywords.add(KW_SPECULATIVE_RETRY);
         keywords.add(KW_BF_FP_CHANCE);
+        keywords.add(KW_BF_TYPE);
+        keywords.add(KW_CLUSTERING_FILTER_FP_CHANCE);
         keywords.add(KW_COMPACTION);
         keywords.add(KW_COMPRESSION);
         keywords.add(KW_MEMTABLE_FLUSH_PERIOD);
@@ -127,6 +132,7 @@ public class CFPropDefs extends PropertyDefinitions
             throw new ConfigurationException(KW_MAX_INDEX_INTERVAL + " must be greater than " + KW_MIN_INDEX_INTERVAL);
 
         SpeculativeRetry.fromString(getString(KW_SPECULATIVE_RETRY, SpeculativeRetry.RetryType.NONE.name()));
+        FilterFactory.Type.fromString(getString(KW_BF_TYPE, FilterFactory.Type.STANDARD.toString()));
     }
 
     public Class<? extends AbstractCompactionStrategy> getCompactionStrategy()
@@ -197,6 +203,8 @@ public class CFPropDefs extends PropertyDefinitions
         }
 
         cfm.bloomFilterFpChance(getDouble(KW_BF_FP_CHANCE, cfm.getBloomFilterFpChance()));
+        cfm.bloomFilterType(FilterFactory.Type.fromString(getString(KW_BF_TYPE, cfm.getBloomFilterType().toString())));
+        cfm.clusteringFilterFpChance(getDouble(KW_CLUSTERING_FILTER_FP_CHANCE, cfm.getClusteringFilterFpChance()));
 
         if (!getCompressionOptions().isEmpty())
             cfm.compressionParameters(CompressionParameters.create(getCompressionOptions()));
@@ -18,10 +18,13 @@
 package org.apache.cassandra.db;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 
 import com.google.common.base.Function;
@@ -31,12 +34,17 @@ import com.google.common.collect.Iterators;
 import net.nicoulaj.compilecommand.annotations.Inline;
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.compaction.SizeTieredCompactionStrategy;
 import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.composites.Composite;
 import org.apache.cassandra.db.filter.NamesQueryFilter;
 import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
 import org.apache.cassandra.db.marshal.CounterColumnType;
+import org.apache.cassandra.io.sstable.ClusteringFilter;
+import org.apache.cassandra.io.sstable.IndexHelper;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.tracing.Tracing;
@@ -44,6 +52,11 @@ import org.apache.cassandra.utils.memory.HeapAllocator;
 
 public class CollationController
 {
+    // how much of a partition without a column index is prefetched, the rest of it is usually in the same pages
+    private static final int UNINDEXED_PREFETCH_SIZE = 4096;
+    // how many column index blocks of a partition are prefetched, starting from the one the read starts from
+    private static final int PREFETCH_BLOCKS = Integer.getInteger("cassandra.prefetch_index_blocks", 2);
+
     private final ColumnFamilyStore cfs;
     private final QueryFilter filter;
     private final int gcBefore;
@@ -105,6 +118,7 @@ public class CollationController
             NamesQueryFilter namesFilter = (NamesQueryFilter) filter.filter;
             TreeSet<CellName> filterColumns = new TreeSet<>(namesFilter.columns);
             QueryFilter reducedFilter = new QueryFilter(filter.key, filter.cfName, namesFilter.withUpdatedColumns(filterColumns), filter.timestamp);
+            List<ByteBuffer> clusteringPrefixes = requiredClusteringPrefixes();
 
             /* add the SSTables on disk */
             Collections.sort(view.sstables, SSTableReader.maxTimestampComparator);
@@ -123,6 +137,9 @@ public class CollationController
                 if (((NamesQueryFilter) reducedFilter.filter).columns.isEmpty())
                     break;
 
+                if (clusteringPrefixes != null && !sstable.mayContainClusteringPrefixes(filter.key, clusteringPrefixes))
+                    continue;
+
                 Tracing.trace("Merging data from sstable {}", sstable.descriptor.generation);
                 sstable.incrementReadCount();
                 OnDiskAtomIterator iter = reducedFilter.getSSTableColumnIterator(sstable);
@@ -193,6 +210,72 @@ public class CollationController
         }
     }
 
+    /**
+     * @return the first clustering components the query is restricted to, or null if sstables can't be skipped on
+     * them
+     */
+    private List<ByteBuffer> requiredClusteringPrefixes()
+    {
+        return ClusteringFilter.supports(cfs.metadata) ? ClusteringFilter.requiredPrefixes(filter.filter) : null;
+    }
+
+    /**
+     * Finds the partition in the sstables the query may need and has the OS start reading the first part of it
+     * that the query needs in each of them, so that their disk reads proceed concurrently rather than one after the
+     * other as the sstables are read in turn.
+     *
+     * @return the index entries of the partition in the sstables holding it
+     */
+    private Map<SSTableReader, RowIndexEntry> prefetch(List<SSTableReader> sstables, List<ByteBuffer> clusteringPrefixes)
+    {
+        Map<SSTableReader, RowIndexEntry> indexEntries = new HashMap<>();
+        for (SSTableReader sstable : sstables)
+        {
+            if (!filter.shouldInclude(sstable)
+                || (clusteringPrefixes != null && !sstable.mayContainClusteringPrefixes(filter.key, clusteringPrefixes)))
+                continue;
+
+            RowIndexEntry indexEntry = sstable.getPosition(filter.key, SSTableReader.Operator.EQ);
+            if (indexEntry == null)
+                continue;
+
+            indexEntries.put(sstable, indexEntry);
+            prefetch(sstable, indexEntry);
+        }
+        Tracing.trace("Prefetched partition from {} sstables", indexEntries.size());
+        return indexEntries;
+    }
+
+    private void prefetch(SSTableReader sstable, RowIndexEntry indexEntry)
+    {
+        List<IndexHelper.IndexInfo> index = indexEntry.columnsIndex();
+        if (index.isEmpty())
+        {
+            // the partition is smaller than an index block and is read from its start
+            sstable.prefetch(indexEntry.position, UNINDEXED_PREFETCH_SIZE);
+            return;
+        }
+
+        // the partition is read from the block holding the start of the first slice or the first name
+        Composite start;
+        if (filter.filter instanceof SliceQueryFilter)
+            start = ((SliceQueryFilter) filter.filter).start();
+        else if (!((NamesQueryFilter) filter.filter).columns.isEmpty())
+            start = ((NamesQueryFilter) filter.filter).columns.first();
+        else
+            return;
+
+        boolean reversed = filter.filter.isReversed();
+        int first = IndexHelper.indexFor(start, index, cfs.metadata.comparator, reversed, -1);
+        if (first < 0 || first >= index.size())
+            return;
+
+        int last = reversed ? Math.max(0, first - PREFETCH_BLOCKS + 1) : Math.min(index.size() - 1, first + PREFETCH_BLOCKS - 1);
+        IndexHelper.IndexInfo lowest = index.get(Math.min(first, last));
+        IndexHelper.IndexInfo highest = index.get(Math.max(first, last));
+        sstable.prefetch(indexEntry.position + lowest.offset, highest.offset + highest.width - lowest.offset);
+    }
+
     /**
      * Collects data the brute-force way: gets an iterator for the filter in question
      * from every memtable and sstable, then merges them together.
@@ -244,6 +327,10 @@ public class CollationController
             List<SSTableReader> skippedSSTables = null;
             long minTimestamp = Long.MAX_VALUE;
             int nonIntersectingSSTables = 0;
+            List<ByteBuffer> clusteringPrefixes = requiredClusteringPrefixes();
+            Map<SSTableReader, RowIndexEntry> indexEntries = DatabaseDescriptor.isSSTableReadPrefetchEnabled()
+                                                           ? prefetch(view.sstables, clusteringPrefixes)
+                                                           : null;
 
             for (SSTableReader sstable : view.sstables)
             {
@@ -266,8 +353,18 @@ public class CollationController
                     continue;
                 }
 
+                // partition deletions are in the clustering filter, so there is no need to look for them either
+                if (clusteringPrefixes != null && !sstable.mayContainClusteringPrefixes(filter.key, clusteringPrefixes))
+                {
+                    nonIntersectingSSTables++;
+                    continue;
+                }
+
                 sstable.incrementReadCount();
-                OnDiskAtomIterator iter = filter.getSSTableColumnIterator(sstable);
+                RowIndexEntry indexEntry = indexEntries == null ? null : indexEntries.get(sstable);
+                OnDiskAtomIterator iter = indexEntry == null
+                                        ? filter.getSSTableColumnIterator(sstable)
+                                        : filter.filter.getSSTableColumnIterator(sstable, null, filter.key, indexEntry);
                 iterators.add(iter);
                 if (iter.getColumnFamily() != null)
                 {
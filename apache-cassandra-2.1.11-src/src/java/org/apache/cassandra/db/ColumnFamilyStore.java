@@ -91,6 +91,19 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                                                                                           new NamedThreadFactory("MemtableFlushWriter"),
                                                                                           "internal");
 
+    // the token ranges of a memtable are written in parallel, each by the executor of the data directory it goes to
+    private static final ExecutorService[] perDiskFlushExecutors = new ExecutorService[Directories.dataDirectories.length];
+    static
+    {
+        for (int i = 0; i < perDiskFlushExecutors.length; i++)
+            perDiskFlushExecutors[i] = new JMXEnabledThreadPoolExecutor(DatabaseDescriptor.getFlushWriters(),
+                                                                        StageManager.KEEPALIVE,
+                                                                        TimeUnit.SECONDS,
+                                                                        new LinkedBlockingQueue<Runnable>(),
+                                                                        new NamedThreadFactory("PerDiskMemtableFlushWriter_" + i),
+                                                                        "internal");
+    }
+
     // post-flush executor is single threaded to provide guarantee that any flush Future on a CF will never return until prior flushes have completed
     private static final ExecutorService postFlushExecutor = new JMXEnabledThreadPoolExecutor(1,
                                                                                               StageManager.KEEPALIVE,
@@ -1006,7 +1019,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             // and so not set a lastReplayPosition
             if (lastReplayPosition != null)
             {
-                CommitLog.instance.discardCompletedSegments(metadata.cfId, lastReplayPosition);
+                CommitLog.forKeyspace(keyspace.getName()).discardCompletedSegments(metadata.cfId, lastReplayPosition);
             }
 
             metric.pendingFlushes.dec();
@@ -1065,7 +1078,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             ReplayPosition lastReplayPosition;
             while (true)
             {
-                lastReplayPosition = new Memtable.LastReplayPosition(CommitLog.instance.getContext());
+                lastReplayPosition = new Memtable.LastReplayPosition(CommitLog.forKeyspace(keyspace.getName()).getContext());
                 ReplayPosition currentLast = lastReplayPositionHolder.get();
                 if ((currentLast == null || currentLast.compareTo(lastReplayPosition) <= 0)
                     && lastReplayPositionHolder.compareAndSet(currentLast, lastReplayPosition))
@@ -1095,7 +1108,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 memtable.cfs.data.markFlushing(memtable);
                 if (memtable.isClean() || truncate)
                 {
-                    memtable.cfs.replaceFlushed(memtable, null);
+                    memtable.cfs.replaceFlushed(memtable, Collections.<SSTableReader>emptyList());
                     reclaim(memtable);
                     iter.remove();
                 }
@@ -1111,8 +1124,42 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
             for (Memtable memtable : memtables)
             {
-                // flush the memtable
-                MoreExecutors.sameThreadExecutor().execute(memtable.flushRunnable());
+                // flush the memtable, writing its token ranges in parallel
+                List<Memtable.FlushRunnable> flushRunnables = memtable.flushRunnables();
+                List<Future<SSTableReader>> futures = new ArrayList<>(flushRunnables.size());
+                for (Memtable.FlushRunnable flushRunnable : flushRunnables)
+                    futures.add(getFlushExecutor(flushRunnable.getLocation()).submit(flushRunnable));
+
+                // wait for every range even if one fails, so that none of the sstables written is leaked
+                List<SSTableReader> sstables = new ArrayList<>(futures.size());
+                Throwable failure = null;
+                for (Future<SSTableReader> future : futures)
+                {
+                    try
+                    {
+                        SSTableReader sstable = Uninterruptibles.getUninterruptibly(future);
+                        if (sstable != null)
+                            sstables.add(sstable);
+                    }
+                    catch (ExecutionException e)
+                    {
+                        if (failure == null)
+                            failure = e.getCause();
+                        else
+                            failure.addSuppressed(e.getCause());
+                    }
+                }
+                if (failure != null)
+                {
+                    // the memtable stays as it is, so discard the sstables the other ranges were written to
+                    for (SSTableReader sstable : sstables)
+                    {
+                        sstable.markObsolete(null);
+                        sstable.selfRef().release();
+                    }
+                    throw Throwables.propagate(failure);
+                }
+                memtable.cfs.replaceFlushed(memtable, sstables);
                 reclaim(memtable);
             }
 
@@ -1120,6 +1167,16 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             postFlush.latch.countDown();
         }
 
+        /**
+         * @return the executor of the data directory a range of a memtable is flushed to, or the first one for a
+         * memtable that isn't split
+         */
+        private ExecutorService getFlushExecutor(Directories.DataDirectory location)
+        {
+            int index = location == null ? -1 : Arrays.asList(Directories.dataDirectories).indexOf(location);
+            return perDiskFlushExecutors[Math.max(0, index)];
+        }
+
         private void reclaim(final Memtable memtable)
         {
             // issue a read barrier for reclaiming the memory, and offload the wait to another thread
@@ -1497,9 +1554,9 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         data.markObsolete(sstables, compactionType);
     }
 
-    void replaceFlushed(Memtable memtable, SSTableReader sstable)
+    void replaceFlushed(Memtable memtable, Collection<SSTableReader> sstables)
     {
-        compactionStrategyWrapper.replaceFlushed(memtable, sstable);
+        compactionStrategyWrapper.replaceFlushed(memtable, sstables);
     }
 
     public boolean isValid()
@@ -2538,7 +2595,12 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     public void forceMajorCompaction() throws InterruptedException, ExecutionException
     {
-        CompactionManager.instance.performMaximal(this);
+        forceMajorCompaction(false);
+    }
+
+    public void forceMajorCompaction(boolean incremental) throws InterruptedException, ExecutionException
+    {
+        CompactionManager.instance.performMaximal(this, incremental);
     }
 
     public static Iterable<ColumnFamilyStore> all()
@@ -216,6 +216,14 @@ public interface ColumnFamilyStoreMBean
      */
     public void forceMajorCompaction() throws ExecutionException, InterruptedException;
 
+    /**
+     * force a major compaction of this column family
+     *
+     * @param incremental compact the token range one slice at a time, deleting the compacted sstables as soon as
+     *                    they are fully rewritten, which bounds the extra disk space needed by the slice size
+     */
+    public void forceMajorCompaction(boolean incremental) throws ExecutionException, InterruptedException;
+
     /**
      * @see org.apache.cassandra.metrics.ColumnFamilyMetrics#minRowSize
      * @return the size of the smallest compacted row
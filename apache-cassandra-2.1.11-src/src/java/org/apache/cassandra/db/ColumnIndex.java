@@ -25,6 +25,7 @@ import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.composites.Composite;
+import org.apache.cassandra.io.sstable.ClusteringFilterBuilder;
 import org.apache.cassandra.io.sstable.IndexHelper;
 import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -67,12 +68,25 @@ public class ColumnIndex
         private int atomCount;
         private final ByteBuffer key;
         private final DeletionInfo deletionInfo; // only used for serializing and calculating row header size
+        private final ClusteringFilterBuilder clusteringFilter;
 
         private final OnDiskAtom.Serializer atomSerializer;
 
         public Builder(ColumnFamily cf,
                        ByteBuffer key,
                        DataOutputPlus output)
+        {
+            this(cf, key, output, null);
+        }
+
+        /**
+         * @param clusteringFilter the filter of the sstable the row is written to, which is given all of its atoms,
+         * or null if it doesn't have one
+         */
+        public Builder(ColumnFamily cf,
+                       ByteBuffer key,
+                       DataOutputPlus output,
+                       ClusteringFilterBuilder clusteringFilter)
         {
             assert cf != null;
             assert key != null;
@@ -85,6 +99,9 @@ public class ColumnIndex
             this.output = output;
             this.tombstoneTracker = new RangeTombstone.Tracker(cf.getComparator());
             this.atomSerializer = cf.getComparator().onDiskAtomSerializer();
+            this.clusteringFilter = clusteringFilter;
+            if (clusteringFilter != null)
+                clusteringFilter.startPartition(key, deletionInfo.getTopLevelDeletion());
         }
 
         /**
@@ -203,6 +220,8 @@ public class ColumnIndex
 
             // TODO: Should deal with removing unneeded tombstones
             tombstoneTracker.update(column, false);
+            if (clusteringFilter != null)
+                clusteringFilter.add(column);
 
             lastColumn = column;
         }
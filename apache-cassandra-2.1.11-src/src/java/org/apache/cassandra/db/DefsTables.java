@@ -476,7 +476,7 @@ public class DefsTables
         keyspace.writeOrder.awaitNewBarrier();
 
         // force a new segment in the CL
-        CommitLog.instance.forceRecycleAllSegments(droppedCfs);
+        CommitLog.forKeyspace(ksm.name).forceRecycleAllSegments(droppedCfs);
 
         if (!StorageService.instance.isClientMode())
         {
@@ -506,7 +506,7 @@ public class DefsTables
             Keyspace.open(ksm.name).dropCf(cfm.cfId);
             MigrationManager.instance.notifyDropColumnFamily(cfm);
 
-            CommitLog.instance.forceRecycleAllSegments(Collections.singleton(cfm.cfId));
+            CommitLog.forKeyspace(ksName).forceRecycleAllSegments(Collections.singleton(cfm.cfId));
         }
     }
 
@@ -321,6 +321,20 @@ public class Directories
         return pickWriteableDirectory(candidates);
     }
 
+    /**
+     * @return the data directories that are not blacklisted for writes, in configuration order
+     */
+    public List<DataDirectory> getWriteableLocations()
+    {
+        List<DataDirectory> locations = new ArrayList<>();
+        for (DataDirectory dataDir : dataDirectories)
+        {
+            if (!BlacklistedDirectories.isUnwritable(getLocationForDisk(dataDir)))
+                locations.add(dataDir);
+        }
+        return locations;
+    }
+
     // separated for unit testing
     static DataDirectory pickWriteableDirectory(List<DataDirectoryCandidate> candidates)
     {
@@ -19,8 +19,11 @@ package org.apache.cassandra.db;
 
 import java.io.File;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutionException;
@@ -28,6 +31,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
 import org.apache.cassandra.utils.*;
 import org.slf4j.Logger;
@@ -39,10 +43,11 @@ import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.composites.CellNameType;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.sstable.SSTableWriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
-import org.apache.cassandra.io.util.DiskAwareRunnable;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.utils.concurrent.OpOrder;
 import org.apache.cassandra.utils.memory.*;
@@ -53,6 +58,13 @@ public class Memtable
 
     static final MemtablePool MEMORY_POOL = DatabaseDescriptor.getMemtableAllocatorPool();
     private static final int ROW_OVERHEAD_HEAP_SIZE = estimateRowOverhead(Integer.valueOf(System.getProperty("cassandra.memtable_row_overhead_computation_step", "100000")));
+    // with a NativePartitionIndex, all a partition keeps on heap besides its columns is a reference to them
+    private static final int NATIVE_ROW_OVERHEAD_HEAP_SIZE = (int) AtomicBTreeColumns.EMPTY_SIZE + 8;
+    private static final boolean USE_NATIVE_PARTITION_INDEX = Boolean.parseBoolean(System.getProperty("cassandra.memtable_native_partition_index", "true"));
+    // the number of token ranges the partitions of a memtable are split into, to spread the contention of concurrent writes
+    private static final int SHARD_COUNT = Integer.getInteger("cassandra.memtable_shards", FBUtilities.getAvailableProcessors());
+    // the least live data a memtable must hold for each extra sstable it is flushed to in parallel
+    private static final long MIN_FLUSH_RANGE_SIZE = Long.getLong("cassandra.memtable_min_flush_range_size_in_mb", 64) * 1024 * 1024;
 
     private final MemtableAllocator allocator;
     private final AtomicLong liveDataSize = new AtomicLong(0);
@@ -63,7 +75,7 @@ public class Memtable
     // the last ReplayPosition owned by this Memtable; all ReplayPositions lower are owned by this or an earlier Memtable
     private volatile AtomicReference<ReplayPosition> lastReplayPosition;
     // the "first" ReplayPosition owned by this Memtable; this is inaccurate, and only used as a convenience to prevent CLSM flushing wantonly
-    private final ReplayPosition minReplayPosition = CommitLog.instance.getContext();
+    private final ReplayPosition minReplayPosition;
 
     public static final class LastReplayPosition extends ReplayPosition
     {
@@ -75,7 +87,10 @@ public class Memtable
     // We index the memtable by RowPosition only for the purpose of being able
     // to select key range using Token.KeyBound. However put() ensures that we
     // actually only store DecoratedKey.
-    private final ConcurrentNavigableMap<RowPosition, AtomicBTreeColumns> rows = new ConcurrentSkipListMap<>();
+    private final PartitionIndex<AtomicBTreeColumns> rows;
+    // whether the partitions are indexed by NativePartitionIndex
+    @VisibleForTesting
+    final boolean nativePartitionIndex;
     public final ColumnFamilyStore cfs;
     private final long creationTime = System.currentTimeMillis();
     private final long creationNano = System.nanoTime();
@@ -88,11 +103,34 @@ public class Memtable
     public Memtable(ColumnFamilyStore cfs)
     {
         this.cfs = cfs;
+        this.minReplayPosition = CommitLog.forKeyspace(cfs.keyspace.getName()).getContext();
         this.allocator = MEMORY_POOL.newAllocator();
+        this.nativePartitionIndex = USE_NATIVE_PARTITION_INDEX && allocator instanceof NativeAllocator && cfs.partitioner instanceof Murmur3Partitioner;
+        this.rows = newPartitionIndex();
         this.initialComparator = cfs.metadata.comparator;
         this.cfs.scheduleFlush();
     }
 
+    private PartitionIndex<AtomicBTreeColumns> newPartitionIndex()
+    {
+        // only a hashing partitioner spreads the keys evenly over token ranges of equal size
+        if (SHARD_COUNT <= 1 || cfs.partitioner.preservesOrder())
+            return newPartitionIndexShard();
+
+        List<Token> boundaries = ShardedPartitionIndex.splitRing(cfs.partitioner, SHARD_COUNT);
+        List<PartitionIndex<AtomicBTreeColumns>> shards = new ArrayList<>(boundaries.size() + 1);
+        for (int i = 0 ; i <= boundaries.size() ; i++)
+            shards.add(newPartitionIndexShard());
+        return new ShardedPartitionIndex<>(boundaries, shards);
+    }
+
+    private PartitionIndex<AtomicBTreeColumns> newPartitionIndexShard()
+    {
+        return nativePartitionIndex
+             ? new NativePartitionIndex<AtomicBTreeColumns>((NativeAllocator) allocator)
+             : new SkipListPartitionIndex<AtomicBTreeColumns>(allocator);
+    }
+
     public MemtableAllocator getAllocator()
     {
         return allocator;
@@ -189,22 +227,19 @@ public class Memtable
         if (previous == null)
         {
             AtomicBTreeColumns empty = cf.cloneMeShallow(AtomicBTreeColumns.factory, false);
-            final DecoratedKey cloneKey = allocator.clone(key, opGroup);
             // We'll add the columns later. This avoids wasting works if we get beaten in the putIfAbsent
-            previous = rows.putIfAbsent(cloneKey, empty);
+            previous = rows.putIfAbsent(key, empty, opGroup);
             if (previous == null)
             {
                 previous = empty;
                 // allocate the row overhead after the fact; this saves over allocating and having to free after, but
                 // means we can overshoot our declared limit.
-                int overhead = (int) (cfs.partitioner.getHeapSizeOf(key.getToken()) + ROW_OVERHEAD_HEAP_SIZE);
+                int overhead = nativePartitionIndex
+                             ? NATIVE_ROW_OVERHEAD_HEAP_SIZE
+                             : (int) (cfs.partitioner.getHeapSizeOf(key.getToken()) + ROW_OVERHEAD_HEAP_SIZE);
                 allocator.onHeap().allocate(overhead, opGroup);
                 initialSize = 8;
             }
-            else
-            {
-                allocator.reclaimer().reclaimImmediately(cloneKey);
-            }
         }
 
         final Pair<Long, Long> pair = previous.addAllWithSizeDelta(cf, allocator, opGroup, indexer);
@@ -218,8 +253,9 @@ public class Memtable
     {
         StringBuilder builder = new StringBuilder();
         builder.append("{");
-        for (Map.Entry<RowPosition, AtomicBTreeColumns> entry : rows.entrySet())
+        for (Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>> iter = rows.iterator(null, null); iter.hasNext(); )
         {
+            Map.Entry<DecoratedKey, AtomicBTreeColumns> entry = iter.next();
             builder.append(entry.getKey()).append(": ").append(entry.getValue()).append(", ");
         }
         builder.append("}");
@@ -231,9 +267,56 @@ public class Memtable
         return rows.size();
     }
 
-    public FlushRunnable flushRunnable()
+    /**
+     * Splits the memtable into contiguous token ranges holding about as many partitions each, one per writeable
+     * data directory (if the memtable is large enough to warrant it), so they can be written in parallel.
+     *
+     * @return a task writing each range to its own sstable, in token order
+     */
+    public List<FlushRunnable> flushRunnables()
+    {
+        return flushRunnables(cfs.directories.getWriteableLocations(), MIN_FLUSH_RANGE_SIZE);
+    }
+
+    @VisibleForTesting
+    List<FlushRunnable> flushRunnables(List<Directories.DataDirectory> locations, long minRangeSize)
     {
-        return new FlushRunnable(lastReplayPosition.get());
+        ReplayPosition context = lastReplayPosition.get();
+        int partitions = rows.size();
+        int ranges = (int) Math.max(1, Math.min(Math.min(locations.size(), partitions), liveDataSize.get() / minRangeSize));
+
+        // the ranges are split on the token of every (partitions / ranges)th partition, which as there are at least
+        // as many partitions as ranges leaves at least one partition in each
+        List<Token> boundaries = new ArrayList<>(ranges - 1);
+        long keySize = 0;
+        long count = 0;
+        for (Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>> iter = rows.iterator(null, null); iter.hasNext(); )
+        {
+            DecoratedKey key = iter.next().getKey();
+            keySize += key.getKey().remaining();
+            count++;
+            // partitions sharing a token can't be split apart
+            if (boundaries.size() < ranges - 1
+                && count >= (boundaries.size() + 1) * (long) partitions / ranges
+                && (boundaries.isEmpty() || key.getToken().compareTo(boundaries.get(boundaries.size() - 1)) > 0)
+                && iter.hasNext())
+                boundaries.add(key.getToken());
+        }
+        long estimatedSize = (long) ((keySize // index entries
+                                      + keySize // keys in data file
+                                      + liveDataSize.get()) // data
+                                     * 1.2); // bloom filter and row index overhead
+
+        List<FlushRunnable> runnables = new ArrayList<>(boundaries.size() + 1);
+        for (int i = 0 ; i <= boundaries.size() ; i++)
+        {
+            // each range holds the partitions with a token in (boundaries[i - 1], boundaries[i]]
+            RowPosition from = i == 0 ? null : boundaries.get(i - 1).maxKeyBound(cfs.partitioner);
+            RowPosition to = i == boundaries.size() ? null : boundaries.get(i).maxKeyBound(cfs.partitioner);
+            Directories.DataDirectory location = boundaries.isEmpty() ? null : locations.get(i);
+            runnables.add(new FlushRunnable(context, from, to, partitions / (boundaries.size() + 1), estimatedSize / (boundaries.size() + 1), location));
+        }
+        return runnables;
     }
 
     public String toString()
@@ -251,9 +334,7 @@ public class Memtable
     {
         return new Iterator<Map.Entry<DecoratedKey, ColumnFamily>>()
         {
-            private Iterator<? extends Map.Entry<? extends RowPosition, AtomicBTreeColumns>> iter = stopAt.isMinimum(cfs.partitioner)
-                    ? rows.tailMap(startWith).entrySet().iterator()
-                    : rows.subMap(startWith, true, stopAt, true).entrySet().iterator();
+            private Iterator<? extends Map.Entry<? extends RowPosition, AtomicBTreeColumns>> iter = rows.iterator(startWith, stopAt.isMinimum(cfs.partitioner) ? null : stopAt);
 
             private Map.Entry<? extends RowPosition, ? extends ColumnFamily> currentEntry;
 
@@ -299,26 +380,24 @@ public class Memtable
         return creationTime;
     }
 
-    class FlushRunnable extends DiskAwareRunnable
+    class FlushRunnable implements Callable<SSTableReader>
     {
         private final ReplayPosition context;
+        private final RowPosition from;
+        private final RowPosition to;
+        private final int partitions;
         private final long estimatedSize;
+        // the data directory this range should be written to, if it has space; null to pick any
+        private final Directories.DataDirectory location;
 
-        FlushRunnable(ReplayPosition context)
+        FlushRunnable(ReplayPosition context, RowPosition from, RowPosition to, int partitions, long estimatedSize, Directories.DataDirectory location)
         {
             this.context = context;
-
-            long keySize = 0;
-            for (RowPosition key : rows.keySet())
-            {
-                //  make sure we don't write non-sensical keys
-                assert key instanceof DecoratedKey;
-                keySize += ((DecoratedKey)key).getKey().remaining();
-            }
-            estimatedSize = (long) ((keySize // index entries
-                                    + keySize // keys in data file
-                                    + liveDataSize.get()) // data
-                                    * 1.2); // bloom filter and row index overhead
+            this.from = from;
+            this.to = to;
+            this.partitions = partitions;
+            this.estimatedSize = estimatedSize;
+            this.location = location;
         }
 
         public long getExpectedWriteSize()
@@ -326,19 +405,34 @@ public class Memtable
             return estimatedSize;
         }
 
-        protected void runMayThrow() throws Exception
+        public Directories.DataDirectory getLocation()
+        {
+            return location;
+        }
+
+        /**
+         * @return the sstable written, or null if there was nothing to write
+         */
+        public SSTableReader call() throws Exception
         {
             long writeSize = getExpectedWriteSize();
             Directories.DataDirectory dataDirectory = getWriteDirectory(writeSize);
             File sstableDirectory = cfs.directories.getLocationForDisk(dataDirectory);
             assert sstableDirectory != null : "Flush task is not bound to any disk";
-            SSTableReader sstable = writeSortedContents(context, sstableDirectory);
-            cfs.replaceFlushed(Memtable.this, sstable);
+            return writeSortedContents(context, sstableDirectory);
         }
 
-        protected Directories getDirectories()
+        private Directories.DataDirectory getWriteDirectory(long writeSize)
         {
-            return cfs.directories;
+            if (location != null
+                && location.getAvailableSpace() >= writeSize
+                && !BlacklistedDirectories.isUnwritable(cfs.directories.getLocationForDisk(location)))
+                return location;
+
+            Directories.DataDirectory directory = cfs.directories.getWriteableLocation(writeSize);
+            if (directory == null)
+                throw new RuntimeException("Insufficient disk space to write " + writeSize + " bytes");
+            return directory;
         }
 
         private SSTableReader writeSortedContents(ReplayPosition context, File sstableDirectory)
@@ -355,8 +449,9 @@ public class Memtable
                 int heavilyContendedRowCount = 0;
                 // (we can't clear out the map as-we-go to free up memory,
                 //  since the memtable is being used for queries in the "pending flush" category)
-                for (Map.Entry<RowPosition, AtomicBTreeColumns> entry : rows.entrySet())
+                for (Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>> iter = rows.iterator(from, to); iter.hasNext(); )
                 {
+                    Map.Entry<DecoratedKey, AtomicBTreeColumns> entry = iter.next();
                     AtomicBTreeColumns cf = entry.getValue();
 
                     if (cf.isMarkedForDelete() && cf.hasColumns())
@@ -374,7 +469,7 @@ public class Memtable
                         heavilyContendedRowCount++;
 
                     if (!cf.isEmpty())
-                        writer.append((DecoratedKey)entry.getKey(), cf);
+                        writer.append(entry.getKey(), cf);
                 }
 
                 if (writer.getFilePointer() > 0)
@@ -412,7 +507,7 @@ public class Memtable
         {
             MetadataCollector sstableMetadataCollector = new MetadataCollector(cfs.metadata.comparator).replayPosition(context);
             return new SSTableWriter(filename,
-                                     rows.size(),
+                                     partitions,
                                      ActiveRepairService.UNREPAIRED_SSTABLE,
                                      cfs.metadata,
                                      cfs.partitioner,
@@ -420,6 +515,77 @@ public class Memtable
         }
     }
 
+    /**
+     * The partitions of a memtable, ordered by key.
+     */
+    interface PartitionIndex<V>
+    {
+        public V get(RowPosition key);
+
+        /**
+         * Maps a copy of the key, in memory owned by the memtable, to value, unless the key is already present.
+         *
+         * @return the existing value, or null if value was inserted
+         */
+        public V putIfAbsent(DecoratedKey key, V value, OpOrder.Group opGroup);
+
+        public boolean isEmpty();
+
+        public int size();
+
+        /**
+         * @param from the first position to return partitions from, inclusive; null to start from the first partition
+         * @param to the last position to return partitions up to, inclusive; null to continue to the last partition
+         * @return the partitions between the two positions, in order; the iterator supports remove()
+         */
+        public Iterator<Map.Entry<DecoratedKey, V>> iterator(RowPosition from, RowPosition to);
+    }
+
+    private static class SkipListPartitionIndex<V> implements PartitionIndex<V>
+    {
+        private final ConcurrentNavigableMap<RowPosition, V> rows = new ConcurrentSkipListMap<>();
+        private final MemtableAllocator allocator;
+
+        SkipListPartitionIndex(MemtableAllocator allocator)
+        {
+            this.allocator = allocator;
+        }
+
+        public V get(RowPosition key)
+        {
+            return rows.get(key);
+        }
+
+        public V putIfAbsent(DecoratedKey key, V value, OpOrder.Group opGroup)
+        {
+            final DecoratedKey cloneKey = allocator.clone(key, opGroup);
+            V previous = rows.putIfAbsent(cloneKey, value);
+            if (previous != null)
+                allocator.reclaimer().reclaimImmediately(cloneKey);
+            return previous;
+        }
+
+        public boolean isEmpty()
+        {
+            return rows.isEmpty();
+        }
+
+        public int size()
+        {
+            return rows.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterator<Map.Entry<DecoratedKey, V>> iterator(RowPosition from, RowPosition to)
+        {
+            Map<RowPosition, V> range = from == null
+                                      ? (to == null ? rows : rows.headMap(to, true))
+                                      : (to == null ? rows.tailMap(from, true) : rows.subMap(from, true, to, true));
+            // put() ensures that we only ever store DecoratedKey
+            return (Iterator<Map.Entry<DecoratedKey, V>>) (Iterator<?>) range.entrySet().iterator();
+        }
+    }
+
     private static int estimateRowOverhead(final int count)
     {
         // calculate row overhead
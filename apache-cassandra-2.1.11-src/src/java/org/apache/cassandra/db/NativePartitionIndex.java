@@ -0,0 +1,437 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.utils.FastByteOperations;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.apache.cassandra.utils.memory.MemoryUtil;
+import org.apache.cassandra.utils.memory.NativeAllocator;
+
+/**
+ * A memtable partition index for LongToken partitioners whose nodes and keys live in NativeAllocator memory.
+ *
+ * This is an insert-only lock-free skip list: each node is a single off-heap allocation holding the token, the
+ * ordinal of its value, its tower of next pointers and the key bytes. Values are necessarily on heap, and are held
+ * in a chunked array indexed by node ordinal, so a partition costs a single reference on heap instead of a skip list
+ * node, its index tower, a DecoratedKey and a Token. Nodes are never unlinked; a removed partition only has its value
+ * cleared, and the memory is released with the allocator when the memtable is discarded.
+ *
+ * Node layout (8-byte aligned):
+ *   [token : 8][ordinal : 4][height : 4][next : 8 * height][key length : 4][key bytes]
+ */
+public class NativePartitionIndex<V> implements Memtable.PartitionIndex<V>
+{
+    // with a 1/4 chance of promotion, plenty for the number of partitions a memtable can hold
+    private static final int MAX_HEIGHT = 16;
+
+    private static final int TOKEN_OFFSET = 0;
+    private static final int ORDINAL_OFFSET = 8;
+    private static final int HEIGHT_OFFSET = 12;
+    private static final int NEXT_OFFSET = 16;
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final AtomicLongFieldUpdater<NativePartitionIndex> headUpdater = AtomicLongFieldUpdater.newUpdater(NativePartitionIndex.class, "head");
+
+    private final NativeAllocator allocator;
+
+    // allocated by the first insert, as allocation needs a write op to account the memory to; 0 until then
+    private volatile long head;
+
+    private final AtomicInteger nextOrdinal = new AtomicInteger();
+    // a node allocated by an insert that lost the race to insert the same key, kept for the next insert to reuse,
+    // as the allocator cannot take memory back; 0 if there is none
+    private final AtomicLong spare = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+    // the values of the nodes, by ordinal; only ever grows, and a chunk exists before any node referring to it is linked
+    private volatile AtomicReferenceArray<V>[] values = newChunks(0);
+
+    public NativePartitionIndex(NativeAllocator allocator)
+    {
+        this.allocator = allocator;
+    }
+
+    public V get(RowPosition key)
+    {
+        long head = this.head;
+        if (head == 0)
+            return null;
+
+        long node = find(head, token(key), key(key), bound(key), null, null);
+        return node == 0 ? null : value(ordinal(node));
+    }
+
+    public V putIfAbsent(DecoratedKey key, V value, OpOrder.Group opGroup)
+    {
+        long head = head(opGroup);
+        long token = token(key);
+        ByteBuffer keyBytes = key.getKey();
+
+        long[] preds = new long[MAX_HEIGHT];
+        long[] succs = new long[MAX_HEIGHT];
+        long node = 0;
+        while (true)
+        {
+            long existing = find(head, token, keyBytes, 0, preds, succs);
+            if (existing != 0)
+            {
+                if (node != 0)
+                {
+                    chunk(ordinal(node)).set(ordinal(node) & CHUNK_MASK, null);
+                    spare.compareAndSet(0, node);
+                    node = 0;
+                }
+
+                // the partition may have been removed, in which case we take its place
+                int ordinal = ordinal(existing);
+                V previous = value(ordinal);
+                if (previous != null)
+                    return previous;
+                if (chunk(ordinal).compareAndSet(ordinal & CHUNK_MASK, null, value))
+                {
+                    size.incrementAndGet();
+                    return null;
+                }
+                continue;
+            }
+
+            if (node == 0)
+                node = allocate(token, keyBytes, value, opGroup);
+
+            MemoryUtil.setLong(nextPointer(node, 0), succs[0]);
+            if (MemoryUtil.compareAndSwapLong(nextPointer(preds[0], 0), succs[0], node))
+                break;
+        }
+        size.incrementAndGet();
+
+        // the node is now present; the rest of its tower only speeds up searches, so can be linked lazily
+        int height = height(node);
+        for (int level = 1 ; level < height ; level++)
+        {
+            while (true)
+            {
+                MemoryUtil.setLong(nextPointer(node, level), succs[level]);
+                if (MemoryUtil.compareAndSwapLong(nextPointer(preds[level], level), succs[level], node))
+                    break;
+                find(head, token, keyBytes, 0, preds, succs);
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty()
+    {
+        return size.get() == 0;
+    }
+
+    public int size()
+    {
+        return size.get();
+    }
+
+    public Iterator<Map.Entry<DecoratedKey, V>> iterator(RowPosition from, RowPosition to)
+    {
+        long head = this.head;
+        if (head == 0)
+            return new Entries(0, to);
+
+        if (from == null)
+            return new Entries(MemoryUtil.getLongVolatile(nextPointer(head, 0)), to);
+
+        long[] succs = new long[MAX_HEIGHT];
+        find(head, token(from), key(from), bound(from), null, succs);
+        return new Entries(succs[0], to);
+    }
+
+    private class Entries implements Iterator<Map.Entry<DecoratedKey, V>>
+    {
+        private final long toToken;
+        private final ByteBuffer toKey;
+        private final int toBound;
+        private final boolean bounded;
+
+        private long next;
+        private V nextValue;
+        private int lastOrdinal = -1;
+
+        Entries(long first, RowPosition to)
+        {
+            this.bounded = to != null;
+            this.toToken = bounded ? token(to) : 0;
+            this.toKey = bounded ? key(to) : null;
+            this.toBound = bounded ? bound(to) : 0;
+            this.next = first;
+            advance();
+        }
+
+        // moves next to the first node from next onwards that has a value and is within bounds, or to 0
+        private void advance()
+        {
+            while (next != 0)
+            {
+                if (bounded && compare(toToken, toKey, toBound, next) < 0)
+                {
+                    next = 0;
+                    return;
+                }
+                nextValue = value(ordinal(next));
+                if (nextValue != null)
+                    return;
+                next = MemoryUtil.getLongVolatile(nextPointer(next, 0));
+            }
+        }
+
+        public boolean hasNext()
+        {
+            return next != 0;
+        }
+
+        public Map.Entry<DecoratedKey, V> next()
+        {
+            if (next == 0)
+                throw new NoSuchElementException();
+
+            Map.Entry<DecoratedKey, V> entry = new AbstractMap.SimpleImmutableEntry<>(decoratedKey(next), nextValue);
+            lastOrdinal = ordinal(next);
+            next = MemoryUtil.getLongVolatile(nextPointer(next, 0));
+            advance();
+            return entry;
+        }
+
+        public void remove()
+        {
+            if (lastOrdinal < 0)
+                throw new IllegalStateException();
+            if (chunk(lastOrdinal).getAndSet(lastOrdinal & CHUNK_MASK, null) != null)
+                size.decrementAndGet();
+            lastOrdinal = -1;
+        }
+    }
+
+    /**
+     * Searches for the node with the provided key or bound.
+     *
+     * @param preds if not null, filled with the last node at each level ordering before the key
+     * @param succs if not null, filled with the first node at each level not ordering before the key, or 0
+     * @return the node matching the key, or 0 if there is none (or the key is a bound)
+     */
+    private static long find(long head, long token, ByteBuffer key, int bound, long[] preds, long[] succs)
+    {
+        long pred = head;
+        long found = 0;
+        for (int level = MAX_HEIGHT - 1 ; level >= 0 ; level--)
+        {
+            long succ = MemoryUtil.getLongVolatile(nextPointer(pred, level));
+            while (succ != 0)
+            {
+                int cmp = compare(token, key, bound, succ);
+                if (cmp <= 0)
+                {
+                    if (cmp == 0)
+                        found = succ;
+                    break;
+                }
+                pred = succ;
+                succ = MemoryUtil.getLongVolatile(nextPointer(pred, level));
+            }
+
+            if (found != 0 && preds == null && succs == null)
+                return found;
+            if (preds != null)
+                preds[level] = pred;
+            if (succs != null)
+                succs[level] = succ;
+        }
+        return found;
+    }
+
+    /**
+     * Compares a key (or a bound, if key is null) with a node, in RowPosition order.
+     */
+    private static int compare(long token, ByteBuffer key, int bound, long node)
+    {
+        int cmp = Long.compare(token, MemoryUtil.getLong(node + TOKEN_OFFSET));
+        if (cmp != 0)
+            return cmp;
+        if (key == null)
+            return bound;
+        long keyAddress = keyAddress(node);
+        return -FastByteOperations.UnsafeOperations.compareTo(null, keyAddress + 4, MemoryUtil.getInt(keyAddress), key);
+    }
+
+    private long head(OpOrder.Group opGroup)
+    {
+        long head = this.head;
+        if (head != 0)
+            return head;
+
+        long allocated = allocateNode(MAX_HEIGHT, 0, opGroup);
+        MemoryUtil.setLong(allocated + TOKEN_OFFSET, Long.MIN_VALUE);
+        MemoryUtil.setInt(allocated + ORDINAL_OFFSET, -1);
+        // we only lose a few hundred bytes of the allocator's memory if we lose the race
+        headUpdater.compareAndSet(this, 0, allocated);
+        return this.head;
+    }
+
+    private long allocate(long token, ByteBuffer key, V value, OpOrder.Group opGroup)
+    {
+        int size = key.remaining();
+        long node = reuseSpare(size);
+        if (node == 0)
+        {
+            node = allocateNode(randomHeight(), 4 + size, opGroup);
+            MemoryUtil.setInt(node + ORDINAL_OFFSET, nextOrdinal.getAndIncrement());
+        }
+        int ordinal = ordinal(node);
+        chunk(ordinal).set(ordinal & CHUNK_MASK, value);
+
+        MemoryUtil.setLong(node + TOKEN_OFFSET, token);
+        long keyAddress = keyAddress(node);
+        MemoryUtil.setInt(keyAddress, size);
+        MemoryUtil.setBytes(keyAddress + 4, key);
+        return node;
+    }
+
+    /**
+     * @return the spare node, with its next pointers cleared, if there is one with room for a key of the given size,
+     * or 0
+     */
+    private long reuseSpare(int keySize)
+    {
+        long node = spare.getAndSet(0);
+        if (node == 0)
+            return 0;
+
+        // the room for the key is the size of the last key written to the node
+        if (MemoryUtil.getInt(keyAddress(node)) < keySize)
+        {
+            spare.compareAndSet(0, node);
+            return 0;
+        }
+        for (int level = 0 ; level < height(node) ; level++)
+            MemoryUtil.setLong(nextPointer(node, level), 0);
+        return node;
+    }
+
+    private long allocateNode(int height, int keySize, OpOrder.Group opGroup)
+    {
+        // over-allocate so the node, and with it the next pointers we CAS, can be aligned
+        long peer = allocator.allocate(NEXT_OFFSET + 8 * height + keySize + 7, opGroup);
+        long node = (peer + 7) & ~7L;
+        MemoryUtil.setInt(node + HEIGHT_OFFSET, height);
+        for (int level = 0 ; level < height ; level++)
+            MemoryUtil.setLong(nextPointer(node, level), 0);
+        return node;
+    }
+
+    private static int randomHeight()
+    {
+        return 1 + Math.min(MAX_HEIGHT - 1, Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt()) / 2);
+    }
+
+    private static long nextPointer(long node, int level)
+    {
+        return node + NEXT_OFFSET + 8 * level;
+    }
+
+    private static int height(long node)
+    {
+        return MemoryUtil.getInt(node + HEIGHT_OFFSET);
+    }
+
+    private static int ordinal(long node)
+    {
+        return MemoryUtil.getInt(node + ORDINAL_OFFSET);
+    }
+
+    private static long keyAddress(long node)
+    {
+        return nextPointer(node, height(node));
+    }
+
+    private static DecoratedKey decoratedKey(long node)
+    {
+        long keyAddress = keyAddress(node);
+        ByteBuffer key = MemoryUtil.getByteBuffer(keyAddress + 4, MemoryUtil.getInt(keyAddress));
+        return new BufferDecoratedKey(new LongToken(MemoryUtil.getLong(node + TOKEN_OFFSET)), key);
+    }
+
+    private static long token(RowPosition position)
+    {
+        return ((LongToken) position.getToken()).getTokenValue();
+    }
+
+    private static ByteBuffer key(RowPosition position)
+    {
+        return position instanceof DecoratedKey ? ((DecoratedKey) position).getKey() : null;
+    }
+
+    // for a Token.KeyBound, where it sorts relative to the keys sharing its token
+    private static int bound(RowPosition position)
+    {
+        return position.kind() == RowPosition.Kind.MIN_BOUND ? -1 : 1;
+    }
+
+    private V value(int ordinal)
+    {
+        return chunk(ordinal).get(ordinal & CHUNK_MASK);
+    }
+
+    private AtomicReferenceArray<V> chunk(int ordinal)
+    {
+        int index = ordinal >>> CHUNK_SHIFT;
+        AtomicReferenceArray<V>[] values = this.values;
+        if (index < values.length)
+            return values[index];
+        return grow(index);
+    }
+
+    private synchronized AtomicReferenceArray<V> grow(int index)
+    {
+        AtomicReferenceArray<V>[] values = this.values;
+        if (index >= values.length)
+        {
+            AtomicReferenceArray<V>[] grown = newChunks(Math.max(index + 1, values.length * 2));
+            System.arraycopy(values, 0, grown, 0, values.length);
+            for (int i = values.length ; i < grown.length ; i++)
+                grown[i] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            this.values = values = grown;
+        }
+        return values[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> AtomicReferenceArray<V>[] newChunks(int count)
+    {
+        return new AtomicReferenceArray[count];
+    }
+}
@@ -19,20 +19,25 @@ package org.apache.cassandra.db;
 
 import java.io.DataInput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 import com.google.common.primitives.Ints;
 
 import org.apache.cassandra.cache.IMeasurableMemory;
 import org.apache.cassandra.db.composites.CType;
+import org.apache.cassandra.db.composites.Composite;
 import org.apache.cassandra.io.ISerializer;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.IndexHelper;
 import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.ObjectSizes;
 
 public class RowIndexEntry implements IMeasurableMemory
@@ -89,6 +94,15 @@ public class RowIndexEntry implements IMeasurableMemory
         return EMPTY_SIZE;
     }
 
+    /**
+     * @return an entry for the same row, written as is at the given position. As the column index offsets are
+     * relative to the start of the row, they remain valid.
+     */
+    public RowIndexEntry withPosition(long position)
+    {
+        return new RowIndexEntry(position);
+    }
+
     public static class Serializer
     {
         private final CType type;
@@ -107,6 +121,12 @@ public class RowIndexEntry implements IMeasurableMemory
             {
                 DeletionTime.serializer.serialize(rie.deletionTime(), out);
                 out.writeInt(rie.columnsIndex().size());
+                if (rie instanceof SerializedIndexedEntry)
+                {
+                    out.write(((SerializedIndexedEntry) rie).columnsIndex.blocks.duplicate());
+                    return;
+                }
+
                 ISerializer<IndexHelper.IndexInfo> idxSerializer = type.indexSerializer();
                 for (IndexHelper.IndexInfo info : rie.columnsIndex())
                     idxSerializer.serialize(info, out);
@@ -123,12 +143,12 @@ public class RowIndexEntry implements IMeasurableMemory
                 DeletionTime deletionTime = DeletionTime.serializer.deserialize(in);
 
                 int entries = in.readInt();
-                ISerializer<IndexHelper.IndexInfo> idxSerializer = type.indexSerializer();
-                List<IndexHelper.IndexInfo> columnsIndex = new ArrayList<IndexHelper.IndexInfo>(entries);
-                for (int i = 0; i < entries; i++)
-                    columnsIndex.add(idxSerializer.deserialize(in));
-
-                return new IndexedEntry(position, deletionTime, columnsIndex);
+                // the index blocks are kept as they are serialized, but always copied on heap: the entry may be
+                // key cached, and outlive the memory mapping of the index it is read from
+                long blocksSize = size - DeletionTime.serializer.serializedSize(deletionTime, TypeSizes.NATIVE) - TypeSizes.NATIVE.sizeof(entries);
+                byte[] blocks = new byte[(int) blocksSize];
+                in.readFully(blocks);
+                return new SerializedIndexedEntry(position, deletionTime, new SerializedColumnsIndex(type, ByteBuffer.wrap(blocks), entries));
             }
             else
             {
@@ -155,7 +175,11 @@ public class RowIndexEntry implements IMeasurableMemory
         {
             int size = TypeSizes.NATIVE.sizeof(rie.position) + TypeSizes.NATIVE.sizeof(rie.promotedSize(type));
 
-            if (rie.isIndexed())
+            if (rie instanceof SerializedIndexedEntry)
+            {
+                size += rie.promotedSize(type);
+            }
+            else if (rie.isIndexed())
             {
                 List<IndexHelper.IndexInfo> index = rie.columnsIndex();
 
@@ -203,6 +227,12 @@ public class RowIndexEntry implements IMeasurableMemory
             return columnsIndex;
         }
 
+        @Override
+        public RowIndexEntry withPosition(long position)
+        {
+            return new IndexedEntry(position, deletionTime, columnsIndex);
+        }
+
         @Override
         public int promotedSize(CType type)
         {
@@ -229,4 +259,122 @@ public class RowIndexEntry implements IMeasurableMemory
                    + ObjectSizes.sizeOfReferenceArray(columnsIndex.size());
         }
     }
+
+    /**
+     * An entry for an indexed row as read from the primary index or the key cache, which keeps the column index
+     * serialized instead of turning every one of its blocks into an IndexInfo.
+     */
+    private static class SerializedIndexedEntry extends RowIndexEntry
+    {
+        private static final long BASE_SIZE = ObjectSizes.measure(new SerializedIndexedEntry(0, DeletionTime.LIVE, null))
+                                              + ObjectSizes.measure(new SerializedColumnsIndex(null, ByteBufferUtil.EMPTY_BYTE_BUFFER, 0));
+
+        private final DeletionTime deletionTime;
+        private final SerializedColumnsIndex columnsIndex;
+
+        private SerializedIndexedEntry(long position, DeletionTime deletionTime, SerializedColumnsIndex columnsIndex)
+        {
+            super(position);
+            assert deletionTime != null;
+            this.deletionTime = deletionTime;
+            this.columnsIndex = columnsIndex;
+        }
+
+        @Override
+        public DeletionTime deletionTime()
+        {
+            return deletionTime;
+        }
+
+        @Override
+        public List<IndexHelper.IndexInfo> columnsIndex()
+        {
+            return columnsIndex;
+        }
+
+        @Override
+        public RowIndexEntry withPosition(long position)
+        {
+            return new SerializedIndexedEntry(position, deletionTime, columnsIndex);
+        }
+
+        @Override
+        public int promotedSize(CType type)
+        {
+            TypeSizes typeSizes = TypeSizes.NATIVE;
+            long size = DeletionTime.serializer.serializedSize(deletionTime, typeSizes);
+            size += typeSizes.sizeof(columnsIndex.size()); // number of entries
+            return Ints.checkedCast(size + columnsIndex.blocks.remaining());
+        }
+
+        @Override
+        public long unsharedHeapSize()
+        {
+            return BASE_SIZE
+                   + deletionTime.unsharedHeapSize()
+                   + ObjectSizes.sizeOnHeapOf(columnsIndex.blocks)
+                   + ObjectSizes.sizeOfArray(columnsIndex.offsets());
+        }
+    }
+
+    /**
+     * The blocks of a column index as they are serialized, deserializing each of them only when it is accessed.
+     *
+     * As the blocks have variable sizes, the first access goes through all of them once to record where each one
+     * starts, which is cheap next to deserializing them but still linear in their number. Binary searches then only
+     * deserialize the blocks they visit. Entries that are only skipped over, like those read by scans, don't pay for
+     * any of it.
+     */
+    private static class SerializedColumnsIndex extends AbstractList<IndexHelper.IndexInfo> implements RandomAccess
+    {
+        private final CType type;
+        private final ByteBuffer blocks;
+        private final int count;
+        private volatile int[] offsets;
+
+        private SerializedColumnsIndex(CType type, ByteBuffer blocks, int count)
+        {
+            this.type = type;
+            this.blocks = blocks;
+            this.count = count;
+        }
+
+        public int size()
+        {
+            return count;
+        }
+
+        public IndexHelper.IndexInfo get(int index)
+        {
+            if (index < 0 || index >= count)
+                throw new IndexOutOfBoundsException(index + " not in [0, " + count + ")");
+
+            // mirrors IndexInfo.Serializer: the first and last names with their short length, the offset and width
+            ByteBuffer in = blocks.duplicate();
+            in.position(blocks.position() + offsets()[index]);
+            Composite firstName = type.fromByteBuffer(ByteBufferUtil.readBytesWithShortLength(in));
+            Composite lastName = type.fromByteBuffer(ByteBufferUtil.readBytesWithShortLength(in));
+            return new IndexHelper.IndexInfo(firstName, lastName, in.getLong(), in.getLong());
+        }
+
+        private int[] offsets()
+        {
+            // concurrent first accesses may all compute them, to the same result
+            int[] offsets = this.offsets;
+            if (offsets == null)
+            {
+                offsets = new int[count];
+                int offset = 0;
+                for (int i = 0; i < count; i++)
+                {
+                    offsets[i] = offset;
+                    offset += 2 + ByteBufferUtil.getShortLength(blocks, blocks.position() + offset);
+                    offset += 2 + ByteBufferUtil.getShortLength(blocks, blocks.position() + offset);
+                    offset += 16;
+                }
+                this.offsets = offsets;
+            }
+            return offsets;
+        }
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+
+/**
+ * A memtable partition index split into shards covering contiguous token ranges of the ring, so that writes to
+ * different parts of the ring do not contend on the same structure.
+ *
+ * Shard i owns the tokens in (boundaries[i - 1], boundaries[i]]; the last shard owns everything after the last
+ * boundary. As all keys sharing a token are in the same shard, iterating the shards in order yields the partitions
+ * in order, and a flush simply writes them one after the other.
+ */
+public class ShardedPartitionIndex<V> implements Memtable.PartitionIndex<V>
+{
+    private final Token[] boundaries;
+    private final Memtable.PartitionIndex<V>[] shards;
+
+    @SuppressWarnings("unchecked")
+    public ShardedPartitionIndex(List<Token> boundaries, List<? extends Memtable.PartitionIndex<V>> shards)
+    {
+        assert shards.size() == boundaries.size() + 1;
+        this.boundaries = boundaries.toArray(new Token[boundaries.size()]);
+        this.shards = shards.toArray(new Memtable.PartitionIndex[shards.size()]);
+    }
+
+    /**
+     * Splits the ring into count ranges of equal size, which only makes sense for a hashing partitioner.
+     *
+     * @param count the number of ranges, rounded down to a power of two
+     * @return the (count - 1) sorted tokens separating the ranges
+     */
+    public static List<Token> splitRing(IPartitioner partitioner, int count)
+    {
+        assert !partitioner.preservesOrder();
+        List<Token> boundaries = new ArrayList<>();
+        Token minimum = partitioner.getMinimumToken();
+        split(partitioner, minimum, minimum, Integer.highestOneBit(Math.max(count, 1)), boundaries);
+        return boundaries;
+    }
+
+    private static void split(IPartitioner partitioner, Token left, Token right, int count, List<Token> boundaries)
+    {
+        if (count <= 1)
+            return;
+        Token midpoint = partitioner.midpoint(left, right);
+        split(partitioner, left, midpoint, count / 2, boundaries);
+        boundaries.add(midpoint);
+        split(partitioner, midpoint, right, count / 2, boundaries);
+    }
+
+    public int shardCount()
+    {
+        return shards.length;
+    }
+
+    private int shardFor(RowPosition position)
+    {
+        int i = Arrays.binarySearch(boundaries, position.getToken());
+        return i < 0 ? -i - 1 : i;
+    }
+
+    public V get(RowPosition key)
+    {
+        return shards[shardFor(key)].get(key);
+    }
+
+    public V putIfAbsent(DecoratedKey key, V value, OpOrder.Group opGroup)
+    {
+        return shards[shardFor(key)].putIfAbsent(key, value, opGroup);
+    }
+
+    public boolean isEmpty()
+    {
+        for (Memtable.PartitionIndex<V> shard : shards)
+            if (!shard.isEmpty())
+                return false;
+        return true;
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Memtable.PartitionIndex<V> shard : shards)
+            size += shard.size();
+        return size;
+    }
+
+    public Iterator<Map.Entry<DecoratedKey, V>> iterator(final RowPosition from, final RowPosition to)
+    {
+        final int first = from == null ? 0 : shardFor(from);
+        final int last = to == null ? shards.length - 1 : shardFor(to);
+        if (first > last)
+            return Collections.emptyIterator();
+
+        return new Iterator<Map.Entry<DecoratedKey, V>>()
+        {
+            private int shard = first;
+            private Iterator<Map.Entry<DecoratedKey, V>> current = shards[first].iterator(from, to);
+            // the iterator that returned the last entry, for remove()
+            private Iterator<Map.Entry<DecoratedKey, V>> previous = current;
+
+            public boolean hasNext()
+            {
+                while (!current.hasNext())
+                {
+                    if (shard == last)
+                        return false;
+                    // the bounds are outside the ranges of the shards between first and last, so don't restrict them
+                    current = shards[++shard].iterator(null, shard == last ? to : null);
+                }
+                return true;
+            }
+
+            public Map.Entry<DecoratedKey, V> next()
+            {
+                hasNext();
+                previous = current;
+                return current.next();
+            }
+
+            public void remove()
+            {
+                previous.remove();
+            }
+        };
+    }
+}
@@ -39,6 +39,8 @@ public abstract class AbstractCommitLogService
 
     // counts of total written, and pending, log messages
     private final AtomicLong written = new AtomicLong(0);
+    // count of log messages appended to a segment, whether or not they have been synced yet
+    private final AtomicLong appended = new AtomicLong(0);
     protected final AtomicLong pending = new AtomicLong(0);
 
     // signal that writers can wait on to be notified of a completed sync
@@ -67,6 +69,7 @@ public abstract class AbstractCommitLogService
                 long syncExceededIntervalBy = 0; // time that syncs exceeded pollInterval since firstLagAt
                 int lagCount = 0;
                 int syncCount = 0;
+                long appendedAtLastSync = 0;
 
                 boolean run = true;
                 while (run)
@@ -78,9 +81,13 @@ public abstract class AbstractCommitLogService
 
                         // sync and signal
                         long syncStarted = System.currentTimeMillis();
+                        // every message counted here was appended before the sync began, so is covered by it
+                        long appendedAtSync = appended.get();
                         commitLog.sync(shutdown);
                         lastSyncedAt = syncStarted;
                         syncComplete.signalAll();
+                        commitLog.metrics.mutationsPerSync.update(appendedAtSync - appendedAtLastSync);
+                        appendedAtLastSync = appendedAtSync;
 
 
                         // sleep any time we have left before the next one is due
@@ -141,6 +148,14 @@ public abstract class AbstractCommitLogService
         };
 
         thread = new Thread(runnable, name);
+    }
+
+    /**
+     * Starts syncing; separate from construction so that the owning CommitLog is fully initialised before
+     * the sync thread first uses it.
+     */
+    void start()
+    {
         thread.start();
     }
 
@@ -149,6 +164,7 @@ public abstract class AbstractCommitLogService
      */
     public void finishWriteFor(Allocation alloc)
     {
+        appended.incrementAndGet();
         maybeWaitForSync(alloc);
         written.incrementAndGet();
     }
@@ -17,13 +17,11 @@
  */
 package org.apache.cassandra.db.commitlog;
 
-import org.apache.cassandra.config.DatabaseDescriptor;
-
 class BatchCommitLogService extends AbstractCommitLogService
 {
-    public BatchCommitLogService(CommitLog commitLog)
+    public BatchCommitLogService(CommitLog commitLog, int syncBatchWindowMillis)
     {
-        super(commitLog, "COMMIT-LOG-WRITER", (int) DatabaseDescriptor.getCommitLogSyncBatchWindow());
+        super(commitLog, commitLog.threadName("COMMIT-LOG-WRITER"), syncBatchWindowMillis);
     }
 
     protected void maybeWaitForSync(CommitLogSegment.Allocation alloc)
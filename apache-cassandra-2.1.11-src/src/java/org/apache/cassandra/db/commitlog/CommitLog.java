@@ -31,7 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.commons.lang3.StringUtils;
 
-import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.CommitLogGroupOptions;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.io.FSWriteError;
@@ -52,31 +52,71 @@ public class CommitLog implements CommitLogMBean
 {
     private static final Logger logger = LoggerFactory.getLogger(CommitLog.class);
 
-    public static final CommitLog instance = new CommitLog();
+    /**
+     * The node-wide commit log, which records writes to every keyspace that does not belong to a commit log group.
+     */
+    public static final CommitLog instance = new CommitLog(nodeWideOptions(), new CommitLogArchiver());
+
+    // commit logs dedicated to the keyspace groups configured in commitlog_groups, by the names of their keyspaces
+    private static final Map<String, CommitLog> groupsByKeyspace = new HashMap<>();
+    private static final List<CommitLog> commitLogs = new ArrayList<>();
+    static
+    {
+        commitLogs.add(instance);
+        for (CommitLogGroupOptions options : DatabaseDescriptor.getCommitLogGroups())
+        {
+            CommitLog group = new CommitLog(options, instance.archiver);
+            commitLogs.add(group);
+            for (String keyspace : options.keyspaces)
+                groupsByKeyspace.put(keyspace, group);
+        }
+    }
 
     // we only permit records HALF the size of a commit log, to ensure we don't spin allocating many mostly
     // empty segments when writing large records
     private static final long MAX_MUTATION_SIZE = DatabaseDescriptor.getCommitLogSegmentSize() >> 1;
 
+    /** the name of the keyspace group this commit log is dedicated to, or null for the node-wide commit log */
+    public final String group;
+    /** the directory segments are written to */
+    public final String location;
+    final long totalSpaceInMB;
+
     public final CommitLogSegmentManager allocator;
-    public final CommitLogArchiver archiver = new CommitLogArchiver();
+    public final CommitLogArchiver archiver;
     final CommitLogMetrics metrics;
     final AbstractCommitLogService executor;
 
-    private CommitLog()
+    private CommitLog(CommitLogGroupOptions options, CommitLogArchiver archiver)
     {
         DatabaseDescriptor.createAllDirectories();
 
-        allocator = new CommitLogSegmentManager();
+        group = options.name;
+        location = options.directory;
+        totalSpaceInMB = options.commitlog_total_space_in_mb;
+        this.archiver = archiver;
 
-        executor = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch
-                 ? new BatchCommitLogService(this)
-                 : new PeriodicCommitLogService(this);
+        allocator = new CommitLogSegmentManager(this);
+
+        switch (options.commitlog_sync)
+        {
+            case batch:
+                executor = new BatchCommitLogService(this, options.commitlog_sync_batch_window_in_ms.intValue());
+                break;
+            case group:
+                executor = new GroupCommitLogService(this, options.commitlog_sync_group_window_in_ms.intValue());
+                break;
+            default:
+                executor = new PeriodicCommitLogService(this, options.commitlog_sync_period_in_ms);
+        }
 
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
         try
         {
-            mbs.registerMBean(this, new ObjectName("org.apache.cassandra.db:type=Commitlog"));
+            String mbeanName = "org.apache.cassandra.db:type=Commitlog";
+            if (group != null)
+                mbeanName += ",group=" + group;
+            mbs.registerMBean(this, new ObjectName(mbeanName));
         }
         catch (Exception e)
         {
@@ -84,11 +124,68 @@ public class CommitLog implements CommitLogMBean
         }
 
         // register metrics
-        metrics = new CommitLogMetrics(executor, allocator);
+        metrics = new CommitLogMetrics(executor, allocator, group);
+
+        executor.start();
+    }
+
+    private static CommitLogGroupOptions nodeWideOptions()
+    {
+        CommitLogGroupOptions options = new CommitLogGroupOptions();
+        options.directory = DatabaseDescriptor.getCommitLogLocation();
+        options.commitlog_sync = DatabaseDescriptor.getCommitLogSync();
+        switch (options.commitlog_sync)
+        {
+            case batch:
+                options.commitlog_sync_batch_window_in_ms = DatabaseDescriptor.getCommitLogSyncBatchWindow();
+                break;
+            case group:
+                options.commitlog_sync_group_window_in_ms = DatabaseDescriptor.getCommitLogSyncGroupWindow();
+                break;
+            default:
+                options.commitlog_sync_period_in_ms = DatabaseDescriptor.getCommitLogSyncPeriod();
+        }
+        options.commitlog_total_space_in_mb = (int) DatabaseDescriptor.getTotalCommitlogSpaceInMB();
+        return options;
+    }
+
+    String threadName(String name)
+    {
+        return group == null ? name : name + ":" + group;
+    }
+
+    /**
+     * @return the commit log that writes to the given keyspace are recorded in
+     */
+    public static CommitLog forKeyspace(String keyspace)
+    {
+        CommitLog group = groupsByKeyspace.get(keyspace);
+        return group == null ? instance : group;
+    }
+
+    /**
+     * @return the node-wide commit log followed by those of any keyspace groups
+     */
+    public static List<CommitLog> all()
+    {
+        return Collections.unmodifiableList(commitLogs);
+    }
+
+    /**
+     * Perform recovery on the commit logs of the node-wide log and of every keyspace group.
+     *
+     * @return the number of mutations replayed
+     */
+    public static int recoverAll() throws IOException
+    {
+        int replayed = 0;
+        for (CommitLog commitLog : commitLogs)
+            replayed += commitLog.recover();
+        return replayed;
     }
 
     /**
-     * Perform recovery on commit logs located in the directory specified by the config file.
+     * Perform recovery on the commit logs located in this log's directory.
      *
      * @return the number of mutations replayed
      */
@@ -101,25 +198,27 @@ public class CommitLog implements CommitLogMBean
                 // we used to try to avoid instantiating commitlog (thus creating an empty segment ready for writes)
                 // until after recover was finished.  this turns out to be fragile; it is less error-prone to go
                 // ahead and allow writes before recover(), and just skip active segments when we do.
-                return CommitLogDescriptor.isValid(name) && !instance.allocator.manages(name);
+                return CommitLogDescriptor.isValid(name) && !allocator.manages(name);
             }
         };
 
         // submit all existing files in the commit log dir for archiving prior to recovery - CASSANDRA-6904
-        for (File file : new File(DatabaseDescriptor.getCommitLogLocation()).listFiles(unmanagedFilesFilter))
+        for (File file : new File(location).listFiles(unmanagedFilesFilter))
         {
             archiver.maybeArchive(file.getPath(), file.getName());
             archiver.maybeWaitForArchiving(file.getName());
         }
 
         assert archiver.archivePending.isEmpty() : "Not all commit log archive tasks were completed before restore";
-        archiver.maybeRestoreArchive();
+        // archived segments are restored to, and replayed from, the node-wide commit log directory only
+        if (this == instance)
+            archiver.maybeRestoreArchive();
 
-        File[] files = new File(DatabaseDescriptor.getCommitLogLocation()).listFiles(unmanagedFilesFilter);
+        File[] files = new File(location).listFiles(unmanagedFilesFilter);
         int replayed = 0;
         if (files.length == 0)
         {
-            logger.info("No commitlog files found; skipping replay");
+            logger.info("No commitlog files found in {}; skipping replay", location);
         }
         else
         {
@@ -129,7 +228,7 @@ public class CommitLog implements CommitLogMBean
             logger.info("Log replay complete, {} replayed mutations", replayed);
 
             for (File f : files)
-                CommitLog.instance.allocator.recycleSegment(f);
+                allocator.recycleSegment(f);
         }
 
         allocator.enableReserveSegmentCreation();
@@ -144,7 +243,7 @@ public class CommitLog implements CommitLogMBean
      */
     public int recover(File... clogs) throws IOException
     {
-        CommitLogReplayer recovery = new CommitLogReplayer();
+        CommitLogReplayer recovery = new CommitLogReplayer(metrics);
         recovery.recover(clogs);
         return recovery.blockForWrites();
     }
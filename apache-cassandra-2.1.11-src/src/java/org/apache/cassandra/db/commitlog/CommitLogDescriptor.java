@@ -20,14 +20,23 @@
  */
 package org.apache.cassandra.db.commitlog;
 
+import java.io.DataInput;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.google.common.base.Objects;
+import org.json.simple.JSONValue;
+
+import org.apache.cassandra.config.ParameterizedClass;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.FBUtilities;
@@ -44,38 +53,107 @@ public class CommitLogDescriptor
     public static final int VERSION_12 = 2;
     public static final int VERSION_20 = 3;
     public static final int VERSION_21 = 4;
+    // adds the (optional) compression parameters to the header; sync sections may be compressed
+    public static final int VERSION_22 = 5;
     /**
      * Increment this number if there is a changes in the commit log disc layout or MessagingVersion changes.
      * Note: make sure to handle {@link #getMessagingVersion()}
      */
-    public static final int current_version = VERSION_21;
+    public static final int current_version = VERSION_22;
 
     // [version, id, checksum]
-    static final int HEADER_SIZE = 4 + 8 + 4;
+    static final int LEGACY_HEADER_SIZE = 4 + 8 + 4;
+
+    // [version, id, parameters length, checksum] followed by the parameters themselves
+    static final int HEADER_SIZE_WITHOUT_PARAMETERS = 4 + 8 + 2 + 4;
+
+    private static final String COMPRESSION_PARAMETERS_KEY = "compressionParameters";
+    private static final String COMPRESSION_CLASS_KEY = "compressionClass";
 
     final int version;
     public final long id;
+    public final ParameterizedClass compression;
 
-    public CommitLogDescriptor(int version, long id)
+    public CommitLogDescriptor(int version, long id, ParameterizedClass compression)
     {
         this.version = version;
         this.id = id;
+        this.compression = compression;
+    }
+
+    public CommitLogDescriptor(int version, long id)
+    {
+        this(version, id, null);
+    }
+
+    public CommitLogDescriptor(long id, ParameterizedClass compression)
+    {
+        this(current_version, id, compression);
     }
 
     public CommitLogDescriptor(long id)
     {
-        this(current_version, id);
+        this(id, null);
     }
 
-    static void writeHeader(ByteBuffer out, CommitLogDescriptor descriptor)
+    /**
+     * Writes the header for this descriptor at the current position of the buffer, leaving the buffer
+     * positioned just past it.
+     */
+    public static void writeHeader(ByteBuffer out, CommitLogDescriptor descriptor)
     {
-        out.putInt(0, descriptor.version);
-        out.putLong(4, descriptor.id);
         PureJavaCrc32 crc = new PureJavaCrc32();
+        out.putInt(descriptor.version);
         crc.updateInt(descriptor.version);
+        out.putLong(descriptor.id);
         crc.updateInt((int) (descriptor.id & 0xFFFFFFFFL));
         crc.updateInt((int) (descriptor.id >>> 32));
-        out.putInt(12, crc.getCrc());
+        if (descriptor.version >= VERSION_22)
+        {
+            byte[] parameters = descriptor.encodeParameters();
+            out.putShort((short) parameters.length);
+            crc.updateInt(parameters.length);
+            out.put(parameters);
+            crc.update(parameters, 0, parameters.length);
+        }
+        out.putInt(crc.getCrc());
+    }
+
+    /**
+     * @return the size in bytes of the header written for this descriptor
+     */
+    public int headerSize()
+    {
+        if (version < VERSION_22)
+            return LEGACY_HEADER_SIZE;
+        return HEADER_SIZE_WITHOUT_PARAMETERS + encodeParameters().length;
+    }
+
+    private byte[] encodeParameters()
+    {
+        if (compression == null)
+            return new byte[0];
+
+        Map<String, Object> params = new HashMap<>();
+        params.put(COMPRESSION_CLASS_KEY, compression.class_name);
+        params.put(COMPRESSION_PARAMETERS_KEY, compression.parameters == null ? Collections.emptyMap() : compression.parameters);
+        byte[] encoded = JSONValue.toJSONString(params).getBytes(StandardCharsets.UTF_8);
+        if (encoded.length > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Commit log compression parameters are too long: " + compression);
+        return encoded;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ParameterizedClass decodeParameters(byte[] encoded)
+    {
+        if (encoded.length == 0)
+            return null;
+
+        Map<String, Object> params = (Map<String, Object>) JSONValue.parse(new String(encoded, StandardCharsets.UTF_8));
+        if (params == null || !params.containsKey(COMPRESSION_CLASS_KEY))
+            return null;
+        return new ParameterizedClass((String) params.get(COMPRESSION_CLASS_KEY),
+                                      (Map<String, String>) params.get(COMPRESSION_PARAMETERS_KEY));
     }
 
     public static CommitLogDescriptor fromHeader(File file)
@@ -83,16 +161,7 @@ public class CommitLogDescriptor
         try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
         {
             assert raf.getFilePointer() == 0;
-            int version = raf.readInt();
-            long id = raf.readLong();
-            int crc = raf.readInt();
-            PureJavaCrc32 checkcrc = new PureJavaCrc32();
-            checkcrc.updateInt(version);
-            checkcrc.updateInt((int) (id & 0xFFFFFFFFL));
-            checkcrc.updateInt((int) (id >>> 32));
-            if (crc == checkcrc.getCrc())
-                return new CommitLogDescriptor(version, id);
-            return null;
+            return readHeader(raf);
         }
         catch (EOFException e)
         {
@@ -104,6 +173,35 @@ public class CommitLogDescriptor
         }
     }
 
+    /**
+     * Reads a header from the current position of the input.
+     *
+     * @return the descriptor stored in the header, or null if the header checksum does not match
+     */
+    public static CommitLogDescriptor readHeader(DataInput input) throws IOException
+    {
+        PureJavaCrc32 checkcrc = new PureJavaCrc32();
+        int version = input.readInt();
+        checkcrc.updateInt(version);
+        long id = input.readLong();
+        checkcrc.updateInt((int) (id & 0xFFFFFFFFL));
+        checkcrc.updateInt((int) (id >>> 32));
+        byte[] parameters = new byte[0];
+        if (version >= VERSION_22)
+        {
+            int parametersLength = input.readShort() & 0xFFFF;
+            checkcrc.updateInt(parametersLength);
+            // a corrupt length is caught by the checksum below, as long as we don't run off the end reading it
+            parameters = new byte[parametersLength];
+            input.readFully(parameters);
+            checkcrc.update(parameters, 0, parameters.length);
+        }
+        int crc = input.readInt();
+        if (crc == checkcrc.getCrc())
+            return new CommitLogDescriptor(version, id, decodeParameters(parameters));
+        return null;
+    }
+
     public static CommitLogDescriptor fromFileName(String name)
     {
         Matcher matcher;
@@ -126,6 +224,7 @@ public class CommitLogDescriptor
             case VERSION_20:
                 return MessagingService.VERSION_20;
             case VERSION_21:
+            case VERSION_22:
                 return MessagingService.VERSION_21;
             default:
                 throw new IllegalStateException("Unknown commitlog version " + version);
@@ -148,7 +247,7 @@ public class CommitLogDescriptor
 
     public String toString()
     {
-        return "(" + version + "," + id + ")";
+        return "(" + version + "," + id + (compression != null ? "," + compression : "") + ")";
     }
 
     public boolean equals(Object that)
@@ -156,9 +255,15 @@ public class CommitLogDescriptor
         return that instanceof CommitLogDescriptor && equals((CommitLogDescriptor) that);
     }
 
+    // compression is deliberately not compared, as it cannot be derived from the file name
     public boolean equals(CommitLogDescriptor that)
     {
         return this.version == that.version && this.id == that.id;
     }
 
+    public int hashCode()
+    {
+        return Objects.hashCode(version, id);
+    }
+
 }
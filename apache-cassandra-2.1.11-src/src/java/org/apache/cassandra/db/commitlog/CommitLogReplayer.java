@@ -19,10 +19,12 @@
 package org.apache.cassandra.db.commitlog;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
@@ -32,43 +34,65 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.MappedFileDataInput;
 import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.metrics.CommitLogMetrics;
 import org.apache.cassandra.utils.*;
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 
+/**
+ * Replays commit log segments on startup. Segments are read, checksummed and deserialized in parallel, one segment
+ * per reader thread, while the mutations are applied by a set of workers each owning a share of the partitions, so
+ * that writes to a single partition don't contend with each other.
+ *
+ * The writes to a partition are only applied in order within a segment: as segments are read concurrently, those
+ * from different segments may be applied in any order. That is fine as cells are reconciled by timestamp whatever
+ * the order they are applied in.
+ */
 public class CommitLogReplayer
 {
     private static final Logger logger = LoggerFactory.getLogger(CommitLogReplayer.class);
     private static final int MAX_OUTSTANDING_REPLAY_COUNT = Integer.getInteger("cassandra.commitlog_max_outstanding_replay_count", 1024);
+    private static final int REPLAY_THREADS = Integer.getInteger("cassandra.commitlog_replay_threads", FBUtilities.getAvailableProcessors());
     private static final int LEGACY_END_OF_SEGMENT_MARKER = 0;
 
     private final Set<Keyspace> keyspacesRecovered;
-    private final List<Future<?>> futures;
-    private final Map<UUID, AtomicInteger> invalidMutations;
+    private final Queue<Future<?>> futures;
+    private final ConcurrentMap<UUID, AtomicInteger> invalidMutations;
     private final AtomicInteger replayedCount;
     private final Map<UUID, ReplayPosition> cfPositions;
     private final ReplayPosition globalPosition;
-    private final PureJavaCrc32 checksum;
-    private byte[] buffer;
+    private final CommitLogMetrics metrics;
+
+    // the workers applying replayed mutations; a mutation is always applied by the worker owning its partition.
+    // Started by recover(), and stopped once its mutations are applied by blockForWrites(), or if it fails
+    private ExecutorService[] appliers;
 
     private final ReplayFilter replayFilter;
 
     public CommitLogReplayer()
     {
+        this(CommitLog.instance.metrics);
+    }
+
+    CommitLogReplayer(CommitLogMetrics metrics)
+    {
+        this.metrics = metrics;
         this.keyspacesRecovered = new NonBlockingHashSet<Keyspace>();
-        this.futures = new ArrayList<Future<?>>();
-        this.buffer = new byte[4096];
-        this.invalidMutations = new HashMap<UUID, AtomicInteger>();
+        this.futures = new ConcurrentLinkedQueue<Future<?>>();
+        this.invalidMutations = new ConcurrentHashMap<UUID, AtomicInteger>();
         // count the number of replayed mutation. We don't really care about atomicity, but we need it to be a reference.
         this.replayedCount = new AtomicInteger();
-        this.checksum = new PureJavaCrc32();
 
         replayFilter = ReplayFilter.create();
 
@@ -113,10 +137,89 @@ public class CommitLogReplayer
         logger.debug("Global replay position is {} from columnfamilies {}", globalPosition, FBUtilities.toString(cfPositions));
     }
 
+    /**
+     * Reads the given segments in parallel, handing their mutations to the appliers. Returns once every segment
+     * has been read; blockForWrites() waits for the mutations to be applied.
+     */
     public void recover(File[] clogs) throws IOException
     {
-        for (final File file : clogs)
-            recover(file);
+        if (appliers == null)
+        {
+            appliers = new ExecutorService[Math.max(1, REPLAY_THREADS)];
+            for (int i = 0; i < appliers.length; i++)
+                appliers[i] = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayer:" + i, 1);
+        }
+
+        try
+        {
+            readSegments(clogs);
+        }
+        catch (Throwable t)
+        {
+            shutdownAppliers();
+            throw t;
+        }
+    }
+
+    public void recover(File file) throws IOException
+    {
+        recover(new File[]{ file });
+    }
+
+    private void readSegments(File[] clogs) throws IOException
+    {
+        long totalBytes = 0;
+        for (File file : clogs)
+            totalBytes += file.length();
+        metrics.replayTotalBytes.clear();
+        metrics.replayTotalBytes.inc(totalBytes);
+        metrics.replayedBytes.clear();
+
+        if (clogs.length <= 1 || REPLAY_THREADS <= 1)
+        {
+            for (File file : clogs)
+                readSegment(file);
+            return;
+        }
+
+        ExecutorService readers = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayReader", Math.min(REPLAY_THREADS, clogs.length));
+        try
+        {
+            List<Future<?>> reads = new ArrayList<>(clogs.length);
+            for (final File file : clogs)
+            {
+                reads.add(readers.submit(new Callable<Void>()
+                {
+                    public Void call() throws IOException
+                    {
+                        readSegment(file);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> read : reads)
+            {
+                try
+                {
+                    read.get();
+                }
+                catch (ExecutionException e)
+                {
+                    if (e.getCause() instanceof IOException)
+                        throw (IOException) e.getCause();
+                    throw new RuntimeException(e.getCause());
+                }
+                catch (InterruptedException e)
+                {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+        finally
+        {
+            readers.shutdown();
+        }
     }
 
     public int blockForWrites()
@@ -124,18 +227,56 @@ public class CommitLogReplayer
         for (Map.Entry<UUID, AtomicInteger> entry : invalidMutations.entrySet())
             logger.info(String.format("Skipped %d mutations from unknown (probably removed) CF with id %s", entry.getValue().intValue(), entry.getKey()));
 
-        // wait for all the writes to finish on the mutation stage
-        FBUtilities.waitOnFutures(futures);
+        // wait for all the writes to finish on the appliers
+        try
+        {
+            FBUtilities.waitOnFutures(futures);
+        }
+        finally
+        {
+            shutdownAppliers();
+        }
         logger.debug("Finished waiting on mutations from recovery");
 
         // flush replayed keyspaces
-        futures.clear();
+        List<Future<?>> flushes = new ArrayList<>();
         for (Keyspace keyspace : keyspacesRecovered)
-            futures.addAll(keyspace.flush());
-        FBUtilities.waitOnFutures(futures);
+            flushes.addAll(keyspace.flush());
+        FBUtilities.waitOnFutures(flushes);
         return replayedCount.get();
     }
 
+    private void shutdownAppliers()
+    {
+        if (appliers == null)
+            return;
+        for (ExecutorService applier : appliers)
+            applier.shutdown();
+    }
+
+    /**
+     * The state of the replay of a single segment, confined to the thread reading it.
+     */
+    private static class SegmentReplayState
+    {
+        final PureJavaCrc32 checksum = new PureJavaCrc32();
+        byte[] buffer = new byte[4096];
+        byte[] uncompressedBuffer = new byte[4096];
+        // the mutations handed to the appliers by this reader and not yet known to be applied
+        final List<Future<?>> futures = new ArrayList<>();
+        // the file position up to which replay progress has been reported
+        long reportedPosition;
+    }
+
+    private void reportProgress(SegmentReplayState state, long position)
+    {
+        if (position > state.reportedPosition)
+        {
+            metrics.replayedBytes.inc(position - state.reportedPosition);
+            state.reportedPosition = position;
+        }
+    }
+
     private int readSyncMarker(CommitLogDescriptor descriptor, int offset, RandomAccessReader reader) throws IOException
     {
         if (offset > reader.length() - CommitLogSegment.SYNC_MARKER_SIZE)
@@ -172,12 +313,12 @@ public class CommitLogReplayer
         return end;
     }
 
-    private int getStartOffset(long segmentId, int version)
+    private int getStartOffset(long segmentId, int version, int headerSize)
     {
         if (globalPosition.segment < segmentId)
         {
             if (version >= CommitLogDescriptor.VERSION_21)
-                return CommitLogDescriptor.HEADER_SIZE + CommitLogSegment.SYNC_MARKER_SIZE;
+                return headerSize + CommitLogSegment.SYNC_MARKER_SIZE;
             else
                 return 0;
         }
@@ -262,221 +403,350 @@ public class CommitLogReplayer
         }
     }
 
-    public void recover(File file) throws IOException
+    private void readSegment(File file) throws IOException
     {
         logger.info("Replaying {}", file.getPath());
         CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
         final long segmentId = desc.id;
-        logger.info("Replaying {} (CL version {}, messaging version {})",
-                    file.getPath(),
-                    desc.version,
-                    desc.getMessagingVersion());
+        SegmentReplayState state = new SegmentReplayState();
         RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
 
         try
         {
             assert reader.length() <= Integer.MAX_VALUE;
-            int offset = getStartOffset(segmentId, desc.version);
+            int headerSize = CommitLogDescriptor.LEGACY_HEADER_SIZE;
+            if (desc.version >= CommitLogDescriptor.VERSION_22)
+            {
+                // the header carries the compression parameters, so we cannot replay without it
+                desc = readHeader(reader);
+                if (desc == null)
+                {
+                    logger.warn("Could not read commit log descriptor in file {}; skipping", file);
+                    return;
+                }
+                headerSize = (int) reader.getFilePointer();
+            }
+            logger.info("Replaying {} (CL version {}, messaging version {}, compression {})",
+                        file.getPath(),
+                        desc.version,
+                        desc.getMessagingVersion(),
+                        desc.compression);
+
+            int offset = getStartOffset(segmentId, desc.version, headerSize);
             if (offset < 0)
             {
                 logger.debug("skipping replay of fully-flushed {}", file);
                 return;
             }
 
-            int prevEnd = CommitLogDescriptor.HEADER_SIZE;
-            main: while (true)
+            if (desc.compression == null)
+                replayUncompressed(reader, desc, headerSize, offset, state);
+            else
+                replayCompressed(reader, desc, headerSize, offset, state);
+        }
+        finally
+        {
+            // whatever we did not get to is never going to be replayed
+            reportProgress(state, reader.length());
+            futures.addAll(state.futures);
+            FileUtils.closeQuietly(reader);
+            logger.info("Finished reading {}", file);
+        }
+    }
+
+    private static CommitLogDescriptor readHeader(RandomAccessReader reader) throws IOException
+    {
+        try
+        {
+            return CommitLogDescriptor.readHeader(reader);
+        }
+        catch (EOFException e)
+        {
+            // the segment was created but its header never made it to disk
+            return null;
+        }
+    }
+
+    private void replayUncompressed(RandomAccessReader reader, CommitLogDescriptor desc, int headerSize, int offset, SegmentReplayState state) throws IOException
+    {
+        int prevEnd = headerSize;
+        while (true)
+        {
+            int end = prevEnd;
+            if (desc.version < CommitLogDescriptor.VERSION_21)
+                end = Integer.MAX_VALUE;
+            else
             {
+                do { end = readSyncMarker(desc, end, reader); }
+                while (end < offset && end > prevEnd);
+            }
 
-                int end = prevEnd;
-                if (desc.version < CommitLogDescriptor.VERSION_21)
-                    end = Integer.MAX_VALUE;
-                else
+            if (end < prevEnd)
+                break;
+
+            if (logger.isDebugEnabled())
+                logger.debug("Replaying {} between {} and {}", reader.getPath(), offset, end);
+
+            reader.seek(offset);
+            if (!replaySyncSection(reader, end, desc, state))
+                break;
+            reportProgress(state, reader.getFilePointer());
+
+            if (desc.version < CommitLogDescriptor.VERSION_21)
+                break;
+
+            offset = end + CommitLogSegment.SYNC_MARKER_SIZE;
+            prevEnd = end;
+        }
+    }
+
+    /**
+     * Replays a segment written by CompressedSegment. Sync markers hold file positions, while mutation positions
+     * (and thus the replay offset) refer to the uncompressed segment, in which each section is followed by
+     * the space reserved for the next sync marker.
+     */
+    private void replayCompressed(RandomAccessReader reader, CommitLogDescriptor desc, int headerSize, int offset, SegmentReplayState state) throws IOException
+    {
+        ICompressor compressor;
+        try
+        {
+            compressor = CompressionParameters.createCompressor(desc.compression);
+        }
+        catch (ConfigurationException e)
+        {
+            throw new IOException("Cannot create compressor " + desc.compression + " to replay " + reader.getPath(), e);
+        }
+
+        int prevEnd = headerSize;
+        int uncompressedStart = headerSize + CommitLogSegment.SYNC_MARKER_SIZE;
+        while (true)
+        {
+            int end = readSyncMarker(desc, prevEnd, reader);
+            if (end < prevEnd + CompressedSegment.COMPRESSED_MARKER_SIZE)
+                break;
+
+            int uncompressedLength = reader.readInt();
+            int uncompressedEnd = uncompressedStart + uncompressedLength;
+            if (uncompressedEnd > offset)
+            {
+                int compressedLength = end - (int) reader.getFilePointer();
+                if (compressedLength > state.buffer.length)
+                    state.buffer = new byte[(int) (1.2 * compressedLength)];
+                reader.readFully(state.buffer, 0, compressedLength);
+
+                if (uncompressedLength > state.uncompressedBuffer.length)
+                    state.uncompressedBuffer = new byte[(int) (1.2 * uncompressedLength)];
+                try
                 {
-                    do { end = readSyncMarker(desc, end, reader); }
-                    while (end < offset && end > prevEnd);
+                    if (uncompressedLength > 0 && compressor.uncompress(state.buffer, 0, compressedLength, state.uncompressedBuffer, 0) != uncompressedLength)
+                        throw new IOException("Uncompressed length mismatch");
                 }
-
-                if (end < prevEnd)
+                catch (IOException e)
+                {
+                    logger.warn("Encountered bad compressed section at position {} of commit log {}: {}", prevEnd, reader.getPath(), e.getMessage());
                     break;
+                }
 
                 if (logger.isDebugEnabled())
-                    logger.debug("Replaying {} between {} and {}", file, offset, end);
+                    logger.debug("Replaying {} between {} and {}", reader.getPath(), Math.max(offset, uncompressedStart), uncompressedEnd);
+
+                ByteBuffer section = ByteBuffer.wrap(state.uncompressedBuffer, 0, uncompressedLength).slice();
+                FileDataInput sectionReader = new MappedFileDataInput(section, reader.getPath(), uncompressedStart, 0);
+                sectionReader.seek(Math.max(offset, uncompressedStart));
+                if (!replaySyncSection(sectionReader, uncompressedEnd, desc, state))
+                    break;
+            }
+            reportProgress(state, end);
 
-                reader.seek(offset);
+            prevEnd = end;
+            uncompressedStart = uncompressedEnd + CommitLogSegment.SYNC_MARKER_SIZE;
+        }
+    }
 
-                 /* read the logs populate Mutation and apply */
-                while (reader.getPosition() < end && !reader.isEOF())
+    /**
+     * Deserializes and applies the mutations read from reader up to the given end position.
+     *
+     * @return false if we reached the end of the segment, or the rest of it cannot be trusted
+     */
+    private boolean replaySyncSection(FileDataInput reader, int end, CommitLogDescriptor desc, SegmentReplayState state) throws IOException
+    {
+        final long segmentId = desc.id;
+        final PureJavaCrc32 checksum = state.checksum;
+        while (reader.getFilePointer() < end && !reader.isEOF())
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Reading mutation at {}", reader.getFilePointer());
+
+            long claimedCRC32;
+            int serializedSize;
+            try
+            {
+                // any of the reads may hit EOF
+                serializedSize = reader.readInt();
+                if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
                 {
-                    if (logger.isDebugEnabled())
-                        logger.debug("Reading mutation at {}", reader.getFilePointer());
+                    logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
+                    return false;
+                }
 
-                    long claimedCRC32;
-                    int serializedSize;
-                    try
-                    {
-                        // any of the reads may hit EOF
-                        serializedSize = reader.readInt();
-                        if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
-                        {
-                            logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
-                            break main;
-                        }
+                // Mutation must be at LEAST 10 bytes:
+                // 3 each for a non-empty Keyspace and Key (including the
+                // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
+                // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
+                if (serializedSize < 10)
+                    return false;
 
-                        // Mutation must be at LEAST 10 bytes:
-                        // 3 each for a non-empty Keyspace and Key (including the
-                        // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
-                        // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
-                        if (serializedSize < 10)
-                            break main;
-
-                        long claimedSizeChecksum;
-                        if (desc.version < CommitLogDescriptor.VERSION_21)
-                            claimedSizeChecksum = reader.readLong();
-                        else
-                            claimedSizeChecksum = reader.readInt() & 0xffffffffL;
-                        checksum.reset();
-                        if (desc.version < CommitLogDescriptor.VERSION_20)
-                            checksum.update(serializedSize);
-                        else
-                            checksum.updateInt(serializedSize);
-
-                        if (checksum.getValue() != claimedSizeChecksum)
-                            break main; // entry wasn't synced correctly/fully. that's
-                        // ok.
-
-                        if (serializedSize > buffer.length)
-                            buffer = new byte[(int) (1.2 * serializedSize)];
-                        reader.readFully(buffer, 0, serializedSize);
-                        if (desc.version < CommitLogDescriptor.VERSION_21)
-                            claimedCRC32 = reader.readLong();
-                        else
-                            claimedCRC32 = reader.readInt() & 0xffffffffL;
-                    }
-                    catch (EOFException eof)
-                    {
-                        break main; // last CL entry didn't get completely written. that's ok.
-                    }
+                long claimedSizeChecksum;
+                if (desc.version < CommitLogDescriptor.VERSION_21)
+                    claimedSizeChecksum = reader.readLong();
+                else
+                    claimedSizeChecksum = reader.readInt() & 0xffffffffL;
+                checksum.reset();
+                if (desc.version < CommitLogDescriptor.VERSION_20)
+                    checksum.update(serializedSize);
+                else
+                    checksum.updateInt(serializedSize);
 
-                    checksum.update(buffer, 0, serializedSize);
-                    if (claimedCRC32 != checksum.getValue())
-                    {
-                        // this entry must not have been fsynced. probably the rest is bad too,
-                        // but just in case there is no harm in trying them (since we still read on an entry boundary)
-                        continue;
-                    }
+                if (checksum.getValue() != claimedSizeChecksum)
+                    return false; // entry wasn't synced correctly/fully. that's
+                // ok.
 
-                    /* deserialize the commit log entry */
-                    FastByteArrayInputStream bufIn = new FastByteArrayInputStream(buffer, 0, serializedSize);
-                    final Mutation mutation;
-                    try
-                    {
-                        mutation = Mutation.serializer.deserialize(new DataInputStream(bufIn),
-                                                                   desc.getMessagingVersion(),
-                                                                   ColumnSerializer.Flag.LOCAL);
-                        // doublecheck that what we read is [still] valid for the current schema
-                        for (ColumnFamily cf : mutation.getColumnFamilies())
-                            for (Cell cell : cf)
-                                cf.getComparator().validate(cell.name());
-                    }
-                    catch (UnknownColumnFamilyException ex)
-                    {
-                        if (ex.cfId == null)
-                            continue;
-                        AtomicInteger i = invalidMutations.get(ex.cfId);
-                        if (i == null)
-                        {
-                            i = new AtomicInteger(1);
-                            invalidMutations.put(ex.cfId, i);
-                        }
-                        else
-                            i.incrementAndGet();
-                        continue;
-                    }
-                    catch (Throwable t)
-                    {
-                        JVMStabilityInspector.inspectThrowable(t);
-                        File f = File.createTempFile("mutation", "dat");
-                        DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
-                        try
-                        {
-                            out.write(buffer, 0, serializedSize);
-                        }
-                        finally
-                        {
-                            out.close();
-                        }
-                        String st = String.format("Unexpected error deserializing mutation; saved to %s and ignored.  This may be caused by replaying a mutation against a table with the same name but incompatible schema.  Exception follows: ",
-                                                  f.getAbsolutePath());
-                        logger.error(st, t);
-                        continue;
-                    }
+                if (serializedSize > state.buffer.length)
+                    state.buffer = new byte[(int) (1.2 * serializedSize)];
+                reader.readFully(state.buffer, 0, serializedSize);
+                if (desc.version < CommitLogDescriptor.VERSION_21)
+                    claimedCRC32 = reader.readLong();
+                else
+                    claimedCRC32 = reader.readInt() & 0xffffffffL;
+            }
+            catch (EOFException eof)
+            {
+                return false; // last CL entry didn't get completely written. that's ok.
+            }
+
+            byte[] buffer = state.buffer;
+            checksum.update(buffer, 0, serializedSize);
+            if (claimedCRC32 != checksum.getValue())
+            {
+                // this entry must not have been fsynced. probably the rest is bad too,
+                // but just in case there is no harm in trying them (since we still read on an entry boundary)
+                continue;
+            }
+
+            /* deserialize the commit log entry */
+            FastByteArrayInputStream bufIn = new FastByteArrayInputStream(buffer, 0, serializedSize);
+            final Mutation mutation;
+            try
+            {
+                mutation = Mutation.serializer.deserialize(new DataInputStream(bufIn),
+                                                           desc.getMessagingVersion(),
+                                                           ColumnSerializer.Flag.LOCAL);
+                // doublecheck that what we read is [still] valid for the current schema
+                for (ColumnFamily cf : mutation.getColumnFamilies())
+                    for (Cell cell : cf)
+                        cf.getComparator().validate(cell.name());
+            }
+            catch (UnknownColumnFamilyException ex)
+            {
+                if (ex.cfId == null)
+                    continue;
+                AtomicInteger i = invalidMutations.get(ex.cfId);
+                if (i == null)
+                {
+                    i = new AtomicInteger();
+                    AtomicInteger existing = invalidMutations.putIfAbsent(ex.cfId, i);
+                    if (existing != null)
+                        i = existing;
+                }
+                i.incrementAndGet();
+                continue;
+            }
+            catch (Throwable t)
+            {
+                JVMStabilityInspector.inspectThrowable(t);
+                File f = File.createTempFile("mutation", "dat");
+                DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
+                try
+                {
+                    out.write(buffer, 0, serializedSize);
+                }
+                finally
+                {
+                    out.close();
+                }
+                String st = String.format("Unexpected error deserializing mutation; saved to %s and ignored.  This may be caused by replaying a mutation against a table with the same name but incompatible schema.  Exception follows: ",
+                                          f.getAbsolutePath());
+                logger.error(st, t);
+                continue;
+            }
 
-                    if (logger.isDebugEnabled())
-                        logger.debug("replaying mutation for {}.{}: {}", mutation.getKeyspaceName(), ByteBufferUtil.bytesToHex(mutation.key()), "{" + StringUtils.join(mutation.getColumnFamilies().iterator(), ", ") + "}");
+            if (logger.isDebugEnabled())
+                logger.debug("replaying mutation for {}.{}: {}", mutation.getKeyspaceName(), ByteBufferUtil.bytesToHex(mutation.key()), "{" + StringUtils.join(mutation.getColumnFamilies().iterator(), ", ") + "}");
 
-                    final long entryLocation = reader.getFilePointer();
-                    Runnable runnable = new WrappedRunnable()
+            final long entryLocation = reader.getFilePointer();
+            Runnable runnable = new WrappedRunnable()
+            {
+                public void runMayThrow() throws IOException
+                {
+                    if (Schema.instance.getKSMetaData(mutation.getKeyspaceName()) == null)
+                        return;
+                    if (pointInTimeExceeded(mutation))
+                        return;
+
+                    final Keyspace keyspace = Keyspace.open(mutation.getKeyspaceName());
+
+                    // Rebuild the mutation, omitting column families that
+                    //    a) the user has requested that we ignore,
+                    //    b) have already been flushed,
+                    // or c) are part of a cf that was dropped.
+                    // Keep in mind that the cf.name() is suspect. do every thing based on the cfid instead.
+                    Mutation newMutation = null;
+                    for (ColumnFamily columnFamily : replayFilter.filter(mutation))
                     {
-                        public void runMayThrow() throws IOException
+                        if (Schema.instance.getCF(columnFamily.id()) == null)
+                            continue; // dropped
+
+                        ReplayPosition rp = cfPositions.get(columnFamily.id());
+
+                        // replay if current segment is newer than last flushed one or,
+                        // if it is the last known segment, if we are after the replay position
+                        if (segmentId > rp.segment || (segmentId == rp.segment && entryLocation > rp.position))
                         {
-                            if (Schema.instance.getKSMetaData(mutation.getKeyspaceName()) == null)
-                                return;
-                            if (pointInTimeExceeded(mutation))
-                                return;
-
-                            final Keyspace keyspace = Keyspace.open(mutation.getKeyspaceName());
-
-                            // Rebuild the mutation, omitting column families that
-                            //    a) the user has requested that we ignore,
-                            //    b) have already been flushed,
-                            // or c) are part of a cf that was dropped.
-                            // Keep in mind that the cf.name() is suspect. do every thing based on the cfid instead.
-                            Mutation newMutation = null;
-                            for (ColumnFamily columnFamily : replayFilter.filter(mutation))
-                            {
-                                if (Schema.instance.getCF(columnFamily.id()) == null)
-                                    continue; // dropped
-
-                                ReplayPosition rp = cfPositions.get(columnFamily.id());
-
-                                // replay if current segment is newer than last flushed one or,
-                                // if it is the last known segment, if we are after the replay position
-                                if (segmentId > rp.segment || (segmentId == rp.segment && entryLocation > rp.position))
-                                {
-                                    if (newMutation == null)
-                                        newMutation = new Mutation(mutation.getKeyspaceName(), mutation.key());
-                                    newMutation.add(columnFamily);
-                                    replayedCount.incrementAndGet();
-                                }
-                            }
-                            if (newMutation != null)
-                            {
-                                assert !newMutation.isEmpty();
-                                Keyspace.open(newMutation.getKeyspaceName()).apply(newMutation, false);
-                                keyspacesRecovered.add(keyspace);
-                            }
+                            if (newMutation == null)
+                                newMutation = new Mutation(mutation.getKeyspaceName(), mutation.key());
+                            newMutation.add(columnFamily);
+                            replayedCount.incrementAndGet();
                         }
-                    };
-                    futures.add(StageManager.getStage(Stage.MUTATION).submit(runnable));
-                    if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
+                    }
+                    if (newMutation != null)
                     {
-                        FBUtilities.waitOnFutures(futures);
-                        futures.clear();
+                        assert !newMutation.isEmpty();
+                        apply(newMutation);
+                        keyspacesRecovered.add(keyspace);
                     }
                 }
-
-                if (desc.version < CommitLogDescriptor.VERSION_21)
-                    break;
-
-                offset = end + CommitLogSegment.SYNC_MARKER_SIZE;
-                prevEnd = end;
+            };
+            state.futures.add(applierFor(mutation).submit(runnable));
+            if (state.futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
+            {
+                FBUtilities.waitOnFutures(state.futures);
+                state.futures.clear();
             }
         }
-        finally
-        {
-            FileUtils.closeQuietly(reader);
-            logger.info("Finished reading {}", file);
-        }
+
+        return true;
+    }
+
+    @VisibleForTesting
+    void apply(Mutation mutation)
+    {
+        Keyspace.open(mutation.getKeyspaceName()).apply(mutation, false);
+    }
+
+    private ExecutorService applierFor(Mutation mutation)
+    {
+        int hash = 31 * mutation.getKeyspaceName().hashCode() + mutation.key().hashCode();
+        return appliers[(hash & Integer.MAX_VALUE) % appliers.length];
     }
 
     protected boolean pointInTimeExceeded(Mutation fm)
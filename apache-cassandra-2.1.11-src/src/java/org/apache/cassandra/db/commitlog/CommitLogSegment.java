@@ -21,7 +21,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -39,7 +38,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.CommitLogGroupOptions;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.ParameterizedClass;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.Mutation;
@@ -54,8 +55,11 @@ import org.apache.cassandra.utils.concurrent.WaitQueue;
  * A single commit log file on disk. Manages creation of the file and writing mutations to disk,
  * as well as tracking the last mutation position of any "dirty" CFs covered by the segment file. Segment
  * files are initially allocated to a fixed size and can grow to accomidate a larger value if necessary.
+ *
+ * Mutations are always appended to an in-memory buffer of the segment size; subclasses decide how the
+ * sections between sync markers reach the disk (see MemoryMappedSegment and CompressedSegment).
  */
-public class CommitLogSegment
+public abstract class CommitLogSegment
 {
     private static final Logger logger = LoggerFactory.getLogger(CommitLogSegment.class);
 
@@ -63,11 +67,21 @@ public class CommitLogSegment
     private final static AtomicInteger nextId = new AtomicInteger(1);
     static
     {
+        // ids are unique across the node-wide and keyspace group commit logs, so that the replay positions of
+        // a table remain ordered if its keyspace is moved to or from a group
+        List<String> locations = new ArrayList<>();
+        locations.add(DatabaseDescriptor.getCommitLogLocation());
+        for (CommitLogGroupOptions group : DatabaseDescriptor.getCommitLogGroups())
+            locations.add(group.directory);
+
         long maxId = Long.MIN_VALUE;
-        for (File file : new File(DatabaseDescriptor.getCommitLogLocation()).listFiles())
+        for (String location : locations)
         {
-            if (CommitLogDescriptor.isValid(file.getName()))
-                maxId = Math.max(CommitLogDescriptor.fromFileName(file.getName()).id, maxId);
+            for (File file : new File(location).listFiles())
+            {
+                if (CommitLogDescriptor.isValid(file.getName()))
+                    maxId = Math.max(CommitLogDescriptor.fromFileName(file.getName()).id, maxId);
+            }
         }
         idBase = Math.max(System.currentTimeMillis(), maxId + 1);
     }
@@ -86,7 +100,7 @@ public class CommitLogSegment
     // Everything before this offset has been synced and written.  The SYNC_MARKER_SIZE bytes after
     // each sync are reserved, and point forwards to the next such offset.  The final
     // sync marker in a segment will be zeroed out, or point to EOF.
-    private volatile int lastSyncedOffset;
+    volatile int lastSyncedOffset;
 
     // the amount of the tail of the file we have allocated but not used - this is used when we discard a log segment
     // to ensure nobody writes to it after we've decided we're done with it
@@ -103,20 +117,24 @@ public class CommitLogSegment
 
     public final long id;
 
-    private final File logFile;
-    private final RandomAccessFile logFileAccessor;
-    private final int fd;
+    final CommitLog commitLog;
+
+    final File logFile;
+    final RandomAccessFile logFileAccessor;
+    final FileChannel channel;
+    final int fd;
 
-    private final MappedByteBuffer buffer;
+    protected final ByteBuffer buffer;
 
     public final CommitLogDescriptor descriptor;
 
     /**
-     * @return a newly minted segment file
+     * @return a newly minted segment file, compressed if commitlog_compression is configured
      */
-    static CommitLogSegment freshSegment()
+    static CommitLogSegment freshSegment(CommitLog commitLog)
     {
-        return new CommitLogSegment(null);
+        ParameterizedClass compression = DatabaseDescriptor.getCommitLogCompression();
+        return compression == null ? new MemoryMappedSegment(commitLog, null) : new CompressedSegment(commitLog, compression);
     }
 
     static long getNextId()
@@ -127,13 +145,16 @@ public class CommitLogSegment
     /**
      * Constructs a new segment file.
      *
-     * @param filePath  if not null, recycles the existing file by renaming it and truncating it to CommitLog.SEGMENT_SIZE.
+     * @param commitLog the commit log the segment belongs to, whose directory it is created in
+     * @param filePath  if not null, recycles the existing file by renaming it.
+     * @param compression the compression applied to sync sections, or null
      */
-    CommitLogSegment(String filePath)
+    CommitLogSegment(CommitLog commitLog, String filePath, ParameterizedClass compression)
     {
+        this.commitLog = commitLog;
         id = getNextId();
-        descriptor = new CommitLogDescriptor(id);
-        logFile = new File(DatabaseDescriptor.getCommitLogLocation(), descriptor.fileName());
+        descriptor = new CommitLogDescriptor(id, compression);
+        logFile = new File(commitLog.location, descriptor.fileName());
         boolean isCreating = true;
 
         try
@@ -157,20 +178,19 @@ public class CommitLogSegment
             if (isCreating)
                 logger.debug("Creating new commit log segment {}", logFile.getPath());
 
-            // Map the segment, extending or truncating it to the standard segment size.
-            // (We may have restarted after a segment size configuration change, leaving "incorrectly"
-            // sized segments on disk.)
-            logFileAccessor.setLength(DatabaseDescriptor.getCommitLogSegmentSize());
+            channel = logFileAccessor.getChannel();
             fd = CLibrary.getfd(logFileAccessor.getFD());
+            buffer = createBuffer();
 
-            buffer = logFileAccessor.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DatabaseDescriptor.getCommitLogSegmentSize());
             // write the header
             CommitLogDescriptor.writeHeader(buffer, descriptor);
+            int endOfHeader = buffer.position();
+            buffer.position(0);
             // mark the initial sync marker as uninitialised
-            buffer.putInt(CommitLogDescriptor.HEADER_SIZE, 0);
-            buffer.putLong(CommitLogDescriptor.HEADER_SIZE + 4, 0);
-            allocatePosition.set(CommitLogDescriptor.HEADER_SIZE + SYNC_MARKER_SIZE);
-            lastSyncedOffset = CommitLogDescriptor.HEADER_SIZE;
+            buffer.putInt(endOfHeader, 0);
+            buffer.putInt(endOfHeader + 4, 0);
+            allocatePosition.set(endOfHeader + SYNC_MARKER_SIZE);
+            lastSyncedOffset = endOfHeader;
         }
         catch (IOException e)
         {
@@ -178,6 +198,25 @@ public class CommitLogSegment
         }
     }
 
+    /**
+     * Creates the buffer mutations are appended to; called during construction, once the file is open.
+     */
+    abstract ByteBuffer createBuffer() throws IOException;
+
+    /**
+     * Makes the section between the given sync marker and the next one durable, including the
+     * contents of the starting sync marker itself.
+     *
+     * @param startMarker the position of the sync marker that starts the section
+     * @param nextMarker the position of the sync marker that ends the section
+     */
+    abstract void write(int startMarker, int nextMarker);
+
+    /**
+     * @return the number of bytes this segment currently occupies on disk
+     */
+    abstract long onDiskSize();
+
     /**
      * Allocate space in this buffer for the provided mutation, and return the allocated Allocation object.
      * Returns null if there is not enough space in this segment, and a new segment is needed.
@@ -256,78 +295,72 @@ public class CommitLogSegment
      */
     synchronized void sync()
     {
-        try
+        // check we have more work to do
+        if (allocatePosition.get() <= lastSyncedOffset + SYNC_MARKER_SIZE)
+            return;
+
+        // allocate a new sync marker; this is both necessary in itself, but also serves to demarcate
+        // the point at which we can safely consider records to have been completely written to
+        int nextMarker;
+        nextMarker = allocate(SYNC_MARKER_SIZE);
+        boolean close = false;
+        if (nextMarker < 0)
         {
-            // check we have more work to do
-            if (allocatePosition.get() <= lastSyncedOffset + SYNC_MARKER_SIZE)
-                return;
-
-            // allocate a new sync marker; this is both necessary in itself, but also serves to demarcate
-            // the point at which we can safely consider records to have been completely written to
-            int nextMarker;
-            nextMarker = allocate(SYNC_MARKER_SIZE);
-            boolean close = false;
-            if (nextMarker < 0)
-            {
-                // ensure no more of this CLS is writeable, and mark ourselves for closing
-                discardUnusedTail();
-                close = true;
+            // ensure no more of this CLS is writeable, and mark ourselves for closing
+            discardUnusedTail();
+            close = true;
 
-                // wait for modifications guards both discardedTailFrom, and any outstanding appends
-                waitForModifications();
+            // wait for modifications guards both discardedTailFrom, and any outstanding appends
+            waitForModifications();
 
-                if (discardedTailFrom < buffer.capacity() - SYNC_MARKER_SIZE)
-                {
-                    // if there's room in the discard section to write an empty header, use that as the nextMarker
-                    nextMarker = discardedTailFrom;
-                }
-                else
-                {
-                    // not enough space left in the buffer, so mark the next sync marker as the EOF position
-                    nextMarker = buffer.capacity();
-                }
+            if (discardedTailFrom < buffer.capacity() - SYNC_MARKER_SIZE)
+            {
+                // if there's room in the discard section to write an empty header, use that as the nextMarker
+                nextMarker = discardedTailFrom;
             }
             else
             {
-                waitForModifications();
+                // not enough space left in the buffer, so mark the next sync marker as the EOF position
+                nextMarker = buffer.capacity();
             }
+        }
+        else
+        {
+            waitForModifications();
+        }
 
-            assert nextMarker > lastSyncedOffset;
+        assert nextMarker > lastSyncedOffset;
 
-            // write previous sync marker to point to next sync marker
-            // we don't chain the crcs here to ensure this method is idempotent if it fails
-            int offset = lastSyncedOffset;
-            final PureJavaCrc32 crc = new PureJavaCrc32();
-            crc.updateInt((int) (id & 0xFFFFFFFFL));
-            crc.updateInt((int) (id >>> 32));
-            crc.updateInt(offset);
-            buffer.putInt(offset, nextMarker);
-            buffer.putInt(offset + 4, crc.getCrc());
+        // actually perform the sync and signal those waiting for it
+        write(lastSyncedOffset, nextMarker);
 
-            // zero out the next sync marker so replayer can cleanly exit
-            if (nextMarker < buffer.capacity())
-            {
-                buffer.putInt(nextMarker, 0);
-                buffer.putInt(nextMarker + 4, 0);
-            }
+        if (close)
+            nextMarker = buffer.capacity();
 
-            // actually perform the sync and signal those waiting for it
-            buffer.force();
+        lastSyncedOffset = nextMarker;
+        syncComplete.signalAll();
 
-            if (close)
-                nextMarker = buffer.capacity();
-
-            lastSyncedOffset = nextMarker;
-            syncComplete.signalAll();
+        if (close)
+            internalClose();
+    }
 
-            CLibrary.trySkipCache(fd, offset, nextMarker);
-            if (close)
-                internalClose();
-        }
-        catch (Exception e) // MappedByteBuffer.force() does not declare IOException but can actually throw it
-        {
-            throw new FSWriteError(e, getPath());
-        }
+    /**
+     * Writes a sync marker pointing to nextMarker into the given buffer.
+     * We don't chain the crcs here to ensure sync is idempotent if it fails.
+     *
+     * @param out the buffer to write the marker to
+     * @param offset the position of the marker in out
+     * @param filePosition the position of the marker in the segment file, which the checksum covers
+     * @param nextMarker the position in the segment file of the following marker
+     */
+    void writeSyncMarker(ByteBuffer out, int offset, int filePosition, int nextMarker)
+    {
+        final PureJavaCrc32 crc = new PureJavaCrc32();
+        crc.updateInt((int) (id & 0xFFFFFFFFL));
+        crc.updateInt((int) (id >>> 32));
+        crc.updateInt(filePosition);
+        out.putInt(offset, nextMarker);
+        out.putInt(offset + 4, crc.getCrc());
     }
 
     public boolean isStillAllocating()
@@ -344,7 +377,8 @@ public class CommitLogSegment
     }
 
     /**
-     * Recycle processes an unneeded segment file for reuse.
+     * Recycle processes an unneeded segment file for reuse. The file is always reused as an
+     * uncompressed, memory-mapped segment, as only those are preallocated to a fixed size.
      *
      * @return a new CommitLogSegment representing the newly reusable segment.
      */
@@ -362,7 +396,7 @@ public class CommitLogSegment
 
         close();
 
-        return new CommitLogSegment(getPath());
+        return new MemoryMappedSegment(commitLog, getPath());
     }
 
     /**
@@ -421,8 +455,6 @@ public class CommitLogSegment
     {
         try
         {
-            if (FileUtils.isCleanerAvailable())
-                FileUtils.clean(buffer);
             logFileAccessor.close();
         }
         catch (IOException e)
@@ -623,7 +655,7 @@ public class CommitLogSegment
         {
             while (segment.lastSyncedOffset < position)
             {
-                WaitQueue.Signal signal = segment.syncComplete.register(CommitLog.instance.metrics.waitingOnCommit.time());
+                WaitQueue.Signal signal = segment.syncComplete.register(segment.commitLog.metrics.waitingOnCommit.time());
                 if (segment.lastSyncedOffset < position)
                     signal.awaitUninterruptibly();
                 else
@@ -93,11 +93,14 @@ public class CommitLogSegmentManager
      */
     private volatile boolean createReserveSegments = false;
 
+    private final CommitLog commitLog;
+
     private final Thread managerThread;
     private volatile boolean run = true;
 
-    public CommitLogSegmentManager()
+    public CommitLogSegmentManager(final CommitLog commitLog)
     {
+        this.commitLog = commitLog;
         // The run loop for the manager thread
         Runnable runnable = new WrappedRunnable()
         {
@@ -114,9 +117,10 @@ public class CommitLogSegmentManager
                             if (availableSegments.isEmpty() && (activeSegments.isEmpty() || createReserveSegments))
                             {
                                 logger.debug("No segments in reserve; creating a fresh one");
-                                size.addAndGet(DatabaseDescriptor.getCommitLogSegmentSize());
                                 // TODO : some error handling in case we fail to create a new segment
-                                availableSegments.add(CommitLogSegment.freshSegment());
+                                CommitLogSegment segment = CommitLogSegment.freshSegment(commitLog);
+                                size.addAndGet(segment.onDiskSize());
+                                availableSegments.add(segment);
                                 hasAvailableSegments.signalAll();
                             }
 
@@ -131,7 +135,7 @@ public class CommitLogSegmentManager
                                     if (segment == allocatingFrom)
                                         break;
                                     segmentsToRecycle.add(segment);
-                                    spaceToReclaim += DatabaseDescriptor.getCommitLogSegmentSize();
+                                    spaceToReclaim += segment.onDiskSize();
                                     if (spaceToReclaim + unused >= 0)
                                         break;
                                 }
@@ -169,7 +173,7 @@ public class CommitLogSegmentManager
             }
         };
 
-        managerThread = new Thread(runnable, "COMMIT-LOG-ALLOCATOR");
+        managerThread = new Thread(runnable, commitLog.threadName("COMMIT-LOG-ALLOCATOR"));
         managerThread.start();
     }
 
@@ -234,19 +238,19 @@ public class CommitLogSegmentManager
                 {
                     // Now we can run the user defined command just after switching to the new commit log.
                     // (Do this here instead of in the recycle call so we can get a head start on the archive.)
-                    CommitLog.instance.archiver.maybeArchive(old);
+                    commitLog.archiver.maybeArchive(old);
 
                     // ensure we don't continue to use the old file; not strictly necessary, but cleaner to enforce it
                     old.discardUnusedTail();
                 }
 
                 // request that the CL be synced out-of-band, as we've finished a segment
-                CommitLog.instance.requestExtraSync();
+                commitLog.requestExtraSync();
                 return;
             }
 
             // no more segments, so register to receive a signal when not empty
-            WaitQueue.Signal signal = hasAvailableSegments.register(CommitLog.instance.metrics.waitingOnSegmentAllocation.time());
+            WaitQueue.Signal signal = hasAvailableSegments.register(commitLog.metrics.waitingOnSegmentAllocation.time());
 
             // trigger the management thread; this must occur after registering
             // the signal to ensure we are woken by any new segment creation
@@ -346,7 +350,7 @@ public class CommitLogSegmentManager
      */
     void recycleSegment(final CommitLogSegment segment)
     {
-        boolean archiveSuccess = CommitLog.instance.archiver.maybeWaitForArchiving(segment.getName());
+        boolean archiveSuccess = commitLog.archiver.maybeWaitForArchiving(segment.getName());
         activeSegments.remove(segment);
         if (!archiveSuccess)
         {
@@ -354,7 +358,7 @@ public class CommitLogSegmentManager
             discardSegment(segment, false);
             return;
         }
-        if (isCapExceeded() || !DatabaseDescriptor.getCommitLogSegmentRecyclingEnabled())
+        if (isCapExceeded() || !DatabaseDescriptor.getCommitLogSegmentRecyclingEnabled() || DatabaseDescriptor.getCommitLogCompression() != null)
         {
             discardSegment(segment, true);
             return;
@@ -378,7 +382,9 @@ public class CommitLogSegmentManager
      */
     void recycleSegment(final File file)
     {
+        // compressed segments are appended to rather than preallocated, so there is nothing to gain from reusing files
         if (isCapExceeded()
+            || DatabaseDescriptor.getCommitLogCompression() != null
             || CommitLogDescriptor.fromFileName(file.getName()).getMessagingVersion() != MessagingService.current_version)
         {
             // (don't decrease managed size, since this was never a "live" segment)
@@ -394,7 +400,7 @@ public class CommitLogSegmentManager
         {
             public CommitLogSegment call()
             {
-                return new CommitLogSegment(file.getPath());
+                return new MemoryMappedSegment(commitLog, file.getPath());
             }
         });
     }
@@ -407,7 +413,6 @@ public class CommitLogSegmentManager
     private void discardSegment(final CommitLogSegment segment, final boolean deleteFile)
     {
         logger.debug("Segment {} is no longer active and will be deleted {}", segment, deleteFile ? "now" : "by the archive script");
-        size.addAndGet(-DatabaseDescriptor.getCommitLogSegmentSize());
 
         segmentManagementTasks.add(new Callable<CommitLogSegment>()
         {
@@ -416,11 +421,22 @@ public class CommitLogSegmentManager
                 segment.close();
                 if (deleteFile)
                     segment.delete();
+                // a compressed segment may still grow until it is closed, so only account for it once it has been
+                size.addAndGet(-segment.onDiskSize());
                 return null;
             }
         });
     }
 
+    /**
+     * Adjusts the total commit log size to account for the given number of bytes written to (or, if negative,
+     * released from) a segment that grows on disk.
+     */
+    void addSize(long addedSize)
+    {
+        size.addAndGet(addedSize);
+    }
+
     /**
      * @return the space (in bytes) used by all segment files.
      */
@@ -455,7 +471,7 @@ public class CommitLogSegmentManager
     {
         long currentSize = size.get();
         logger.debug("Total active commitlog segment space used is {}", currentSize);
-        return DatabaseDescriptor.getTotalCommitlogSpaceInMB() * 1024 * 1024 - currentSize;
+        return commitLog.totalSpaceInMB * 1024 * 1024 - currentSize;
     }
 
     /**
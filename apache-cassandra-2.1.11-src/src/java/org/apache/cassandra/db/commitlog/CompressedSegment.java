@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.ParameterizedClass;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
+import org.apache.cassandra.utils.CLibrary;
+
+/*
+ * Compressed commit log segment. Provides an in-memory buffer for the mutation threads. On sync compresses the
+ * section of the buffer written since the previous sync and appends it to the file, preceded by a sync marker
+ * (pointing to the file position of the next section) and the uncompressed length of the section.
+ *
+ * Positions handed out to writers, and therefore ReplayPositions, are offsets into the uncompressed buffer.
+ * The file only grows as sections are written, so compressed segments are never recycled.
+ */
+public class CompressedSegment extends CommitLogSegment
+{
+    private static final ThreadLocal<ICompressor.WrappedArray> compressedBufferHolder = new ThreadLocal<ICompressor.WrappedArray>()
+    {
+        protected ICompressor.WrappedArray initialValue()
+        {
+            return new ICompressor.WrappedArray(new byte[0]);
+        }
+    };
+
+    // sync marker followed by the uncompressed length of the section
+    static final int COMPRESSED_MARKER_SIZE = SYNC_MARKER_SIZE + 4;
+
+    private final ICompressor compressor;
+
+    // the end of the data written to the file so far; only modified under sync()
+    private volatile long lastWrittenPos = 0;
+
+    CompressedSegment(CommitLog commitLog, ParameterizedClass compression)
+    {
+        super(commitLog, null, compression);
+        try
+        {
+            compressor = CompressionParameters.createCompressor(compression);
+        }
+        catch (ConfigurationException e)
+        {
+            // the configured compressor is validated on startup
+            throw new IllegalStateException("Invalid commit log compression " + compression, e);
+        }
+
+        try
+        {
+            // the header is the only part of the file that is not compressed
+            ByteBuffer header = buffer.duplicate();
+            header.limit(descriptor.headerSize());
+            channel.write(header, 0);
+            lastWrittenPos = header.limit();
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, getPath());
+        }
+    }
+
+    ByteBuffer createBuffer() throws IOException
+    {
+        // truncate any leftovers, the file is appended to as sections are compressed
+        logFileAccessor.setLength(0);
+        return ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize());
+    }
+
+    void write(int startMarker, int nextMarker)
+    {
+        int contentStart = startMarker + SYNC_MARKER_SIZE;
+        int length = nextMarker - contentStart;
+        // The length may be 0 when the segment is being closed.
+        assert length > 0 || length == 0 && !isStillAllocating();
+
+        try
+        {
+            ICompressor.WrappedArray compressed = compressedBufferHolder.get();
+            int neededLength = COMPRESSED_MARKER_SIZE + compressor.initialCompressedBufferLength(length);
+            if (compressed.buffer.length < neededLength)
+                compressed.buffer = new byte[neededLength];
+
+            int compressedLength = compressor.compress(buffer.array(), buffer.arrayOffset() + contentStart, length,
+                                                       compressed, COMPRESSED_MARKER_SIZE);
+            // the compressor may have replaced the output array if it was too small
+            ByteBuffer section = ByteBuffer.wrap(compressed.buffer, 0, COMPRESSED_MARKER_SIZE + compressedLength);
+
+            int filePosition = (int) lastWrittenPos;
+            writeSyncMarker(section, 0, filePosition, filePosition + section.remaining());
+            section.putInt(SYNC_MARKER_SIZE, length);
+
+            channel.write(section, filePosition);
+            channel.force(true);
+            lastWrittenPos = filePosition + section.limit();
+            commitLog.allocator.addSize(section.limit());
+            CLibrary.trySkipCache(fd, filePosition, section.limit());
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, getPath());
+        }
+    }
+
+    long onDiskSize()
+    {
+        return lastWrittenPos;
+    }
+}
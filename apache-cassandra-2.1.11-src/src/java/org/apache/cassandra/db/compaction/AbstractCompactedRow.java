@@ -23,7 +23,9 @@ import java.io.IOException;
 import java.security.MessageDigest;
 
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.DeletionTime;
 import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.io.sstable.ClusteringFilterBuilder;
 import org.apache.cassandra.io.sstable.ColumnStats;
 import org.apache.cassandra.io.util.DataOutputPlus;
 
@@ -50,6 +52,21 @@ public abstract class AbstractCompactedRow implements Closeable
      */
     public abstract RowIndexEntry write(long currentPosition, DataOutputPlus out) throws IOException;
 
+    /**
+     * write the row like write(long, DataOutputPlus), adding what it holds to @param clusteringFilter.
+     *
+     * By default the row is recorded as holding anything, rows able to tell what they hold should override this.
+     */
+    public RowIndexEntry write(long currentPosition, DataOutputPlus out, ClusteringFilterBuilder clusteringFilter) throws IOException
+    {
+        if (clusteringFilter != null)
+        {
+            clusteringFilter.startPartition(key.getKey(), DeletionTime.LIVE);
+            clusteringFilter.addAllPrefixes();
+        }
+        return write(currentPosition, out);
+    }
+
     /**
      * update @param digest with the data bytes of the row (not including row key or row size).
      * May be called even if empty.
@@ -23,7 +23,6 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.RateLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -185,6 +184,23 @@ public abstract class AbstractCompactionStrategy
      */
     public abstract int getEstimatedRemainingTasks();
 
+    /**
+     * Unlike getEstimatedRemainingTasks, this compares across strategies and tables, so it is what background
+     * compactions are prioritized by.
+     *
+     * @return the number of bytes background compactions are estimated to still have to write for this
+     * columnfamilystore
+     */
+    public long getEstimatedRemainingBytes()
+    {
+        // assume every remaining task rewrites min threshold average-sized sstables
+        Collection<SSTableReader> sstables = cfs.getSSTables();
+        if (sstables.isEmpty())
+            return 0;
+        long meanSize = SSTableReader.getTotalBytes(sstables) / sstables.size();
+        return (long) getEstimatedRemainingTasks() * cfs.getMinimumCompactionThreshold() * meanSize;
+    }
+
     /**
      * @return size in bytes of the largest sstables for this strategy
      */
@@ -227,12 +243,12 @@ public abstract class AbstractCompactionStrategy
      * Handle a flushed memtable.
      *
      * @param memtable the flushed memtable
-     * @param sstable the written sstable. can be null if the memtable was clean.
+     * @param sstables the written sstables. can be empty if the memtable was clean.
      */
-    public void replaceFlushed(Memtable memtable, SSTableReader sstable)
+    public void replaceFlushed(Memtable memtable, Collection<SSTableReader> sstables)
     {
-        cfs.getDataTracker().replaceFlushed(memtable, sstable);
-        if (sstable != null)
+        cfs.getDataTracker().replaceFlushed(memtable, sstables);
+        if (!sstables.isEmpty())
             CompactionManager.instance.submitBackground(cfs);
     }
 
@@ -269,12 +285,11 @@ public abstract class AbstractCompactionStrategy
      */
     public ScannerList getScanners(Collection<SSTableReader> sstables, Range<Token> range)
     {
-        RateLimiter limiter = CompactionManager.instance.getRateLimiter();
         ArrayList<ISSTableScanner> scanners = new ArrayList<ISSTableScanner>();
         try
         {
             for (SSTableReader sstable : sstables)
-                scanners.add(sstable.getScanner(range, limiter));
+                scanners.add(sstable.getScanner(range, CompactionManager.instance.getRateLimiter(sstable)));
         }
         catch (Throwable t)
         {
@@ -296,6 +311,15 @@ public abstract class AbstractCompactionStrategy
         return false;
     }
 
+    /**
+     * @return false if the output of a compaction must not be split into several sstables by token range, for
+     * strategies that expect a compaction to produce a single sstable
+     */
+    public boolean allowsSubrangeCompaction()
+    {
+        return true;
+    }
+
     public String getName()
     {
         return getClass().getSimpleName();
@@ -358,32 +382,66 @@ public abstract class AbstractCompactionStrategy
      * @return true if given sstable's tombstones are expected to be removed
      */
     protected boolean worthDroppingTombstones(SSTableReader sstable, int gcBefore)
+    {
+        return getDroppableRatioIfDue(sstable, gcBefore) > tombstoneThreshold;
+    }
+
+    /**
+     * @return the ratio of the sstable's tombstones a compaction is expected to remove, or 0 if it isn't worth
+     * checking yet
+     */
+    private double getDroppableRatioIfDue(SSTableReader sstable, int gcBefore)
     {
         if (disableTombstoneCompactions)
-            return false;
+            return 0;
         // since we use estimations to calculate, there is a chance that compaction will not drop tombstones actually.
         // if that happens we will end up in infinite compaction loop, so first we check enough if enough time has
         // elapsed since SSTable created.
         if (System.currentTimeMillis() < sstable.getCreationTimeFor(Component.DATA) + tombstoneCompactionInterval * 1000)
-           return false;
+           return 0;
+
+        // checking overlaps is expensive, skip the sstables it can't make a candidate of
+        if (sstable.getEstimatedDroppableTombstoneRatio(gcBefore) <= tombstoneThreshold)
+            return 0;
 
+        return getPurgeableTombstoneRatio(sstable, gcBefore);
+    }
+
+    /**
+     * Estimates the ratio of droppable tombstones a compaction of the given sstable on its own would actually remove.
+     *
+     * A tombstone can't be removed while another sstable may hold data it shadows, so the droppable tombstones of
+     * the partitions that other sstables also cover don't count. Sstables whose data is all newer than this one's
+     * can't hold such data and are ignored.
+     *
+     * @param sstable SSTable to check
+     * @param gcBefore time to drop tombstones
+     * @return the estimated ratio of the sstable's columns that are droppable tombstones nothing else depends on
+     */
+    public double getPurgeableTombstoneRatio(SSTableReader sstable, int gcBefore)
+    {
         double droppableRatio = sstable.getEstimatedDroppableTombstoneRatio(gcBefore);
-        if (droppableRatio <= tombstoneThreshold)
-            return false;
 
         //sstable range overlap check is disabled. See CASSANDRA-6563.
-        if (uncheckedTombstoneCompaction)
-            return true;
+        if (droppableRatio == 0 || uncheckedTombstoneCompaction)
+            return droppableRatio;
+
+        List<SSTableReader> overlaps = new ArrayList<>();
+        for (SSTableReader overlap : cfs.getOverlappingSSTables(Collections.singleton(sstable)))
+        {
+            if (overlap.getMinTimestamp() <= sstable.getMaxTimestamp())
+                overlaps.add(overlap);
+        }
 
-        Collection<SSTableReader> overlaps = cfs.getOverlappingSSTables(Collections.singleton(sstable));
         if (overlaps.isEmpty())
         {
             // there is no overlap, tombstones are safely droppable
-            return true;
+            return droppableRatio;
         }
         else if (CompactionController.getFullyExpiredSSTables(cfs, Collections.singleton(sstable), overlaps, gcBefore).size() > 0)
         {
-            return true;
+            // the whole sstable goes
+            return 1;
         }
         else
         {
@@ -391,21 +449,57 @@ public abstract class AbstractCompactionStrategy
             if (sstable.getIndexSummarySize() < 2)
             {
                 // we have too few samples to estimate correct percentage
-                return false;
+                return 0;
             }
             // first, calculate estimated keys that do not overlap
             long keys = sstable.estimatedKeys();
-            Set<Range<Token>> ranges = new HashSet<Range<Token>>(overlaps.size());
+            List<Range<Token>> ranges = new ArrayList<Range<Token>>(overlaps.size());
             for (SSTableReader overlap : overlaps)
                 ranges.add(new Range<Token>(overlap.first.getToken(), overlap.last.getToken(), overlap.partitioner));
-            long remainingKeys = keys - sstable.estimatedKeysForRanges(ranges);
+            // overlapping sstables overlapping each other must not count the same keys twice
+            long remainingKeys = Math.max(0, keys - sstable.estimatedKeysForRanges(Range.normalize(ranges)));
             // next, calculate what percentage of columns we have within those keys
             long columns = sstable.getEstimatedColumnCount().mean() * remainingKeys;
             double remainingColumnsRatio = ((double) columns) / (sstable.getEstimatedColumnCount().count() * sstable.getEstimatedColumnCount().mean());
 
-            // return if we still expect to have droppable tombstones in rest of columns
-            return remainingColumnsRatio * droppableRatio > tombstoneThreshold;
+            // we still expect to have droppable tombstones in rest of columns
+            return remainingColumnsRatio * droppableRatio;
+        }
+    }
+
+    /**
+     * Unlike getNextBackgroundTask, which only falls back to them when there is nothing else to compact, this
+     * returns every sstable that is worth a compaction of its own to drop its tombstones.
+     *
+     * @param gcBefore time to drop tombstones
+     * @return the ratio of droppable tombstones a compaction of each of those sstables is expected to remove
+     */
+    public Map<SSTableReader, Double> getTombstoneCompactionCandidates(int gcBefore)
+    {
+        return getTombstoneCompactionCandidates(cfs.getUncompactingSSTables(), gcBefore);
+    }
+
+    protected Map<SSTableReader, Double> getTombstoneCompactionCandidates(Iterable<SSTableReader> sstables, int gcBefore)
+    {
+        Map<SSTableReader, Double> candidates = new HashMap<>();
+        for (SSTableReader sstable : filterSuspectSSTables(sstables))
+        {
+            double ratio = getDroppableRatioIfDue(sstable, gcBefore);
+            if (ratio > tombstoneThreshold)
+                candidates.put(sstable, ratio);
         }
+        return candidates;
+    }
+
+    /**
+     * @param sstable one of the sstables returned by getTombstoneCompactionCandidates, marked as compacting
+     * @param gcBefore time to drop tombstones
+     * @return the task compacting the sstable on its own
+     */
+    public AbstractCompactionTask getTombstoneCompactionTask(SSTableReader sstable, int gcBefore)
+    {
+        return getCompactionTask(Collections.singleton(sstable), gcBefore, getMaxSSTableBytes())
+               .setCompactionType(OperationType.TOMBSTONE_COMPACTION);
     }
 
     public static Map<String, String> validateOptions(Map<String, String> options) throws ConfigurationException
@@ -23,6 +23,8 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +32,8 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DataTracker;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.io.sstable.ClusteringFilter;
+import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.utils.AlwaysPresentFilter;
 
@@ -41,11 +45,13 @@ import org.apache.cassandra.utils.concurrent.Refs;
 public class CompactionController implements AutoCloseable
 {
     private static final Logger logger = LoggerFactory.getLogger(CompactionController.class);
+    private static final boolean COPY_UNMERGED_ROWS = Boolean.parseBoolean(System.getProperty("cassandra.compaction_copy_unmerged_rows", "true"));
 
     public final ColumnFamilyStore cfs;
     private DataTracker.SSTableIntervalTree overlappingTree;
     private Refs<SSTableReader> overlappingSSTables;
     private final Iterable<SSTableReader> compacting;
+    private final ConcurrentMap<SSTableReader, Boolean> copyableSSTables = new ConcurrentHashMap<>();
 
     public final int gcBefore;
 
@@ -189,6 +195,28 @@ public class CompactionController implements AutoCloseable
         return min;
     }
 
+    /**
+     * @return true if the rows of the given sstable that are not merged with a row of another sstable can be copied
+     * as is, that is if the sstable is in the current format and holds no tombstone nor expiring cell, and no column
+     * has been dropped from the table, so that there is nothing compaction could purge or remove from those rows.
+     * Rows are never copied for tables with clustering filters, whose filters would then have to admit anything for them.
+     */
+    public boolean canCopyUnmergedRows(SSTableReader sstable)
+    {
+        if (!COPY_UNMERGED_ROWS || ClusteringFilter.supports(cfs.metadata))
+            return false;
+
+        Boolean canCopy = copyableSSTables.get(sstable);
+        if (canCopy == null)
+        {
+            canCopy = sstable.descriptor.version.equals(Descriptor.Version.CURRENT)
+                      && cfs.metadata.getDroppedColumns().isEmpty()
+                      && sstable.getSSTableMetadata().estimatedTombstoneDropTime.getAsMap().isEmpty();
+            copyableSSTables.put(sstable, canCopy);
+        }
+        return canCopy;
+    }
+
     public void invalidateCachedRow(DecoratedKey key)
     {
         cfs.invalidateCachedRow(key);
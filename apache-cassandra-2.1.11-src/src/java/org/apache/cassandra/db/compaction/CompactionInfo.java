@@ -123,6 +123,7 @@ public final class CompactionInfo implements Serializable
         public abstract CompactionInfo getCompactionInfo();
         double load = StorageService.instance.getLoad();
         double reportedSeverity = 0d;
+        private volatile long startedAt = System.nanoTime();
 
         public void stop()
         {
@@ -133,11 +134,21 @@ public final class CompactionInfo implements Serializable
         {
             return stopRequested;
         }
+
+        /**
+         * @return the System.nanoTime() at which the operation started
+         */
+        public long getStartedAt()
+        {
+            return startedAt;
+        }
+
         /**
          * report event on the size of the compaction.
          */
         public void started()
         {
+            startedAt = System.nanoTime();
             reportedSeverity = getCompactionInfo().getTotal() / load;
             StorageService.instance.reportSeverity(reportedSeverity);
         }
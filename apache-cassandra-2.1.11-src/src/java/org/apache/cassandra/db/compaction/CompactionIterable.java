@@ -25,6 +25,7 @@ import com.google.common.collect.ImmutableList;
 
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.SSTableIdentityIterator;
 import org.apache.cassandra.utils.CloseableIterator;
 import org.apache.cassandra.utils.MergeIterator;
 
@@ -53,6 +54,20 @@ public class CompactionIterable extends AbstractCompactionIterable
         return this.getCompactionInfo().toString();
     }
 
+    /**
+     * @return true if the row, which isn't merged with any other, can be copied as is to the new sstable. Validation
+     * writes nothing and reads the cells for its digest anyway, and an upgrade has to rewrite them in the current format.
+     */
+    private boolean canCopy(OnDiskAtomIterator row)
+    {
+        if (type != OperationType.COMPACTION && type != OperationType.ANTICOMPACTION)
+            return false;
+        if (!(row instanceof SSTableIdentityIterator))
+            return false;
+        SSTableIdentityIterator identityIterator = (SSTableIdentityIterator) row;
+        return identityIterator.canCopy() && controller.canCopyUnmergedRows(identityIterator.getSSTable());
+    }
+
     protected class Reducer extends MergeIterator.Reducer<OnDiskAtomIterator, AbstractCompactedRow>
     {
         protected final List<OnDiskAtomIterator> rows = new ArrayList<>();
@@ -69,6 +84,9 @@ public class CompactionIterable extends AbstractCompactionIterable
             CompactionIterable.this.updateCounterFor(rows.size());
             try
             {
+                if (rows.size() == 1 && canCopy(rows.get(0)))
+                    return new CopiedCompactedRow((SSTableIdentityIterator) rows.get(0));
+
                 // create a new container for rows, since we're going to clear ours for the next one,
                 // and the AbstractCompactionRow code should be able to assume that the collection it receives
                 // won't be pulled out from under it.
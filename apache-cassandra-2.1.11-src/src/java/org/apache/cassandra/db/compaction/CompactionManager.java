@@ -24,6 +24,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -33,14 +35,19 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularData;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
@@ -58,6 +65,7 @@ import org.apache.cassandra.cache.AutoSavingCache;
 import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutor;
 import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.concurrent.ScheduledExecutors;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
@@ -100,6 +108,18 @@ public class CompactionManager implements CompactionManagerMBean
     public static final int NO_GC = Integer.MIN_VALUE;
     public static final int GC_ALL = Integer.MAX_VALUE;
 
+    // a background compaction may be stopped for a waiting operation with this many times its priority, 0 disables
+    private static final double PREEMPTION_RATIO = Double.parseDouble(System.getProperty("cassandra.compaction_preemption_ratio", "4.0"));
+    // but only once it has run for this long, so that compactions still make progress
+    private static final long PREEMPTION_MIN_RUNTIME_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("cassandra.compaction_preemption_min_runtime_ms", TimeUnit.MINUTES.toMillis(10)));
+    private static final long PREEMPTION_CHECK_INTERVAL_MS = Long.getLong("cassandra.compaction_preemption_check_interval_ms", 30000);
+    private static final Set<OperationType> PREEMPTIBLE_OPERATIONS = EnumSet.of(OperationType.COMPACTION, OperationType.TOMBSTONE_COMPACTION);
+
+    // how often all sstables are checked for tombstones worth a compaction of their own, 0 disables
+    private static final long TOMBSTONE_COMPACTION_CHECK_INTERVAL_MS = Long.getLong("cassandra.tombstone_compaction_check_interval_ms", TimeUnit.MINUTES.toMillis(5));
+    // how many bytes of sstables those compactions may be rewriting at once
+    private static final long TOMBSTONE_COMPACTION_BUDGET = Long.getLong("cassandra.tombstone_compaction_budget_in_mb", 1024) * 1024 * 1024;
+
     // A thread local that tells us if the current thread is owned by the compaction manager. Used
     // by CounterContext to figure out if it should log a warning for invalid counter shards.
     public static final ThreadLocal<Boolean> isCompactionManager = new ThreadLocal<Boolean>()
@@ -123,16 +143,42 @@ public class CompactionManager implements CompactionManagerMBean
         {
             throw new RuntimeException(e);
         }
+        ScheduledExecutors.optionalTasks.scheduleWithFixedDelay(instance.throughputController,
+                                                                CompactionThroughputController.UPDATE_INTERVAL_IN_MS,
+                                                                CompactionThroughputController.UPDATE_INTERVAL_IN_MS,
+                                                                TimeUnit.MILLISECONDS);
+        ScheduledExecutors.optionalTasks.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                instance.maybePreempt();
+            }
+        }, PREEMPTION_CHECK_INTERVAL_MS, PREEMPTION_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (TOMBSTONE_COMPACTION_CHECK_INTERVAL_MS > 0)
+        {
+            ScheduledExecutors.optionalTasks.scheduleWithFixedDelay(new Runnable()
+            {
+                public void run()
+                {
+                    instance.submitTombstoneCompactions();
+                }
+            }, TOMBSTONE_COMPACTION_CHECK_INTERVAL_MS, TOMBSTONE_COMPACTION_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
     }
 
     private final CompactionExecutor executor = new CompactionExecutor();
     private final CompactionExecutor validationExecutor = new ValidationExecutor();
     private final static CompactionExecutor cacheCleanupExecutor = new CacheCleanupExecutor();
+    private final static CompactionExecutor subrangeExecutor = new SubrangeExecutor();
 
     private final CompactionMetrics metrics = new CompactionMetrics(executor, validationExecutor);
     private final Multiset<ColumnFamilyStore> compactingCF = ConcurrentHashMultiset.create();
+    // tables whose background compaction was stopped to make room for a higher priority operation
+    private final Set<ColumnFamilyStore> preempted = Sets.newConcurrentHashSet();
+    // size of the sstables submitted tombstone compactions are rewriting
+    private final AtomicLong tombstoneCompactionBytes = new AtomicLong();
 
-    private final RateLimiter compactionRateLimiter = RateLimiter.create(Double.MAX_VALUE);
+    private final CompactionThroughputController throughputController = new CompactionThroughputController();
 
     /**
      * Gets compaction rate limiter. When compaction_throughput_mb_per_sec is 0 or node is bootstrapping,
@@ -143,13 +189,19 @@ public class CompactionManager implements CompactionManagerMBean
      */
     public RateLimiter getRateLimiter()
     {
-        double currentThroughput = DatabaseDescriptor.getCompactionThroughputMbPerSec() * 1024.0 * 1024.0;
-        // if throughput is set to 0, throttling is disabled
-        if (currentThroughput == 0 || StorageService.instance.isBootstrapMode())
-            currentThroughput = Double.MAX_VALUE;
-        if (compactionRateLimiter.getRate() != currentThroughput)
-            compactionRateLimiter.setRate(currentThroughput);
-        return compactionRateLimiter;
+        return throughputController.getRateLimiter();
+    }
+
+    /**
+     * Gets the rate limiter of the data directory the given sstable lives in. If compaction_throughput_adaptive is
+     * set, each data directory gets an equal share of compaction_throughput_mb_per_sec, adjusted to the read load;
+     * otherwise all compactions share the global rate limiter.
+     *
+     * @return RateLimiter with rate limit set
+     */
+    public RateLimiter getRateLimiter(SSTableReader sstable)
+    {
+        return throughputController.getRateLimiter(sstable);
     }
 
     /**
@@ -185,7 +237,7 @@ public class CompactionManager implements CompactionManagerMBean
             return Collections.emptyList();
         }
         compactingCF.add(cfs);
-        futures.add(executor.submit(new BackgroundCompactionCandidate(cfs)));
+        futures.add(executor.submit(new BackgroundCompactionCandidate(cfs), CompactionPriority.ofBackgroundCompaction(cfs)));
 
         return futures;
     }
@@ -217,6 +269,7 @@ public class CompactionManager implements CompactionManagerMBean
 
         public void run()
         {
+            boolean completed = false;
             try
             {
                 logger.debug("Checking {}.{}", cfs.keyspace.getName(), cfs.name);
@@ -233,17 +286,160 @@ public class CompactionManager implements CompactionManagerMBean
                     logger.debug("No tasks available");
                     return;
                 }
+                // strategies hand out tasks that do not overlap those in progress (LCS even within L0), so there
+                // may be another one for an idle compactor to pick up; submitBackground skips it if all are busy
+                submitBackground(cfs);
                 task.execute(metrics);
+                completed = true;
             }
             finally
             {
                 compactingCF.remove(cfs);
+                // a preempted compaction gives up its thread, but its table still needs compacting
+                boolean wasPreempted = preempted.remove(cfs);
+                if (completed || wasPreempted)
+                    submitBackground(cfs);
+            }
+        }
+    }
+
+    /**
+     * If all compaction threads are busy and the operation waiting with the highest priority has a much higher one
+     * than a background compaction that has been running for a while, stop that compaction to make room for it.
+     */
+    @VisibleForTesting
+    void maybePreempt()
+    {
+        if (PREEMPTION_RATIO <= 0 || executor.getActiveCount() < executor.getMaximumPoolSize())
+            return;
+
+        double waiting = executor.getHighestWaitingPriority();
+        if (Double.isNaN(waiting))
+            return;
+
+        Holder lowest = null;
+        ColumnFamilyStore lowestCfs = null;
+        double lowestPriority = Double.MAX_VALUE;
+        for (Holder holder : CompactionMetrics.getCompactions())
+        {
+            CompactionInfo info = holder.getCompactionInfo();
+            if (holder.isStopRequested()
+                || !PREEMPTIBLE_OPERATIONS.contains(info.getTaskType())
+                || info.getCFMetaData() == null
+                || System.nanoTime() - holder.getStartedAt() < PREEMPTION_MIN_RUNTIME_NANOS)
+                continue;
+
+            ColumnFamilyStore cfs = Schema.instance.getColumnFamilyStoreInstance(info.getCFMetaData().cfId);
+            // only background compactions are preempted, user requested operations run to completion
+            if (cfs == null || !compactingCF.contains(cfs))
+                continue;
+
+            double priority = CompactionPriority.ofBackgroundCompaction(cfs);
+            if (priority < lowestPriority)
+            {
+                lowest = holder;
+                lowestCfs = cfs;
+                lowestPriority = priority;
+            }
+        }
+
+        if (lowest != null && waiting > lowestPriority * PREEMPTION_RATIO)
+        {
+            logger.info("Preempting {} (priority {}) for an operation of priority {}", lowest.getCompactionInfo(), lowestPriority, waiting);
+            preempted.add(lowestCfs);
+            lowest.stop();
+        }
+    }
+
+    /**
+     * Background compactions only compact an sstable on its own to drop its tombstones when they find nothing else
+     * to do, which the tables that need it most, like those used as queues, rarely get to.
+     *
+     * Instead, look for such sstables across all tables and submit the compactions of those expected to drop the
+     * most bytes of tombstones first, as long as the sstables being rewritten don't exceed the budget.
+     */
+    @VisibleForTesting
+    List<Future<?>> submitTombstoneCompactions()
+    {
+        List<TombstoneCompactionCandidate> candidates = new ArrayList<>();
+        for (Keyspace keyspace : Keyspace.all())
+        {
+            for (ColumnFamilyStore cfs : keyspace.getColumnFamilyStores())
+            {
+                if (!cfs.isValid() || cfs.isAutoCompactionDisabled())
+                    continue;
+
+                int gcBefore = getDefaultGcBefore(cfs);
+                for (Map.Entry<SSTableReader, Double> entry : cfs.getCompactionStrategy().getTombstoneCompactionCandidates(gcBefore).entrySet())
+                    candidates.add(new TombstoneCompactionCandidate(cfs, entry.getKey(), entry.getValue(), gcBefore));
             }
-            submitBackground(cfs);
+        }
+        if (candidates.isEmpty())
+            return Collections.emptyList();
+
+        Collections.sort(candidates);
+        List<Future<?>> futures = new ArrayList<>();
+        for (TombstoneCompactionCandidate candidate : candidates)
+        {
+            final long size = candidate.sstable.onDiskLength();
+            // let an sstable larger than the budget through when nothing else is being rewritten
+            long current = tombstoneCompactionBytes.get();
+            if (current > 0 && current + size > TOMBSTONE_COMPACTION_BUDGET)
+                break;
+            if (executor.isShutdown())
+            {
+                logger.info("Executor has shut down, not submitting tombstone compactions");
+                break;
+            }
+            if (!candidate.cfs.getDataTracker().markCompacting(Collections.singleton(candidate.sstable)))
+                continue;
+
+            logger.debug("Submitting tombstone compaction of {}, expecting to drop {}% of it", candidate.sstable, (int) (candidate.ratio * 100));
+            final AbstractCompactionTask task = candidate.cfs.getCompactionStrategy().getTombstoneCompactionTask(candidate.sstable, candidate.gcBefore);
+            tombstoneCompactionBytes.addAndGet(size);
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        task.execute(metrics);
+                    }
+                    finally
+                    {
+                        tombstoneCompactionBytes.addAndGet(-size);
+                    }
+                }
+            }, CompactionPriority.of(candidate.cfs, OperationType.TOMBSTONE_COMPACTION)));
+        }
+        return futures;
+    }
+
+    private static final class TombstoneCompactionCandidate implements Comparable<TombstoneCompactionCandidate>
+    {
+        private final ColumnFamilyStore cfs;
+        private final SSTableReader sstable;
+        private final double ratio;
+        private final int gcBefore;
+        private final double droppableBytes;
+
+        private TombstoneCompactionCandidate(ColumnFamilyStore cfs, SSTableReader sstable, double ratio, int gcBefore)
+        {
+            this.cfs = cfs;
+            this.sstable = sstable;
+            this.ratio = ratio;
+            this.gcBefore = gcBefore;
+            this.droppableBytes = ratio * sstable.onDiskLength();
+        }
+
+        public int compareTo(TombstoneCompactionCandidate other)
+        {
+            // most droppable bytes first
+            return Double.compare(other.droppableBytes, droppableBytes);
         }
     }
 
-    private AllSSTableOpStatus parallelAllSSTableOperation(final ColumnFamilyStore cfs, final OneSSTableOperation operation) throws ExecutionException, InterruptedException
+    private AllSSTableOpStatus parallelAllSSTableOperation(final ColumnFamilyStore cfs, final OneSSTableOperation operation, OperationType operationType) throws ExecutionException, InterruptedException
     {
         Iterable<SSTableReader> compactingSSTables = cfs.markAllCompacting();
         if (compactingSSTables == null)
@@ -260,6 +456,7 @@ public class CompactionManager implements CompactionManagerMBean
         {
             Iterable<SSTableReader> sstables = operation.filterSSTables(compactingSSTables);
             List<Future<Object>> futures = new ArrayList<>();
+            double priority = CompactionPriority.of(cfs, operationType);
 
             for (final SSTableReader sstable : sstables)
             {
@@ -277,7 +474,7 @@ public class CompactionManager implements CompactionManagerMBean
                         operation.execute(sstable);
                         return this;
                     }
-                }));
+                }, priority));
             }
 
             FBUtilities.waitOnFutures(futures);
@@ -320,7 +517,7 @@ public class CompactionManager implements CompactionManagerMBean
             {
                 scrubOne(cfs, input, skipCorrupted, checkData);
             }
-        });
+        }, OperationType.SCRUB);
     }
 
     public AllSSTableOpStatus performSSTableRewrite(final ColumnFamilyStore cfs, final boolean excludeCurrentVersion) throws InterruptedException, ExecutionException
@@ -348,7 +545,7 @@ public class CompactionManager implements CompactionManagerMBean
                 task.setCompactionType(OperationType.UPGRADE_SSTABLES);
                 task.execute(metrics);
             }
-        });
+        }, OperationType.UPGRADE_SSTABLES);
     }
 
     public AllSSTableOpStatus performCleanup(final ColumnFamilyStore cfStore) throws InterruptedException, ExecutionException
@@ -379,7 +576,7 @@ public class CompactionManager implements CompactionManagerMBean
                 CleanupStrategy cleanupStrategy = CleanupStrategy.get(cfStore, ranges);
                 doCleanupOne(cfStore, input, cleanupStrategy, ranges, hasIndexes);
             }
-        });
+        }, OperationType.CLEANUP);
     }
 
     public ListenableFuture<?> submitAntiCompaction(final ColumnFamilyStore cfs,
@@ -413,7 +610,7 @@ public class CompactionManager implements CompactionManagerMBean
         }
 
         ListenableFutureTask<?> task = ListenableFutureTask.create(runnable, null);
-        executor.submit(task);
+        executor.submit(task, CompactionPriority.of(cfs, OperationType.ANTICOMPACTION));
         return task;
     }
 
@@ -493,10 +690,25 @@ public class CompactionManager implements CompactionManagerMBean
 
     public void performMaximal(final ColumnFamilyStore cfStore) throws InterruptedException, ExecutionException
     {
-        FBUtilities.waitOnFutures(submitMaximal(cfStore, getDefaultGcBefore(cfStore)));
+        performMaximal(cfStore, false);
+    }
+
+    public void performMaximal(final ColumnFamilyStore cfStore, boolean incremental) throws InterruptedException, ExecutionException
+    {
+        FBUtilities.waitOnFutures(submitMaximal(cfStore, getDefaultGcBefore(cfStore), incremental));
     }
 
     public List<Future<?>> submitMaximal(final ColumnFamilyStore cfStore, final int gcBefore)
+    {
+        return submitMaximal(cfStore, gcBefore, false);
+    }
+
+    /**
+     * @param incremental whether to compact the token range of the sstables one slice at a time, see
+     * IncrementalCompactionTask. Leveled compactions are never incremental, as they already write sstables of
+     * bounded size.
+     */
+    public List<Future<?>> submitMaximal(final ColumnFamilyStore cfStore, final int gcBefore, boolean incremental)
     {
         // here we compute the task off the compaction executor, so having that present doesn't
         // confuse runWithCompactionsDisabled -- i.e., we don't want to deadlock ourselves, waiting
@@ -508,8 +720,11 @@ public class CompactionManager implements CompactionManagerMBean
 
         List<Future<?>> futures = new ArrayList<>();
 
-        for (final AbstractCompactionTask task : tasks)
+        for (AbstractCompactionTask maximalTask : tasks)
         {
+            final AbstractCompactionTask task = incremental && maximalTask.getClass() == CompactionTask.class
+                                              ? new IncrementalCompactionTask(cfStore, maximalTask.sstables, gcBefore)
+                                              : maximalTask;
             Runnable runnable = new WrappedRunnable()
             {
                 protected void runMayThrow() throws IOException
@@ -522,7 +737,7 @@ public class CompactionManager implements CompactionManagerMBean
                 logger.info("Compaction executor has shut down, not submitting task");
                 return Collections.emptyList();
             }
-            futures.add(executor.submit(runnable));
+            futures.add(executor.submit(runnable, CompactionPriority.of(cfStore, OperationType.COMPACTION)));
         }
         return futures;
     }
@@ -593,7 +808,7 @@ public class CompactionManager implements CompactionManagerMBean
             return Futures.immediateCancelledFuture();
         }
 
-        return executor.submit(runnable);
+        return executor.submit(runnable, CompactionPriority.of(cfs, OperationType.COMPACTION));
     }
 
     // This acquire a reference on the sstable
@@ -633,6 +848,14 @@ public class CompactionManager implements CompactionManagerMBean
         return validationExecutor.submit(callable);
     }
 
+    /**
+     * Runs a token subrange of a compaction that CompactionTask has split to compact in parallel.
+     */
+    public <T> Future<T> submitSubrange(Callable<T> subrange)
+    {
+        return subrangeExecutor.submit(subrange);
+    }
+
     /* Used in tests. */
     public void disableAutoCompaction()
     {
@@ -751,7 +974,7 @@ public class CompactionManager implements CompactionManagerMBean
         if (compactionFileLocation == null)
             throw new IOException("disk full");
 
-        ISSTableScanner scanner = cleanupStrategy.getScanner(sstable, getRateLimiter());
+        ISSTableScanner scanner = cleanupStrategy.getScanner(sstable, getRateLimiter(sstable));
         CleanupInfo ci = new CleanupInfo(sstable, scanner);
 
         metrics.beginCompaction(ci);
@@ -1154,7 +1377,8 @@ public class CompactionManager implements CompactionManagerMBean
             return null;
         }
 
-        return executor.submit(runnable);
+        CFMetaData cfm = builder.getCompactionInfo().getCFMetaData();
+        return executor.submit(runnable, CompactionPriority.of(Schema.instance.getColumnFamilyStoreInstance(cfm.cfId), OperationType.INDEX_BUILD));
     }
 
     public Future<?> submitCacheWrite(final AutoSavingCache.Writer writer)
@@ -1191,7 +1415,7 @@ public class CompactionManager implements CompactionManagerMBean
             logger.info("Executor has shut down, not submitting background task");
             Futures.immediateCancelledFuture();
         }
-        return executor.submit(runnable);
+        return executor.submit(runnable, CompactionPriority.of(null, writer.getCompactionInfo().getTaskType()));
     }
 
     static int getDefaultGcBefore(ColumnFamilyStore cfs)
@@ -1259,7 +1483,49 @@ public class CompactionManager implements CompactionManagerMBean
 
         public CompactionExecutor()
         {
-            this(Math.max(1, DatabaseDescriptor.getConcurrentCompactors()), "CompactionExecutor");
+            this(Math.max(1, DatabaseDescriptor.getConcurrentCompactors()),
+                 Math.max(1, DatabaseDescriptor.getConcurrentCompactors()),
+                 "CompactionExecutor",
+                 new PriorityBlockingQueue<Runnable>(11, PrioritizedTask.ORDER));
+        }
+
+        /**
+         * Submits a task to run ahead of those of lower priority, see CompactionPriority. Tasks submitted without
+         * one get the lowest priority, but age like any other.
+         */
+        public Future<?> submit(Runnable task, double priority)
+        {
+            RunnableFuture<Object> future = new PrioritizedTask<>(task, null, priority);
+            execute(future);
+            return future;
+        }
+
+        public <T> Future<T> submit(Callable<T> task, double priority)
+        {
+            RunnableFuture<T> future = new PrioritizedTask<>(task, priority);
+            execute(future);
+            return future;
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value)
+        {
+            return new PrioritizedTask<>(runnable, value, 0);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable)
+        {
+            return new PrioritizedTask<>(callable, 0);
+        }
+
+        /**
+         * @return the current priority of the task that runs next, or NaN if none is waiting
+         */
+        double getHighestWaitingPriority()
+        {
+            Runnable next = getQueue().peek();
+            return next instanceof PrioritizedTask ? ((PrioritizedTask<?>) next).getAgedPriority() : Double.NaN;
         }
 
         protected void beforeExecute(Thread t, Runnable r)
@@ -1296,6 +1562,51 @@ public class CompactionManager implements CompactionManagerMBean
         }
     }
 
+    private static class PrioritizedTask<T> extends FutureTask<T>
+    {
+        private static final AtomicLong sequenceGenerator = new AtomicLong();
+
+        // highest priority first, then in submission order; anything else (e.g. tracing wrappers) goes first
+        static final Comparator<Runnable> ORDER = new Comparator<Runnable>()
+        {
+            public int compare(Runnable r1, Runnable r2)
+            {
+                if (!(r1 instanceof PrioritizedTask))
+                    return r2 instanceof PrioritizedTask ? -1 : 0;
+                if (!(r2 instanceof PrioritizedTask))
+                    return 1;
+                PrioritizedTask<?> t1 = (PrioritizedTask<?>) r1;
+                PrioritizedTask<?> t2 = (PrioritizedTask<?>) r2;
+                int cmp = Double.compare(t2.queueKey, t1.queueKey);
+                return cmp != 0 ? cmp : Long.compare(t1.sequence, t2.sequence);
+            }
+        };
+
+        private final double priority;
+        private final long submittedAt = System.nanoTime();
+        private final double queueKey;
+        private final long sequence = sequenceGenerator.incrementAndGet();
+
+        PrioritizedTask(Runnable runnable, T value, double priority)
+        {
+            super(runnable, value);
+            this.priority = priority;
+            this.queueKey = CompactionPriority.queueKey(priority, submittedAt);
+        }
+
+        PrioritizedTask(Callable<T> callable, double priority)
+        {
+            super(callable);
+            this.priority = priority;
+            this.queueKey = CompactionPriority.queueKey(priority, submittedAt);
+        }
+
+        double getAgedPriority()
+        {
+            return CompactionPriority.aged(priority, submittedAt);
+        }
+    }
+
     private static class ValidationExecutor extends CompactionExecutor
     {
         public ValidationExecutor()
@@ -1312,6 +1623,16 @@ public class CompactionManager implements CompactionManagerMBean
         }
     }
 
+    // runs the token subranges of compactions split by CompactionTask; separate from the compaction executor
+    // so that a compaction waiting on its subranges cannot starve them of threads
+    private static class SubrangeExecutor extends CompactionExecutor
+    {
+        public SubrangeExecutor()
+        {
+            super(Math.max(1, DatabaseDescriptor.getConcurrentCompactors() * DatabaseDescriptor.getCompactionSubranges()), "CompactionSubrangeExecutor");
+        }
+    }
+
     public interface CompactionExecutorStatsCollector
     {
         void beginCompaction(CompactionInfo.Holder ci);
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.db.ColumnFamilyStore;
+
+/**
+ * Ranks the operations waiting for a compaction thread.
+ *
+ * An operation on a table is worth as much as the number of sstables recent reads of that table had to touch,
+ * scaled by how urgent its type is: compactions, which bring that number down, go before cleanups, scrubs and index
+ * builds. Background compactions are further weighted by the log of their table's backlog.
+ *
+ * Waiting operations gain priority as they age so that none of them starves. As all of them age at the same rate,
+ * their order only depends on their priority minus the aging at submission time, which doesn't change while they
+ * are queued.
+ */
+public final class CompactionPriority
+{
+    // priority a waiting operation gains per minute
+    private static final double AGING_PER_MINUTE = Double.parseDouble(System.getProperty("cassandra.compaction_priority_aging_per_minute", "0.2"));
+    private static final long BACKLOG_UNIT = 1024L * 1024L;
+
+    private CompactionPriority()
+    {
+    }
+
+    @VisibleForTesting
+    static double weight(OperationType type)
+    {
+        switch (type)
+        {
+            case COMPACTION:
+            case TOMBSTONE_COMPACTION:
+            case ANTICOMPACTION:
+                return 1.0;
+            case CLEANUP:
+            case SCRUB:
+            case UPGRADE_SSTABLES:
+            case INDEX_BUILD:
+            case VALIDATION:
+                return 0.5;
+            default:
+                // cache saves
+                return 0.25;
+        }
+    }
+
+    /**
+     * @return the number of sstables most recent reads of the table touched, at least 1
+     */
+    public static double readAmplification(ColumnFamilyStore cfs)
+    {
+        return Math.max(1.0, cfs.metric.sstablesPerReadHistogram.cf.getSnapshot().get75thPercentile());
+    }
+
+    /**
+     * @param cfs the table the operation works on, or null if it isn't specific to one
+     */
+    public static double of(ColumnFamilyStore cfs, OperationType type)
+    {
+        return cfs == null ? weight(type) : weight(type) * readAmplification(cfs);
+    }
+
+    public static double ofBackgroundCompaction(ColumnFamilyStore cfs)
+    {
+        return of(cfs, OperationType.COMPACTION) * backlogFactor(cfs.getCompactionStrategy().getEstimatedRemainingBytes());
+    }
+
+    @VisibleForTesting
+    static double backlogFactor(long remainingBytes)
+    {
+        return 1 + Math.log10(1 + (double) remainingBytes / BACKLOG_UNIT);
+    }
+
+    /**
+     * @return the key waiting operations are ordered by, highest first
+     */
+    static double queueKey(double priority, long submittedAtNanos)
+    {
+        return priority - aging(submittedAtNanos);
+    }
+
+    /**
+     * @return the priority of an operation that has been waiting since the given time
+     */
+    static double aged(double priority, long submittedAtNanos)
+    {
+        return priority + aging(System.nanoTime()) - aging(submittedAtNanos);
+    }
+
+    private static double aging(long nanos)
+    {
+        return AGING_PER_MINUTE * nanos / TimeUnit.MINUTES.toNanos(1);
+    }
+}
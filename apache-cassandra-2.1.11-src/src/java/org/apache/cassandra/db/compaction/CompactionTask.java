@@ -18,33 +18,45 @@
 package org.apache.cassandra.db.compaction;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.db.compaction.CompactionManager.CompactionExecutorStatsCollector;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.sstable.SSTableRewriter;
 import org.apache.cassandra.io.sstable.SSTableWriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.utils.CloseableIterator;
+import org.apache.cassandra.utils.Throwables;
 import org.apache.cassandra.utils.concurrent.Refs;
 
 public class CompactionTask extends AbstractCompactionTask
@@ -53,7 +65,11 @@ public class CompactionTask extends AbstractCompactionTask
     protected final int gcBefore;
     private final boolean offline;
     protected static long totalBytesCompacted = 0;
+    // the least a compaction must be expected to write for each extra subrange it is split into
+    private static final long MIN_SUBRANGE_SIZE = 256L * 1024 * 1024;
     private CompactionExecutorStatsCollector collector;
+    // the first failure of a subrange, which stops the others
+    private final AtomicReference<Throwable> subrangeFailure = new AtomicReference<>();
 
     public CompactionTask(ColumnFamilyStore cfs, Iterable<SSTableReader> sstables, int gcBefore, boolean offline)
     {
@@ -154,31 +170,39 @@ public class CompactionTask extends AbstractCompactionTask
             long expectedSSTableSize = Math.min(getExpectedWriteSize(), strategy.getMaxSSTableBytes());
             logger.debug("Expected bloom filter size : {}", keysPerSSTable);
 
-            List<SSTableReader> newSStables;
-            AbstractCompactionIterable ci;
+            // we can't preheat until the tracker has been set. This doesn't happen until we tell the cfs to
+            // replace the old entries.  Track entries to preheat here until then.
+            long minRepairedAt = getMinRepairedAt(actuallyCompact);
+            // we only need the age of the data that we're actually retaining
+            long maxAge = getMaxDataAge(actuallyCompact);
 
-            // SSTableScanners need to be closed before markCompactedSSTablesReplaced call as scanners contain references
-            // to both ifile and dfile and SSTR will throw deletion errors on Windows if it tries to delete before scanner is closed.
-            // See CASSANDRA-8019 and CASSANDRA-8399
-            try (Refs<SSTableReader> refs = Refs.ref(actuallyCompact);
-                 AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact))
+            List<Range<Token>> ranges = splitRanges(actuallyCompact);
+            List<SubrangeCompaction> subranges = new ArrayList<>(ranges.size());
+            List<SSTableReader> newSStables = new ArrayList<>();
+
+            try (Refs<SSTableReader> refs = Refs.ref(actuallyCompact))
             {
-                ci = new CompactionIterable(compactionType, scanners.scanners, controller);
-                Iterator<AbstractCompactedRow> iter = ci.iterator();
-                // we can't preheat until the tracker has been set. This doesn't happen until we tell the cfs to
-                // replace the old entries.  Track entries to preheat here until then.
-                long minRepairedAt = getMinRepairedAt(actuallyCompact);
-                // we only need the age of the data that we're actually retaining
-                long maxAge = getMaxDataAge(actuallyCompact);
-                if (collector != null)
-                    collector.beginCompaction(ci);
-                long lastCheckObsoletion = start;
-                SSTableRewriter writer = new SSTableRewriter(cfs, sstables, maxAge, offline);
                 try
                 {
-                    if (!controller.cfs.getCompactionStrategy().isActive)
-                       throw new CompactionInterruptedException(ci.getCompactionInfo());
-                    if (!iter.hasNext())
+                    if (ranges.size() == 1)
+                    {
+                        subranges.add(new SubrangeCompaction(null, controller, actuallyCompact, maxAge, true, keysPerSSTable, expectedSSTableSize, minRepairedAt));
+                        totalKeysWritten = subranges.get(0).call();
+                    }
+                    else
+                    {
+                        // a compaction controller is not safe to share between threads, and early opening moves the
+                        // starts of the sstables being rewritten, which only works for one rewriter at a time
+                        long keysPerSubrange = Math.min(keysPerSSTable, (long) Math.ceil((double) estimatedTotalKeys / ranges.size()));
+                        for (Range<Token> range : ranges)
+                            subranges.add(new SubrangeCompaction(range, getCompactionController(sstables), actuallyCompact, maxAge, false, keysPerSubrange, expectedSSTableSize, minRepairedAt));
+                        totalKeysWritten = runSubranges(subranges);
+                    }
+
+                    boolean empty = true;
+                    for (SubrangeCompaction subrange : subranges)
+                        empty &= subrange.isEmpty();
+                    if (empty)
                     {
                         // don't mark compacted in the finally block, since if there _is_ nondeleted data,
                         // we need to sync it (via closeAndOpen) first, so there is no period during which
@@ -187,41 +211,22 @@ public class CompactionTask extends AbstractCompactionTask
                         return;
                     }
 
-                    writer.switchWriter(createCompactionWriter(cfs.directories.getLocationForDisk(getWriteDirectory(expectedSSTableSize)), keysPerSSTable, minRepairedAt));
-                    while (iter.hasNext())
-                    {
-                        if (ci.isStopRequested())
-                            throw new CompactionInterruptedException(ci.getCompactionInfo());
-
-                        AbstractCompactedRow row = iter.next();
-                        if (writer.append(row) != null)
-                        {
-                            totalKeysWritten++;
-                            if (newSSTableSegmentThresholdReached(writer.currentWriter()))
-                            {
-                                writer.switchWriter(createCompactionWriter(cfs.directories.getLocationForDisk(getWriteDirectory(expectedSSTableSize)), keysPerSSTable, minRepairedAt));
-                            }
-                        }
-
-                        if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
-                        {
-                            controller.maybeRefreshOverlaps();
-                            lastCheckObsoletion = System.nanoTime();
-                        }
-                    }
-
                     // don't replace old sstables yet, as we need to mark the compaction finished in the system table
-                    newSStables = writer.finish();
+                    for (SubrangeCompaction subrange : subranges)
+                        newSStables.addAll(subrange.writer.finish());
                 }
                 catch (Throwable t)
                 {
-                    try
+                    for (SubrangeCompaction subrange : subranges)
                     {
-                        writer.abort();
-                    }
-                    catch (Throwable t2)
-                    {
-                        t.addSuppressed(t2);
+                        try
+                        {
+                            subrange.writer.abort();
+                        }
+                        catch (Throwable t2)
+                        {
+                            t.addSuppressed(t2);
+                        }
                     }
                     throw t;
                 }
@@ -232,8 +237,11 @@ public class CompactionTask extends AbstractCompactionTask
                     if (taskId != null)
                         SystemKeyspace.finishCompaction(taskId);
 
-                    if (collector != null)
-                        collector.finishCompaction(ci);
+                    for (SubrangeCompaction subrange : subranges)
+                    {
+                        if (subrange.controller != controller)
+                            subrange.controller.close();
+                    }
                 }
             }
 
@@ -255,7 +263,15 @@ public class CompactionTask extends AbstractCompactionTask
 
             double mbps = dTime > 0 ? (double) endsize / (1024 * 1024) / ((double) dTime / 1000) : 0;
             long totalSourceRows = 0;
-            long[] counts = ci.getMergedRowCounts();
+            long[] counts = new long[0];
+            for (SubrangeCompaction subrange : subranges)
+            {
+                long[] subrangeCounts = subrange.ci.getMergedRowCounts();
+                if (subrangeCounts.length > counts.length)
+                    counts = Arrays.copyOf(counts, subrangeCounts.length);
+                for (int i = 0; i < subrangeCounts.length; i++)
+                    counts[i] += subrangeCounts[i];
+            }
             StringBuilder mergeSummary = new StringBuilder(counts.length * 10);
             Map<Integer, Long> mergedRows = new HashMap<>();
             for (int i = 0; i < counts.length; i++)
@@ -278,7 +294,198 @@ public class CompactionTask extends AbstractCompactionTask
         }
     }
 
-    private long getMinRepairedAt(Set<SSTableReader> actuallyCompact)
+    /**
+     * Runs the subranges on the subrange executor, and waits for all of them even once one has failed, so that their
+     * rewriters are never aborted, nor the sstables released, while some of them are still in use. The first failure
+     * stops the other subranges.
+     *
+     * @return the number of partitions written
+     */
+    private long runSubranges(List<SubrangeCompaction> subranges)
+    {
+        List<Future<Long>> futures = new ArrayList<>(subranges.size());
+        try
+        {
+            for (SubrangeCompaction subrange : subranges)
+                futures.add(CompactionManager.instance.submitSubrange(subrange));
+        }
+        catch (Throwable t)
+        {
+            subrangeFailure.compareAndSet(null, t);
+        }
+
+        long keysWritten = 0;
+        Throwable failure = null;
+        for (Future<Long> future : futures)
+        {
+            try
+            {
+                keysWritten += Uninterruptibles.getUninterruptibly(future);
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() != subrangeFailure.get())
+                    failure = Throwables.merge(failure, e.getCause());
+            }
+        }
+        Throwables.maybeFail(Throwables.merge(subrangeFailure.get(), failure));
+        return keysWritten;
+    }
+
+    /**
+     * @return the number of subranges to compact in parallel, if the compaction is large enough to warrant it
+     */
+    @VisibleForTesting
+    int getSubrangeCount()
+    {
+        return (int) Math.min(DatabaseDescriptor.getCompactionSubranges(), getExpectedWriteSize() / MIN_SUBRANGE_SIZE);
+    }
+
+    /**
+     * Splits the token span of the sstables into subranges holding about the same number of partitions, to be
+     * compacted in parallel, if the compaction is large enough to warrant it.
+     *
+     * @return the subranges, or a single null range to compact everything at once
+     */
+    private List<Range<Token>> splitRanges(Set<SSTableReader> actuallyCompact)
+    {
+        int count = getSubrangeCount();
+        if (count <= 1 || offline || !cfs.getCompactionStrategy().allowsSubrangeCompaction())
+            return Collections.singletonList(null);
+
+        List<Range<Token>> ranges = splitByKeySamples(cfs, actuallyCompact, count);
+        return ranges.isEmpty() ? Collections.<Range<Token>>singletonList(null) : ranges;
+    }
+
+    /**
+     * Splits the token span of the sstables into at most count ranges holding about the same number of partitions,
+     * the last one wrapping around to the minimum token.
+     *
+     * @return the ranges, or an empty list if the sstables don't hold enough distinct key samples to be split
+     */
+    static List<Range<Token>> splitByKeySamples(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, int count)
+    {
+        Token minimum = cfs.partitioner.getMinimumToken();
+        List<Token> samples = new ArrayList<>();
+        for (SSTableReader sstable : sstables)
+        {
+            for (DecoratedKey key : sstable.getKeySamples(new Range<>(minimum, minimum)))
+                samples.add(key.getToken());
+        }
+        Collections.sort(samples);
+
+        List<Range<Token>> ranges = new ArrayList<>(count);
+        Token left = minimum;
+        for (int i = 1; i < count && !samples.isEmpty(); i++)
+        {
+            Token right = samples.get((int) ((long) i * samples.size() / count));
+            if (right.compareTo(left) <= 0)
+                continue;
+            ranges.add(new Range<>(left, right));
+            left = right;
+        }
+        if (ranges.isEmpty())
+            return ranges;
+        ranges.add(new Range<>(left, minimum));
+        return ranges;
+    }
+
+    /**
+     * Compacts the partitions of one token range of the sstables into its own rewriter, which is left for the
+     * task to finish (or abort) together with those of the other subranges.
+     */
+    private final class SubrangeCompaction implements Callable<Long>
+    {
+        private final Range<Token> range;
+        private final CompactionController controller;
+        private final Set<SSTableReader> actuallyCompact;
+        private final long keysPerSSTable;
+        private final long expectedSSTableSize;
+        private final long minRepairedAt;
+        private final SSTableRewriter writer;
+        private AbstractCompactionIterable ci;
+        private boolean empty = true;
+
+        private SubrangeCompaction(Range<Token> range, CompactionController controller, Set<SSTableReader> actuallyCompact, long maxAge,
+                                   boolean openEarly, long keysPerSSTable, long expectedSSTableSize, long minRepairedAt)
+        {
+            this.range = range;
+            this.controller = controller;
+            this.actuallyCompact = actuallyCompact;
+            this.keysPerSSTable = keysPerSSTable;
+            this.expectedSSTableSize = expectedSSTableSize;
+            this.minRepairedAt = minRepairedAt;
+            this.writer = new SSTableRewriter(cfs, sstables, maxAge, offline, openEarly);
+        }
+
+        /**
+         * @return the number of partitions written
+         */
+        public Long call() throws Exception
+        {
+            long keysWritten = 0;
+            // SSTableScanners need to be closed before markCompactedSSTablesReplaced call as scanners contain references
+            // to both ifile and dfile and SSTR will throw deletion errors on Windows if it tries to delete before scanner is closed.
+            // See CASSANDRA-8019 and CASSANDRA-8399
+            try (AbstractCompactionStrategy.ScannerList scanners = cfs.getCompactionStrategy().getScanners(actuallyCompact, range))
+            {
+                ci = new CompactionIterable(compactionType, scanners.scanners, controller);
+                Iterator<AbstractCompactedRow> iter = ci.iterator();
+                if (collector != null)
+                    collector.beginCompaction(ci);
+                try
+                {
+                    if (!controller.cfs.getCompactionStrategy().isActive || subrangeFailure.get() != null)
+                        throw new CompactionInterruptedException(ci.getCompactionInfo());
+                    if (!iter.hasNext())
+                        return keysWritten;
+
+                    empty = false;
+                    long lastCheckObsoletion = System.nanoTime();
+                    writer.switchWriter(createCompactionWriter(cfs.directories.getLocationForDisk(getWriteDirectory(expectedSSTableSize)), keysPerSSTable, minRepairedAt));
+                    while (iter.hasNext())
+                    {
+                        if (ci.isStopRequested() || subrangeFailure.get() != null)
+                            throw new CompactionInterruptedException(ci.getCompactionInfo());
+
+                        AbstractCompactedRow row = iter.next();
+                        if (writer.append(row) != null)
+                        {
+                            keysWritten++;
+                            if (newSSTableSegmentThresholdReached(writer.currentWriter()))
+                            {
+                                writer.switchWriter(createCompactionWriter(cfs.directories.getLocationForDisk(getWriteDirectory(expectedSSTableSize)), keysPerSSTable, minRepairedAt));
+                            }
+                        }
+
+                        if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
+                        {
+                            controller.maybeRefreshOverlaps();
+                            lastCheckObsoletion = System.nanoTime();
+                        }
+                    }
+                    return keysWritten;
+                }
+                finally
+                {
+                    if (collector != null)
+                        collector.finishCompaction(ci);
+                }
+            }
+            catch (Throwable t)
+            {
+                subrangeFailure.compareAndSet(null, t);
+                throw t;
+            }
+        }
+
+        boolean isEmpty()
+        {
+            return empty;
+        }
+    }
+
+    protected static long getMinRepairedAt(Set<SSTableReader> actuallyCompact)
     {
         long minRepairedAt= Long.MAX_VALUE;
         for (SSTableReader sstable : actuallyCompact)
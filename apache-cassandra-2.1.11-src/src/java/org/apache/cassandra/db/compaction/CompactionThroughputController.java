@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.metrics.ColumnFamilyMetrics;
+import org.apache.cassandra.metrics.LatencyMetrics;
+import org.apache.cassandra.service.StorageService;
+
+/**
+ * Throttles compaction I/O. Unless adaptive throttling is enabled, all compactions share a single rate limiter
+ * allowed the configured compaction throughput, as they always have.
+ *
+ * With adaptive throttling, there is one rate limiter per data directory, so that compacting sstables on one disk
+ * does not use up the budget of another, and the configured throughput is shared evenly between the directories.
+ * {@link #run()} is then called periodically and scales the rate of every limiter
+ * according to the node's read latency: the rate is halved whenever the mean read latency of the last interval
+ * exceeds its long term average by READ_LATENCY_BACKOFF_RATIO, recovers slowly towards the configured rate once
+ * reads are back to normal, and grows up to IDLE_MULTIPLIER times the configured rate while the node serves no reads.
+ */
+public class CompactionThroughputController implements Runnable
+{
+    private static final Logger logger = LoggerFactory.getLogger(CompactionThroughputController.class);
+
+    public static final long UPDATE_INTERVAL_IN_MS = Long.getLong("cassandra.compaction_throttle_update_interval_ms", 1000);
+    private static final double READ_LATENCY_BACKOFF_RATIO = Double.parseDouble(System.getProperty("cassandra.compaction_throttle_backoff_ratio", "1.5"));
+    private static final double MIN_MULTIPLIER = Double.parseDouble(System.getProperty("cassandra.compaction_throttle_min_multiplier", "0.1"));
+    private static final double IDLE_MULTIPLIER = Double.parseDouble(System.getProperty("cassandra.compaction_throttle_idle_multiplier", "4"));
+    // step by which the multiplier recovers per interval once read latency is back to normal
+    private static final double RECOVERY_STEP = 0.05;
+    // weight of the latest interval in the long term read latency average
+    private static final double BASELINE_ALPHA = 0.05;
+
+    private final Map<Directories.DataDirectory, RateLimiter> limiters = new IdentityHashMap<>();
+    private final RateLimiter defaultLimiter = RateLimiter.create(Double.MAX_VALUE);
+    private final LatencyMetrics readLatency;
+
+    private volatile double multiplier = 1.0;
+    private double baselineLatency = Double.NaN;
+    private long lastReadCount;
+    private long lastReadLatency;
+
+    public CompactionThroughputController()
+    {
+        this(ColumnFamilyMetrics.globalReadLatency);
+    }
+
+    @VisibleForTesting
+    CompactionThroughputController(LatencyMetrics readLatency)
+    {
+        this.readLatency = readLatency;
+        for (Directories.DataDirectory dataDirectory : Directories.dataDirectories)
+            limiters.put(dataDirectory, RateLimiter.create(Double.MAX_VALUE));
+        lastReadCount = readLatency.latency.count();
+        lastReadLatency = readLatency.totalLatency.count();
+    }
+
+    /**
+     * @return the rate limiter of the data directory the given sstable lives in, with its rate updated
+     */
+    public RateLimiter getRateLimiter(SSTableReader sstable)
+    {
+        if (!DatabaseDescriptor.getCompactionThroughputAdaptive())
+            return getRateLimiter();
+
+        RateLimiter limiter = sstable == null ? null : limiters.get(dataDirectoryFor(sstable.descriptor.directory, Directories.dataDirectories));
+        if (limiter == null)
+            limiter = defaultLimiter;
+        return updateRate(limiter, limiters.isEmpty() ? 1 : limiters.size());
+    }
+
+    /**
+     * @return a rate limiter that is not tied to any data directory and is allowed the whole configured throughput
+     */
+    public RateLimiter getRateLimiter()
+    {
+        return updateRate(defaultLimiter, 1);
+    }
+
+    private RateLimiter updateRate(RateLimiter limiter, int share)
+    {
+        double rate = DatabaseDescriptor.getCompactionThroughputMbPerSec() * 1024.0 * 1024.0;
+        // if throughput is set to 0, throttling is disabled
+        if (rate == 0 || StorageService.instance.isBootstrapMode())
+            rate = Double.MAX_VALUE;
+        else
+            rate = rate * multiplier / share;
+        if (limiter.getRate() != rate)
+            limiter.setRate(rate);
+        return limiter;
+    }
+
+    /**
+     * @return the data directory holding the given directory, the deepest one if they are nested, or null if none does
+     */
+    @VisibleForTesting
+    static Directories.DataDirectory dataDirectoryFor(File directory, Directories.DataDirectory[] dataDirectories)
+    {
+        String path = directory.getAbsolutePath();
+        Directories.DataDirectory found = null;
+        int foundLength = -1;
+        for (Directories.DataDirectory dataDirectory : dataDirectories)
+        {
+            String location = dataDirectory.location.getAbsolutePath();
+            // /data1 holds /data1/ks but not /data10/ks
+            boolean holds = path.equals(location)
+                            || path.startsWith(location.endsWith(File.separator) ? location : location + File.separator);
+            if (holds && location.length() > foundLength)
+            {
+                found = dataDirectory;
+                foundLength = location.length();
+            }
+        }
+        return found;
+    }
+
+    public double getMultiplier()
+    {
+        return multiplier;
+    }
+
+    public void run()
+    {
+        if (!DatabaseDescriptor.getCompactionThroughputAdaptive())
+        {
+            multiplier = 1.0;
+            return;
+        }
+
+        long readCount = readLatency.latency.count();
+        long totalLatency = readLatency.totalLatency.count();
+        double previous = multiplier;
+        adjust(readCount - lastReadCount, totalLatency - lastReadLatency);
+        lastReadCount = readCount;
+        lastReadLatency = totalLatency;
+
+        if (multiplier != previous)
+            logger.debug("Compaction throughput multiplier changed from {} to {}", previous, multiplier);
+    }
+
+    /**
+     * @param reads the number of reads served during the last interval
+     * @param latency the total latency of those reads, in microseconds
+     * @return the new throughput multiplier
+     */
+    @VisibleForTesting
+    double adjust(long reads, long latency)
+    {
+        if (reads <= 0)
+            return multiplier = Math.min(IDLE_MULTIPLIER, multiplier + RECOVERY_STEP * 4);
+
+        double mean = (double) latency / reads;
+        if (Double.isNaN(baselineLatency))
+        {
+            baselineLatency = mean;
+            return multiplier;
+        }
+
+        double next;
+        if (mean > baselineLatency * READ_LATENCY_BACKOFF_RATIO)
+        {
+            // slow intervals still move the baseline, but much less, so a lasting change of workload is eventually
+            // accepted as the new normal while a spike is not
+            baselineLatency += BASELINE_ALPHA / 10 * (mean - baselineLatency);
+            next = Math.max(MIN_MULTIPLIER, multiplier / 2);
+        }
+        else
+        {
+            baselineLatency += BASELINE_ALPHA * (mean - baselineLatency);
+            next = multiplier > 1.0 ? Math.max(1.0, multiplier - RECOVERY_STEP * 4) : Math.min(1.0, multiplier + RECOVERY_STEP);
+        }
+        return multiplier = next;
+    }
+}
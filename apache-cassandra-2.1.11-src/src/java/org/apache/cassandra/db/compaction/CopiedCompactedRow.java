@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.io.sstable.ColumnStats;
+import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.io.sstable.SSTableIdentityIterator;
+import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.utils.StreamingHistogram;
+
+/**
+ * A row that is only present in one of the compacted sstables and holds nothing compaction could purge, which is
+ * copied to the new sstable as is, along with its column index, without deserializing any of its cells.
+ *
+ * As the cells aren't read, the stats of the row are those of the whole sstable it comes from: they are wider than
+ * the actual ones, which is all the sstable metadata of the new sstable requires.
+ */
+public class CopiedCompactedRow extends AbstractCompactedRow
+{
+    private final SSTableIdentityIterator row;
+    private boolean closed;
+
+    public CopiedCompactedRow(SSTableIdentityIterator row)
+    {
+        super(row.getKey());
+        assert row.canCopy();
+        this.row = row;
+    }
+
+    public RowIndexEntry write(long currentPosition, DataOutputPlus out) throws IOException
+    {
+        assert !closed;
+        RowIndexEntry entry = row.copyTo(currentPosition, out);
+        close();
+        return entry;
+    }
+
+    public void update(MessageDigest digest)
+    {
+        assert !closed;
+
+        // the same digest LazilyCompactedRow computes, which is over the cells as read since there is nothing to purge
+        DeletionTime deletion = row.getColumnFamily().deletionInfo().getTopLevelDeletion();
+        DataOutputBuffer out = new DataOutputBuffer();
+        try
+        {
+            DeletionTime.serializer.serialize(deletion, out);
+            // do not update digest in case of missing or purged row level tombstones, see CASSANDRA-8979
+            if (row.hasNext() || deletion != DeletionTime.LIVE)
+                digest.update(out.getData(), 0, out.getLength());
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e);
+        }
+
+        while (row.hasNext())
+            row.next().updateDigest(digest);
+        close();
+    }
+
+    public ColumnStats columnStats()
+    {
+        StatsMetadata stats = row.getSSTable().getSSTableMetadata();
+        return new ColumnStats((int) stats.estimatedColumnCount.mean(),
+                               stats.minTimestamp,
+                               stats.maxTimestamp,
+                               stats.maxLocalDeletionTime,
+                               new StreamingHistogram(SSTable.TOMBSTONE_HISTOGRAM_BIN_SIZE),
+                               stats.minColumnNames,
+                               stats.maxColumnNames,
+                               stats.hasLegacyCounterShards);
+    }
+
+    public void close()
+    {
+        row.close();
+        closed = true;
+    }
+}
@@ -38,6 +38,7 @@ public class DateTieredCompactionStrategy extends AbstractCompactionStrategy
 
     private final DateTieredCompactionStrategyOptions options;
     protected volatile int estimatedRemainingTasks;
+    protected volatile long estimatedRemainingBytes;
     private final Set<SSTableReader> sstables = new HashSet<>();
     private long lastExpiredCheck;
 
@@ -325,12 +326,17 @@ public class DateTieredCompactionStrategy extends AbstractCompactionStrategy
     private void updateEstimatedCompactionsByTasks(List<List<SSTableReader>> tasks)
     {
         int n = 0;
+        long bytes = 0;
         for (List<SSTableReader> bucket : tasks)
         {
             if (bucket.size() >= cfs.getMinimumCompactionThreshold())
+            {
                 n += Math.ceil((double)bucket.size() / cfs.getMaximumCompactionThreshold());
+                bytes += SSTableReader.getTotalBytes(bucket);
+            }
         }
         estimatedRemainingTasks = n;
+        estimatedRemainingBytes = bytes;
     }
 
 
@@ -397,6 +403,12 @@ public class DateTieredCompactionStrategy extends AbstractCompactionStrategy
         return estimatedRemainingTasks;
     }
 
+    @Override
+    public long getEstimatedRemainingBytes()
+    {
+        return estimatedRemainingBytes;
+    }
+
     public long getMaxSSTableBytes()
     {
         return Long.MAX_VALUE;
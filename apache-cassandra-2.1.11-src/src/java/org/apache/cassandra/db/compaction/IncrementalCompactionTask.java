@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.db.compaction.CompactionManager.CompactionExecutorStatsCollector;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.sstable.SSTableRewriter;
+import org.apache.cassandra.io.sstable.SSTableWriter;
+import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.utils.concurrent.Refs;
+
+/**
+ * A major compaction that goes through the token range of the sstables one slice at a time, instead of writing all
+ * of it before anything is replaced.
+ *
+ * Every slice is a compaction of its own: its sstables are finished and swapped in (after having been opened early
+ * as they were written) before the next slice starts, and the sstables being compacted are deleted as soon as the
+ * slices written so far cover all of their partitions. To make that safe across restarts, the sstables written for
+ * a slice only list those it completes as their ancestors.
+ *
+ * The extra disk space this needs is only bounded by the slice size when the compacted sstables don't span most of
+ * the ring, which is the case of the sstables a previous incremental major compaction wrote. On a first run over
+ * overlapping sstables, such as those of STCS, none of them may be released before the last slice, and it needs as
+ * much space as a regular major compaction: the space checked for before starting is the most the slices can hold
+ * at any one time before their inputs are released.
+ */
+public class IncrementalCompactionTask extends CompactionTask
+{
+    private final long sliceSize;
+    private CompactionExecutorStatsCollector collector;
+
+    public IncrementalCompactionTask(ColumnFamilyStore cfs, Iterable<SSTableReader> sstables, int gcBefore)
+    {
+        this(cfs, sstables, gcBefore, DatabaseDescriptor.getMajorCompactionSliceSize());
+    }
+
+    public IncrementalCompactionTask(ColumnFamilyStore cfs, Iterable<SSTableReader> sstables, int gcBefore, long sliceSize)
+    {
+        super(cfs, sstables, gcBefore, false);
+        this.sliceSize = sliceSize;
+    }
+
+    @Override
+    protected int executeInternal(CompactionExecutorStatsCollector collector)
+    {
+        this.collector = collector;
+        return super.executeInternal(collector);
+    }
+
+    @Override
+    protected void runMayThrow() throws Exception
+    {
+        if (sstables.isEmpty())
+            return;
+
+        if (DatabaseDescriptor.isSnapshotBeforeCompaction())
+            cfs.snapshotWithoutFlush(System.currentTimeMillis() + "-compact-" + cfs.name);
+
+        List<Range<Token>> slices = getSlices();
+        long peakWriteSize = getPeakWriteSize(slices);
+        if (!getDirectories().hasAvailableDiskSpace(Math.max(1, peakWriteSize / sliceSize), peakWriteSize))
+            throw new RuntimeException(String.format("Not enough space for incremental compaction, expected peak write size = %d", peakWriteSize));
+        if (peakWriteSize > 2 * sliceSize)
+            logger.info("The sstables of {} overlap too much to be released slice by slice, compacting them will take up to {} bytes of extra space", cfs.name, peakWriteSize);
+        logger.info("Compacting {} in {} slices", sstables, slices.size());
+
+        long start = System.nanoTime();
+        long startsize = SSTableReader.getTotalBytes(sstables);
+        long endsize = 0;
+        long totalKeysWritten = 0;
+        long[] mergedRowCounts = new long[0];
+        long keysPerSlice = Math.max(cfs.metadata.getMinIndexInterval(), SSTableReader.getApproximateKeyCount(sstables) / slices.size());
+
+        // the sstables still holding partitions of the slices that remain to be compacted
+        Set<SSTableReader> remaining = new HashSet<>(sstables);
+        try (Refs<SSTableReader> refs = Refs.ref(sstables))
+        {
+            for (int i = 0; i < slices.size(); i++)
+            {
+                Range<Token> slice = slices.get(i);
+                Set<SSTableReader> completed = new HashSet<>();
+                for (SSTableReader sstable : remaining)
+                {
+                    if (completes(slices, i, sstable))
+                        completed.add(sstable);
+                }
+
+                Slice compacted = compactSlice(slice, remaining, completed, keysPerSlice);
+                remaining.removeAll(completed);
+
+                totalKeysWritten += compacted.keysWritten;
+                endsize += SSTableReader.getTotalBytes(compacted.newSSTables);
+                long[] counts = compacted.ci.getMergedRowCounts();
+                if (counts.length > mergedRowCounts.length)
+                    mergedRowCounts = Arrays.copyOf(mergedRowCounts, counts.length);
+                for (int j = 0; j < counts.length; j++)
+                    mergedRowCounts[j] += counts[j];
+                logger.debug("Compacted slice {} of {} to {}, releasing {}", i + 1, slices.size(), compacted.newSSTables, completed);
+            }
+        }
+
+        long dTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Map<Integer, Long> mergedRows = new HashMap<>();
+        long totalSourceRows = 0;
+        for (int i = 0; i < mergedRowCounts.length; i++)
+        {
+            if (mergedRowCounts[i] == 0)
+                continue;
+            totalSourceRows += (i + 1) * mergedRowCounts[i];
+            mergedRows.put(i + 1, mergedRowCounts[i]);
+        }
+        SystemKeyspace.updateCompactionHistory(cfs.keyspace.getName(), cfs.name, System.currentTimeMillis(), startsize, endsize, mergedRows);
+        logger.info(String.format("Incrementally compacted %d sstables in %d slices.  %,d bytes to %,d (~%d%% of original) in %,dms.  %,d total partitions merged to %,d.",
+                                  sstables.size(), slices.size(), startsize, endsize, (int) (100.0 * endsize / startsize), dTime, totalSourceRows, totalKeysWritten));
+        CompactionTask.addToTotalBytesCompacted(endsize);
+    }
+
+    /**
+     * @return true if the slice at the given index, with those before it, covers all the partitions of the sstable
+     */
+    private static boolean completes(List<Range<Token>> slices, int index, SSTableReader sstable)
+    {
+        return index == slices.size() - 1 || sstable.last.getToken().compareTo(slices.get(index).right) <= 0;
+    }
+
+    @VisibleForTesting
+    long getPeakWriteSize()
+    {
+        return getPeakWriteSize(getSlices());
+    }
+
+    /**
+     * @return the most extra disk space compacting the slices can take up at any one time, that is the most the
+     * slices written so far can hold, counting the one being written, less the compacted sstables they released,
+     * assuming all slices write as much
+     */
+    private long getPeakWriteSize(List<Range<Token>> slices)
+    {
+        long expectedWriteSize = getExpectedWriteSize();
+        Set<SSTableReader> remaining = new HashSet<>(sstables);
+        long released = 0;
+        long peak = 0;
+        for (int i = 0; i < slices.size(); i++)
+        {
+            long written = expectedWriteSize * (i + 1) / slices.size();
+            peak = Math.max(peak, written - released);
+            for (Iterator<SSTableReader> iter = remaining.iterator(); iter.hasNext(); )
+            {
+                SSTableReader sstable = iter.next();
+                if (completes(slices, i, sstable))
+                {
+                    released += sstable.onDiskLength();
+                    iter.remove();
+                }
+            }
+        }
+        return peak;
+    }
+
+    private List<Range<Token>> getSlices()
+    {
+        int count = (int) Math.min(Integer.MAX_VALUE, (getExpectedWriteSize() + sliceSize - 1) / sliceSize);
+        List<Range<Token>> slices = count > 1 ? splitByKeySamples(cfs, sstables, count) : Collections.<Range<Token>>emptyList();
+        // a null range compacts everything at once
+        return slices.isEmpty() ? Collections.<Range<Token>>singletonList(null) : slices;
+    }
+
+    /**
+     * Compacts the partitions of the slice, swaps in the new sstables and deletes the given completed sstables.
+     */
+    private Slice compactSlice(Range<Token> slice, Set<SSTableReader> remaining, Set<SSTableReader> completed, long keysPerSlice)
+    {
+        // moving the starts of the sstables as the new ones are opened early must carry over from the previous
+        // slices, so the rewriter has to start from their current instances
+        Set<SSTableReader> rewriting = new HashSet<>();
+        for (SSTableReader sstable : remaining)
+            rewriting.add(cfs.getDataTracker().getCurrentVersion(sstable));
+
+        Slice compacted = new Slice();
+        UUID taskId = completed.isEmpty() ? null : SystemKeyspace.startCompaction(cfs, completed);
+        SSTableRewriter writer = new SSTableRewriter(cfs, rewriting, getMaxDataAge(remaining), false);
+        try (CompactionController controller = getSliceController(completed);
+             AbstractCompactionStrategy.ScannerList scanners = cfs.getCompactionStrategy().getScanners(remaining, slice))
+        {
+            compacted.ci = new CompactionIterable(compactionType, scanners.scanners, controller);
+            Iterator<AbstractCompactedRow> iter = compacted.ci.iterator();
+            if (collector != null)
+                collector.beginCompaction(compacted.ci);
+            try
+            {
+                writer.switchWriter(createSliceWriter(completed, keysPerSlice));
+                while (iter.hasNext())
+                {
+                    if (compacted.ci.isStopRequested())
+                        throw new CompactionInterruptedException(compacted.ci.getCompactionInfo());
+
+                    if (writer.append(iter.next()) != null)
+                        compacted.keysWritten++;
+                }
+                compacted.newSSTables = writer.finish();
+            }
+            catch (Throwable t)
+            {
+                writer.abort();
+                throw t;
+            }
+            finally
+            {
+                if (collector != null)
+                    collector.finishCompaction(compacted.ci);
+                if (taskId != null)
+                    SystemKeyspace.finishCompaction(taskId);
+            }
+        }
+        cfs.getDataTracker().markCompactedSSTablesReplaced(completed, compacted.newSSTables, compactionType);
+        return compacted;
+    }
+
+    /**
+     * The sstables a slice doesn't complete stay live, and keep the data of the slice until their starts are moved
+     * past it, if ever, so they must count as overlapping ones: purging a tombstone would resurrect what they hold
+     * under it. If the slice completes none of them, nothing can be purged.
+     */
+    private CompactionController getSliceController(Set<SSTableReader> completed)
+    {
+        if (completed.isEmpty())
+            return new CompactionController(cfs, null, Integer.MIN_VALUE);
+        return getCompactionController(completed);
+    }
+
+    private SSTableWriter createSliceWriter(Collection<SSTableReader> ancestors, long keys)
+    {
+        File directory = cfs.directories.getLocationForDisk(getWriteDirectory(sliceSize));
+        return new SSTableWriter(cfs.getTempSSTablePath(directory),
+                                 keys,
+                                 getMinRepairedAt(sstables),
+                                 cfs.metadata,
+                                 cfs.partitioner,
+                                 new MetadataCollector(ancestors, cfs.metadata.comparator, getLevel()));
+    }
+
+    private static final class Slice
+    {
+        private AbstractCompactionIterable ci;
+        private List<SSTableReader> newSSTables = Collections.emptyList();
+        private long keysWritten;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "IncrementalCompactionTask(" + sstables + ")";
+    }
+}
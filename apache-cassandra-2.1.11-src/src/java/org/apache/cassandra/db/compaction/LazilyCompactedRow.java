@@ -30,6 +30,7 @@ import com.google.common.collect.Iterators;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
+import org.apache.cassandra.io.sstable.ClusteringFilterBuilder;
 import org.apache.cassandra.io.sstable.ColumnNameHelper;
 import org.apache.cassandra.io.sstable.ColumnStats;
 import org.apache.cassandra.io.sstable.SSTable;
@@ -111,13 +112,19 @@ public class LazilyCompactedRow extends AbstractCompactedRow
     }
 
     public RowIndexEntry write(long currentPosition, DataOutputPlus out) throws IOException
+    {
+        return write(currentPosition, out, null);
+    }
+
+    @Override
+    public RowIndexEntry write(long currentPosition, DataOutputPlus out, ClusteringFilterBuilder clusteringFilter) throws IOException
     {
         assert !closed;
 
         ColumnIndex columnsIndex;
         try
         {
-            indexBuilder = new ColumnIndex.Builder(emptyColumnFamily, key.getKey(), out);
+            indexBuilder = new ColumnIndex.Builder(emptyColumnFamily, key.getKey(), out, clusteringFilter);
             columnsIndex = indexBuilder.buildForCompaction(merger);
 
             // if there aren't any columns or tombstones, return null
@@ -214,6 +221,12 @@ public class LazilyCompactedRow extends AbstractCompactedRow
         // is held by LCR.deletionInfo.
         RangeTombstone tombstone;
 
+        // Most cells of a wide partition only exist in one of the compacted sstables. The first version of a cell is
+        // kept here and only goes through the container if another version of it shows up, so that reducing a
+        // cell doesn't allocate a new container and its iterators for every cell of the partition.
+        Cell single;
+        final boolean hasDroppedColumns = !controller.cfs.metadata.getDroppedColumns().isEmpty();
+
         int columns = 0;
         // if the row tombstone is 'live' we need to set timestamp to MAX_VALUE to be able to overwrite it later
         // markedForDeleteAt is MIN_VALUE for 'live' row tombstones (which we use to default maxTimestampSeen)
@@ -250,6 +263,16 @@ public class LazilyCompactedRow extends AbstractCompactedRow
             else
             {
                 Cell cell = (Cell) current;
+                if (single == null && !container.hasColumns() && !hasDroppedColumns)
+                {
+                    single = cell;
+                    return;
+                }
+                if (single != null)
+                {
+                    container.addColumn(single);
+                    single = null;
+                }
                 container.addColumn(cell);
 
                 // skip the index-update checks if there is no indexing needed since they are a bit expensive
@@ -287,6 +310,27 @@ public class LazilyCompactedRow extends AbstractCompactedRow
                     return t;
                 }
             }
+            else if (single != null)
+            {
+                Cell c = single;
+                single = null;
+                // the same checks removeDeleted() makes against a container only holding the row tombstone
+                boolean shouldPurge = c.getLocalDeletionTime() < Integer.MAX_VALUE && c.timestamp() < getMaxPurgeableTimestamp();
+                int overriddenGCBefore = shouldPurge ? controller.gcBefore : Integer.MIN_VALUE;
+                if (c.getLocalDeletionTime() < overriddenGCBefore
+                    || c.timestamp() <= maxRowTombstone.markedForDeleteAt
+                    || (!maxRowTombstone.isLive() && c instanceof CounterCell))
+                {
+                    indexer.remove(c);
+                    return null;
+                }
+
+                // the row tombstone isn't written once purged, see the constructor
+                if (maxRowTombstone.localDeletionTime < Integer.MAX_VALUE && maxRowTombstone.localDeletionTime >= overriddenGCBefore)
+                    tombstones.update(maxRowTombstone.localDeletionTime);
+
+                return reducedCell(c);
+            }
             else
             {
                 // when we clear() the container, it removes the deletion info, so this needs to be reset each time
@@ -309,34 +353,42 @@ public class LazilyCompactedRow extends AbstractCompactedRow
 
                 Cell reduced = iter.next();
                 container = ArrayBackedSortedColumns.factory.create(emptyColumnFamily.metadata());
+                return reducedCell(reduced);
+            }
+        }
 
-                // removeDeleted have only checked the top-level CF deletion times,
-                // not the range tombstone. For that we use the columnIndexer tombstone tracker.
-                if (indexBuilder.tombstoneTracker().isDeleted(reduced))
-                {
-                    // We skip that column so it won't be passed to the tracker by the index builded. So pass it now to
-                    // make sure we still discard potentially un-needed RT as soon as possible.
-                    indexBuilder.tombstoneTracker().update(reduced, false);
-                    indexer.remove(reduced);
-                    return null;
-                }
+        /**
+         * Returns the merged version of a cell that survived the row tombstone, unless a range tombstone shadows it,
+         * and records it in the stats of the row.
+         */
+        private Cell reducedCell(Cell reduced)
+        {
+            // removeDeleted have only checked the top-level CF deletion times,
+            // not the range tombstone. For that we use the columnIndexer tombstone tracker.
+            if (indexBuilder.tombstoneTracker().isDeleted(reduced))
+            {
+                // We skip that column so it won't be passed to the tracker by the index builded. So pass it now to
+                // make sure we still discard potentially un-needed RT as soon as possible.
+                indexBuilder.tombstoneTracker().update(reduced, false);
+                indexer.remove(reduced);
+                return null;
+            }
 
-                columns++;
-                minTimestampTracker.update(reduced.timestamp());
-                maxTimestampTracker.update(reduced.timestamp());
-                maxDeletionTimeTracker.update(reduced.getLocalDeletionTime());
-                minColumnNameSeen = ColumnNameHelper.minComponents(minColumnNameSeen, reduced.name(), controller.cfs.metadata.comparator);
-                maxColumnNameSeen = ColumnNameHelper.maxComponents(maxColumnNameSeen, reduced.name(), controller.cfs.metadata.comparator);
+            columns++;
+            minTimestampTracker.update(reduced.timestamp());
+            maxTimestampTracker.update(reduced.timestamp());
+            maxDeletionTimeTracker.update(reduced.getLocalDeletionTime());
+            minColumnNameSeen = ColumnNameHelper.minComponents(minColumnNameSeen, reduced.name(), controller.cfs.metadata.comparator);
+            maxColumnNameSeen = ColumnNameHelper.maxComponents(maxColumnNameSeen, reduced.name(), controller.cfs.metadata.comparator);
 
-                int deletionTime = reduced.getLocalDeletionTime();
-                if (deletionTime < Integer.MAX_VALUE)
-                    tombstones.update(deletionTime);
+            int deletionTime = reduced.getLocalDeletionTime();
+            if (deletionTime < Integer.MAX_VALUE)
+                tombstones.update(deletionTime);
 
-                if (reduced instanceof CounterCell)
-                    hasLegacyCounterShards = hasLegacyCounterShards || ((CounterCell) reduced).hasLegacyShards();
+            if (reduced instanceof CounterCell)
+                hasLegacyCounterShards = hasLegacyCounterShards || ((CounterCell) reduced).hasLegacyShards();
 
-                return reduced;
-            }
+            return reduced;
         }
     }
 }
@@ -153,6 +153,12 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
         return manifest.getEstimatedTasks();
     }
 
+    @Override
+    public long getEstimatedRemainingBytes()
+    {
+        return manifest.getEstimatedRemainingBytes();
+    }
+
     public long getMaxSSTableBytes()
     {
         return maxSSTableSizeInMB * 1024L * 1024L;
@@ -177,7 +183,7 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
                 {
                     // L0 makes no guarantees about overlapping-ness.  Just create a direct scanner for each
                     for (SSTableReader sstable : byLevel.get(level))
-                        scanners.add(sstable.getScanner(range, CompactionManager.instance.getRateLimiter()));
+                        scanners.add(sstable.getScanner(range, CompactionManager.instance.getRateLimiter(sstable)));
                 }
                 else
                 {
@@ -257,7 +263,13 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
             Collections.sort(this.sstables, SSTableReader.sstableComparator);
             sstableIterator = this.sstables.iterator();
             assert sstableIterator.hasNext(); // caller should check intersecting first
-            currentScanner = sstableIterator.next().getScanner(range, CompactionManager.instance.getRateLimiter());
+            currentScanner = nextScanner();
+        }
+
+        private ISSTableScanner nextScanner()
+        {
+            SSTableReader sstable = sstableIterator.next();
+            return sstable.getScanner(range, CompactionManager.instance.getRateLimiter(sstable));
         }
 
         public static List<SSTableReader> intersecting(Collection<SSTableReader> sstables, Range<Token> range)
@@ -292,7 +304,7 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
                         currentScanner = null;
                         return endOfData();
                     }
-                    currentScanner = sstableIterator.next().getScanner(range, CompactionManager.instance.getRateLimiter());
+                    currentScanner = nextScanner();
                 }
             }
             catch (IOException e)
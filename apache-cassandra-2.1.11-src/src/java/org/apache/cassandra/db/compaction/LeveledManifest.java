@@ -66,6 +66,9 @@ public class LeveledManifest
     private final long maxSSTableSizeInBytes;
     private final SizeTieredCompactionStrategyOptions options;
     private final int [] compactionCounter;
+    // the candidates handed out that may still be compacting, so that concurrent compactions can be given candidates
+    // that do not overlap them; a candidate is forgotten once none of its sstables are compacting any more
+    private final List<InFlightCompaction> inFlight = new ArrayList<>();
 
     LeveledManifest(ColumnFamilyStore cfs, int maxSSTableSizeInMB, SizeTieredCompactionStrategyOptions options)
     {
@@ -271,6 +274,22 @@ public class LeveledManifest
      * If no compactions are necessary, will return null
      */
     public synchronized CompactionCandidate getCompactionCandidates()
+    {
+        Set<SSTableReader> compacting = cfs.getDataTracker().getCompacting();
+        Iterator<InFlightCompaction> iter = inFlight.iterator();
+        while (iter.hasNext())
+        {
+            if (Sets.intersection(iter.next().sstables, compacting).isEmpty())
+                iter.remove();
+        }
+
+        CompactionCandidate candidate = getNextCompactionCandidate();
+        if (candidate != null)
+            inFlight.add(new InFlightCompaction(candidate.sstables));
+        return candidate;
+    }
+
+    private CompactionCandidate getNextCompactionCandidate()
     {
         // LevelDB gives each level a score of how much data it contains vs its ideal amount, and
         // compacts the level with the highest score. But this falls apart spectacularly once you
@@ -538,15 +557,19 @@ public class LeveledManifest
         {
             Set<SSTableReader> compactingL0 = getCompacting(0);
 
-            RowPosition lastCompactingKey = null;
-            RowPosition firstCompactingKey = null;
-            for (SSTableReader candidate : compactingL0)
+            // the token spans of the L0 compactions in progress; L0 sstables in different spans can be compacted
+            // concurrently, as the sstables they are promoted to in L1 will not overlap
+            List<Bounds<Token>> compactingL0Spans = new ArrayList<>();
+            Set<SSTableReader> untracked = new HashSet<>(compactingL0);
+            for (InFlightCompaction compaction : inFlight)
             {
-                if (firstCompactingKey == null || candidate.first.compareTo(firstCompactingKey) < 0)
-                    firstCompactingKey = candidate.first;
-                if (lastCompactingKey == null || candidate.last.compareTo(lastCompactingKey) > 0)
-                    lastCompactingKey = candidate.last;
+                if (!Sets.intersection(compaction.sstables, compactingL0).isEmpty())
+                    compactingL0Spans.add(compaction.span);
+                untracked.removeAll(compaction.sstables);
             }
+            // sstables compacting by other means than our candidates (cleanup, scrub...) only block their own span
+            for (SSTableReader sstable : untracked)
+                compactingL0Spans.add(span(Collections.singleton(sstable)));
 
             // L0 is the dumping ground for new sstables which thus may overlap each other.
             //
@@ -575,7 +598,7 @@ public class LeveledManifest
 
                 for (SSTableReader newCandidate : overlappedL0)
                 {
-                    if (firstCompactingKey == null || lastCompactingKey == null || overlapping(firstCompactingKey.getToken(), lastCompactingKey.getToken(), Arrays.asList(newCandidate)).size() == 0)
+                    if (!overlapsAny(span(Collections.singleton(newCandidate)), compactingL0Spans))
                         candidates.add(newCandidate);
                     remaining.remove(newCandidate);
                 }
@@ -597,7 +620,7 @@ public class LeveledManifest
                 Set<SSTableReader> l1overlapping = overlapping(candidates, getLevel(1));
                 if (Sets.intersection(l1overlapping, compacting).size() > 0)
                     return Collections.emptyList();
-                if (!overlapping(candidates, compactingL0).isEmpty())
+                if (overlapsAny(span(candidates), compactingL0Spans))
                     return Collections.emptyList();
                 candidates = Sets.union(candidates, l1overlapping);
             }
@@ -636,6 +659,33 @@ public class LeveledManifest
         return Collections.emptyList();
     }
 
+    /**
+     * @return the token span from the first key to the last key of the sstables
+     */
+    private static Bounds<Token> span(Collection<SSTableReader> sstables)
+    {
+        Token first = null;
+        Token last = null;
+        for (SSTableReader sstable : sstables)
+        {
+            if (first == null || sstable.first.getToken().compareTo(first) < 0)
+                first = sstable.first.getToken();
+            if (last == null || sstable.last.getToken().compareTo(last) > 0)
+                last = sstable.last.getToken();
+        }
+        return new Bounds<>(first, last);
+    }
+
+    private static boolean overlapsAny(Bounds<Token> span, Collection<Bounds<Token>> spans)
+    {
+        for (Bounds<Token> other : spans)
+        {
+            if (other.intersects(span))
+                return true;
+        }
+        return false;
+    }
+
     private Set<SSTableReader> getCompacting(int level)
     {
         Set<SSTableReader> sstables = new HashSet<>();
@@ -699,6 +749,25 @@ public class LeveledManifest
         return Ints.checkedCast(tasks);
     }
 
+    /**
+     * Estimates the bytes compaction still has to write for every level to fit its target size. What a level holds
+     * over its target is pushed to the next one, and rewrites as much as fanout times its size in overlapping
+     * sstables of that level unless it is empty.
+     */
+    public synchronized long getEstimatedRemainingBytes()
+    {
+        long remaining = 0;
+        long carried = 0;
+        for (int i = 0; i < generations.length - 1; i++)
+        {
+            long excess = Math.max(0L, SSTableReader.getTotalBytes(getLevel(i)) + carried - maxBytesForLevel(i));
+            // each level is 10 times the size of the previous one, see maxBytesForLevel
+            remaining += getLevel(i + 1).isEmpty() ? excess : excess * (1 + 10);
+            carried = excess;
+        }
+        return remaining;
+    }
+
     public int getNextLevel(Collection<SSTableReader> sstables)
     {
         int maximumLevel = Integer.MIN_VALUE;
@@ -723,6 +792,18 @@ public class LeveledManifest
 
     }
 
+    private static class InFlightCompaction
+    {
+        final Set<SSTableReader> sstables;
+        final Bounds<Token> span;
+
+        InFlightCompaction(Collection<SSTableReader> sstables)
+        {
+            this.sstables = ImmutableSet.copyOf(sstables);
+            this.span = span(sstables);
+        }
+    }
+
     public static class CompactionCandidate
     {
         public final Collection<SSTableReader> sstables;
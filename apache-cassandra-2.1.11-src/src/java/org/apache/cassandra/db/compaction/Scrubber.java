@@ -119,7 +119,7 @@ public class Scrubber implements Closeable
         // "ahead" of the data file.)
         this.dataFile = isOffline
                         ? sstable.openDataReader()
-                        : sstable.openDataReader(CompactionManager.instance.getRateLimiter());
+                        : sstable.openDataReader(CompactionManager.instance.getRateLimiter(sstable));
 
         this.indexFile = hasIndexFile
                 ? RandomAccessReader.open(new File(sstable.descriptor.filenameFor(Component.PRIMARY_INDEX)))
@@ -64,6 +64,7 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
 
     protected SizeTieredCompactionStrategyOptions options;
     protected volatile int estimatedRemainingTasks;
+    protected volatile long estimatedRemainingBytes;
     private final Set<SSTableReader> sstables = new HashSet<>();
 
     public SizeTieredCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
@@ -214,6 +215,12 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
         return estimatedRemainingTasks;
     }
 
+    @Override
+    public long getEstimatedRemainingBytes()
+    {
+        return estimatedRemainingBytes;
+    }
+
     public static List<Pair<SSTableReader, Long>> createSSTableAndLengthPairs(Iterable<SSTableReader> sstables)
     {
         List<Pair<SSTableReader, Long>> sstableLengthPairs = new ArrayList<Pair<SSTableReader, Long>>(Iterables.size(sstables));
@@ -276,12 +283,17 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
     private void updateEstimatedCompactionsByTasks(List<List<SSTableReader>> tasks)
     {
         int n = 0;
+        long bytes = 0;
         for (List<SSTableReader> bucket: tasks)
         {
             if (bucket.size() >= cfs.getMinimumCompactionThreshold())
+            {
                 n += Math.ceil((double)bucket.size() / cfs.getMaximumCompactionThreshold());
+                bytes += SSTableReader.getTotalBytes(bucket);
+            }
         }
         estimatedRemainingTasks = n;
+        estimatedRemainingBytes = bytes;
     }
 
     public long getMaxSSTableBytes()
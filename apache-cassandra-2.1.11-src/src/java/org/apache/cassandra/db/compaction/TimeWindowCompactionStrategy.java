@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.*;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.cql3.statements.CFPropDefs;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * Groups sstables into fixed size time windows by their max timestamp. The sstables of the newest window are
+ * compacted with size tiering, while every older window is compacted down to a single sstable, so that once data
+ * stops being written to a window its sstables expire together and are dropped whole.
+ */
+public class TimeWindowCompactionStrategy extends AbstractCompactionStrategy
+{
+    private static final Logger logger = LoggerFactory.getLogger(TimeWindowCompactionStrategy.class);
+
+    private final TimeWindowCompactionStrategyOptions options;
+    protected volatile int estimatedRemainingTasks;
+    protected volatile long estimatedRemainingBytes;
+    private final Set<SSTableReader> sstables = new HashSet<>();
+    private long lastExpiredCheck;
+
+    public TimeWindowCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
+    {
+        super(cfs, options);
+        this.estimatedRemainingTasks = 0;
+        this.options = new TimeWindowCompactionStrategyOptions(options);
+        if (!options.containsKey(AbstractCompactionStrategy.TOMBSTONE_COMPACTION_INTERVAL_OPTION) && !options.containsKey(AbstractCompactionStrategy.TOMBSTONE_THRESHOLD_OPTION))
+        {
+            disableTombstoneCompactions = true;
+            logger.debug("Disabling tombstone compactions for TWCS");
+        }
+        else
+            logger.debug("Enabling tombstone compactions for TWCS");
+    }
+
+    @Override
+    public synchronized AbstractCompactionTask getNextBackgroundTask(int gcBefore)
+    {
+        while (true)
+        {
+            List<SSTableReader> latestBucket = getNextBackgroundSSTables(gcBefore);
+
+            if (latestBucket.isEmpty())
+                return null;
+
+            if (cfs.getDataTracker().markCompacting(latestBucket))
+                return new CompactionTask(cfs, latestBucket, gcBefore, false);
+        }
+    }
+
+    private List<SSTableReader> getNextBackgroundSSTables(final int gcBefore)
+    {
+        if (cfs.getSSTables().isEmpty())
+            return Collections.emptyList();
+
+        Set<SSTableReader> uncompacting = Sets.intersection(sstables, cfs.getUncompactingSSTables());
+
+        Set<SSTableReader> expired = Collections.emptySet();
+        // we only check for expired sstables every 10 minutes (by default) due to it being an expensive operation
+        if (System.currentTimeMillis() - lastExpiredCheck > options.expiredSSTableCheckFrequency)
+        {
+            // Find fully expired SSTables. Those will be included no matter what, and as they are
+            // fully expired CompactionTask drops them without rewriting anything.
+            expired = CompactionController.getFullyExpiredSSTables(cfs, uncompacting, cfs.getOverlappingSSTables(uncompacting), gcBefore);
+            lastExpiredCheck = System.currentTimeMillis();
+        }
+        Set<SSTableReader> candidates = Sets.newHashSet(filterSuspectSSTables(uncompacting));
+
+        List<SSTableReader> compactionCandidates = new ArrayList<>(getNextNonExpiredSSTables(Sets.difference(candidates, expired), gcBefore));
+        if (!expired.isEmpty())
+        {
+            logger.debug("Including expired sstables: {}", expired);
+            compactionCandidates.addAll(expired);
+        }
+        return compactionCandidates;
+    }
+
+    private List<SSTableReader> getNextNonExpiredSSTables(Iterable<SSTableReader> nonExpiringSSTables, final int gcBefore)
+    {
+        NavigableMap<Long, List<SSTableReader>> buckets = getBuckets(createSSTableAndMaxTimestampPairs(nonExpiringSSTables), options.windowSize);
+        logger.debug("Compaction buckets are {}", buckets);
+        updateEstimatedCompactionsByTasks(buckets);
+        List<SSTableReader> mostInteresting = newestBucket(buckets,
+                                                           cfs.getMinimumCompactionThreshold(),
+                                                           cfs.getMaximumCompactionThreshold(),
+                                                           options.stcsOptions);
+        if (!mostInteresting.isEmpty())
+            return mostInteresting;
+
+        // if there is no sstable to compact in standard way, try compacting single sstable whose droppable tombstone
+        // ratio is greater than threshold.
+        List<SSTableReader> sstablesWithTombstones = Lists.newArrayList();
+        for (SSTableReader sstable : nonExpiringSSTables)
+        {
+            if (worthDroppingTombstones(sstable, gcBefore))
+                sstablesWithTombstones.add(sstable);
+        }
+        if (sstablesWithTombstones.isEmpty())
+            return Collections.emptyList();
+
+        return Collections.singletonList(Collections.min(sstablesWithTombstones, new SSTableReader.SizeComparator()));
+    }
+
+    public static List<Pair<SSTableReader, Long>> createSSTableAndMaxTimestampPairs(Iterable<SSTableReader> sstables)
+    {
+        List<Pair<SSTableReader, Long>> sstableMaxTimestampPairs = Lists.newArrayListWithCapacity(Iterables.size(sstables));
+        for (SSTableReader sstable : sstables)
+            sstableMaxTimestampPairs.add(Pair.create(sstable, sstable.getMaxTimestamp()));
+        return sstableMaxTimestampPairs;
+    }
+
+    @Override
+    public void addSSTable(SSTableReader sstable)
+    {
+        sstables.add(sstable);
+    }
+
+    @Override
+    public void removeSSTable(SSTableReader sstable)
+    {
+        sstables.remove(sstable);
+    }
+
+    /**
+     * @param timestamp a timestamp, in the same unit as windowSize
+     * @return the lower bound of the window containing the timestamp
+     */
+    @VisibleForTesting
+    static long getWindowLowerBound(long timestamp, long windowSize)
+    {
+        long remainder = timestamp % windowSize;
+        // the remainder of a negative timestamp is negative, and its window starts below it
+        return remainder < 0 ? timestamp - remainder - windowSize : timestamp - remainder;
+    }
+
+    /**
+     * Group files by the time window their max timestamp falls in.
+     * @param files pairs consisting of a file and its max timestamp
+     * @param windowSize the size of a window, in the unit of the timestamps
+     * @return the files of each window keyed by the lower bound of the window, newest window first
+     */
+    @VisibleForTesting
+    static <T> NavigableMap<Long, List<T>> getBuckets(Collection<Pair<T, Long>> files, long windowSize)
+    {
+        NavigableMap<Long, List<T>> buckets = new TreeMap<>(Collections.reverseOrder());
+        for (Pair<T, Long> file : files)
+        {
+            long window = getWindowLowerBound(file.right, windowSize);
+            List<T> bucket = buckets.get(window);
+            if (bucket == null)
+            {
+                bucket = new ArrayList<>();
+                buckets.put(window, bucket);
+            }
+            bucket.add(file.left);
+        }
+        return buckets;
+    }
+
+    private void updateEstimatedCompactionsByTasks(NavigableMap<Long, List<SSTableReader>> buckets)
+    {
+        int n = 0;
+        long bytes = 0;
+        boolean newest = true;
+        for (List<SSTableReader> bucket : buckets.values())
+        {
+            if (newest)
+            {
+                if (bucket.size() >= cfs.getMinimumCompactionThreshold())
+                {
+                    n += Math.ceil((double)bucket.size() / cfs.getMaximumCompactionThreshold());
+                    bytes += SSTableReader.getTotalBytes(bucket);
+                }
+                newest = false;
+            }
+            else if (bucket.size() >= 2)
+            {
+                // every older window ends up as a single sstable
+                n += Math.ceil((double)(bucket.size() - 1) / (cfs.getMaximumCompactionThreshold() - 1));
+                bytes += SSTableReader.getTotalBytes(bucket);
+            }
+        }
+        estimatedRemainingTasks = n;
+        estimatedRemainingBytes = bytes;
+    }
+
+    /**
+     * @param buckets the sstables of each window, newest window first
+     * @param minThreshold minimum number of sstables to compact at once in the newest window
+     * @param maxThreshold maximum number of sstables to compact at once (the returned bucket will be trimmed down to this)
+     * @param stcsOptions the size tiering options used in the newest window
+     * @return a bucket (list) of sstables to compact
+     */
+    @VisibleForTesting
+    static List<SSTableReader> newestBucket(NavigableMap<Long, List<SSTableReader>> buckets, int minThreshold, int maxThreshold, SizeTieredCompactionStrategyOptions stcsOptions)
+    {
+        // The newest window is still being written to, so size tier it like STCS would.
+        // Any older window is compacted as soon as it has 2 sstables, until there is only one left.
+        boolean newest = true;
+        for (List<SSTableReader> bucket : buckets.values())
+        {
+            if (newest)
+            {
+                newest = false;
+                if (bucket.size() < minThreshold)
+                    continue;
+                List<List<SSTableReader>> stcsBuckets = SizeTieredCompactionStrategy.getBuckets(SizeTieredCompactionStrategy.createSSTableAndLengthPairs(bucket),
+                                                                                                stcsOptions.bucketHigh,
+                                                                                                stcsOptions.bucketLow,
+                                                                                                stcsOptions.minSSTableSize);
+                List<SSTableReader> stcsInteresting = SizeTieredCompactionStrategy.mostInterestingBucket(stcsBuckets, minThreshold, maxThreshold);
+                if (!stcsInteresting.isEmpty())
+                    return stcsInteresting;
+            }
+            else if (bucket.size() >= 2)
+            {
+                return trimToThreshold(bucket, maxThreshold);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the maxThreshold smallest sstables of the bucket, so that a window with many small sstables
+     * converges quickly instead of rewriting its largest sstable over and over.
+     */
+    @VisibleForTesting
+    static List<SSTableReader> trimToThreshold(List<SSTableReader> bucket, int maxThreshold)
+    {
+        List<SSTableReader> sorted = new ArrayList<>(bucket);
+        Collections.sort(sorted, new SSTableReader.SizeComparator());
+        return sorted.subList(0, Math.min(sorted.size(), maxThreshold));
+    }
+
+    /**
+     * Compacts each window into its own sstable rather than everything into a single sstable, which would mix up the
+     * windows and keep the oldest data around until the newest expires.
+     */
+    @Override
+    public synchronized Collection<AbstractCompactionTask> getMaximalTask(int gcBefore)
+    {
+        Iterable<SSTableReader> sstables = cfs.markAllCompacting();
+        if (sstables == null)
+            return null;
+
+        List<AbstractCompactionTask> tasks = new ArrayList<>();
+        for (List<SSTableReader> bucket : getBuckets(createSSTableAndMaxTimestampPairs(sstables), options.windowSize).values())
+            tasks.add(new CompactionTask(cfs, bucket, gcBefore, false));
+        return tasks;
+    }
+
+    @Override
+    public synchronized AbstractCompactionTask getUserDefinedTask(Collection<SSTableReader> sstables, int gcBefore)
+    {
+        assert !sstables.isEmpty(); // checked for by CM.submitUserDefined
+
+        if (!cfs.getDataTracker().markCompacting(sstables))
+        {
+            logger.debug("Unable to mark {} for compaction; probably a background compaction got to it first.  You can disable background compactions temporarily if this is a problem", sstables);
+            return null;
+        }
+
+        return new CompactionTask(cfs, sstables, gcBefore, false).setUserDefined(true);
+    }
+
+    public int getEstimatedRemainingTasks()
+    {
+        return estimatedRemainingTasks;
+    }
+
+    @Override
+    public long getEstimatedRemainingBytes()
+    {
+        return estimatedRemainingBytes;
+    }
+
+    public long getMaxSSTableBytes()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Every closed window is compacted until it is down to one sstable, so its compactions must not be split.
+     */
+    @Override
+    public boolean allowsSubrangeCompaction()
+    {
+        return false;
+    }
+
+    public static Map<String, String> validateOptions(Map<String, String> options) throws ConfigurationException
+    {
+        Map<String, String> uncheckedOptions = AbstractCompactionStrategy.validateOptions(options);
+        uncheckedOptions = TimeWindowCompactionStrategyOptions.validateOptions(options, uncheckedOptions);
+
+        uncheckedOptions.remove(CFPropDefs.KW_MINCOMPACTIONTHRESHOLD);
+        uncheckedOptions.remove(CFPropDefs.KW_MAXCOMPACTIONTHRESHOLD);
+
+        return uncheckedOptions;
+    }
+
+    public String toString()
+    {
+        return String.format("TimeWindowCompactionStrategy[%s/%s]",
+                cfs.getMinimumCompactionThreshold(),
+                cfs.getMaximumCompactionThreshold());
+    }
+}
@@ -148,6 +148,38 @@ public final class WrappingCompactionStrategy extends AbstractCompactionStrategy
         return repaired.getEstimatedRemainingTasks() + unrepaired.getEstimatedRemainingTasks();
     }
 
+    @Override
+    public synchronized long getEstimatedRemainingBytes()
+    {
+        assert repaired.getClass().equals(unrepaired.getClass());
+        return repaired.getEstimatedRemainingBytes() + unrepaired.getEstimatedRemainingBytes();
+    }
+
+    @Override
+    public synchronized Map<SSTableReader, Double> getTombstoneCompactionCandidates(int gcBefore)
+    {
+        List<SSTableReader> repairedSSTables = new ArrayList<>();
+        List<SSTableReader> unrepairedSSTables = new ArrayList<>();
+        for (SSTableReader sstable : cfs.getUncompactingSSTables())
+        {
+            if (sstable.isRepaired())
+                repairedSSTables.add(sstable);
+            else
+                unrepairedSSTables.add(sstable);
+        }
+        Map<SSTableReader, Double> candidates = repaired.getTombstoneCompactionCandidates(repairedSSTables, gcBefore);
+        candidates.putAll(unrepaired.getTombstoneCompactionCandidates(unrepairedSSTables, gcBefore));
+        return candidates;
+    }
+
+    @Override
+    public synchronized AbstractCompactionTask getTombstoneCompactionTask(SSTableReader sstable, int gcBefore)
+    {
+        if (sstable.isRepaired())
+            return repaired.getTombstoneCompactionTask(sstable, gcBefore);
+        return unrepaired.getTombstoneCompactionTask(sstable, gcBefore);
+    }
+
     @Override
     public synchronized long getMaxSSTableBytes()
     {
@@ -220,6 +252,13 @@ public final class WrappingCompactionStrategy extends AbstractCompactionStrategy
         return repaired.shouldDefragment();
     }
 
+    @Override
+    public boolean allowsSubrangeCompaction()
+    {
+        assert repaired.getClass().equals(unrepaired.getClass());
+        return repaired.allowsSubrangeCompaction();
+    }
+
     @Override
     public String getName()
     {
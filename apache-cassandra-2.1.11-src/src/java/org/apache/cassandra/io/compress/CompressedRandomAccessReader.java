@@ -19,11 +19,15 @@ package org.apache.cassandra.io.compress;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.zip.Adler32;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.CompressedPoolingSegmentedFile;
@@ -42,10 +46,14 @@ public class CompressedRandomAccessReader extends RandomAccessReader
         return open(dataFilePath, metadata, null);
     }
     public static CompressedRandomAccessReader open(String path, CompressionMetadata metadata, CompressedPoolingSegmentedFile owner)
+    {
+        return open(path, metadata, owner, null, null, 0);
+    }
+    public static CompressedRandomAccessReader open(String path, CompressionMetadata metadata, CompressedPoolingSegmentedFile owner, TreeMap<Long, MappedByteBuffer> chunkSegments, ChunkCache chunkCache, long fileId)
     {
         try
         {
-            return new CompressedRandomAccessReader(path, metadata, owner);
+            return new CompressedRandomAccessReader(path, metadata, owner, chunkSegments, chunkCache, fileId);
         }
         catch (FileNotFoundException e)
         {
@@ -59,18 +67,39 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     // we read the raw compressed bytes into this buffer, then move the uncompressed ones into super.buffer.
     private ByteBuffer compressed;
 
+    // view of super.buffer that chunks are decompressed straight into
+    private final ByteBuffer uncompressed;
+
     // re-use single crc object
     private final Checksum checksum;
 
     // raw checksum bytes
     private final ByteBuffer checksumBytes = ByteBuffer.wrap(new byte[4]);
 
+    // mmapped regions of the compressed file keyed by file offset, each holding whole chunks (with their checksums);
+    // null if chunks are read through the channel instead
+    private final TreeMap<Long, MappedByteBuffer> chunkSegments;
+
+    // decompressed chunks are looked up here before being read, and added after; null to bypass the cache
+    private final ChunkCache chunkCache;
+    // the id the chunks of the file are cached under
+    private final long fileId;
+
     protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner) throws FileNotFoundException
+    {
+        this(dataFilePath, metadata, owner, null, null, 0);
+    }
+
+    protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner, TreeMap<Long, MappedByteBuffer> chunkSegments, ChunkCache chunkCache, long fileId) throws FileNotFoundException
     {
         super(new File(dataFilePath), metadata.chunkLength(), metadata.compressedFileLength, owner);
         this.metadata = metadata;
+        this.chunkSegments = chunkSegments;
+        this.chunkCache = chunkCache;
+        this.fileId = fileId;
         checksum = metadata.hasPostCompressionAdlerChecksums ? new Adler32() : new CRC32();
         compressed = ByteBuffer.wrap(new byte[metadata.compressor().initialCompressedBufferLength(metadata.chunkLength())]);
+        uncompressed = ByteBuffer.wrap(buffer);
     }
 
     @Override
@@ -92,24 +121,60 @@ public class CompressedRandomAccessReader extends RandomAccessReader
 
     private void decompressChunk(CompressionMetadata.Chunk chunk) throws IOException
     {
-        if (channel.position() != chunk.offset)
-            channel.position(chunk.offset);
+        ChunkCache.Key key = chunkCache == null ? null : new ChunkCache.Key(fileId, chunk.offset);
+        validBufferBytes = key == null ? -1 : chunkCache.get(key, buffer);
+        if (validBufferBytes < 0)
+        {
+            readChunk(chunk);
+            if (key != null)
+                chunkCache.put(key, buffer, validBufferBytes);
+        }
 
+        // buffer offset is always aligned
+        bufferOffset = current & ~(buffer.length - 1);
+        // the length() can be provided at construction time, to override the true (uncompressed) length of the file;
+        // this is permitted to occur within a compressed segment, so we truncate validBufferBytes if we cross the imposed length
+        if (bufferOffset + validBufferBytes > length())
+            validBufferBytes = (int)(length() - bufferOffset);
+    }
+
+    /**
+     * Reads, decompresses and (maybe) verifies the chunk into super.buffer, setting validBufferBytes.
+     */
+    private void readChunk(CompressionMetadata.Chunk chunk) throws IOException
+    {
         if (compressed.capacity() < chunk.length)
             compressed = ByteBuffer.wrap(new byte[chunk.length]);
         else
             compressed.clear();
         compressed.limit(chunk.length);
 
-        if (channel.read(compressed) != chunk.length)
-            throw new CorruptBlockException(getPath(), chunk);
+        if (chunkSegments == null)
+        {
+            if (channel.position() != chunk.offset)
+                channel.position(chunk.offset);
+
+            if (channel.read(compressed) != chunk.length)
+                throw new CorruptBlockException(getPath(), chunk);
+        }
+        else
+        {
+            // a plain memory copy out of the page cache; our buffer is a heap array, and none of the compressors
+            // can decompress from off-heap memory into it without staging the input on heap anyway
+            ByteBuffer mapped = mappedChunk(chunk);
+            mapped.limit(mapped.position() + chunk.length);
+            compressed.put(mapped);
+        }
 
-        // technically flip() is unnecessary since all the remaining work uses the raw array, but if that changes
-        // in the future this will save a lot of hair-pulling
         compressed.flip();
+        uncompressed.clear();
         try
         {
-            validBufferBytes = metadata.compressor().uncompress(compressed.array(), 0, chunk.length, buffer, 0);
+            ICompressor compressor = metadata.compressor();
+            if (compressor instanceof IByteBufferCompressor)
+                validBufferBytes = ((IByteBufferCompressor) compressor).uncompress(compressed, uncompressed);
+            else
+                validBufferBytes = compressor.uncompress(compressed.array(), 0, chunk.length, buffer, 0);
         }
         catch (IOException e)
         {
@@ -134,17 +199,31 @@ public class CompressedRandomAccessReader extends RandomAccessReader
             // reset checksum object back to the original (blank) state
             checksum.reset();
         }
+    }
 
-        // buffer offset is always aligned
-        bufferOffset = current & ~(buffer.length - 1);
-        // the length() can be provided at construction time, to override the true (uncompressed) length of the file;
-        // this is permitted to occur within a compressed segment, so we truncate validBufferBytes if we cross the imposed length
-        if (bufferOffset + validBufferBytes > length())
-            validBufferBytes = (int)(length() - bufferOffset);
+    /**
+     * @return a private view of the mapped segment holding the chunk, positioned at its start, and limited
+     * to the end of the segment
+     */
+    private ByteBuffer mappedChunk(CompressionMetadata.Chunk chunk) throws CorruptBlockException
+    {
+        Map.Entry<Long, MappedByteBuffer> entry = chunkSegments.floorEntry(chunk.offset);
+        ByteBuffer mapped = entry.getValue().duplicate();
+        int position = (int) (chunk.offset - entry.getKey());
+        if (position + chunk.length + checksumBytes.capacity() > mapped.capacity())
+            throw new CorruptBlockException(getPath(), chunk);
+        mapped.position(position);
+        return mapped;
     }
 
     private int checksum(CompressionMetadata.Chunk chunk) throws IOException
     {
+        if (chunkSegments != null)
+        {
+            ByteBuffer mapped = mappedChunk(chunk);
+            return mapped.getInt(mapped.position() + chunk.length);
+        }
+
         assert channel.position() == chunk.offset + chunk.length;
         checksumBytes.clear();
         if (channel.read(checksumBytes) != checksumBytes.capacity())
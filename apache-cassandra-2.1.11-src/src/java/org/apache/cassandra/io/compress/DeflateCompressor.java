@@ -18,6 +18,7 @@
 package org.apache.cassandra.io.compress;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -25,7 +26,9 @@ import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
-public class DeflateCompressor implements ICompressor
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+public class DeflateCompressor implements IByteBufferCompressor
 {
     public static final DeflateCompressor instance = new DeflateCompressor();
 
@@ -65,7 +68,8 @@ public class DeflateCompressor implements ICompressor
 
     public int initialCompressedBufferLength(int chunkLength)
     {
-        return chunkLength;
+        // zlib's deflateBound(), so that incompressible chunks fit too
+        return chunkLength + (chunkLength >> 12) + (chunkLength >> 14) + (chunkLength >> 25) + 13;
     }
 
     public int compress(byte[] input, int inputOffset, int inputLength, ICompressor.WrappedArray output, int outputOffset)
@@ -113,4 +117,76 @@ public class DeflateCompressor implements ICompressor
             throw new IOException(e);
         }
     }
+
+    public int compress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        // Deflater only operates on arrays, so off-heap buffers are staged through the heap
+        byte[] src = input.hasArray() ? input.array() : ByteBufferUtil.getArray(input);
+        int srcOffset = input.hasArray() ? input.arrayOffset() + input.position() : 0;
+        Deflater def = deflater.get();
+        def.reset();
+        def.setInput(src, srcOffset, input.remaining());
+        def.finish();
+
+        final int compressedLength;
+        if (def.needsInput())
+        {
+            compressedLength = 0;
+        }
+        else if (output.hasArray())
+        {
+            compressedLength = def.deflate(output.array(), output.arrayOffset() + output.position(), output.remaining());
+        }
+        else
+        {
+            byte[] compressed = new byte[output.remaining()];
+            compressedLength = def.deflate(compressed, 0, compressed.length);
+            output.duplicate().put(compressed, 0, compressedLength);
+        }
+        if (compressedLength > 0 && !def.finished())
+            throw new IOException("Output buffer too small to compress " + input.remaining() + " bytes");
+
+        input.position(input.limit());
+        output.position(output.position() + compressedLength);
+        return compressedLength;
+    }
+
+    public int uncompress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        // Inflater only operates on arrays, so off-heap buffers are staged through the heap
+        byte[] src = input.hasArray() ? input.array() : ByteBufferUtil.getArray(input);
+        int srcOffset = input.hasArray() ? input.arrayOffset() + input.position() : 0;
+        Inflater inf = inflater.get();
+        inf.reset();
+        inf.setInput(src, srcOffset, input.remaining());
+        if (inf.needsInput())
+            return 0;
+
+        final int decompressedLength;
+        try
+        {
+            if (output.hasArray())
+            {
+                decompressedLength = inf.inflate(output.array(), output.arrayOffset() + output.position(), output.remaining());
+            }
+            else
+            {
+                byte[] uncompressed = new byte[output.remaining()];
+                decompressedLength = inf.inflate(uncompressed, 0, uncompressed.length);
+                output.duplicate().put(uncompressed, 0, decompressedLength);
+            }
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException(e);
+        }
+        input.position(input.limit());
+        output.position(output.position() + decompressedLength);
+        return decompressedLength;
+    }
+
+    public boolean useDirectOutputByteBuffers()
+    {
+        return false;
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A compressor that can also work on ByteBuffers, heap or direct, without going through byte arrays.
+ *
+ * This is optional: callers check for it and fall back to the byte array methods of {@link ICompressor}, so that
+ * compressors written against that interface alone keep working.
+ */
+public interface IByteBufferCompressor extends ICompressor
+{
+    /**
+     * Compresses the remaining bytes of input into output, starting at output's position. Either buffer
+     * may be heap or direct. On return input has been fully consumed and output's position has been advanced
+     * past the compressed bytes; output must have at least initialCompressedBufferLength(input.remaining())
+     * bytes remaining.
+     *
+     * @return the number of compressed bytes written
+     */
+    public int compress(ByteBuffer input, ByteBuffer output) throws IOException;
+
+    /**
+     * Decompresses the remaining bytes of input into output, starting at output's position. Either buffer
+     * may be heap or direct. On return input has been fully consumed and output's position has been advanced
+     * past the decompressed bytes.
+     *
+     * @return the number of decompressed bytes written
+     */
+    public int uncompress(ByteBuffer input, ByteBuffer output) throws IOException;
+
+    /**
+     * @return true if this compressor works on direct buffers natively, i.e. callers that are free to choose
+     * should hand it direct buffers; false if direct buffers would be staged through heap copies.
+     */
+    public boolean useDirectOutputByteBuffers();
+}
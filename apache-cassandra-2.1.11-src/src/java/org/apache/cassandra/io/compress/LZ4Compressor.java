@@ -18,6 +18,7 @@
 package org.apache.cassandra.io.compress;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
@@ -28,7 +29,9 @@ import com.google.common.annotations.VisibleForTesting;
 import net.jpountz.lz4.LZ4Exception;
 import net.jpountz.lz4.LZ4Factory;
 
-public class LZ4Compressor implements ICompressor
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+public class LZ4Compressor implements IByteBufferCompressor
 {
 
     private static final int INTEGER_BYTES = 4;
@@ -101,6 +104,67 @@ public class LZ4Compressor implements ICompressor
         return decompressedLength;
     }
 
+    public int compress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        int inputLength = input.remaining();
+        if (output.remaining() < initialCompressedBufferLength(inputLength))
+            throw new IOException("Output buffer too small to compress " + inputLength + " bytes");
+
+        // lz4-java only operates on arrays, so off-heap buffers are staged through the heap
+        final int compressedLength;
+        if (output.hasArray())
+        {
+            byte[] src = input.hasArray() ? input.array() : ByteBufferUtil.getArray(input);
+            int srcOffset = input.hasArray() ? input.arrayOffset() + input.position() : 0;
+            compressedLength = compress(src, srcOffset, inputLength, new WrappedArray(output.array()), output.arrayOffset() + output.position());
+        }
+        else
+        {
+            WrappedArray compressed = new WrappedArray(new byte[initialCompressedBufferLength(inputLength)]);
+            compressedLength = compress(ByteBufferUtil.getArray(input), 0, inputLength, compressed, 0);
+            output.duplicate().put(compressed.buffer, 0, compressedLength);
+        }
+        input.position(input.limit());
+        output.position(output.position() + compressedLength);
+        return compressedLength;
+    }
+
+    public int uncompress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        if (input.remaining() < INTEGER_BYTES)
+            throw new IOException("Compressed input too short: " + input.remaining() + " bytes");
+        int position = input.position();
+        final int decompressedLength =
+                (input.get(position) & 0xFF)
+                | ((input.get(position + 1) & 0xFF) << 8)
+                | ((input.get(position + 2) & 0xFF) << 16)
+                | ((input.get(position + 3) & 0xFF) << 24);
+        if (output.remaining() < decompressedLength)
+            throw new IOException("Output buffer too small to decompress " + decompressedLength + " bytes");
+
+        // lz4-java only operates on arrays, so off-heap buffers are staged through the heap
+        byte[] src = input.hasArray() ? input.array() : ByteBufferUtil.getArray(input);
+        int srcOffset = input.hasArray() ? input.arrayOffset() + position : 0;
+        if (output.hasArray())
+        {
+            uncompress(src, srcOffset, input.remaining(), output.array(), output.arrayOffset() + output.position());
+        }
+        else
+        {
+            byte[] uncompressed = new byte[decompressedLength];
+            uncompress(src, srcOffset, input.remaining(), uncompressed, 0);
+            output.duplicate().put(uncompressed);
+        }
+        input.position(input.limit());
+        output.position(output.position() + decompressedLength);
+        return decompressedLength;
+    }
+
+    public boolean useDirectOutputByteBuffers()
+    {
+        return false;
+    }
+
     public Set<String> supportedOptions()
     {
         return new HashSet<String>(Arrays.asList(CompressionParameters.CRC_CHECK_CHANCE));
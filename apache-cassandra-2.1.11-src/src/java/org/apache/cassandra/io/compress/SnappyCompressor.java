@@ -18,6 +18,7 @@
 package org.apache.cassandra.io.compress;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -27,9 +28,10 @@ import org.slf4j.LoggerFactory;
 import org.xerial.snappy.Snappy;
 import org.xerial.snappy.SnappyError;
 
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.JVMStabilityInspector;
 
-public class SnappyCompressor implements ICompressor
+public class SnappyCompressor implements IByteBufferCompressor
 {
     public static final SnappyCompressor instance = new SnappyCompressor();
 
@@ -95,4 +97,71 @@ public class SnappyCompressor implements ICompressor
     {
         return Snappy.rawUncompress(input, inputOffset, inputLength, output, outputOffset);
     }
+
+    public int compress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        final int compressedLength;
+        if (input.isDirect() && output.isDirect())
+        {
+            // the native direct path sets output's limit to the end of the compressed data; preserve ours
+            int limit = output.limit();
+            compressedLength = Snappy.compress(input, output);
+            output.limit(limit);
+        }
+        else
+        {
+            // snappy-java can only mix arrays with arrays, so anything else is staged through the heap
+            byte[] src = input.hasArray() ? input.array() : ByteBufferUtil.getArray(input);
+            int srcOffset = input.hasArray() ? input.arrayOffset() + input.position() : 0;
+            if (output.hasArray())
+            {
+                compressedLength = Snappy.rawCompress(src, srcOffset, input.remaining(), output.array(), output.arrayOffset() + output.position());
+            }
+            else
+            {
+                byte[] compressed = new byte[Snappy.maxCompressedLength(input.remaining())];
+                compressedLength = Snappy.rawCompress(src, srcOffset, input.remaining(), compressed, 0);
+                output.duplicate().put(compressed, 0, compressedLength);
+            }
+        }
+        input.position(input.limit());
+        output.position(output.position() + compressedLength);
+        return compressedLength;
+    }
+
+    public int uncompress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        final int decompressedLength;
+        if (input.isDirect() && output.isDirect())
+        {
+            // the native direct path sets output's limit to the end of the decompressed data; preserve ours
+            int limit = output.limit();
+            decompressedLength = Snappy.uncompress(input, output);
+            output.limit(limit);
+        }
+        else
+        {
+            // snappy-java can only mix arrays with arrays, so anything else is staged through the heap
+            byte[] src = input.hasArray() ? input.array() : ByteBufferUtil.getArray(input);
+            int srcOffset = input.hasArray() ? input.arrayOffset() + input.position() : 0;
+            if (output.hasArray())
+            {
+                decompressedLength = Snappy.rawUncompress(src, srcOffset, input.remaining(), output.array(), output.arrayOffset() + output.position());
+            }
+            else
+            {
+                byte[] uncompressed = new byte[Snappy.uncompressedLength(src, srcOffset, input.remaining())];
+                decompressedLength = Snappy.rawUncompress(src, srcOffset, input.remaining(), uncompressed, 0);
+                output.duplicate().put(uncompressed, 0, decompressedLength);
+            }
+        }
+        input.position(input.limit());
+        output.position(output.position() + decompressedLength);
+        return decompressedLength;
+    }
+
+    public boolean useDirectOutputByteBuffers()
+    {
+        return true;
+    }
 }
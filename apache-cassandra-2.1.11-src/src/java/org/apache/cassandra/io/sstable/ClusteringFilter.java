@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.composites.Composite;
+import org.apache.cassandra.db.filter.ColumnSlice;
+import org.apache.cassandra.db.filter.IDiskAtomFilter;
+import org.apache.cassandra.db.filter.NamesQueryFilter;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
+import org.apache.cassandra.db.marshal.*;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.FilterFactory;
+import org.apache.cassandra.utils.IFilter;
+import org.apache.cassandra.utils.MurmurHash;
+import org.apache.cassandra.utils.concurrent.WrappedSharedCloseable;
+
+/**
+ * A bloom filter over the (partition key, first clustering component) pairs of an sstable, which lets reads that
+ * restrict the first clustering component to a few values, like those on a time bucket, skip the sstables that hold
+ * the partition but none of those values.
+ *
+ * Each pair is added as a single 64 bit hash of the partition key hash and the component. Whatever may apply to any
+ * component of a partition, i.e. its partition deletion and the range tombstones spanning more than one component,
+ * is added as the hash of the partition key alone, which is checked along with the components of every lookup.
+ *
+ * The file holds the number of distinct hashes followed by the serialized filter, or -1 alone if there were too many
+ * of them to build one (see {@link ClusteringFilterBuilder}).
+ */
+public class ClusteringFilter extends WrappedSharedCloseable
+{
+    private final IFilter filter;
+
+    ClusteringFilter(IFilter filter)
+    {
+        super(filter);
+        this.filter = filter;
+    }
+
+    private ClusteringFilter(ClusteringFilter copy)
+    {
+        super(copy);
+        this.filter = copy.filter;
+    }
+
+    public ClusteringFilter sharedCopy()
+    {
+        return new ClusteringFilter(this);
+    }
+
+    /**
+     * @return the filter of the given file, or null if the sstable was written without one
+     */
+    public static ClusteringFilter load(String path) throws IOException
+    {
+        DataInputStream stream = null;
+        try
+        {
+            stream = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+            if (stream.readInt() < 0)
+                return null;
+            return new ClusteringFilter(FilterFactory.deserialize(stream, true));
+        }
+        finally
+        {
+            FileUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * @return whether the sstables of the given table should be written with a clustering filter
+     */
+    public static boolean supports(CFMetaData metadata)
+    {
+        return metadata.getClusteringFilterFpChance() < 1.0
+               && !metadata.clusteringColumns().isEmpty()
+               && isByteComparable(metadata.comparator.subtype(0));
+    }
+
+    /**
+     * @return whether two values of the given type are equal exactly when their bytes are, so that hashing the
+     * bytes of a value in a query finds the ones written
+     */
+    private static boolean isByteComparable(AbstractType<?> type)
+    {
+        if (type instanceof ReversedType)
+            type = ((ReversedType<?>) type).baseType;
+
+        return type instanceof BytesType
+               || type instanceof AsciiType
+               || type instanceof UTF8Type
+               || type instanceof LongType
+               || type instanceof Int32Type
+               || type instanceof DateType
+               || type instanceof TimestampType
+               || type instanceof UUIDType
+               || type instanceof TimeUUIDType
+               || type instanceof LexicalUUIDType
+               || type instanceof InetAddressType;
+    }
+
+    /**
+     * @return the values of the first clustering component the given filter selects, or null if it may select
+     * any of them, or needs static columns, which aren't in the filter
+     */
+    public static List<ByteBuffer> requiredPrefixes(IDiskAtomFilter filter)
+    {
+        if (filter instanceof NamesQueryFilter)
+        {
+            List<ByteBuffer> prefixes = new ArrayList<>();
+            for (CellName name : ((NamesQueryFilter) filter).columns)
+            {
+                if (name.isEmpty() || name.isStatic())
+                    return null;
+                addPrefix(prefixes, name.get(0));
+            }
+            return prefixes;
+        }
+
+        if (filter instanceof SliceQueryFilter)
+        {
+            List<ByteBuffer> prefixes = new ArrayList<>();
+            for (ColumnSlice slice : ((SliceQueryFilter) filter).slices)
+            {
+                ByteBuffer prefix = singlePrefix(slice.start, slice.finish);
+                if (prefix == null)
+                    return null;
+                addPrefix(prefixes, prefix);
+            }
+            return prefixes;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the first clustering component of all the names between the given bounds, or null if they don't
+     * share one
+     */
+    static ByteBuffer singlePrefix(Composite start, Composite end)
+    {
+        if (start.isEmpty() || end.isEmpty() || start.isStatic() || end.isStatic())
+            return null;
+        ByteBuffer prefix = start.get(0);
+        return prefix.equals(end.get(0)) ? prefix : null;
+    }
+
+    private static void addPrefix(List<ByteBuffer> prefixes, ByteBuffer prefix)
+    {
+        // names and slices are sorted, so the same component comes in a row
+        if (prefixes.isEmpty() || !prefixes.get(prefixes.size() - 1).equals(prefix))
+            prefixes.add(prefix);
+    }
+
+    /**
+     * @return false if the sstable is known not to have anything for the key under any of the given first clustering
+     * components
+     */
+    public boolean mayContain(DecoratedKey key, List<ByteBuffer> prefixes)
+    {
+        long partitionHash = partitionHash(key.getKey());
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        if (isPresent(buffer, partitionHash))
+            return true;
+        for (ByteBuffer prefix : prefixes)
+        {
+            if (isPresent(buffer, entry(partitionHash, prefix)))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean isPresent(ByteBuffer buffer, long hash)
+    {
+        buffer.putLong(0, hash);
+        return filter.isPresent(buffer);
+    }
+
+    static long partitionHash(ByteBuffer key)
+    {
+        return MurmurHash.hash2_64(key, key.position(), key.remaining(), 0);
+    }
+
+    static long entry(long partitionHash, ByteBuffer prefix)
+    {
+        return 31 * partitionHash + MurmurHash.hash2_64(prefix, prefix.position(), prefix.remaining(), 0);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.cassandra.db.Cell;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.OnDiskAtom;
+import org.apache.cassandra.db.RangeTombstone;
+import org.apache.cassandra.db.composites.Composite;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.DataOutputStreamPlus;
+import org.apache.cassandra.utils.FilterFactory;
+import org.apache.cassandra.utils.IFilter;
+
+/**
+ * Collects the hashes of the {@link ClusteringFilter} of an sstable as its atoms are written, and writes the filter
+ * once they are all known, so that it is sized for the actual number of distinct hashes.
+ *
+ * The hashes are kept in memory until then, and past {@link #MAX_ENTRIES} of them the sstable gets no filter.
+ */
+public class ClusteringFilterBuilder
+{
+    static final int MAX_ENTRIES = Integer.getInteger("cassandra.clustering_filter_max_entries", 1 << 22);
+
+    private final String path;
+    private final double fpChance;
+
+    private long[] hashes = new long[1024];
+    private int count;
+    private boolean overflowed;
+
+    private long partitionHash;
+    // the component of the last atom, which the following ones of the partition most likely share
+    private ByteBuffer lastPrefix;
+
+    public ClusteringFilterBuilder(String path, double fpChance)
+    {
+        this.path = path;
+        this.fpChance = fpChance;
+    }
+
+    public void startPartition(ByteBuffer key, DeletionTime topLevelDeletion)
+    {
+        partitionHash = ClusteringFilter.partitionHash(key);
+        lastPrefix = null;
+        if (!topLevelDeletion.isLive())
+            addAllPrefixes();
+    }
+
+    /**
+     * Records that the current partition may have anything under any first clustering component.
+     */
+    public void addAllPrefixes()
+    {
+        add(partitionHash);
+    }
+
+    public void add(OnDiskAtom atom)
+    {
+        if (atom instanceof Cell)
+        {
+            Composite name = atom.name();
+            // static cells are only read by queries that don't restrict the clustering
+            if (name.isStatic())
+                return;
+            if (name.isEmpty())
+                addAllPrefixes();
+            else
+                addPrefix(name.get(0));
+        }
+        else
+        {
+            RangeTombstone tombstone = (RangeTombstone) atom;
+            ByteBuffer prefix = ClusteringFilter.singlePrefix(tombstone.min, tombstone.max);
+            if (prefix == null)
+                addAllPrefixes();
+            else
+                addPrefix(prefix);
+        }
+    }
+
+    private void addPrefix(ByteBuffer prefix)
+    {
+        if (prefix.equals(lastPrefix))
+            return;
+        lastPrefix = prefix;
+        add(ClusteringFilter.entry(partitionHash, prefix));
+    }
+
+    private void add(long hash)
+    {
+        if (overflowed)
+            return;
+        if (count == MAX_ENTRIES)
+        {
+            overflowed = true;
+            hashes = null;
+            return;
+        }
+        if (count == hashes.length)
+            hashes = Arrays.copyOf(hashes, (int) Math.min(MAX_ENTRIES, 2L * count));
+        hashes[count++] = hash;
+    }
+
+    /**
+     * Builds and writes the filter.
+     */
+    public void finish()
+    {
+        try (FileOutputStream fos = new FileOutputStream(path))
+        {
+            DataOutputStreamPlus stream = new DataOutputStreamPlus(new BufferedOutputStream(fos));
+            if (overflowed)
+            {
+                stream.writeInt(-1);
+            }
+            else
+            {
+                int distinct = sortDistinct(hashes, count);
+                stream.writeInt(distinct);
+                try (IFilter filter = FilterFactory.getFilter(distinct, fpChance, false))
+                {
+                    ByteBuffer buffer = ByteBuffer.allocate(8);
+                    for (int i = 0; i < distinct; i++)
+                    {
+                        buffer.putLong(0, hashes[i]);
+                        filter.add(buffer);
+                    }
+                    FilterFactory.serialize(filter, stream);
+                }
+            }
+            stream.flush();
+            fos.getFD().sync();
+            hashes = null;
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, path);
+        }
+    }
+
+    /**
+     * Sorts the first count values of the given array and moves the distinct ones first.
+     *
+     * @return the number of distinct values
+     */
+    private static int sortDistinct(long[] values, int count)
+    {
+        if (count == 0)
+            return 0;
+        Arrays.sort(values, 0, count);
+        int distinct = 1;
+        for (int i = 1; i < count; i++)
+        {
+            if (values[i] != values[distinct - 1])
+                values[distinct++] = values[i];
+        }
+        return distinct;
+    }
+}
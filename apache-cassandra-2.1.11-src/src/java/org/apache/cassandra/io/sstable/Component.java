@@ -55,6 +55,10 @@ public class Component
         SUMMARY("Summary.db"),
         // table of contents, stores the list of all components for the sstable
         TOC("TOC.txt"),
+        // trie of the row keys with pointers to their entries in the index file
+        PARTITION_INDEX("Partitions.db"),
+        // bloom filter of the (row key, first clustering component) pairs in the sstable
+        CLUSTERING_FILTER("ClusteringFilter.db"),
         // custom component, used by e.g. custom compaction strategy
         CUSTOM(null);
 
@@ -83,6 +87,8 @@ public class Component
     public final static Component CRC = new Component(Type.CRC);
     public final static Component SUMMARY = new Component(Type.SUMMARY);
     public final static Component TOC = new Component(Type.TOC);
+    public final static Component PARTITION_INDEX = new Component(Type.PARTITION_INDEX);
+    public final static Component CLUSTERING_FILTER = new Component(Type.CLUSTERING_FILTER);
 
     public final Type type;
     public final String name;
@@ -134,6 +140,8 @@ public class Component
             case CRC:               component = Component.CRC;                          break;
             case SUMMARY:           component = Component.SUMMARY;                      break;
             case TOC:               component = Component.TOC;                          break;
+            case PARTITION_INDEX:   component = Component.PARTITION_INDEX;              break;
+            case CLUSTERING_FILTER: component = Component.CLUSTERING_FILTER;            break;
             case CUSTOM:            component = new Component(Type.CUSTOM, path.right); break;
             default:
                  throw new IllegalStateException();
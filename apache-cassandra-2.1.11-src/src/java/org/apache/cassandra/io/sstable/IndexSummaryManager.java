@@ -259,16 +259,20 @@ public class IndexSummaryManager implements IndexSummaryManagerMBean
         for (SSTableReader sstable : Iterables.concat(compacting, nonCompacting))
             total += sstable.getIndexSummaryOffHeapSize();
 
-        List<SSTableReader> oldFormatSSTables = new ArrayList<>();
+        List<SSTableReader> fixedSamplingSSTables = new ArrayList<>();
         for (SSTableReader sstable : nonCompacting)
         {
             // We can't change the sampling level of sstables with the old format, because the serialization format
             // doesn't include the sampling level.  Leave this one as it is.  (See CASSANDRA-8993 for details.)
             logger.trace("SSTable {} cannot be re-sampled due to old sstable format", sstable);
             if (!sstable.descriptor.version.hasSamplingLevel)
-                oldFormatSSTables.add(sstable);
+                fixedSamplingSSTables.add(sstable);
+            // Point reads of sstables with a partition index don't go through their summary, which is kept at the
+            // minimum sampling level, so they don't get a share of the memory pool either.
+            else if (sstable.hasPartitionIndex())
+                fixedSamplingSSTables.add(sstable);
         }
-        nonCompacting.removeAll(oldFormatSSTables);
+        nonCompacting.removeAll(fixedSamplingSSTables);
 
         logger.debug("Beginning redistribution of index summaries for {} sstables with memory pool size {} MB; current spaced used is {} MB",
                      nonCompacting.size(), memoryPoolBytes / 1024L / 1024L, total / 1024.0 / 1024.0);
@@ -291,7 +295,7 @@ public class IndexSummaryManager implements IndexSummaryManagerMBean
         Collections.sort(sstablesByHotness, new ReadRateComparator(readRates));
 
         long remainingBytes = memoryPoolBytes;
-        for (SSTableReader sstable : Iterables.concat(compacting, oldFormatSSTables))
+        for (SSTableReader sstable : Iterables.concat(compacting, fixedSamplingSSTables))
             remainingBytes -= sstable.getIndexSummaryOffHeapSize();
 
         logger.trace("Index summaries for compacting SSTables are using {} MB of space",
@@ -299,7 +303,7 @@ public class IndexSummaryManager implements IndexSummaryManagerMBean
         List<SSTableReader> newSSTables = adjustSamplingLevels(sstablesByHotness, totalReadsPerSec, remainingBytes);
 
         total = 0;
-        for (SSTableReader sstable : Iterables.concat(compacting, oldFormatSSTables, newSSTables))
+        for (SSTableReader sstable : Iterables.concat(compacting, fixedSamplingSSTables, newSSTables))
             total += sstable.getIndexSummaryOffHeapSize();
         logger.debug("Completed resizing of index summaries; current approximate memory used: {} MB",
                      total / 1024.0 / 1024.0);
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.io.util.SegmentedFile;
+import org.apache.cassandra.utils.concurrent.WrappedSharedCloseable;
+
+/**
+ * A byte-ordered trie over the partition keys of an sstable, resolving a key to the position of its entry in the
+ * primary index without going through the index summary and scanning the index.
+ *
+ * Keys are turned into byte strings that sort like the keys (see {@link #byteComparable}), and the trie only holds
+ * as many bytes of each of them as it takes to tell it apart from its neighbours. A lookup thus ends at the only key
+ * of the sstable that may match, whose index entry must then be checked to actually be the one looked for.
+ *
+ * The nodes are written children first, so that a node only points backwards and the root is the last node of the
+ * file. Each node is laid out as:
+ *   - a byte holding the size of the child pointers in its upper four bits (0 for a leaf) and the size of its
+ *     payload in its lower four bits (0 if no key ends there);
+ *   - if it has children, their number minus one, their transition bytes in ascending order, and the distances
+ *     from the node back to each of them;
+ *   - the position of the key's index entry, if a key ends there.
+ * The file ends with the boundaries of its segments, the position of the root and the position of those boundaries.
+ */
+public class PartitionIndex extends WrappedSharedCloseable
+{
+    static final int TRAILER_SIZE = 16;
+
+    private final SegmentedFile file;
+    private final IPartitioner partitioner;
+    private final long root;
+
+    private PartitionIndex(SegmentedFile file, IPartitioner partitioner, long root)
+    {
+        super(file);
+        this.file = file;
+        this.partitioner = partitioner;
+        this.root = root;
+    }
+
+    private PartitionIndex(PartitionIndex copy)
+    {
+        super(copy);
+        this.file = copy.file;
+        this.partitioner = copy.partitioner;
+        this.root = copy.root;
+    }
+
+    public PartitionIndex sharedCopy()
+    {
+        return new PartitionIndex(this);
+    }
+
+    public static PartitionIndex open(String path, IPartitioner partitioner) throws IOException
+    {
+        long root, boundsPosition;
+        RandomAccessReader reader = RandomAccessReader.open(new File(path));
+        SegmentedFile.Builder builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
+        try
+        {
+            reader.seek(reader.length() - TRAILER_SIZE);
+            root = reader.readLong();
+            boundsPosition = reader.readLong();
+            reader.seek(boundsPosition);
+            try
+            {
+                builder.deserializeBounds(reader);
+            }
+            catch (IOException e)
+            {
+                // the access mode changed, fall back to the boundaries the builder picks on its own
+                builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
+            }
+        }
+        finally
+        {
+            FileUtils.closeQuietly(reader);
+        }
+        return new PartitionIndex(builder.complete(path), partitioner, root);
+    }
+
+    /**
+     * @return whether the keys of the given partitioner can be turned into byte strings that sort like them
+     */
+    public static boolean supports(IPartitioner partitioner)
+    {
+        return partitioner instanceof Murmur3Partitioner
+               || partitioner instanceof RandomPartitioner
+               || partitioner instanceof ByteOrderedPartitioner;
+    }
+
+    /**
+     * @return the bytes of the token of the key followed by those of the key, encoded so that comparing them as
+     * unsigned bytes orders keys like DecoratedKey.compareTo does
+     */
+    static byte[] byteComparable(IPartitioner partitioner, DecoratedKey key)
+    {
+        ByteBuffer keyBytes = key.getKey();
+        // tokens of the byte ordered partitioner are the keys themselves
+        if (partitioner instanceof ByteOrderedPartitioner)
+        {
+            byte[] bytes = new byte[keyBytes.remaining()];
+            keyBytes.duplicate().get(bytes);
+            return bytes;
+        }
+
+        ByteBuffer token = partitioner.getTokenFactory().toByteArray(key.getToken());
+        // longs are written as is, with the sign bit flipped; big integers are positive and left-padded to a fixed
+        // size: 2^127, the largest token of the random partitioner, takes 17 bytes with its sign bit
+        int tokenSize = partitioner instanceof Murmur3Partitioner ? 8 : 17;
+        byte[] bytes = new byte[tokenSize + keyBytes.remaining()];
+        int padding = tokenSize - token.remaining();
+        token.duplicate().get(bytes, padding, token.remaining());
+        if (partitioner instanceof Murmur3Partitioner)
+            bytes[0] ^= 0x80;
+        keyBytes.duplicate().get(bytes, tokenSize, keyBytes.remaining());
+        return bytes;
+    }
+
+    /**
+     * @return the position in the primary index of the only entry that may be for the given key, or -1 if the
+     * sstable doesn't have it
+     */
+    public long get(DecoratedKey key) throws IOException
+    {
+        if (root < 0)
+            return -1;
+
+        byte[] bytes = byteComparable(partitioner, key);
+        long position = root;
+        for (int depth = 0; ; depth++)
+        {
+            FileDataInput in = file.getSegment(position);
+            try
+            {
+                int flags = in.readUnsignedByte();
+                int pointerSize = flags >>> 4;
+                int payloadSize = flags & 0x0F;
+                if (pointerSize > 0)
+                {
+                    int count = in.readUnsignedByte() + 1;
+                    int child = -1;
+                    if (depth < bytes.length)
+                    {
+                        byte[] transitions = new byte[count];
+                        in.readFully(transitions);
+                        child = search(transitions, bytes[depth] & 0xFF);
+                    }
+                    else
+                    {
+                        FileUtils.skipBytesFully(in, count);
+                    }
+
+                    if (child >= 0)
+                    {
+                        FileUtils.skipBytesFully(in, child * pointerSize);
+                        position -= readUnsigned(in, pointerSize);
+                        continue;
+                    }
+                    FileUtils.skipBytesFully(in, count * pointerSize);
+                }
+                // no key goes further down this way: the one ending here, if any, is the only candidate
+                return payloadSize == 0 ? -1 : readUnsigned(in, payloadSize);
+            }
+            finally
+            {
+                FileUtils.closeQuietly(in);
+            }
+        }
+    }
+
+    private static int search(byte[] transitions, int transition)
+    {
+        int low = 0, high = transitions.length - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int cmp = (transitions[mid] & 0xFF) - transition;
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private static long readUnsigned(FileDataInput in, int size) throws IOException
+    {
+        long value = 0;
+        for (int i = 0; i < size; i++)
+            value = (value << 8) | in.readUnsignedByte();
+        return value;
+    }
+
+    /**
+     * @return the number of bytes needed to write the given positive value
+     */
+    static int sizeOf(long value)
+    {
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 7) / 8);
+    }
+
+    public String getPath()
+    {
+        return file.path;
+    }
+}
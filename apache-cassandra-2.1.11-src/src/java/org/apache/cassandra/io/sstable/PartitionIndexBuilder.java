@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.io.util.SegmentedFile;
+import org.apache.cassandra.io.util.SequentialWriter;
+
+/**
+ * Writes the {@link PartitionIndex} of an sstable as its keys are appended in order.
+ *
+ * How many bytes of a key the trie needs depends on the keys before and after it, so each key is only added to the
+ * trie once the next one is known. The nodes for the bytes the next key doesn't share are then complete and written
+ * out, which keeps only the path to the last key in memory.
+ */
+public class PartitionIndexBuilder
+{
+    private final SequentialWriter writer;
+    private final IPartitioner partitioner;
+    private final SegmentedFile.Builder builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
+
+    // the nodes on the path to the last key, the root first
+    private final List<Node> path = new ArrayList<>();
+    private byte[] last;
+    private long lastPosition;
+    // the length of the prefix the last key shares with the one before it
+    private int lastCommonPrefix = -1;
+
+    public PartitionIndexBuilder(String filename, IPartitioner partitioner)
+    {
+        this.writer = SequentialWriter.open(new File(filename));
+        this.partitioner = partitioner;
+    }
+
+    /**
+     * @param key a key greater than all the previously added ones
+     * @param indexPosition the position of its entry in the primary index
+     */
+    public void add(DecoratedKey key, long indexPosition)
+    {
+        byte[] bytes = PartitionIndex.byteComparable(partitioner, key);
+        if (last != null)
+        {
+            int commonPrefix = commonPrefix(last, bytes);
+            addLast(commonPrefix);
+            // the nodes deeper than the common prefix won't get any other child
+            complete(commonPrefix);
+            lastCommonPrefix = commonPrefix;
+        }
+        last = bytes;
+        lastPosition = indexPosition;
+    }
+
+    /**
+     * Writes the remaining nodes and the trailer, and closes the file.
+     */
+    public void finish()
+    {
+        try
+        {
+            long root = -1;
+            if (last != null)
+            {
+                addLast(-1);
+                complete(0);
+                root = write(path.remove(0));
+            }
+            DataOutputPlus out = writer.stream;
+            long boundsPosition = writer.getFilePointer();
+            builder.serializeBounds(out);
+            out.writeLong(root);
+            out.writeLong(boundsPosition);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, writer.getPath());
+        }
+        writer.close();
+    }
+
+    public void abort()
+    {
+        writer.abort();
+    }
+
+    /**
+     * Adds the last key to the trie, with as many bytes as it takes to tell it apart from its neighbours.
+     */
+    private void addLast(int nextCommonPrefix)
+    {
+        int depth = Math.min(last.length, Math.max(lastCommonPrefix, nextCommonPrefix) + 1);
+        while (path.size() <= depth)
+            path.add(new Node());
+        path.get(depth).payload = lastPosition;
+    }
+
+    /**
+     * Writes the nodes of the path to the last key that are deeper than the given depth.
+     */
+    private void complete(int depth) throws IOException
+    {
+        while (path.size() - 1 > depth)
+        {
+            int childDepth = path.size() - 1;
+            long position = write(path.remove(childDepth));
+            path.get(childDepth - 1).addChild(last[childDepth - 1], position);
+        }
+    }
+
+    private long write(Node node) throws IOException
+    {
+        long position = writer.getFilePointer();
+        builder.addPotentialBoundary(position);
+
+        int pointerSize = node.count == 0 ? 0 : PartitionIndex.sizeOf(position - node.children[0]);
+        int payloadSize = node.payload < 0 ? 0 : PartitionIndex.sizeOf(node.payload);
+        DataOutputPlus out = writer.stream;
+        out.writeByte(pointerSize << 4 | payloadSize);
+        if (node.count > 0)
+        {
+            out.writeByte(node.count - 1);
+            out.write(node.transitions, 0, node.count);
+            // the first child is the furthest one
+            for (int i = 0; i < node.count; i++)
+                writeUnsigned(out, position - node.children[i], pointerSize);
+        }
+        if (payloadSize > 0)
+            writeUnsigned(out, node.payload, payloadSize);
+        return position;
+    }
+
+    private static void writeUnsigned(DataOutputPlus out, long value, int size) throws IOException
+    {
+        for (int i = size - 1; i >= 0; i--)
+            out.writeByte((int) (value >>> (8 * i)));
+    }
+
+    private static int commonPrefix(byte[] left, byte[] right)
+    {
+        int length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++)
+        {
+            if (left[i] != right[i])
+                return i;
+        }
+        return length;
+    }
+
+    private static final class Node
+    {
+        private byte[] transitions = new byte[4];
+        private long[] children = new long[4];
+        private int count;
+        private long payload = -1;
+
+        // children are added in ascending order
+        private void addChild(byte transition, long position)
+        {
+            if (count == transitions.length)
+            {
+                transitions = Arrays.copyOf(transitions, count * 2);
+                children = Arrays.copyOf(children, count * 2);
+            }
+            transitions[count] = transition;
+            children[count++] = position;
+        }
+    }
+}
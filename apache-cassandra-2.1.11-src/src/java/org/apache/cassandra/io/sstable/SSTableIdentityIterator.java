@@ -23,11 +23,14 @@ import java.util.Iterator;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
+import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.serializers.MarshalException;
 
 public class SSTableIdentityIterator implements Comparable<SSTableIdentityIterator>, OnDiskAtomIterator
 {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     private final DecoratedKey key;
     private final DataInput in;
     public final long dataSize; // we [still] require this so compaction can tell if it's safe to read the row into memory
@@ -38,6 +41,10 @@ public class SSTableIdentityIterator implements Comparable<SSTableIdentityIterat
     private final boolean validateColumns;
     private final String filename;
 
+    // set when the row is read by a scanner, so that it can be copied as is by copyTo()
+    private final RowIndexEntry indexEntry;
+    private final long dataEnd;
+
     // Not every SSTableIdentifyIterator is attached to a sstable, so this can be null.
     private final SSTableReader sstable;
 
@@ -63,7 +70,20 @@ public class SSTableIdentityIterator implements Comparable<SSTableIdentityIterat
      */
     public SSTableIdentityIterator(SSTableReader sstable, RandomAccessReader file, DecoratedKey key, long dataSize, boolean checkData)
     {
-        this(sstable.metadata, file, file.getPath(), key, dataSize, checkData, sstable, ColumnSerializer.Flag.LOCAL);
+        this(sstable.metadata, file, file.getPath(), key, dataSize, checkData, sstable, ColumnSerializer.Flag.LOCAL, null);
+    }
+
+    /**
+     * Used to iterate through the columns of a row, or to copy it as is.
+     * @param sstable SSTable we are reading from.
+     * @param file Reading using this file, positioned after the key of the row.
+     * @param key Key of this row.
+     * @param dataSize length of row data
+     * @param indexEntry the index entry of the row
+     */
+    public SSTableIdentityIterator(SSTableReader sstable, RandomAccessReader file, DecoratedKey key, long dataSize, RowIndexEntry indexEntry)
+    {
+        this(sstable.metadata, file, file.getPath(), key, dataSize, false, sstable, ColumnSerializer.Flag.LOCAL, indexEntry);
     }
 
     // sstable may be null *if* checkData is false
@@ -75,7 +95,8 @@ public class SSTableIdentityIterator implements Comparable<SSTableIdentityIterat
                                     long dataSize,
                                     boolean checkData,
                                     SSTableReader sstable,
-                                    ColumnSerializer.Flag flag)
+                                    ColumnSerializer.Flag flag,
+                                    RowIndexEntry indexEntry)
     {
         assert !checkData || (sstable != null);
         this.in = in;
@@ -85,6 +106,8 @@ public class SSTableIdentityIterator implements Comparable<SSTableIdentityIterat
         this.flag = flag;
         this.validateColumns = checkData;
         this.sstable = sstable;
+        this.indexEntry = indexEntry;
+        this.dataEnd = indexEntry == null ? -1 : ((RandomAccessReader) in).getFilePointer() + dataSize;
 
         Descriptor.Version dataVersion = sstable == null ? Descriptor.Version.CURRENT : sstable.descriptor.version;
         int expireBefore = (int) (System.currentTimeMillis() / 1000);
@@ -108,6 +131,41 @@ public class SSTableIdentityIterator implements Comparable<SSTableIdentityIterat
         return key;
     }
 
+    public SSTableReader getSSTable()
+    {
+        return sstable;
+    }
+
+    /**
+     * @return true if the serialized row can be copied by {@link #copyTo}, that is if it was read by a scanner
+     */
+    public boolean canCopy()
+    {
+        return indexEntry != null;
+    }
+
+    /**
+     * Copies the serialized row, key included, to out without deserializing it.
+     *
+     * @param position the position of the copy in the output file
+     * @return the index entry of the copy
+     */
+    public RowIndexEntry copyTo(long position, DataOutputPlus out) throws IOException
+    {
+        assert canCopy();
+        RandomAccessReader file = (RandomAccessReader) in;
+        file.seek(indexEntry.position);
+        byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, dataEnd - indexEntry.position)];
+        for (long remaining = dataEnd - indexEntry.position; remaining > 0; )
+        {
+            int length = (int) Math.min(buffer.length, remaining);
+            file.readFully(buffer, 0, length);
+            out.write(buffer, 0, length);
+            remaining -= length;
+        }
+        return indexEntry.withPosition(position);
+    }
+
     public ColumnFamily getColumnFamily()
     {
         return columnFamily;
@@ -210,6 +210,10 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
     private SegmentedFile dfile;
     private IndexSummary indexSummary;
     private IFilter bf;
+    // null unless the sstable has a partition index component
+    private PartitionIndex partitionIndex;
+    // null unless the sstable has a clustering filter and the table still uses them
+    private ClusteringFilter clusteringFilter;
 
     private InstrumentingCache<KeyCacheKey, RowIndexEntry> keyCache;
 
@@ -570,6 +574,8 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
                                       SegmentedFile dfile,
                                       IndexSummary isummary,
                                       IFilter bf,
+                                      PartitionIndex partitionIndex,
+                                      ClusteringFilter clusteringFilter,
                                       long maxDataAge,
                                       StatsMetadata sstableMetadata,
                                       OpenReason openReason)
@@ -582,6 +588,8 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
                                  ifile, dfile,
                                  isummary,
                                  bf,
+                                 partitionIndex,
+                                 clusteringFilter,
                                  maxDataAge,
                                  sstableMetadata,
                                  openReason);
@@ -610,6 +618,8 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
                           SegmentedFile dfile,
                           IndexSummary indexSummary,
                           IFilter bloomFilter,
+                          PartitionIndex partitionIndex,
+                          ClusteringFilter clusteringFilter,
                           long maxDataAge,
                           StatsMetadata sstableMetadata,
                           OpenReason openReason)
@@ -619,6 +629,8 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
         this.dfile = dfile;
         this.indexSummary = indexSummary;
         this.bf = bloomFilter;
+        this.partitionIndex = partitionIndex;
+        this.clusteringFilter = clusteringFilter;
         this.setup(true);
     }
 
@@ -731,13 +743,23 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
             boolean builtSummary = false;
             if (recreateBloomFilter || !summaryLoaded)
             {
-                buildSummary(recreateBloomFilter, ibuilder, dbuilder, summaryLoaded, Downsampling.BASE_SAMPLING_LEVEL);
+                // point reads of sstables with a partition index don't go through the summary
+                int samplingLevel = components.contains(Component.PARTITION_INDEX)
+                                  ? IndexSummaryBuilder.getMinimumSamplingLevel(metadata.getMinIndexInterval(), metadata.getMaxIndexInterval())
+                                  : Downsampling.BASE_SAMPLING_LEVEL;
+                buildSummary(recreateBloomFilter, ibuilder, dbuilder, summaryLoaded, samplingLevel);
                 builtSummary = true;
             }
 
             if (components.contains(Component.PRIMARY_INDEX))
                 ifile = ibuilder.complete(descriptor.filenameFor(Component.PRIMARY_INDEX));
 
+            if (components.contains(Component.PARTITION_INDEX))
+                partitionIndex = PartitionIndex.open(descriptor.filenameFor(Component.PARTITION_INDEX), partitioner);
+
+            if (components.contains(Component.CLUSTERING_FILTER) && metadata.getClusteringFilterFpChance() < 1.0)
+                clusteringFilter = ClusteringFilter.load(descriptor.filenameFor(Component.CLUSTERING_FILTER));
+
             dfile = dbuilder.complete(descriptor.filenameFor(Component.DATA));
 
             // Check for an index summary that was downsampled even though the serialization format doesn't support
@@ -784,6 +806,18 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
                 indexSummary = null;
             }
 
+            if (partitionIndex != null)
+            {
+                partitionIndex.close();
+                partitionIndex = null;
+            }
+
+            if (clusteringFilter != null)
+            {
+                clusteringFilter.close();
+                clusteringFilter = null;
+            }
+
             throw t;
         }
     }
@@ -817,7 +851,7 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
             {
 
                 if (recreateBloomFilter)
-                    bf = FilterFactory.getFilter(estimatedKeys, metadata.getBloomFilterFpChance(), true);
+                    bf = FilterFactory.getFilter(estimatedKeys, metadata.getBloomFilterFpChance(), metadata.getBloomFilterType(), true);
 
                 long indexPosition;
                 while ((indexPosition = primaryIndex.getFilePointer()) != indexSize)
@@ -1060,6 +1094,8 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
                                                  dfile.sharedCopy(),
                                                  newSummary,
                                                  bf.sharedCopy(),
+                                                 partitionIndex != null ? partitionIndex.sharedCopy() : null,
+                                                 clusteringFilter != null ? clusteringFilter.sharedCopy() : null,
                                                  maxDataAge,
                                                  sstableMetadata,
                                                  reason);
@@ -1636,15 +1672,18 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
             return null;
         }
 
+        if (ifile == null)
+            return null;
+
+        if (op == Operator.EQ && partitionIndex != null)
+            return getPositionFromPartitionIndex((DecoratedKey) key, updateCacheAndStats);
+
         int binarySearchResult = indexSummary.binarySearch(key);
         long sampledPosition = getIndexScanPositionFromBinarySearchResult(binarySearchResult, indexSummary);
         int sampledIndex = getIndexSummaryIndexFromBinarySearchResult(binarySearchResult);
 
         int effectiveInterval = indexSummary.getEffectiveIndexIntervalAfterIndex(sampledIndex);
 
-        if (ifile == null)
-            return null;
-
         // scan the on-disk index, starting at the nearest sampled position.
         // The check against IndexInterval is to be exit the loop in the EQ case when the key looked for is not present
         // (bloom filter false positive). But note that for non-EQ cases, we might need to check the first key of the
@@ -1734,6 +1773,85 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
         return null;
     }
 
+    private RowIndexEntry getPositionFromPartitionIndex(DecoratedKey key, boolean updateCacheAndStats)
+    {
+        FileDataInput in = null;
+        try
+        {
+            long indexPosition = partitionIndex.get(key);
+            if (indexPosition >= 0)
+            {
+                in = ifile.getSegment(indexPosition);
+                // the partition index only stores as much of the keys as it needs to tell them apart, so this is the
+                // only key that may match but not necessarily the one looked for
+                if (ByteBufferUtil.readWithShortLength(in).equals(key.getKey()))
+                {
+                    RowIndexEntry indexEntry = metadata.comparator.rowIndexEntrySerializer().deserialize(in, descriptor.version);
+                    if (updateCacheAndStats)
+                    {
+                        cacheKey(key, indexEntry);
+                        bloomFilterTracker.addTruePositive();
+                    }
+                    Tracing.trace("Partition index with {} entries found for sstable {}", indexEntry.columnsIndex().size(), descriptor.generation);
+                    return indexEntry;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            markSuspect();
+            throw new CorruptSSTableException(e, in == null ? partitionIndex.getPath() : in.getPath());
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
+
+        if (updateCacheAndStats)
+            bloomFilterTracker.addFalsePositive();
+        Tracing.trace("Partition index lookup complete (bloom filter false positive) for sstable {}", descriptor.generation);
+        return null;
+    }
+
+    /**
+     * @return true if point reads of this sstable resolve keys through its partition index rather than the summary
+     */
+    public boolean hasPartitionIndex()
+    {
+        return partitionIndex != null;
+    }
+
+    /**
+     * @return false if this sstable is known not to have anything for the key under any of the given first clustering
+     * components, see {@link ClusteringFilter#requiredPrefixes}
+     */
+    public boolean mayContainClusteringPrefixes(DecoratedKey key, List<ByteBuffer> prefixes)
+    {
+        return clusteringFilter == null || clusteringFilter.mayContain(key, prefixes);
+    }
+
+    /**
+     * Asks the OS to read the given range of the data file, extended to whole chunks if it is compressed, into the
+     * page cache in the background, so that reading it later waits less or not at all on the disk.
+     */
+    public void prefetch(long position, long length)
+    {
+        long start = position;
+        long end = Math.min(position + length, dfile.length);
+        if (start >= end)
+            return;
+
+        if (compression)
+        {
+            CompressionMetadata compressionMetadata = ((ICompressedFile) dfile).getMetadata();
+            CompressionMetadata.Chunk last = compressionMetadata.chunkFor(end - 1);
+            start = compressionMetadata.chunkFor(start).offset;
+            end = last.offset + last.length + 4; // the checksum of the chunk
+        }
+
+        dfile.prefetch(start, end - start);
+    }
+
     /**
      * Finds and returns the first key beyond a given token in this SSTable or null if no such key exists.
      */
@@ -2164,6 +2282,8 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
         private final CFMetaData metadata;
         private IFilter bf;
         private IndexSummary summary;
+        private PartitionIndex partitionIndex;
+        private ClusteringFilter clusteringFilter;
 
         private SegmentedFile dfile;
         private SegmentedFile ifile;
@@ -2186,6 +2306,8 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
             this.setup = true;
             this.bf = reader.bf;
             this.summary = reader.indexSummary;
+            this.partitionIndex = reader.partitionIndex;
+            this.clusteringFilter = reader.clusteringFilter;
             this.dfile = reader.dfile;
             this.ifile = reader.ifile;
             // get a new reference to the shared descriptor-type tidy
@@ -2234,6 +2356,10 @@ public class SSTableReader extends SSTable implements SelfRefCounted<SSTableRead
                         dfile.close();
                     if (ifile != null)
                         ifile.close();
+                    if (partitionIndex != null)
+                        partitionIndex.close();
+                    if (clusteringFilter != null)
+                        clusteringFilter.close();
                     typeRef.release();
                 }
             });
@@ -290,7 +290,7 @@ public class SSTableScanner implements ISSTableScanner
                     dfile.seek(currentEntry.position);
                     ByteBufferUtil.readWithShortLength(dfile); // key
                     long dataSize = readEnd - dfile.getFilePointer();
-                    return new SSTableIdentityIterator(sstable, dfile, currentKey, dataSize);
+                    return new SSTableIdentityIterator(sstable, dfile, currentKey, dataSize, currentEntry);
                 }
 
                 return new LazyColumnIterator(currentKey, new IColumnIteratorFactory()
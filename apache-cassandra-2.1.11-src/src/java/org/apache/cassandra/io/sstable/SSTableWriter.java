@@ -46,6 +46,7 @@ import org.apache.cassandra.db.RangeTombstone;
 import org.apache.cassandra.db.RowIndexEntry;
 import org.apache.cassandra.db.compaction.AbstractCompactedRow;
 import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.FSWriteError;
 import org.apache.cassandra.io.compress.CompressedSequentialWriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
@@ -86,7 +87,7 @@ public class SSTableWriter extends SSTable
              new MetadataCollector(Schema.instance.getCFMetaData(Descriptor.fromFilename(filename)).comparator));
     }
 
-    private static Set<Component> components(CFMetaData metadata)
+    private static Set<Component> components(CFMetaData metadata, IPartitioner partitioner)
     {
         Set<Component> components = new HashSet<Component>(Arrays.asList(Component.DATA,
                                                                          Component.PRIMARY_INDEX,
@@ -98,6 +99,12 @@ public class SSTableWriter extends SSTable
         if (metadata.getBloomFilterFpChance() < 1.0)
             components.add(Component.FILTER);
 
+        if (DatabaseDescriptor.isTriePartitionIndexEnabled() && PartitionIndex.supports(partitioner))
+            components.add(Component.PARTITION_INDEX);
+
+        if (ClusteringFilter.supports(metadata))
+            components.add(Component.CLUSTERING_FILTER);
+
         if (metadata.compressionParameters().sstableCompressor != null)
         {
             components.add(Component.COMPRESSION_INFO);
@@ -119,7 +126,7 @@ public class SSTableWriter extends SSTable
                          MetadataCollector sstableMetadataCollector)
     {
         super(Descriptor.fromFilename(filename),
-              components(metadata),
+              components(metadata, partitioner),
               metadata,
               partitioner);
         this.repairedAt = repairedAt;
@@ -189,7 +196,7 @@ public class SSTableWriter extends SSTable
         RowIndexEntry entry;
         try
         {
-            entry = row.write(startPosition, dataFile.stream);
+            entry = row.write(startPosition, dataFile.stream, iwriter.clusteringFilter);
             if (entry == null)
                 return null;
         }
@@ -219,7 +226,7 @@ public class SSTableWriter extends SSTable
         long endPosition;
         try
         {
-            RowIndexEntry entry = rawAppend(cf, startPosition, decoratedKey, dataFile.stream);
+            RowIndexEntry entry = rawAppend(cf, startPosition, decoratedKey, dataFile.stream, iwriter.clusteringFilter);
             endPosition = dataFile.getFilePointer();
             afterAppend(decoratedKey, endPosition, entry);
         }
@@ -242,10 +249,15 @@ public class SSTableWriter extends SSTable
     }
 
     public static RowIndexEntry rawAppend(ColumnFamily cf, long startPosition, DecoratedKey key, DataOutputPlus out) throws IOException
+    {
+        return rawAppend(cf, startPosition, key, out, null);
+    }
+
+    private static RowIndexEntry rawAppend(ColumnFamily cf, long startPosition, DecoratedKey key, DataOutputPlus out, ClusteringFilterBuilder clusteringFilter) throws IOException
     {
         assert cf.hasColumns() || cf.isMarkedForDelete();
 
-        ColumnIndex.Builder builder = new ColumnIndex.Builder(cf, key.getKey(), out);
+        ColumnIndex.Builder builder = new ColumnIndex.Builder(cf, key.getKey(), out, clusteringFilter);
         ColumnIndex index = builder.build(cf);
 
         out.writeShort(END_OF_ROW);
@@ -271,7 +283,7 @@ public class SSTableWriter extends SSTable
         ColumnFamily cf = ArrayBackedSortedColumns.factory.create(metadata);
         cf.delete(DeletionTime.serializer.deserialize(in));
 
-        ColumnIndex.Builder columnIndexer = new ColumnIndex.Builder(cf, key.getKey(), dataFile.stream);
+        ColumnIndex.Builder columnIndexer = new ColumnIndex.Builder(cf, key.getKey(), dataFile.stream, iwriter.clusteringFilter);
 
         if (cf.deletionInfo().getTopLevelDeletion().localDeletionTime < Integer.MAX_VALUE)
         {
@@ -407,11 +419,12 @@ public class SSTableWriter extends SSTable
         // open the reader early, giving it a FINAL descriptor type so that it is indistinguishable for other consumers
         SegmentedFile ifile = iwriter.builder.complete(link.filenameFor(Component.PRIMARY_INDEX), boundary.indexLength);
         SegmentedFile dfile = dbuilder.complete(link.filenameFor(Component.DATA), boundary.dataLength);
+        // the partition index is only complete once the writer is, until then the reader goes through the summary
         SSTableReader sstable = SSTableReader.internalOpen(descriptor.asType(Descriptor.Type.FINAL),
                                                            components, metadata,
                                                            partitioner, ifile,
                                                            dfile, iwriter.summary.build(partitioner, boundary),
-                                                           iwriter.bf.sharedCopy(), maxDataAge, sstableMetadata, SSTableReader.OpenReason.EARLY);
+                                                           iwriter.bf.sharedCopy(), null, null, maxDataAge, sstableMetadata, SSTableReader.OpenReason.EARLY);
 
         // now it's open, find the ACTUAL last readable key (i.e. for which the data file has also been flushed)
         sstable.first = getMinimalKey(first);
@@ -460,6 +473,33 @@ public class SSTableWriter extends SSTable
         // finalize in-memory state for the reader
         SegmentedFile ifile = iwriter.builder.complete(desc.filenameFor(Component.PRIMARY_INDEX), finishType.isFinal);
         SegmentedFile dfile = dbuilder.complete(desc.filenameFor(Component.DATA), finishType.isFinal);
+        // only the index and data files are linked for an early finish
+        PartitionIndex partitionIndex = null;
+        if (finishType != FinishType.EARLY && components.contains(Component.PARTITION_INDEX))
+        {
+            String path = desc.filenameFor(Component.PARTITION_INDEX);
+            try
+            {
+                partitionIndex = PartitionIndex.open(path, partitioner);
+            }
+            catch (IOException e)
+            {
+                throw new FSReadError(e, path);
+            }
+        }
+        ClusteringFilter clusteringFilter = null;
+        if (finishType != FinishType.EARLY && components.contains(Component.CLUSTERING_FILTER))
+        {
+            String path = desc.filenameFor(Component.CLUSTERING_FILTER);
+            try
+            {
+                clusteringFilter = ClusteringFilter.load(path);
+            }
+            catch (IOException e)
+            {
+                throw new FSReadError(e, path);
+            }
+        }
         SSTableReader sstable = SSTableReader.internalOpen(desc.asType(Descriptor.Type.FINAL),
                                                            components,
                                                            this.metadata,
@@ -468,6 +508,8 @@ public class SSTableWriter extends SSTable
                                                            dfile,
                                                            iwriter.summary.build(partitioner),
                                                            iwriter.bf.sharedCopy(),
+                                                           partitionIndex,
+                                                           clusteringFilter,
                                                            maxDataAge,
                                                            metadata,
                                                            finishType.openReason);
@@ -580,14 +622,30 @@ public class SSTableWriter extends SSTable
         public final SegmentedFile.Builder builder;
         public final IndexSummaryBuilder summary;
         public final IFilter bf;
+        private final PartitionIndexBuilder partitionIndex;
+        final ClusteringFilterBuilder clusteringFilter;
         private FileMark mark;
 
         IndexWriter(long keyCount, final SequentialWriter dataFile)
         {
             indexFile = SequentialWriter.open(new File(descriptor.filenameFor(Component.PRIMARY_INDEX)));
             builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
-            summary = new IndexSummaryBuilder(keyCount, metadata.getMinIndexInterval(), Downsampling.BASE_SAMPLING_LEVEL);
-            bf = FilterFactory.getFilter(keyCount, metadata.getBloomFilterFpChance(), true);
+            if (components.contains(Component.PARTITION_INDEX))
+            {
+                partitionIndex = new PartitionIndexBuilder(descriptor.filenameFor(Component.PARTITION_INDEX), partitioner);
+                // point reads don't go through the summary, so it is sampled as little as it can be from the start
+                summary = new IndexSummaryBuilder(keyCount, metadata.getMinIndexInterval(),
+                                                  IndexSummaryBuilder.getMinimumSamplingLevel(metadata.getMinIndexInterval(), metadata.getMaxIndexInterval()));
+            }
+            else
+            {
+                partitionIndex = null;
+                summary = new IndexSummaryBuilder(keyCount, metadata.getMinIndexInterval(), Downsampling.BASE_SAMPLING_LEVEL);
+            }
+            bf = FilterFactory.getFilter(keyCount, metadata.getBloomFilterFpChance(), metadata.getBloomFilterType(), true);
+            clusteringFilter = components.contains(Component.CLUSTERING_FILTER)
+                             ? new ClusteringFilterBuilder(descriptor.filenameFor(Component.CLUSTERING_FILTER), metadata.getClusteringFilterFpChance())
+                             : null;
             // register listeners to be alerted when the data files are flushed
             indexFile.setPostFlushListener(new Runnable()
             {
@@ -631,6 +689,8 @@ public class SSTableWriter extends SSTable
 
             summary.maybeAddEntry(key, indexStart, indexEnd, dataEnd);
             builder.addPotentialBoundary(indexStart);
+            if (partitionIndex != null)
+                partitionIndex.add(key, indexStart);
         }
 
         public void abort()
@@ -638,6 +698,8 @@ public class SSTableWriter extends SSTable
             summary.close();
             indexFile.abort();
             bf.close();
+            if (partitionIndex != null)
+                partitionIndex.abort();
         }
 
         /**
@@ -668,6 +730,12 @@ public class SSTableWriter extends SSTable
             long position = indexFile.getFilePointer();
             indexFile.close(); // calls force
             FileUtils.truncate(indexFile.getPath(), position);
+
+            if (partitionIndex != null)
+                partitionIndex.finish();
+
+            if (clusteringFilter != null)
+                clusteringFilter.finish();
         }
 
         public void mark()
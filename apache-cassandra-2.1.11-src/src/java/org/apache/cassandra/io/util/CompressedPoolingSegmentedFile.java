@@ -17,42 +17,138 @@
 */
 package org.apache.cassandra.io.util;
 
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TreeMap;
+
 import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.cache.ChunkCache;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
 import org.apache.cassandra.io.compress.CompressedSequentialWriter;
 import org.apache.cassandra.io.compress.CompressedThrottledReader;
 import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.utils.JVMStabilityInspector;
 
 public class CompressedPoolingSegmentedFile extends PoolingSegmentedFile implements ICompressedFile
 {
+    private static final Logger logger = LoggerFactory.getLogger(CompressedPoolingSegmentedFile.class);
+
     public final CompressionMetadata metadata;
 
+    /**
+     * Mapped regions of the compressed file keyed by their file offset, if mmap is enabled; each region ends on a
+     * chunk boundary, so chunks (and their trailing checksums) never straddle two of them. Null for standard i/o.
+     */
+    private final TreeMap<Long, MappedByteBuffer> chunkSegments;
+
+    // the id the chunks of this file, shared by its copies, are cached under
+    private final long chunkCacheId;
+
     public CompressedPoolingSegmentedFile(String path, CompressionMetadata metadata)
     {
-        super(new Cleanup(path, metadata), path, metadata.dataLength, metadata.compressedFileLength);
+        this(path, metadata, DatabaseDescriptor.getDiskAccessMode() == Config.DiskAccessMode.mmap
+                             ? createMappedSegments(path, metadata)
+                             : null, ChunkCache.instance.nextFileId());
+    }
+
+    private CompressedPoolingSegmentedFile(String path, CompressionMetadata metadata, TreeMap<Long, MappedByteBuffer> chunkSegments, long chunkCacheId)
+    {
+        super(new Cleanup(path, metadata, chunkSegments, chunkCacheId), path, metadata.dataLength, metadata.compressedFileLength);
         this.metadata = metadata;
+        this.chunkSegments = chunkSegments;
+        this.chunkCacheId = chunkCacheId;
     }
 
     private CompressedPoolingSegmentedFile(CompressedPoolingSegmentedFile copy)
     {
         super(copy);
         this.metadata = copy.metadata;
+        this.chunkSegments = copy.chunkSegments;
+        this.chunkCacheId = copy.chunkCacheId;
     }
 
     protected static final class Cleanup extends PoolingSegmentedFile.Cleanup
     {
         final CompressionMetadata metadata;
-        protected Cleanup(String path, CompressionMetadata metadata)
+        final TreeMap<Long, MappedByteBuffer> chunkSegments;
+        final long chunkCacheId;
+        protected Cleanup(String path, CompressionMetadata metadata, TreeMap<Long, MappedByteBuffer> chunkSegments, long chunkCacheId)
         {
             super(path);
             this.metadata = metadata;
+            this.chunkSegments = chunkSegments;
+            this.chunkCacheId = chunkCacheId;
         }
         public void tidy() throws Exception
         {
             super.tidy();
+            // the id is never reused, but the chunks would otherwise hold on to off-heap memory until evicted
+            if (ChunkCache.instance.isEnabled())
+                ChunkCache.instance.invalidateFile(chunkCacheId);
             metadata.close();
+            if (chunkSegments == null || !FileUtils.isCleanerAvailable())
+                return;
+
+            // as with MmappedSegmentedFile, unmap eagerly rather than waiting for the GC to finalize the mappings
+            try
+            {
+                for (MappedByteBuffer segment : chunkSegments.values())
+                    FileUtils.clean(segment);
+            }
+            catch (Exception e)
+            {
+                JVMStabilityInspector.inspectThrowable(e);
+                // This is not supposed to happen
+                logger.error("Error while unmapping segments", e);
+            }
+        }
+    }
+
+    /**
+     * Maps the compressed file in regions of at most MmappedSegmentedFile.MAX_SEGMENT_SIZE, cutting only at chunk
+     * boundaries.
+     */
+    private static TreeMap<Long, MappedByteBuffer> createMappedSegments(String path, CompressionMetadata metadata)
+    {
+        TreeMap<Long, MappedByteBuffer> chunkSegments = new TreeMap<>();
+        try (RandomAccessFile raf = new RandomAccessFile(path, "r"))
+        {
+            FileChannel channel = raf.getChannel();
+            // the regions are bounded by the chunk offsets of the metadata, each one starting with a chunk and
+            // ending with the checksum of the last chunk that fits in it
+            long segmentOffset = -1;
+            long segmentEnd = -1;
+            for (long offset = 0; offset < metadata.dataLength; offset += metadata.chunkLength())
+            {
+                CompressionMetadata.Chunk chunk = metadata.chunkFor(offset);
+                long chunkEnd = chunk.offset + chunk.length + 4; // trailing checksum
+                if (segmentOffset < 0)
+                {
+                    segmentOffset = chunk.offset;
+                }
+                else if (chunkEnd - segmentOffset > MmappedSegmentedFile.MAX_SEGMENT_SIZE)
+                {
+                    chunkSegments.put(segmentOffset, channel.map(FileChannel.MapMode.READ_ONLY, segmentOffset, segmentEnd - segmentOffset));
+                    segmentOffset = chunk.offset;
+                }
+                segmentEnd = chunkEnd;
+            }
+            if (segmentOffset >= 0)
+                chunkSegments.put(segmentOffset, channel.map(FileChannel.MapMode.READ_ONLY, segmentOffset, segmentEnd - segmentOffset));
         }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, path);
+        }
+        return chunkSegments;
     }
 
     public static class Builder extends CompressedSegmentedFile.Builder
@@ -82,7 +178,7 @@ public class CompressedPoolingSegmentedFile extends PoolingSegmentedFile impleme
 
     public RandomAccessReader createReader()
     {
-        return CompressedRandomAccessReader.open(path, metadata, null);
+        return CompressedRandomAccessReader.open(path, metadata, null, chunkSegments, chunkCache(), chunkCacheId);
     }
 
     public RandomAccessReader createThrottledReader(RateLimiter limiter)
@@ -92,7 +188,12 @@ public class CompressedPoolingSegmentedFile extends PoolingSegmentedFile impleme
 
     protected RandomAccessReader createPooledReader()
     {
-        return CompressedRandomAccessReader.open(path, metadata, this);
+        return CompressedRandomAccessReader.open(path, metadata, this, chunkSegments, chunkCache(), chunkCacheId);
+    }
+
+    private static ChunkCache chunkCache()
+    {
+        return ChunkCache.instance.isEnabled() ? ChunkCache.instance : null;
     }
 
     public CompressionMetadata getMetadata()
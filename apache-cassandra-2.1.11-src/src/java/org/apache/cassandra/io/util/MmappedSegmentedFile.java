@@ -35,6 +35,7 @@ import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.IndexSummary;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.CLibrary;
 import org.apache.cassandra.utils.JVMStabilityInspector;
 
 public class MmappedSegmentedFile extends SegmentedFile
@@ -51,16 +52,25 @@ public class MmappedSegmentedFile extends SegmentedFile
      */
     private final Segment[] segments;
 
+    private final Cleanup cleanup;
+
     public MmappedSegmentedFile(String path, long length, Segment[] segments)
     {
-        super(new Cleanup(path, segments), path, length);
+        this(new Cleanup(path, segments), path, length, segments);
+    }
+
+    private MmappedSegmentedFile(Cleanup cleanup, String path, long length, Segment[] segments)
+    {
+        super(cleanup, path, length);
         this.segments = segments;
+        this.cleanup = cleanup;
     }
 
     private MmappedSegmentedFile(MmappedSegmentedFile copy)
     {
         super(copy);
         this.segments = copy.segments;
+        this.cleanup = copy.cleanup;
     }
 
     public MmappedSegmentedFile sharedCopy()
@@ -103,17 +113,40 @@ public class MmappedSegmentedFile extends SegmentedFile
         return file;
     }
 
+    @Override
+    public void prefetch(long offset, long length)
+    {
+        CLibrary.tryWillNeed(cleanup.fd(), offset, (int) Math.min(Integer.MAX_VALUE, length));
+    }
+
     private static final class Cleanup extends SegmentedFile.Cleanup
     {
         final Segment[] segments;
+        // a descriptor of the file to prefetch through, opened on the first prefetch; -1 if unavailable
+        private int fd = -2;
+
         protected Cleanup(String path, Segment[] segments)
         {
             super(path);
             this.segments = segments;
         }
 
+        synchronized int fd()
+        {
+            if (fd == -2)
+                fd = CLibrary.tryOpenReadOnly(path);
+            return fd;
+        }
+
         public void tidy()
         {
+            synchronized (this)
+            {
+                if (fd >= 0)
+                    CLibrary.tryCloseFD(fd);
+                fd = -1;
+            }
+
             if (!FileUtils.isCleanerAvailable())
                 return;
 
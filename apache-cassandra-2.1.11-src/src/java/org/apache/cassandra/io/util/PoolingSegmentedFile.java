@@ -65,6 +65,23 @@ public abstract class PoolingSegmentedFile extends SegmentedFile
         return reader;
     }
 
+    @Override
+    public void prefetch(long offset, long length)
+    {
+        // hints through the descriptor of a pooled reader, which isn't seeked as that would read the position
+        RandomAccessReader reader = FileCacheService.instance.get(cacheKey);
+        if (reader == null)
+            reader = createPooledReader();
+        try
+        {
+            reader.willNeed(offset, length);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
     protected RandomAccessReader createPooledReader()
     {
         return RandomAccessReader.open(new File(path), length, this);
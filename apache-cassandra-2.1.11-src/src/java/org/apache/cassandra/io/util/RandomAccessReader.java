@@ -24,6 +24,7 @@ import java.nio.channels.FileChannel;
 import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.utils.CLibrary;
 
 public class RandomAccessReader extends RandomAccessFile implements FileDataInput
 {
@@ -49,6 +50,9 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
     // channel liked with the file, used to retrieve data and force updates.
     protected final FileChannel channel;
 
+    // the system descriptor of the file, looked up on the first willNeed(); -1 if unavailable
+    private int fd = -2;
+
     // this can be overridden at construction to a value shorter than the true length of the file;
     // if so, it acts as an imposed limit on reads, rather than a convenience property
     private final long fileLength;
@@ -243,6 +247,26 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
         validBufferBytes = 0;
     }
 
+    /**
+     * Asks the OS to read the given range of the file into the page cache in the background, without moving the
+     * position of this reader.
+     */
+    public void willNeed(long offset, long length)
+    {
+        if (fd == -2)
+        {
+            try
+            {
+                fd = CLibrary.getfd(getFD());
+            }
+            catch (IOException e)
+            {
+                fd = -1;
+            }
+        }
+        CLibrary.tryWillNeed(fd, offset, (int) Math.min(Integer.MAX_VALUE, length));
+    }
+
     @Override
     public void close()
     {
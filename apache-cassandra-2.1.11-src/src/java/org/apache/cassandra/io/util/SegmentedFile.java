@@ -118,6 +118,14 @@ public abstract class SegmentedFile extends SharedCloseableImpl
         CLibrary.trySkipCache(path, 0, before);
     }
 
+    /**
+     * Asks the OS to read the given range of the file on disk into the page cache in the background. Files that
+     * keep no descriptor open to hint through don't prefetch anything.
+     */
+    public void prefetch(long offset, long length)
+    {
+    }
+
     /**
      * @return A SegmentedFile.Builder.
      */
@@ -25,10 +25,10 @@ import com.yammer.metrics.core.Gauge;
 import com.yammer.metrics.core.Meter;
 import com.yammer.metrics.util.RatioGauge;
 
-import org.apache.cassandra.cache.ICache;
+import org.apache.cassandra.cache.CacheSize;
 
 /**
- * Metrics for {@code ICache}.
+ * Metrics for {@code ICache} and the other sized caches.
  */
 public class CacheMetrics
 {
@@ -54,7 +54,7 @@ public class CacheMetrics
      * @param type Type of Cache to identify metrics.
      * @param cache Cache to measure metrics
      */
-    public CacheMetrics(String type, final ICache cache)
+    public CacheMetrics(String type, final CacheSize cache)
     {
         MetricNameFactory factory = new DefaultNameFactory("Cache", type);
 
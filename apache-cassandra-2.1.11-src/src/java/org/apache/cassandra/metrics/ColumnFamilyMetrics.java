@@ -78,6 +78,8 @@ public class ColumnFamilyMetrics
     public final Counter pendingFlushes;
     /** Estimate of number of pending compactios for this CF */
     public final Gauge<Integer> pendingCompactions;
+    /** Estimate of the number of bytes compactions still have to write for this CF */
+    public final Gauge<Long> pendingCompactionBytes;
     /** Number of SSTables on disk for this CF */
     public final Gauge<Integer> liveSSTableCount;
     /** Disk space used by SSTables belonging to this CF */
@@ -357,6 +359,13 @@ public class ColumnFamilyMetrics
                 return cfs.getCompactionStrategy().getEstimatedRemainingTasks();
             }
         });
+        pendingCompactionBytes = createColumnFamilyGauge("PendingCompactionBytes", new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return cfs.getCompactionStrategy().getEstimatedRemainingBytes();
+            }
+        });
         liveSSTableCount = createColumnFamilyGauge("LiveSSTableCount", new Gauge<Integer>()
         {
             public Integer value()
@@ -18,7 +18,9 @@
 package org.apache.cassandra.metrics;
 
 import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
 import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
 
 import com.yammer.metrics.core.Timer;
 import org.apache.cassandra.db.commitlog.AbstractCommitLogService;
@@ -43,9 +45,23 @@ public class CommitLogMetrics
     public final Timer waitingOnSegmentAllocation;
     /** The time spent waiting on CL sync; for Periodic this is only occurs when the sync is lagging its sync interval */
     public final Timer waitingOnCommit;
+    /** Number of mutations made durable by each sync; shows how well group and batch modes amortise the fsync */
+    public final Histogram mutationsPerSync;
+    /** Total size of the segments being replayed by the current (or last) commit log replay */
+    public final Counter replayTotalBytes;
+    /** Number of bytes of those segments replayed so far */
+    public final Counter replayedBytes;
+    /** Fraction of the commit log replayed so far, between 0 and 1 */
+    public final Gauge<Double> replayProgress;
 
-    public CommitLogMetrics(final AbstractCommitLogService service, final CommitLogSegmentManager allocator)
+    /**
+     * @param group the keyspace group the commit log is dedicated to, used as the metrics scope; null for the
+     * node-wide commit log
+     */
+    public CommitLogMetrics(final AbstractCommitLogService service, final CommitLogSegmentManager allocator, String group)
     {
+        MetricNameFactory factory = group == null ? CommitLogMetrics.factory : new DefaultNameFactory("CommitLog", group);
+
         completedTasks = Metrics.newGauge(factory.createMetricName("CompletedTasks"), new Gauge<Long>()
         {
             public Long value()
@@ -69,5 +85,16 @@ public class CommitLogMetrics
         });
         waitingOnSegmentAllocation = Metrics.newTimer(factory.createMetricName("WaitingOnSegmentAllocation"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
         waitingOnCommit = Metrics.newTimer(factory.createMetricName("WaitingOnCommit"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        mutationsPerSync = Metrics.newHistogram(factory.createMetricName("MutationsPerSync"), true);
+        replayTotalBytes = Metrics.newCounter(factory.createMetricName("ReplayTotalBytes"));
+        replayedBytes = Metrics.newCounter(factory.createMetricName("ReplayedBytes"));
+        replayProgress = Metrics.newGauge(factory.createMetricName("ReplayProgress"), new Gauge<Double>()
+        {
+            public Double value()
+            {
+                long total = replayTotalBytes.count();
+                return total == 0 ? 1.0 : Math.min(1.0, (double) replayedBytes.count() / total);
+            }
+        });
     }
 }
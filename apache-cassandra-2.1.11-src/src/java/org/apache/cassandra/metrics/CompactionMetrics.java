@@ -44,6 +44,8 @@ public class CompactionMetrics implements CompactionManager.CompactionExecutorSt
 
     /** Estimated number of compactions remaining to perform */
     public final Gauge<Integer> pendingTasks;
+    /** Estimated number of bytes compactions still have to write */
+    public final Gauge<Long> pendingBytes;
     /** Number of completed compactions since server [re]start */
     public final Gauge<Long> completedTasks;
     /** Total number of compactions since server [re]start */
@@ -68,6 +70,25 @@ public class CompactionMetrics implements CompactionManager.CompactionExecutorSt
                 return n + compactions.size();
             }
         });
+        pendingBytes = Metrics.newGauge(factory.createMetricName("PendingBytes"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                long n = 0;
+                for (String keyspaceName : Schema.instance.getKeyspaces())
+                {
+                    for (ColumnFamilyStore cfs : Keyspace.open(keyspaceName).getColumnFamilyStores())
+                        n += cfs.getCompactionStrategy().getEstimatedRemainingBytes();
+                }
+                // add what currently running compactions have left to do
+                for (CompactionInfo.Holder holder : getCompactions())
+                {
+                    CompactionInfo info = holder.getCompactionInfo();
+                    n += Math.max(0L, info.getTotal() - info.getCompleted());
+                }
+                return n;
+            }
+        });
         completedTasks = Metrics.newGauge(factory.createMetricName("CompletedTasks"), new Gauge<Long>()
         {
             public Long value()
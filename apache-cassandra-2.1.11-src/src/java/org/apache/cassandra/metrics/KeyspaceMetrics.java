@@ -52,6 +52,8 @@ public class KeyspaceMetrics
     public final Gauge<Long> pendingFlushes;
     /** Estimate of number of pending compactios for this CF */
     public final Gauge<Long> pendingCompactions;
+    /** Estimate of the number of bytes compactions still have to write for this keyspace */
+    public final Gauge<Long> pendingCompactionBytes;
     /** Disk space used by SSTables belonging to this CF */
     public final Gauge<Long> liveDiskSpaceUsed;
     /** Total disk space used by SSTables belonging to this CF, including obsolete ones waiting to be GC'd */
@@ -163,6 +165,13 @@ public class KeyspaceMetrics
                 return (long) metric.pendingCompactions.value();
             }
         });
+        pendingCompactionBytes = createKeyspaceGauge("PendingCompactionBytes", new MetricValue()
+        {
+            public Long getValue(ColumnFamilyMetrics metric)
+            {
+                return metric.pendingCompactionBytes.value();
+            }
+        });
         pendingFlushes = createKeyspaceGauge("PendingFlushes", new MetricValue()
         {
             public Long getValue(ColumnFamilyMetrics metric)
@@ -179,9 +179,11 @@ public class CassandraDaemon
         });
 
         // check all directories(data, commitlog, saved cache) for existence and permission
-        Iterable<String> dirs = Iterables.concat(Arrays.asList(DatabaseDescriptor.getAllDataFileLocations()),
-                                                 Arrays.asList(DatabaseDescriptor.getCommitLogLocation(),
-                                                               DatabaseDescriptor.getSavedCachesLocation()));
+        List<String> dirs = new ArrayList<>(Arrays.asList(DatabaseDescriptor.getAllDataFileLocations()));
+        dirs.add(DatabaseDescriptor.getCommitLogLocation());
+        for (CommitLogGroupOptions group : DatabaseDescriptor.getCommitLogGroups())
+            dirs.add(group.directory);
+        dirs.add(DatabaseDescriptor.getSavedCachesLocation());
         for (String dataDir : dirs)
         {
             logger.debug("Checking directory {}", dataDir);
@@ -259,8 +261,8 @@ public class CassandraDaemon
 
         GCInspector.register();
 
-        // replay the log if necessary
-        CommitLog.instance.recover();
+        // replay the logs if necessary
+        CommitLog.recoverAll();
 
         // enable auto compaction
         for (Keyspace keyspace : Keyspace.all())
@@ -489,7 +489,8 @@ implements IEndpointStateChangeSubscriber, StorageServiceMBean
                 
                 FBUtilities.waitOnFutures(flushes);
 
-                CommitLog.instance.shutdownBlocking();
+                for (CommitLog commitLog : CommitLog.all())
+                    commitLog.shutdownBlocking();
 
                 // wait for miscellaneous tasks like sstable and commitlog segment deletion
                 ScheduledExecutors.nonPeriodicTasks.shutdown();
@@ -2001,10 +2002,15 @@ implements IEndpointStateChangeSubscriber, StorageServiceMBean
     }
 
     public void forceKeyspaceCompaction(String keyspaceName, String... columnFamilies) throws IOException, ExecutionException, InterruptedException
+    {
+        forceKeyspaceCompaction(false, keyspaceName, columnFamilies);
+    }
+
+    public void forceKeyspaceCompaction(boolean incremental, String keyspaceName, String... columnFamilies) throws IOException, ExecutionException, InterruptedException
     {
         for (ColumnFamilyStore cfStore : getValidColumnFamilies(true, false, keyspaceName, columnFamilies))
         {
-            cfStore.forceMajorCompaction();
+            cfStore.forceMajorCompaction(incremental);
         }
     }
 
@@ -3478,11 +3484,13 @@ implements IEndpointStateChangeSubscriber, StorageServiceMBean
 
         // whilst we've flushed all the CFs, which will have recycled all completed segments, we want to ensure
         // there are no segments to replay, so we force the recycling of any remaining (should be at most one)
-        CommitLog.instance.forceRecycleAllSegments();
+        for (CommitLog commitLog : CommitLog.all())
+            commitLog.forceRecycleAllSegments();
 
         ColumnFamilyStore.shutdownPostFlushExecutor();
 
-        CommitLog.instance.shutdownBlocking();
+        for (CommitLog commitLog : CommitLog.all())
+            commitLog.shutdownBlocking();
 
         // wait for miscellaneous tasks like sstable and commitlog segment deletion
         ScheduledExecutors.nonPeriodicTasks.shutdown();
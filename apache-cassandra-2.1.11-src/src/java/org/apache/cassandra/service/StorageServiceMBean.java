@@ -222,6 +222,12 @@ public interface StorageServiceMBean extends NotificationEmitter
      */
     public void forceKeyspaceCompaction(String keyspaceName, String... columnFamilies) throws IOException, ExecutionException, InterruptedException;
 
+    /**
+     * Forces major compaction of a single keyspace, one token range slice at a time if incremental is set, which
+     * bounds the extra disk space needed by major_compaction_slice_size_in_mb
+     */
+    public void forceKeyspaceCompaction(boolean incremental, String keyspaceName, String... columnFamilies) throws IOException, ExecutionException, InterruptedException;
+
     /**
      * Trigger a cleanup of keys on a single keyspace
      */
@@ -188,6 +188,11 @@ public class NodeProbe implements AutoCloseable
         ssProxy.forceKeyspaceCompaction(keyspaceName, columnFamilies);
     }
 
+    public void forceKeyspaceCompaction(boolean incremental, String keyspaceName, String... columnFamilies) throws IOException, ExecutionException, InterruptedException
+    {
+        ssProxy.forceKeyspaceCompaction(incremental, keyspaceName, columnFamilies);
+    }
+
     public void forceKeyspaceFlush(String keyspaceName, String... columnFamilies) throws IOException, ExecutionException, InterruptedException
     {
         ssProxy.forceKeyspaceFlush(keyspaceName, columnFamilies);
@@ -1077,7 +1082,7 @@ public class NodeProbe implements AutoCloseable
 
     /**
      * Retrieve Proxy metrics
-     * @param metricName CompletedTasks, PendingTasks, BytesCompacted or TotalCompactionsCompleted.
+     * @param metricName CompletedTasks, PendingTasks, PendingBytes, BytesCompacted or TotalCompactionsCompleted.
      */
     public Object getCompactionMetric(String metricName)
     {
@@ -1091,6 +1096,7 @@ public class NodeProbe implements AutoCloseable
                             JmxReporter.CounterMBean.class);
                 case "CompletedTasks":
                 case "PendingTasks":
+                case "PendingBytes":
                     return JMX.newMBeanProxy(mbeanServerConn,
                             new ObjectName("org.apache.cassandra.metrics:type=Compaction,name=" + metricName),
                             JmxReporter.GaugeMBean.class).getValue();
@@ -1096,6 +1096,9 @@ public class NodeTool
         @Arguments(usage = "[<keyspace> <cfnames>...]", description = "The keyspace followed by one or many column families")
         private List<String> args = new ArrayList<>();
 
+        @Option(title = "incremental", name = {"-i", "--incremental"}, description = "Compact one token range slice at a time, releasing the compacted sstables as they are fully rewritten")
+        private boolean incremental = false;
+
         @Override
         public void execute(NodeProbe probe)
         {
@@ -1106,7 +1109,7 @@ public class NodeTool
             {
                 try
                 {
-                    probe.forceKeyspaceCompaction(keyspace, cfnames);
+                    probe.forceKeyspaceCompaction(incremental, keyspace, cfnames);
                 } catch (Exception e)
                 {
                     throw new RuntimeException("Error occurred during compaction", e);
@@ -1272,6 +1275,8 @@ public class NodeTool
             int compactionThroughput = probe.getCompactionThroughput();
             CompactionManagerMBean cm = probe.getCompactionManagerProxy();
             System.out.println("pending tasks: " + probe.getCompactionMetric("PendingTasks"));
+            long pendingBytes = (Long) probe.getCompactionMetric("PendingBytes");
+            System.out.println("pending bytes: " + (humanReadable ? FileUtils.stringifyFileSize(pendingBytes) : Long.toString(pendingBytes)));
             long remainingBytes = 0;
             List<Map<String, String>> compactions = cm.getCompactions();
             if (!compactions.isEmpty())
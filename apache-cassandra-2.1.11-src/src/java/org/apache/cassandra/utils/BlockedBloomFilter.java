@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.utils.concurrent.WrappedSharedCloseable;
+import org.apache.cassandra.utils.obs.IBitSet;
+import org.apache.cassandra.utils.obs.OffHeapBitSet;
+import org.apache.cassandra.utils.obs.OpenBitSet;
+
+/**
+ * A bloom filter that sets all the bits of a key in a single block of 512 bits, the size of a cache line, so that
+ * checking a key reads one cache line instead of one per hash function.
+ *
+ * The first half of the murmur3 hash of the key picks the block, and the bits within it are derived from the second
+ * half the same way {@link BloomFilter} derives them from the whole hash.
+ */
+public class BlockedBloomFilter extends WrappedSharedCloseable implements IFilter
+{
+    public static final Serializer serializer = new Serializer();
+
+    static final int BLOCK_BITS = 512;
+
+    private static final ThreadLocal<long[]> reusableHash = new ThreadLocal<long[]>()
+    {
+        protected long[] initialValue()
+        {
+            return new long[2];
+        }
+    };
+
+    public final IBitSet bitset;
+    public final int hashCount;
+    private final long blocks;
+
+    /**
+     * @param bitset a bitset whose capacity is a multiple of the block size
+     */
+    public BlockedBloomFilter(int hashCount, IBitSet bitset)
+    {
+        super(bitset);
+        assert bitset.capacity() % BLOCK_BITS == 0 : bitset.capacity();
+        this.hashCount = hashCount;
+        this.bitset = bitset;
+        this.blocks = bitset.capacity() / BLOCK_BITS;
+    }
+
+    private BlockedBloomFilter(BlockedBloomFilter copy)
+    {
+        super(copy);
+        this.hashCount = copy.hashCount;
+        this.bitset = copy.bitset;
+        this.blocks = copy.blocks;
+    }
+
+    /**
+     * @return the number of bits to allocate for a filter of at least the given number of bits
+     */
+    static long roundToBlocks(long numBits)
+    {
+        return (numBits + BLOCK_BITS - 1) / BLOCK_BITS * BLOCK_BITS;
+    }
+
+    public void add(ByteBuffer key)
+    {
+        long[] hash = hash(key);
+        long block = FBUtilities.abs(hash[0] % blocks) * BLOCK_BITS;
+        // an odd increment keeps the first BLOCK_BITS bits of a key distinct
+        int base = (int) hash[1];
+        int inc = (int) (hash[1] >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++)
+        {
+            bitset.set(block + (base & (BLOCK_BITS - 1)));
+            base += inc;
+        }
+    }
+
+    public boolean isPresent(ByteBuffer key)
+    {
+        long[] hash = hash(key);
+        long block = FBUtilities.abs(hash[0] % blocks) * BLOCK_BITS;
+        int base = (int) hash[1];
+        int inc = (int) (hash[1] >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++)
+        {
+            if (!bitset.get(block + (base & (BLOCK_BITS - 1))))
+                return false;
+            base += inc;
+        }
+        return true;
+    }
+
+    private static long[] hash(ByteBuffer key)
+    {
+        long[] hash = reusableHash.get();
+        MurmurHash.hash3_x64_128(key, key.position(), key.remaining(), 0L, hash);
+        return hash;
+    }
+
+    public void clear()
+    {
+        bitset.clear();
+    }
+
+    public long serializedSize()
+    {
+        return serializer.serializedSize(this, TypeSizes.NATIVE);
+    }
+
+    public BlockedBloomFilter sharedCopy()
+    {
+        return new BlockedBloomFilter(this);
+    }
+
+    public long offHeapSize()
+    {
+        return bitset.offHeapSize();
+    }
+
+    /**
+     * Writes the hash count negated, which tells these filters apart from the {@link Murmur3BloomFilter} ones,
+     * followed by the bitset.
+     */
+    public static class Serializer
+    {
+        public void serialize(BlockedBloomFilter bf, DataOutputPlus out) throws IOException
+        {
+            out.writeInt(-bf.hashCount);
+            bf.bitset.serialize(out);
+        }
+
+        /**
+         * @param hashes the hash count, which the caller has already read to find out the type of the filter
+         */
+        public BlockedBloomFilter deserialize(int hashes, DataInput in, boolean offheap) throws IOException
+        {
+            IBitSet bs = offheap ? OffHeapBitSet.deserialize(in) : OpenBitSet.deserialize(in);
+            return new BlockedBloomFilter(hashes, bs);
+        }
+
+        public long serializedSize(BlockedBloomFilter bf, TypeSizes typeSizes)
+        {
+            return typeSizes.sizeof(-bf.hashCount) + bf.bitset.serializedSize(typeSizes);
+        }
+    }
+}
@@ -187,6 +187,34 @@ public final class CLibrary
         }
     }
 
+    /**
+     * Asks the kernel to read the given range of the file into the page cache in the background.
+     */
+    public static void tryWillNeed(int fd, long offset, int len)
+    {
+        if (fd < 0)
+            return;
+
+        try
+        {
+            if (System.getProperty("os.name").toLowerCase().contains("linux"))
+            {
+                posix_fadvise(fd, offset, len, POSIX_FADV_WILLNEED);
+            }
+        }
+        catch (UnsatisfiedLinkError e)
+        {
+            // if JNA is unavailable the reads just won't be prefetched
+        }
+        catch (RuntimeException e)
+        {
+            if (!(e instanceof LastErrorException))
+                throw e;
+
+            logger.warn(String.format("posix_fadvise(%d, %d) failed, errno (%d).", fd, offset, errno(e)));
+        }
+    }
+
     public static int tryFcntl(int fd, int command, int flags)
     {
         // fcntl return value may or may not be useful, depending on the command
@@ -212,6 +240,11 @@ public final class CLibrary
     }
 
     public static int tryOpenDirectory(String path)
+    {
+        return tryOpenReadOnly(path);
+    }
+
+    public static int tryOpenReadOnly(String path)
     {
         int fd = -1;
 
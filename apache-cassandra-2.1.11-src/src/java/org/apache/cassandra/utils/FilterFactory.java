@@ -19,7 +19,9 @@ package org.apache.cassandra.utils;
 
 import java.io.DataInput;
 import java.io.IOException;
+import java.util.Arrays;
 
+import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.utils.obs.IBitSet;
 import org.apache.cassandra.utils.obs.OffHeapBitSet;
@@ -35,14 +37,50 @@ public class FilterFactory
     private static final Logger logger = LoggerFactory.getLogger(FilterFactory.class);
     private static final long BITSET_EXCESS = 20;
 
+    /**
+     * The layout of the bloom filters of a table.
+     */
+    public enum Type
+    {
+        // the bits of a key are spread over the whole filter
+        STANDARD,
+        // the bits of a key are in a single cache line, see BlockedBloomFilter
+        BLOCKED;
+
+        public static Type fromString(String name) throws ConfigurationException
+        {
+            try
+            {
+                return valueOf(name.toUpperCase());
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new ConfigurationException(String.format("Invalid bloom filter type '%s', valid values are %s", name, Arrays.toString(values()).toLowerCase()));
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return name().toLowerCase();
+        }
+    }
+
     public static void serialize(IFilter bf, DataOutputPlus output) throws IOException
     {
-        Murmur3BloomFilter.serializer.serialize((Murmur3BloomFilter) bf, output);
+        if (bf instanceof BlockedBloomFilter)
+            BlockedBloomFilter.serializer.serialize((BlockedBloomFilter) bf, output);
+        else
+            Murmur3BloomFilter.serializer.serialize((Murmur3BloomFilter) bf, output);
     }
 
     public static IFilter deserialize(DataInput input, boolean offheap) throws IOException
     {
-        return Murmur3BloomFilter.serializer.deserialize(input, offheap);
+        // blocked filters write their hash count negated
+        int hashes = input.readInt();
+        if (hashes < 0)
+            return BlockedBloomFilter.serializer.deserialize(-hashes, input, offheap);
+        return Murmur3BloomFilter.serializer.deserialize(hashes, input, offheap);
     }
 
     /**
@@ -69,12 +107,29 @@ public class FilterFactory
      *         filter.
      */
     public static IFilter getFilter(long numElements, double maxFalsePosProbability, boolean offheap)
+    {
+        return getFilter(numElements, maxFalsePosProbability, Type.STANDARD, offheap);
+    }
+
+    /**
+     * @return The smallest filter of the given type that can provide the given false positive probability rate for
+     *         the given number of elements.
+     */
+    public static IFilter getFilter(long numElements, double maxFalsePosProbability, Type type, boolean offheap)
     {
         assert maxFalsePosProbability <= 1.0 : "Invalid probability";
         if (maxFalsePosProbability == 1.0)
             return new AlwaysPresentFilter();
         int bucketsPerElement = BloomCalculations.maxBucketsPerElement(numElements);
         BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement, maxFalsePosProbability);
+        if (type == Type.BLOCKED)
+        {
+            // keys collide more within a block than over the whole filter, which about one more bucket per element
+            // makes up for at the usual false positive probabilities
+            long numBits = BlockedBloomFilter.roundToBlocks(numElements * (spec.bucketsPerElement + 1) + BITSET_EXCESS);
+            IBitSet bitset = offheap ? new OffHeapBitSet(numBits) : new OpenBitSet(numBits);
+            return new BlockedBloomFilter(spec.K, bitset);
+        }
         return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap);
     }
 
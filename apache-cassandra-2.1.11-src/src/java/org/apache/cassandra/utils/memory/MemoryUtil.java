@@ -111,6 +111,20 @@ public abstract class MemoryUtil
         return UNALIGNED ? unsafe.getLong(address) : getLongByByte(address);
     }
 
+    // the volatile and CAS accessors require an 8-byte aligned address on every platform
+
+    public static long getLongVolatile(long address)
+    {
+        assert (address & 7) == 0;
+        return unsafe.getLongVolatile(null, address);
+    }
+
+    public static boolean compareAndSwapLong(long address, long expect, long update)
+    {
+        assert (address & 7) == 0;
+        return unsafe.compareAndSwapLong(null, address, expect, update);
+    }
+
     public static ByteBuffer getByteBuffer(long address, int length)
     {
         ByteBuffer instance;
@@ -23,7 +23,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -38,6 +38,7 @@ import org.apache.cassandra.db.NativeDecoratedKey;
 import org.apache.cassandra.db.NativeDeletedCell;
 import org.apache.cassandra.db.NativeExpiringCell;
 import org.apache.cassandra.io.util.IAllocator;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.concurrent.OpOrder;
 import sun.misc.Unsafe;
 
@@ -58,7 +59,11 @@ public class NativeAllocator extends MemtableAllocator
             RACE_ALLOCATED.put(i, new RaceAllocated());
     }
 
-    private final AtomicReference<Region> currentRegion = new AtomicReference<>();
+    // the number of regions allocated from concurrently, each by its own subset of threads, so that
+    // concurrent writers to a memtable (and to each of its shards) do not all contend on the same offset
+    private static final int REGION_STRIPES = Integer.highestOneBit(FBUtilities.getAvailableProcessors());
+
+    private final AtomicReferenceArray<Region> currentRegions = new AtomicReferenceArray<>(REGION_STRIPES);
     private final ConcurrentLinkedQueue<Region> regions = new ConcurrentLinkedQueue<>();
 
     protected NativeAllocator(NativePool pool)
@@ -110,18 +115,19 @@ public class NativeAllocator extends MemtableAllocator
         if (size > MAX_CLONED_SIZE)
             return allocateOversize(size, opGroup);
 
+        int stripe = (int) Thread.currentThread().getId() & (REGION_STRIPES - 1);
         while (true)
         {
-            Region region = currentRegion.get();
+            Region region = currentRegions.get(stripe);
             long peer;
             if (region != null && (peer = region.allocate(size)) > 0)
                 return peer;
 
-            trySwapRegion(region, size);
+            trySwapRegion(stripe, region, size);
         }
     }
 
-    private void trySwapRegion(Region current, int minSize)
+    private void trySwapRegion(int stripe, Region current, int minSize)
     {
         // decide how big we want the new region to be:
         //  * if there is no prior region, we set it to min size
@@ -143,7 +149,7 @@ public class NativeAllocator extends MemtableAllocator
 
         // we try to swap in the region we've obtained;
         // if we fail to swap the region, we try to stash it for repurposing later; if we're out of stash room, we free it
-        if (currentRegion.compareAndSet(current, next))
+        if (currentRegions.compareAndSet(stripe, current, next))
             regions.add(next);
         else if (!raceAllocated.stash(next))
             allocator.free(next.peer);
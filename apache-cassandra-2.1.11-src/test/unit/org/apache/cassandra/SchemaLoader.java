@@ -428,13 +428,18 @@ public class SchemaLoader
         mkdirs();
         cleanup();
         mkdirs();
-        CommitLog.instance.resetUnsafe(); // cleanup screws w/ CommitLog, this brings it back to safe state
+        // cleanup screws w/ CommitLog, this brings it back to safe state
+        for (CommitLog commitLog : CommitLog.all())
+            commitLog.resetUnsafe();
     }
 
     public static void cleanup()
     {
         // clean up commitlog
-        String[] directoryNames = { DatabaseDescriptor.getCommitLogLocation(), };
+        List<String> directoryNames = new ArrayList<>();
+        directoryNames.add(DatabaseDescriptor.getCommitLogLocation());
+        for (CommitLogGroupOptions group : DatabaseDescriptor.getCommitLogGroups())
+            directoryNames.add(group.directory);
         for (String dirName : directoryNames)
         {
             File dir = new File(dirName);
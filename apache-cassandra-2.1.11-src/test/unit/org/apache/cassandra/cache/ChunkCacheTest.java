@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChunkCacheTest
+{
+    private static final ChunkCache cache = ChunkCache.instance;
+
+    @Before
+    public void enable()
+    {
+        cache.setCapacity(1 << 20);
+    }
+
+    @After
+    public void disable()
+    {
+        cache.clear();
+        cache.setCapacity(0);
+    }
+
+    private static byte[] bytes(int length, int seed)
+    {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testGetPut()
+    {
+        ChunkCache.Key key = new ChunkCache.Key(1, 0);
+        byte[] buffer = new byte[128];
+        assertEquals(-1, cache.get(key, buffer));
+
+        byte[] chunk = bytes(100, 0);
+        cache.put(key, chunk, chunk.length);
+        assertEquals(chunk.length, cache.get(new ChunkCache.Key(1, 0), buffer));
+        assertArrayEquals(chunk, Arrays.copyOf(buffer, chunk.length));
+        assertEquals(-1, cache.get(new ChunkCache.Key(1, 100), buffer));
+        assertEquals(-1, cache.get(new ChunkCache.Key(2, 0), buffer));
+        assertEquals(chunk.length, cache.weightedSize());
+
+        cache.invalidate(new ChunkCache.Key(2, 0));
+        assertEquals(1, cache.size());
+        cache.invalidate(new ChunkCache.Key(1, 0));
+        assertEquals(0, cache.size());
+        assertEquals(-1, cache.get(key, buffer));
+    }
+
+    @Test
+    public void testInvalidateFile()
+    {
+        byte[] chunk = bytes(100, 0);
+        for (long position = 0; position < 500; position += 100)
+        {
+            cache.put(new ChunkCache.Key(1, position), chunk, chunk.length);
+            cache.put(new ChunkCache.Key(2, position), chunk, chunk.length);
+        }
+        assertEquals(10, cache.size());
+
+        // only drops the chunks of the given file
+        cache.invalidateFile(1);
+        assertEquals(5, cache.size());
+        byte[] buffer = new byte[128];
+        for (long position = 0; position < 500; position += 100)
+        {
+            assertEquals(-1, cache.get(new ChunkCache.Key(1, position), buffer));
+            assertEquals(chunk.length, cache.get(new ChunkCache.Key(2, position), buffer));
+        }
+    }
+
+    @Test
+    public void testCapacity()
+    {
+        cache.setCapacity(150);
+        byte[] chunk = bytes(100, 0);
+        cache.put(new ChunkCache.Key(1, 0), chunk, chunk.length);
+        cache.put(new ChunkCache.Key(1, 100), chunk, chunk.length);
+        assertEquals(1, cache.size());
+        assertTrue(cache.weightedSize() <= 150);
+    }
+}
@@ -35,6 +35,7 @@ import org.apache.cassandra.thrift.CfDef;
 import org.apache.cassandra.thrift.ColumnDef;
 import org.apache.cassandra.thrift.IndexType;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FilterFactory;
 import org.junit.Test;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -113,6 +114,14 @@ public class CFMetaDataTest extends SchemaLoader
                 CFMetaData withCompression = cfm.copy();
                 withCompression.compressionParameters(new CompressionParameters(SnappyCompressor.instance, 32768, new HashMap<String, String>()));
                 checkInverses(withCompression);
+
+                CFMetaData withBlockedFilter = cfm.copy();
+                withBlockedFilter.bloomFilterType(FilterFactory.Type.BLOCKED);
+                checkInverses(withBlockedFilter);
+
+                CFMetaData withClusteringFilter = cfm.copy();
+                withClusteringFilter.clusteringFilterFpChance(0.01);
+                checkInverses(withClusteringFilter);
             }
         }
     }
@@ -133,5 +142,9 @@ public class CFMetaDataTest extends SchemaLoader
         UntypedResultSet.Row result = QueryProcessor.resultify("SELECT * FROM system.schema_columnfamilies", new Row(k, serializedCf)).one();
         CFMetaData newCfm = CFMetaData.fromSchemaNoTriggers(result, ColumnDefinition.resultify(new Row(k, serializedCD)));
         assert cfm.equals(newCfm) : String.format("%n%s%n!=%n%s", cfm, newCfm);
+
+        // the defaults aren't written, not to change the schema digest of the tables keeping it
+        assertEquals(cfm.getBloomFilterType() != FilterFactory.Type.STANDARD, result.has("bloom_filter_type"));
+        assertEquals(cfm.getClusteringFilterFpChance() < 1.0, result.has("clustering_filter_fp_chance"));
     }
 }
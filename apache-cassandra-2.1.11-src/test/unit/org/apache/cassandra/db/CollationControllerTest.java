@@ -18,16 +18,22 @@
 */
 package org.apache.cassandra.db;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.composites.CellName;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 
 public class CollationControllerTest extends SchemaLoader
 {
@@ -116,4 +122,51 @@ public class CollationControllerTest extends SchemaLoader
         controller = new CollationController(cfs, filter, gcBefore);
         assert ColumnFamilyStore.removeDeleted(controller.getTopLevelColumns(true), gcBefore) == null;
     }
+
+    @Test
+    public void testPrefetchedReads()
+    {
+        Keyspace keyspace = Keyspace.open("Keyspace1");
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore("Standard2");
+        cfs.disableAutoCompaction();
+
+        DecoratedKey wide = Util.dk("prefetched");
+        DecoratedKey small = Util.dk("prefetched small");
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+        // several sstables holding both partitions, the wide one with a column index in each
+        for (int sstable = 0; sstable < 3; sstable++)
+        {
+            Mutation rm = new Mutation(keyspace.getName(), wide.getKey());
+            for (int i = sstable; i < 300; i += 3)
+                rm.add(cfs.name, Util.cellname(String.format("%03d", i)), value, sstable);
+            rm.apply();
+
+            rm = new Mutation(keyspace.getName(), small.getKey());
+            rm.add(cfs.name, Util.cellname("c" + sstable), value, sstable);
+            rm.apply();
+            cfs.forceBlockingFlush();
+        }
+
+        long now = System.currentTimeMillis();
+        List<QueryFilter> filters = Arrays.asList(QueryFilter.getIdentityFilter(wide, cfs.name, now),
+                                                  QueryFilter.getSliceFilter(wide, cfs.name, Util.cellname("100"), Util.cellname("150"), false, 20, now),
+                                                  QueryFilter.getSliceFilter(wide, cfs.name, Util.cellname("150"), Util.cellname("100"), true, 20, now),
+                                                  QueryFilter.getIdentityFilter(small, cfs.name, now));
+        boolean prefetch = DatabaseDescriptor.isSSTableReadPrefetchEnabled();
+        try
+        {
+            for (QueryFilter filter : filters)
+            {
+                DatabaseDescriptor.setSSTableReadPrefetchEnabled(false);
+                ColumnFamily expected = new CollationController(cfs, filter, Integer.MIN_VALUE).getTopLevelColumns(true);
+                assertNotNull(expected);
+                DatabaseDescriptor.setSSTableReadPrefetchEnabled(true);
+                assertEquals(expected, new CollationController(cfs, filter, Integer.MIN_VALUE).getTopLevelColumns(true));
+            }
+        }
+        finally
+        {
+            DatabaseDescriptor.setSSTableReadPrefetchEnabled(prefetch);
+        }
+    }
 }
@@ -21,10 +21,11 @@ package org.apache.cassandra.db;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
-import java.util.zip.CRC32;
-import java.util.zip.Checksum;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -33,6 +34,7 @@ import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
 import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.ParameterizedClass;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.CommitLogDescriptor;
 import org.apache.cassandra.db.commitlog.CommitLogSegmentManager;
@@ -50,6 +52,7 @@ import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.JVMStabilityInspector;
 import org.apache.cassandra.utils.KillerForTests;
+import org.apache.cassandra.utils.PureJavaCrc32;
 
 import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
 
@@ -91,11 +94,35 @@ public class CommitLogTest extends SchemaLoader
     @Test
     public void testRecoveryWithBadSizeChecksum() throws Exception
     {
-        Checksum checksum = new CRC32();
-        checksum.update(100);
+        PureJavaCrc32 checksum = new PureJavaCrc32();
+        checksum.updateInt(100);
         testRecoveryWithBadSizeArgument(100, 100, ~checksum.getValue());
     }
 
+    @Test
+    public void testRecoveryWithValidEntry() throws Exception
+    {
+        // makes sure the entries of the tests above are where the replayer reads them
+        Mutation rm = new Mutation("Keyspace1", bytes("k"));
+        rm.add("Standard1", Util.cellname("c1"), ByteBuffer.allocate(100), 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(out);
+        Mutation.serializer.serialize(rm, dout, MessagingService.current_version);
+        byte[] serialized = out.toByteArray();
+
+        PureJavaCrc32 checksum = new PureJavaCrc32();
+        checksum.updateInt(serialized.length);
+        out = new ByteArrayOutputStream();
+        dout = new DataOutputStream(out);
+        dout.writeInt(serialized.length);
+        dout.writeInt(checksum.getCrc());
+        dout.write(serialized);
+        checksum.update(serialized, 0, serialized.length);
+        dout.writeInt(checksum.getCrc());
+        dout.close();
+        Assert.assertEquals(1, testRecovery(out.toByteArray()));
+    }
+
     @Test
     public void testRecoveryWithZeroSegmentSizeArgument() throws Exception
     {
@@ -225,10 +252,40 @@ public class CommitLogTest extends SchemaLoader
         }
     }
 
+    @Test
+    public void testRecoveryWithCompressedLog() throws Exception
+    {
+        DatabaseDescriptor.setCommitLogCompression(new ParameterizedClass("LZ4Compressor", Collections.<String, String>emptyMap()));
+        try
+        {
+            CommitLog.instance.resetUnsafe();
+            Mutation rm = new Mutation("Keyspace1", bytes("k"));
+            rm.add("Standard1", Util.cellname("c1"), ByteBuffer.allocate(100), 0);
+            int count = 10;
+            for (int i = 0; i < count; i++)
+                CommitLog.instance.add(rm);
+            CommitLog.instance.sync(true);
+
+            List<File> segments = new ArrayList<>();
+            for (String name : CommitLog.instance.getActiveSegmentNames())
+            {
+                File file = new File(DatabaseDescriptor.getCommitLogLocation(), name);
+                Assert.assertEquals(DatabaseDescriptor.getCommitLogCompression(), CommitLogDescriptor.fromHeader(file).compression);
+                segments.add(file);
+            }
+            Assert.assertEquals(count, CommitLog.instance.recover(segments.toArray(new File[segments.size()])));
+        }
+        finally
+        {
+            DatabaseDescriptor.setCommitLogCompression(null);
+            CommitLog.instance.resetUnsafe();
+        }
+    }
+
     protected void testRecoveryWithBadSizeArgument(int size, int dataSize) throws Exception
     {
-        Checksum checksum = new CRC32();
-        checksum.update(size);
+        PureJavaCrc32 checksum = new PureJavaCrc32();
+        checksum.updateInt(size);
         testRecoveryWithBadSizeArgument(size, dataSize, checksum.getValue());
     }
 
@@ -237,7 +294,7 @@ public class CommitLogTest extends SchemaLoader
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         DataOutputStream dout = new DataOutputStream(out);
         dout.writeInt(size);
-        dout.writeLong(checksum);
+        dout.writeInt((int) checksum);
         dout.write(new byte[dataSize]);
         dout.close();
         testRecovery(out.toByteArray());
@@ -251,14 +308,32 @@ public class CommitLogTest extends SchemaLoader
         return logFile;
     }
 
-    protected void testRecovery(byte[] logData) throws Exception
+    /**
+     * Replays a segment holding the given data as its only sync section, after a valid header and sync marker.
+     *
+     * @return the number of mutations replayed
+     */
+    protected int testRecovery(byte[] logData) throws Exception
     {
         File logFile = tmpFile();
+        CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(logFile.getName());
+        ByteBuffer buffer = ByteBuffer.allocate(desc.headerSize() + 8 + logData.length);
+        CommitLogDescriptor.writeHeader(buffer, desc);
+
+        // the sync marker: the end of the section, and a checksum of the segment id and the marker position
+        PureJavaCrc32 crc = new PureJavaCrc32();
+        crc.updateInt((int) (desc.id & 0xFFFFFFFFL));
+        crc.updateInt((int) (desc.id >>> 32));
+        crc.updateInt(buffer.position());
+        buffer.putInt(buffer.capacity());
+        buffer.putInt(crc.getCrc());
+        buffer.put(logData);
+
         try (OutputStream lout = new FileOutputStream(logFile))
         {
-            lout.write(logData);
+            lout.write(buffer.array());
             //statics make it annoying to test things correctly
-            CommitLog.instance.recover(new File[]{ logFile }); //CASSANDRA-1119 / CASSANDRA-1179 throw on failure*/
+            return CommitLog.instance.recover(new File[]{ logFile }); //CASSANDRA-1119 / CASSANDRA-1179 throw on failure*/
         }
     }
 
@@ -370,7 +445,7 @@ public class CommitLogTest extends SchemaLoader
             DatabaseDescriptor.setCommitFailurePolicy(Config.CommitFailurePolicy.ignore);
 
             //now let's create a commit log segment manager and wait for it to fail
-            new CommitLogSegmentManager();
+            new CommitLogSegmentManager(CommitLog.instance);
 
             //busy wait since commitlogsegmentmanager spawns another thread
             int retries = 0;
@@ -409,7 +484,7 @@ public class CommitLogTest extends SchemaLoader
             DatabaseDescriptor.setCommitFailurePolicy(Config.CommitFailurePolicy.ignore);
 
             //now let's create a commit log segment manager and wait for it to fail
-            new CommitLogSegmentManager();
+            new CommitLogSegmentManager(CommitLog.instance);
 
             //wait commit log segment manager thread to execute
             Thread.sleep(50);
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class MemtableTest extends SchemaLoader
+{
+    private static final String KEYSPACE1 = "Keyspace1";
+    private static final String CF_STANDARD1 = "Standard1";
+
+    @Test
+    public void testFlushRanges() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1);
+        cfs.truncateBlocking();
+
+        // the ranges of the same data directory are as good as those of several ones to split the memtable
+        List<Directories.DataDirectory> locations = Collections.nCopies(4, Directories.dataDirectories[0]);
+
+        // fewer partitions than directories
+        insert(0, 2);
+        Memtable memtable = cfs.getDataTracker().getView().getCurrentMemtable();
+        assertFlushRanges(memtable, locations, 2, 2);
+
+        insert(2, 100);
+        assertFlushRanges(memtable, locations, 4, 100);
+
+        cfs.truncateBlocking();
+    }
+
+    private static void insert(int from, int to)
+    {
+        ByteBuffer value = ByteBuffer.wrap(new byte[64]);
+        for (int i = from; i < to; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes(i));
+            rm.add(CF_STANDARD1, Util.cellname("c"), value, 0);
+            rm.apply();
+        }
+    }
+
+    /**
+     * Writes every range of the memtable, checking none of them is empty, and that they hold all its partitions.
+     */
+    private static void assertFlushRanges(Memtable memtable, List<Directories.DataDirectory> locations, int expectedRanges, int expectedPartitions) throws Exception
+    {
+        List<Memtable.FlushRunnable> runnables = memtable.flushRunnables(locations, 1);
+        assertEquals(expectedRanges, runnables.size());
+
+        int partitions = 0;
+        for (Memtable.FlushRunnable runnable : runnables)
+        {
+            SSTableReader sstable = runnable.call();
+            assertNotNull(sstable);
+            try (ISSTableScanner scanner = sstable.getScanner())
+            {
+                while (scanner.hasNext())
+                {
+                    scanner.next();
+                    partitions++;
+                }
+            }
+            sstable.markObsolete(null);
+            sstable.selfRef().release();
+        }
+        assertEquals(expectedPartitions, partitions);
+    }
+}
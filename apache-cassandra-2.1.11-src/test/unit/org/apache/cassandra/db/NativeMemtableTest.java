@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Memtables of a Murmur3Partitioner table, whose partitions are indexed by NativePartitionIndex with the
+ * offheap_objects allocation of the test configuration.
+ */
+public class NativeMemtableTest
+{
+    private static final String KEYSPACE1 = "Keyspace1";
+    private static final String CF_STANDARD1 = "Standard1";
+
+    private static IPartitioner oldPartitioner;
+
+    @BeforeClass
+    public static void setup() throws ConfigurationException
+    {
+        // the partitioner must be changed before the tables are created
+        oldPartitioner = StorageService.instance.setPartitionerUnsafe(new Murmur3Partitioner());
+        SchemaLoader.loadSchema();
+    }
+
+    @AfterClass
+    public static void tearDown()
+    {
+        StorageService.instance.setPartitionerUnsafe(oldPartitioner);
+        SchemaLoader.stopGossiper();
+    }
+
+    @Test
+    public void testConcurrentWritesAndRemove() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1);
+        cfs.truncateBlocking();
+        Memtable memtable = cfs.getDataTracker().getView().getCurrentMemtable();
+        assertTrue(memtable.nativePartitionIndex);
+
+        // few enough keys that the writers race to create the same partitions
+        final int keys = 1000;
+        final AtomicIntegerArray writes = new AtomicIntegerArray(keys);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0 ; t < 4 ; t++)
+        {
+            final int writer = t;
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0 ; i < 5000 ; i++)
+                    {
+                        int key = random.nextInt(keys);
+                        Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes(key));
+                        rm.add(CF_STANDARD1, Util.cellname(writer + ":" + i), ByteBufferUtil.bytes(i), 0);
+                        rm.apply();
+                        writes.incrementAndGet(key);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+        assertTrue(memtable == cfs.getDataTracker().getView().getCurrentMemtable());
+
+        int partitions = 0;
+        for (int key = 0 ; key < keys ; key++)
+        {
+            ColumnFamily cf = memtable.getColumnFamily(decorate(key));
+            if (writes.get(key) == 0)
+            {
+                assertNull(cf);
+                continue;
+            }
+            assertEquals(writes.get(key), cf.getColumnCount());
+            partitions++;
+        }
+        assertEquals(partitions, memtable.partitionCount());
+
+        // partitions are iterated in token order, and removing them releases their data
+        RowPosition min = StorageService.getPartitioner().getMinimumToken().minKeyBound();
+        DecoratedKey previous = null;
+        int iterated = 0;
+        int removed = 0;
+        long liveDataSize = memtable.getLiveDataSize();
+        for (Iterator<Map.Entry<DecoratedKey, ColumnFamily>> iter = memtable.getEntryIterator(min, min); iter.hasNext(); )
+        {
+            Map.Entry<DecoratedKey, ColumnFamily> entry = iter.next();
+            assertTrue(previous == null || previous.compareTo(entry.getKey()) < 0);
+            previous = entry.getKey();
+            iterated++;
+            if (ByteBufferUtil.toInt(entry.getKey().getKey()) % 2 == 0)
+            {
+                iter.remove();
+                removed++;
+            }
+        }
+        assertEquals(partitions, iterated);
+        assertEquals(partitions - removed, memtable.partitionCount());
+        assertTrue(memtable.getLiveDataSize() < liveDataSize);
+        for (int key = 0 ; key < keys ; key++)
+        {
+            if (writes.get(key) > 0)
+                assertEquals(key % 2 == 0, memtable.getColumnFamily(decorate(key)) == null);
+        }
+
+        // a removed partition can be written to again
+        int key = 0;
+        while (writes.get(key) == 0)
+            key += 2;
+        Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes(key));
+        rm.add(CF_STANDARD1, Util.cellname("again"), ByteBufferUtil.bytes(key), 0);
+        rm.apply();
+        ColumnFamily cf = memtable.getColumnFamily(decorate(key));
+        assertNotNull(cf);
+        assertEquals(1, cf.getColumnCount());
+        assertEquals(partitions - removed + 1, memtable.partitionCount());
+
+        cfs.truncateBlocking();
+    }
+
+    private static DecoratedKey decorate(int key)
+    {
+        return StorageService.getPartitioner().decorateKey(ByteBufferUtil.bytes(key));
+    }
+}
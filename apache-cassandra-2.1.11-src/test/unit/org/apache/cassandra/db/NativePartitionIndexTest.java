@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.apache.cassandra.utils.memory.NativePool;
+
+import static org.junit.Assert.*;
+
+public class NativePartitionIndexTest
+{
+    private static final OpOrder.Group group = new OpOrder().start();
+
+    private static DecoratedKey key(long token, int key)
+    {
+        return new BufferDecoratedKey(new LongToken(token), ByteBuffer.wrap(Integer.toString(key).getBytes()));
+    }
+
+    private static NativePartitionIndex<Integer> newIndex()
+    {
+        return new NativePartitionIndex<>(new NativePool(Integer.MAX_VALUE, Integer.MAX_VALUE, 1f, null).newAllocator());
+    }
+
+    private static void assertSameContents(Iterator<? extends Map.Entry<? extends RowPosition, Integer>> expected,
+                                           Iterator<Map.Entry<DecoratedKey, Integer>> actual)
+    {
+        while (expected.hasNext())
+        {
+            assertTrue(actual.hasNext());
+            Map.Entry<? extends RowPosition, Integer> e = expected.next();
+            Map.Entry<DecoratedKey, Integer> a = actual.next();
+            assertEquals(e.getKey(), a.getKey());
+            assertEquals(e.getValue(), a.getValue());
+        }
+        assertFalse(actual.hasNext());
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        NativePartitionIndex<Integer> index = newIndex();
+        assertTrue(index.isEmpty());
+        assertNull(index.get(key(0, 0)));
+        assertFalse(index.iterator(null, null).hasNext());
+        assertFalse(index.iterator(new LongToken(0).minKeyBound(), null).hasNext());
+    }
+
+    @Test
+    public void testConcurrentInsertAndRanges() throws Exception
+    {
+        final NativePartitionIndex<Integer> index = newIndex();
+        final ConcurrentSkipListMap<RowPosition, Integer> reference = new ConcurrentSkipListMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0 ; t < 4 ; t++)
+        {
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0 ; i < 20000 ; i++)
+                    {
+                        // few enough tokens that keys often share one, and few enough keys that threads race on them
+                        DecoratedKey key = key(random.nextInt(1000) - 500, random.nextInt(100));
+                        Integer value = random.nextInt();
+                        Integer previous = index.putIfAbsent(key, value, group);
+                        if (previous == null)
+                            assertNull(reference.put(key, value));
+                        else
+                            assertEquals(previous, index.get(key));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertEquals(reference.size(), index.size());
+        for (Map.Entry<RowPosition, Integer> entry : reference.entrySet())
+            assertEquals(entry.getValue(), index.get(entry.getKey()));
+        assertSameContents(reference.entrySet().iterator(), index.iterator(null, null));
+
+        Random random = new Random(0);
+        for (int i = 0 ; i < 100 ; i++)
+        {
+            Token left = new LongToken(random.nextInt(1200) - 600);
+            Token right = new LongToken(random.nextInt(1200) - 600);
+            RowPosition from = random.nextBoolean() ? left.minKeyBound() : left.maxKeyBound();
+            RowPosition to = random.nextBoolean() ? right.minKeyBound() : right.maxKeyBound();
+            assertSameContents(reference.tailMap(from, true).entrySet().iterator(), index.iterator(from, null));
+            if (from.compareTo(to) <= 0)
+                assertSameContents(reference.subMap(from, true, to, true).entrySet().iterator(), index.iterator(from, to));
+
+            RowPosition key = reference.ceilingKey(from);
+            if (key != null)
+                assertSameContents(reference.tailMap(key, true).entrySet().iterator(), index.iterator(key, null));
+        }
+    }
+
+    @Test
+    public void testRemove()
+    {
+        NativePartitionIndex<Integer> index = newIndex();
+        for (int i = 0 ; i < 100 ; i++)
+            assertNull(index.putIfAbsent(key(i, i), i, group));
+
+        Iterator<Map.Entry<DecoratedKey, Integer>> iter = index.iterator(null, null);
+        while (iter.hasNext())
+        {
+            if (iter.next().getValue() % 2 == 0)
+                iter.remove();
+        }
+        assertEquals(50, index.size());
+        assertNull(index.get(key(10, 10)));
+        assertEquals(11, (int) index.get(key(11, 11)));
+
+        // a removed partition can be reinserted
+        assertNull(index.putIfAbsent(key(10, 10), 1010, group));
+        assertEquals(1010, (int) index.get(key(10, 10)));
+        assertEquals(51, index.size());
+
+        int count = 0;
+        for (iter = index.iterator(null, null); iter.hasNext(); iter.next())
+            count++;
+        assertEquals(51, count);
+    }
+}
@@ -17,7 +17,10 @@
  */
 package org.apache.cassandra.db;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.List;
 
 import junit.framework.Assert;
 import org.apache.cassandra.SchemaLoader;
@@ -25,6 +28,8 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.composites.CellNames;
 import org.apache.cassandra.db.composites.SimpleDenseCellNameType;
 import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.IndexHelper;
 import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
@@ -65,5 +70,26 @@ public class RowIndexEntryTest extends SchemaLoader
 
         serializer.serialize(withIndex, buffer);
         Assert.assertEquals(buffer.getLength(), serializer.serializedSize(withIndex));
+
+        // the entry read back keeps its index serialized, and must give the same blocks and serialize the same way
+        RowIndexEntry read = serializer.deserialize(new DataInputStream(new ByteArrayInputStream(buffer.getData(), 0, buffer.getLength())),
+                                                    Descriptor.Version.CURRENT);
+        Assert.assertEquals(withIndex.position, read.position);
+        Assert.assertEquals(withIndex.deletionTime(), read.deletionTime());
+        List<IndexHelper.IndexInfo> expected = withIndex.columnsIndex();
+        List<IndexHelper.IndexInfo> actual = read.columnsIndex();
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = expected.size() - 1; i >= 0; i--)
+        {
+            Assert.assertEquals(expected.get(i).firstName, actual.get(i).firstName);
+            Assert.assertEquals(expected.get(i).lastName, actual.get(i).lastName);
+            Assert.assertEquals(expected.get(i).offset, actual.get(i).offset);
+            Assert.assertEquals(expected.get(i).width, actual.get(i).width);
+        }
+
+        DataOutputBuffer reserialized = new DataOutputBuffer();
+        serializer.serialize(read, reserialized);
+        Assert.assertEquals(buffer.getLength(), serializer.serializedSize(read));
+        Assert.assertEquals(buffer.asByteBuffer(), reserialized.asByteBuffer());
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.apache.cassandra.utils.memory.NativeAllocator;
+import org.apache.cassandra.utils.memory.NativePool;
+
+import static org.junit.Assert.*;
+
+public class ShardedPartitionIndexTest
+{
+    private static final OpOrder.Group group = new OpOrder().start();
+
+    private static ShardedPartitionIndex<Integer> newIndex(int shardCount)
+    {
+        NativeAllocator allocator = new NativePool(Integer.MAX_VALUE, Integer.MAX_VALUE, 1f, null).newAllocator();
+        List<Token> boundaries = ShardedPartitionIndex.splitRing(new Murmur3Partitioner(), shardCount);
+        List<NativePartitionIndex<Integer>> shards = new ArrayList<>();
+        for (int i = 0 ; i <= boundaries.size() ; i++)
+            shards.add(new NativePartitionIndex<Integer>(allocator));
+        return new ShardedPartitionIndex<>(boundaries, shards);
+    }
+
+    private static void assertSameContents(Iterator<? extends Map.Entry<? extends RowPosition, Integer>> expected,
+                                           Iterator<Map.Entry<DecoratedKey, Integer>> actual)
+    {
+        while (expected.hasNext())
+        {
+            assertTrue(actual.hasNext());
+            Map.Entry<? extends RowPosition, Integer> e = expected.next();
+            Map.Entry<DecoratedKey, Integer> a = actual.next();
+            assertEquals(e.getKey(), a.getKey());
+            assertEquals(e.getValue(), a.getValue());
+        }
+        assertFalse(actual.hasNext());
+    }
+
+    @Test
+    public void testSplitRing()
+    {
+        List<Token> boundaries = ShardedPartitionIndex.splitRing(new Murmur3Partitioner(), 6);
+        assertEquals(3, boundaries.size());
+        for (int i = 1 ; i < boundaries.size() ; i++)
+            assertTrue(boundaries.get(i - 1).compareTo(boundaries.get(i)) < 0);
+        assertTrue(ShardedPartitionIndex.splitRing(new Murmur3Partitioner(), 1).isEmpty());
+    }
+
+    @Test
+    public void testOrderAcrossShards()
+    {
+        ShardedPartitionIndex<Integer> index = newIndex(8);
+        assertEquals(8, index.shardCount());
+        assertTrue(index.isEmpty());
+
+        TreeMap<RowPosition, Integer> reference = new TreeMap<>();
+        Random random = new Random(0);
+        for (int i = 0 ; i < 10000 ; i++)
+        {
+            DecoratedKey key = new BufferDecoratedKey(new LongToken(random.nextLong()), ByteBuffer.wrap(Integer.toString(i).getBytes()));
+            assertNull(index.putIfAbsent(key, i, group));
+            assertEquals(i, (int) index.putIfAbsent(key, -1, group));
+            reference.put(key, i);
+        }
+
+        assertEquals(reference.size(), index.size());
+        for (Map.Entry<RowPosition, Integer> entry : reference.entrySet())
+            assertEquals(entry.getValue(), index.get(entry.getKey()));
+        assertSameContents(reference.entrySet().iterator(), index.iterator(null, null));
+
+        for (int i = 0 ; i < 100 ; i++)
+        {
+            RowPosition from = new LongToken(random.nextLong()).minKeyBound();
+            RowPosition to = new LongToken(random.nextLong()).maxKeyBound();
+            assertSameContents(reference.tailMap(from, true).entrySet().iterator(), index.iterator(from, null));
+            assertSameContents(reference.headMap(to, true).entrySet().iterator(), index.iterator(null, to));
+            if (from.compareTo(to) <= 0)
+                assertSameContents(reference.subMap(from, true, to, true).entrySet().iterator(), index.iterator(from, to));
+            else
+                assertFalse(index.iterator(from, to).hasNext());
+        }
+
+        Iterator<Map.Entry<DecoratedKey, Integer>> iter = index.iterator(null, null);
+        while (iter.hasNext())
+        {
+            iter.next();
+            iter.remove();
+        }
+        assertTrue(index.isEmpty());
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.locator.SimpleStrategy;
+import org.apache.cassandra.service.MigrationManager;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CommitLogGroupTest extends SchemaLoader
+{
+    // the only keyspace of the test_group commit log group, as configured in test/conf/cassandra.yaml
+    private static final String KEYSPACE_GROUP = "CommitLogGroup1";
+    private static final String KEYSPACE1 = "Keyspace1";
+    private static final String CF_STANDARD1 = "Standard1";
+
+    @BeforeClass
+    public static void defineGroupKeyspace() throws ConfigurationException
+    {
+        CFMetaData cfm = CFMetaData.denseCFMetaData(KEYSPACE_GROUP, CF_STANDARD1, BytesType.instance);
+        MigrationManager.announceNewKeyspace(KSMetaData.testMetadata(KEYSPACE_GROUP, SimpleStrategy.class, KSMetaData.optsWithRF(1), cfm));
+    }
+
+    @Test
+    public void testRouting()
+    {
+        CommitLog group = CommitLog.forKeyspace(KEYSPACE_GROUP);
+        assertNotSame(CommitLog.instance, group);
+        assertEquals("test_group", group.group);
+        assertEquals(DatabaseDescriptor.getCommitLogGroups().get(0).directory, group.location);
+        assertTrue(CommitLog.all().contains(group));
+        assertSame(CommitLog.instance, CommitLog.forKeyspace(KEYSPACE1));
+        assertSame(CommitLog.instance, CommitLog.forKeyspace(Keyspace.SYSTEM_KS));
+
+        mutation(KEYSPACE_GROUP, "k", 0).apply();
+        mutation(KEYSPACE1, "k", 0).apply();
+
+        // each write only dirties the segments of the commit log of its keyspace
+        UUID groupCfId = cfs(KEYSPACE_GROUP).metadata.cfId;
+        UUID nodeWideCfId = cfs(KEYSPACE1).metadata.cfId;
+        assertTrue(isDirty(group, groupCfId));
+        assertFalse(isDirty(group, nodeWideCfId));
+        assertTrue(isDirty(CommitLog.instance, nodeWideCfId));
+        assertFalse(isDirty(CommitLog.instance, groupCfId));
+    }
+
+    @Test
+    public void testReplay() throws Exception
+    {
+        CommitLog group = CommitLog.forKeyspace(KEYSPACE_GROUP);
+        group.resetUnsafe();
+
+        int count = 10;
+        for (int i = 0; i < count; i++)
+            mutation(KEYSPACE_GROUP, "replay" + i, 0).apply();
+        mutation(KEYSPACE1, "replay", 0).apply();
+
+        // drop the memtable without flushing, so that the writes only survive in the commit log of the group
+        ColumnFamilyStore cfs = cfs(KEYSPACE_GROUP);
+        cfs.clearUnsafe();
+        assertNull(Util.getColumnFamily(Keyspace.open(KEYSPACE_GROUP), Util.dk("replay0"), CF_STANDARD1));
+
+        List<File> files = new ArrayList<>();
+        for (String name : group.getActiveSegmentNames())
+            files.add(new File(group.location, name));
+        assertEquals(count, group.recover(files.toArray(new File[files.size()])));
+
+        for (int i = 0; i < count; i++)
+            assertNotNull(Util.getColumnFamily(Keyspace.open(KEYSPACE_GROUP), Util.dk("replay" + i), CF_STANDARD1));
+
+        group.resetUnsafe();
+    }
+
+    @Test
+    public void testDiscardCompletedSegments() throws Exception
+    {
+        CommitLog group = CommitLog.forKeyspace(KEYSPACE_GROUP);
+        group.resetUnsafe();
+
+        // each write takes just over a quarter of a segment, so that they span several of them
+        int valueSize = DatabaseDescriptor.getCommitLogSegmentSize() / 4;
+        for (int i = 0; i < 6; i++)
+            mutation(KEYSPACE_GROUP, "discard" + i, valueSize).apply();
+        mutation(KEYSPACE1, "discard", 0).apply();
+        assertTrue(group.activeSegments() > 1);
+
+        // flushing the table of the group releases all its segments but the one being written to,
+        // and leaves the node-wide commit log alone
+        cfs(KEYSPACE_GROUP).forceBlockingFlush();
+        assertEquals(1, group.activeSegments());
+        assertTrue(isDirty(CommitLog.instance, cfs(KEYSPACE1).metadata.cfId));
+
+        group.resetUnsafe();
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception
+    {
+        final CommitLog group = CommitLog.forKeyspace(KEYSPACE_GROUP);
+        assertEquals(Config.CommitLogSync.group, DatabaseDescriptor.getCommitLogGroups().get(0).commitlog_sync);
+
+        int writers = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        List<Future<ReplayPosition>> positions = new ArrayList<>();
+        for (int i = 0; i < writers; i++)
+        {
+            final String key = "group" + i;
+            positions.add(executor.submit(new Callable<ReplayPosition>()
+            {
+                public ReplayPosition call() throws Exception
+                {
+                    start.await();
+                    return group.add(mutation(KEYSPACE_GROUP, key, 0));
+                }
+            }));
+        }
+        start.countDown();
+
+        // a write is only acknowledged once a sync has covered it
+        for (Future<ReplayPosition> position : positions)
+            assertTrue(syncedOffset(group, position.get().segment) >= position.get().position);
+        executor.shutdown();
+
+        // and the writes arriving within the same window share their sync
+        assertTrue(group.metrics.mutationsPerSync.max() > 1);
+    }
+
+    private static int syncedOffset(CommitLog commitLog, long segmentId)
+    {
+        for (CommitLogSegment segment : commitLog.allocator.getActiveSegments())
+        {
+            if (segment.id == segmentId)
+                return segment.lastSyncedOffset;
+        }
+        throw new AssertionError("No active segment " + segmentId);
+    }
+
+    private static Mutation mutation(String keyspace, String key, int valueSize)
+    {
+        Mutation rm = new Mutation(keyspace, ByteBufferUtil.bytes(key));
+        rm.add(CF_STANDARD1, Util.cellname("c"), ByteBuffer.allocate(valueSize), 0);
+        return rm;
+    }
+
+    private static ColumnFamilyStore cfs(String keyspace)
+    {
+        return Keyspace.open(keyspace).getColumnFamilyStore(CF_STANDARD1);
+    }
+
+    private static boolean isDirty(CommitLog commitLog, UUID cfId)
+    {
+        for (CommitLogSegment segment : commitLog.allocator.getActiveSegments())
+        {
+            if (segment.getDirtyCFIDs().contains(cfId))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommitLogReplayerTest extends SchemaLoader
+{
+    private static final String KEYSPACE1 = "Keyspace1";
+    private static final String CF_STANDARD1 = "Standard1";
+
+    @Test
+    public void testReplayOrderWithinPartition() throws Exception
+    {
+        Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1).truncateBlocking();
+        CommitLog.instance.resetUnsafe();
+
+        // enough mutations to fill several segments, so that they are read in parallel
+        int partitions = 4;
+        int count = 160;
+        ByteBuffer padding = ByteBuffer.allocate(64 << 10);
+        Map<Integer, Long> segments = new HashMap<>();
+        for (int i = 0; i < count; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes("k" + (i % partitions)));
+            rm.add(CF_STANDARD1, Util.cellname("seq"), ByteBufferUtil.bytes(i), i);
+            rm.add(CF_STANDARD1, Util.cellname("padding"), padding, i);
+            segments.put(i, CommitLog.instance.add(rm).segment);
+        }
+        CommitLog.instance.sync(true);
+        assertTrue(new HashSet<>(segments.values()).size() > 1);
+
+        List<File> files = new ArrayList<>();
+        for (String name : CommitLog.instance.getActiveSegmentNames())
+            files.add(new File(DatabaseDescriptor.getCommitLogLocation(), name));
+
+        final ConcurrentMap<ByteBuffer, List<Integer>> applied = new ConcurrentHashMap<>();
+        CommitLogReplayer replayer = new CommitLogReplayer()
+        {
+            @Override
+            void apply(Mutation mutation)
+            {
+                ColumnFamily cf = mutation.getColumnFamily(Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1).metadata.cfId);
+                List<Integer> sequences = applied.get(mutation.key());
+                if (sequences == null)
+                {
+                    List<Integer> created = Collections.synchronizedList(new ArrayList<Integer>());
+                    sequences = applied.putIfAbsent(mutation.key(), created);
+                    if (sequences == null)
+                        sequences = created;
+                }
+                sequences.add(ByteBufferUtil.toInt(cf.getColumn(Util.cellname("seq")).value()));
+                super.apply(mutation);
+            }
+        };
+        replayer.recover(files.toArray(new File[files.size()]));
+        assertEquals(count, replayer.blockForWrites());
+
+        // segments are replayed concurrently, but the mutations of a partition within a segment are applied in order
+        assertEquals(partitions, applied.size());
+        for (List<Integer> sequences : applied.values())
+        {
+            assertEquals(count / partitions, sequences.size());
+            Map<Long, Integer> lastPerSegment = new HashMap<>();
+            for (int sequence : sequences)
+            {
+                Integer last = lastPerSegment.put(segments.get(sequence), sequence);
+                assertTrue(last == null || last < sequence);
+            }
+        }
+
+        CommitLog.instance.resetUnsafe();
+    }
+}
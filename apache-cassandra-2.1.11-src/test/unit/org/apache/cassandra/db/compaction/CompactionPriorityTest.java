@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompactionPriorityTest
+{
+    @Test
+    public void testOperationWeights()
+    {
+        assertTrue(CompactionPriority.weight(OperationType.COMPACTION) > CompactionPriority.weight(OperationType.CLEANUP));
+        assertTrue(CompactionPriority.weight(OperationType.COMPACTION) > CompactionPriority.weight(OperationType.INDEX_BUILD));
+        assertTrue(CompactionPriority.weight(OperationType.INDEX_BUILD) > CompactionPriority.weight(OperationType.KEY_CACHE_SAVE));
+        assertEquals(CompactionPriority.weight(OperationType.COMPACTION), CompactionPriority.of(null, OperationType.COMPACTION), 0.0);
+    }
+
+    @Test
+    public void testBacklogFactor()
+    {
+        assertEquals(1.0, CompactionPriority.backlogFactor(0), 0.0);
+        assertTrue(CompactionPriority.backlogFactor(1L << 30) > CompactionPriority.backlogFactor(1L << 20));
+        // the backlog weighs less than read amplification
+        assertTrue(CompactionPriority.backlogFactor(1L << 40) < 10);
+    }
+
+    @Test
+    public void testAging()
+    {
+        long now = System.nanoTime();
+        long hourAgo = now - TimeUnit.HOURS.toNanos(1);
+        // an operation waiting for an hour goes before one of slightly higher priority submitted now
+        assertTrue(CompactionPriority.queueKey(1.0, hourAgo) > CompactionPriority.queueKey(1.5, now));
+        // but not before one of much higher priority
+        assertTrue(CompactionPriority.queueKey(1.0, hourAgo) < CompactionPriority.queueKey(100, now));
+        assertTrue(CompactionPriority.aged(1.0, hourAgo) > 1.0);
+    }
+}
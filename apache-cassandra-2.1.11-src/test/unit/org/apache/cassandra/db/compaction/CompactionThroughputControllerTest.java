@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.metrics.LatencyMetrics;
+
+import static org.junit.Assert.*;
+
+public class CompactionThroughputControllerTest
+{
+    private static CompactionThroughputController newController()
+    {
+        return new CompactionThroughputController(new LatencyMetrics("CompactionThroughputControllerTest", "test"));
+    }
+
+    @Test
+    public void testBackOffOnLatencySpike()
+    {
+        CompactionThroughputController controller = newController();
+        // establish a baseline of 100us per read
+        for (int i = 0 ; i < 10 ; i++)
+            assertEquals(1.0, controller.adjust(1000, 100000), 0.0);
+
+        assertEquals(0.5, controller.adjust(1000, 500000), 0.0);
+        assertEquals(0.25, controller.adjust(1000, 500000), 0.0);
+        for (int i = 0 ; i < 10 ; i++)
+            controller.adjust(1000, 500000);
+        assertEquals(0.1, controller.getMultiplier(), 0.0);
+
+        // recovers slowly once latency is back to normal
+        double previous = controller.getMultiplier();
+        for (int i = 0 ; i < 100 ; i++)
+        {
+            double next = controller.adjust(1000, 100000);
+            assertTrue(next >= previous);
+            assertTrue(next <= 1.0);
+            previous = next;
+        }
+        assertEquals(1.0, controller.getMultiplier(), 0.0);
+    }
+
+    @Test
+    public void testSpeedUpWhenIdle()
+    {
+        CompactionThroughputController controller = newController();
+        controller.adjust(1000, 100000);
+        for (int i = 0 ; i < 100 ; i++)
+            controller.adjust(0, 0);
+        assertEquals(4.0, controller.getMultiplier(), 0.0);
+
+        // reads resuming at normal latency bring the rate back down to the configured one
+        for (int i = 0 ; i < 100 ; i++)
+            controller.adjust(1000, 100000);
+        assertEquals(1.0, controller.getMultiplier(), 0.0);
+    }
+
+    @Test
+    public void testDataDirectoryFor()
+    {
+        Directories.DataDirectory data1 = new Directories.DataDirectory(new File("/data1"));
+        Directories.DataDirectory data10 = new Directories.DataDirectory(new File("/data10"));
+        Directories.DataDirectory nested = new Directories.DataDirectory(new File("/data1/nested"));
+        Directories.DataDirectory[] dataDirectories = new Directories.DataDirectory[]{ data1, data10, nested };
+
+        assertSame(data1, CompactionThroughputController.dataDirectoryFor(new File("/data1/ks/cf"), dataDirectories));
+        assertSame(data10, CompactionThroughputController.dataDirectoryFor(new File("/data10/ks/cf"), dataDirectories));
+        assertSame(nested, CompactionThroughputController.dataDirectoryFor(new File("/data1/nested/ks/cf"), dataDirectories));
+        assertSame(data1, CompactionThroughputController.dataDirectoryFor(new File("/data1"), dataDirectories));
+        assertNull(CompactionThroughputController.dataDirectoryFor(new File("/data2/ks/cf"), dataDirectories));
+    }
+}
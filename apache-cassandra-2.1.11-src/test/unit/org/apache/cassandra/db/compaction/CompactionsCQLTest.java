@@ -17,15 +17,23 @@
  */
 package org.apache.cassandra.db.compaction;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
 
 import org.apache.cassandra.cql3.CQLTester;
 import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.Cell;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.OnDiskAtom;
+import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
+import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.SSTableReader;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -209,6 +217,177 @@ public class CompactionsCQLTest extends CQLTester
         getCurrentColumnFamilyStore().setCompactionParameters(localOptions);
     }
 
+    /*
+     * The following tests write each partition to two sstables with distinct cells, so that compaction merges the
+     * partitions while every cell only has one version, and goes through the single cell path of LazilyCompactedRow.
+     */
+
+    @Test
+    public void testCompactSingleLiveCells() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c))");
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 0, 0)");
+        execute("INSERT INTO %s (k, c, v) VALUES (1, 0, 0)");
+        flush();
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 1, 1)");
+        execute("INSERT INTO %s (k, c, v) VALUES (1, 1, 1)");
+        flush();
+        compact();
+
+        assertEquals(1, getCurrentColumnFamilyStore().getSSTables().size());
+        assertRows(execute("SELECT * FROM %s WHERE k = 0"), row(0, 0, 0), row(0, 1, 1));
+        assertRows(execute("SELECT * FROM %s WHERE k = 1"), row(1, 0, 0), row(1, 1, 1));
+    }
+
+    @Test
+    public void testCompactSingleCellsShadowedByTombstones() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c))");
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 0, 0) USING TIMESTAMP 1");
+        execute("INSERT INTO %s (k, c, v) VALUES (1, 0, 0) USING TIMESTAMP 1");
+        flush();
+        // a partition tombstone for the first partition, a range tombstone over the first row of the second one
+        execute("DELETE FROM %s USING TIMESTAMP 2 WHERE k = 0");
+        execute("DELETE FROM %s USING TIMESTAMP 2 WHERE k = 1 AND c = 0");
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 1, 1) USING TIMESTAMP 3");
+        execute("INSERT INTO %s (k, c, v) VALUES (1, 1, 1) USING TIMESTAMP 3");
+        flush();
+        compact();
+
+        assertRows(execute("SELECT * FROM %s WHERE k = 0"), row(0, 1, 1));
+        assertRows(execute("SELECT * FROM %s WHERE k = 1"), row(1, 1, 1));
+        for (Cell cell : rawCells())
+            assertEquals(3, cell.timestamp());
+    }
+
+    @Test
+    public void testCompactSingleTombstone() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c))");
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 0, 0)");
+        flush();
+        execute("DELETE v FROM %s WHERE k = 0 AND c = 1");
+        flush();
+        compact();
+
+        // within gc_grace_seconds, the tombstone must be kept
+        assertEquals(1, countTombstones(rawCells()));
+        assertRows(execute("SELECT * FROM %s WHERE k = 0"), row(0, 0, 0));
+    }
+
+    @Test
+    public void testCompactSingleGcableTombstone() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c)) WITH gc_grace_seconds = 0");
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 0, 0)");
+        flush();
+        execute("DELETE v FROM %s WHERE k = 0 AND c = 1");
+        flush();
+        assertEquals(1, countTombstones(rawCells()));
+
+        // tombstones are only purged once their local deletion time is strictly before gcBefore
+        Thread.sleep(1000);
+        compact();
+
+        assertEquals(0, countTombstones(rawCells()));
+        assertRows(execute("SELECT * FROM %s WHERE k = 0"), row(0, 0, 0));
+    }
+
+    @Test
+    public void testCompactSingleCellsUnderGcablePartitionTombstone() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c)) WITH gc_grace_seconds = 0");
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 0, 0) USING TIMESTAMP 1");
+        flush();
+        execute("DELETE FROM %s USING TIMESTAMP 2 WHERE k = 0");
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 1, 1) USING TIMESTAMP 3");
+        flush();
+
+        Thread.sleep(1000);
+        compact();
+
+        // the partition tombstone is purged, so it mustn't be counted as droppable in the sstable written
+        assertRows(execute("SELECT * FROM %s WHERE k = 0"), row(0, 1, 1));
+        assertEquals(0, countTombstones(rawCells()));
+        assertEquals(1, getCurrentColumnFamilyStore().getSSTables().size());
+        for (SSTableReader sstable : getCurrentColumnFamilyStore().getSSTables())
+            assertTrue(sstable.getSSTableMetadata().estimatedTombstoneDropTime.getAsMap().isEmpty());
+    }
+
+    @Test
+    public void testCompactSingleCounterCells() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v counter, PRIMARY KEY (k, c))");
+        execute("UPDATE %s SET v = v + 1 WHERE k = 0 AND c = 0");
+        flush();
+        execute("UPDATE %s SET v = v + 2 WHERE k = 0 AND c = 1");
+        flush();
+        compact();
+
+        assertRows(execute("SELECT * FROM %s WHERE k = 0"), row(0, 0, 1L), row(0, 1, 2L));
+
+        // counter cells under a partition tombstone are dropped whatever their timestamp
+        execute("DELETE FROM %s WHERE k = 0");
+        flush();
+        compact();
+
+        assertEmpty(execute("SELECT * FROM %s WHERE k = 0"));
+        assertEquals(0, rawCells().size());
+    }
+
+    @Test
+    public void testCompactSingleCellsOfDroppedColumn() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, a int, b int, PRIMARY KEY (k, c))");
+        execute("INSERT INTO %s (k, c, a) VALUES (0, 0, 0)");
+        flush();
+        execute("INSERT INTO %s (k, c, b) VALUES (0, 1, 1)");
+        flush();
+        execute("ALTER TABLE %s DROP a");
+        compact();
+
+        assertRows(execute("SELECT * FROM %s WHERE k = 0"), row(0, 0, null), row(0, 1, 1));
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        for (Cell cell : rawCells())
+            assertFalse(cell.name().cql3ColumnName(cfs.metadata).toString().equals("a"));
+    }
+
+    /**
+     * @return the cells of all the sstables of the current table, as they are written, tombstones included
+     */
+    private List<Cell> rawCells() throws IOException
+    {
+        List<Cell> cells = new ArrayList<>();
+        for (SSTableReader sstable : getCurrentColumnFamilyStore().getSSTables())
+        {
+            try (ISSTableScanner scanner = sstable.getScanner())
+            {
+                while (scanner.hasNext())
+                {
+                    OnDiskAtomIterator partition = scanner.next();
+                    while (partition.hasNext())
+                    {
+                        OnDiskAtom atom = partition.next();
+                        if (atom instanceof Cell)
+                            cells.add((Cell) atom);
+                    }
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static int countTombstones(List<Cell> cells)
+    {
+        int tombstones = 0;
+        for (Cell cell : cells)
+        {
+            if (!cell.isLive())
+                tombstones++;
+        }
+        return tombstones;
+    }
+
     public boolean verifyStrategies(WrappingCompactionStrategy wrappingStrategy, Class<? extends AbstractCompactionStrategy> expected)
     {
         boolean found = false;
@@ -20,11 +20,14 @@ package org.apache.cassandra.db.compaction;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Function;
+import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
@@ -37,6 +40,7 @@ import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
+import org.apache.cassandra.db.composites.CellName;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.dht.*;
@@ -45,7 +49,9 @@ import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.CloseableIterator;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Hex;
 import org.apache.cassandra.utils.Pair;
 
 import static org.junit.Assert.*;
@@ -96,7 +102,10 @@ public class CompactionsTest extends SchemaLoader
     }
 
     private long populate(String ks, String cf, int startRowKey, int endRowKey, int ttl) {
-        long timestamp = System.currentTimeMillis();
+        return populate(ks, cf, startRowKey, endRowKey, ttl, System.currentTimeMillis());
+    }
+
+    private long populate(String ks, String cf, int startRowKey, int endRowKey, int ttl, long timestamp) {
         for (int i = startRowKey; i <= endRowKey; i++)
         {
             DecoratedKey key = Util.dk(Integer.toString(i));
@@ -166,6 +175,329 @@ public class CompactionsTest extends SchemaLoader
         assert !iter.hasNext();
     }
 
+    @Test
+    public void testCopyUnmergedRows() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(STANDARD1);
+        cfs.clearUnsafe();
+        cfs.disableAutoCompaction();
+
+        // wide enough rows to get a column index, half of them in each sstable, and one row in both
+        ByteBuffer value = ByteBuffer.wrap(new byte[64]);
+        for (int sstable = 0; sstable < 2; sstable++)
+        {
+            for (int i = sstable * 10; i < sstable * 10 + 10; i++)
+            {
+                Mutation rm = new Mutation(KEYSPACE1, Util.dk(Integer.toString(i)).getKey());
+                for (int j = 0; j < 200; j++)
+                    rm.add(STANDARD1, Util.cellname(String.format("%03d", j)), value, 0);
+                rm.apply();
+            }
+            Mutation rm = new Mutation(KEYSPACE1, Util.dk("5").getKey());
+            rm.add(STANDARD1, Util.cellname("extra" + sstable), value, 0);
+            rm.apply();
+            cfs.forceBlockingFlush();
+        }
+        assertEquals(2, cfs.getSSTables().size());
+
+        // every row but the one in both sstables is copied, while validation needs the cells of all of them
+        assertEquals(19, copiedRows(cfs, OperationType.COMPACTION));
+        assertEquals(0, copiedRows(cfs, OperationType.VALIDATION));
+        // and the digest of a copied row is that of the row read cell by cell
+        assertEquals(digests(cfs, OperationType.VALIDATION), digests(cfs, OperationType.COMPACTION));
+
+        CompactionManager.instance.performMaximal(cfs);
+        assertEquals(1, cfs.getSSTables().size());
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++)
+        {
+            DecoratedKey key = Util.dk(Integer.toString(i));
+            ColumnFamily cf = cfs.getColumnFamily(QueryFilter.getIdentityFilter(key, STANDARD1, now));
+            assertEquals(i == 5 ? 202 : 200, cf.getColumnCount());
+
+            // goes through the column index of the row
+            CellName name = Util.cellname("150");
+            cf = cfs.getColumnFamily(QueryFilter.getSliceFilter(key, STANDARD1, name, name, false, 1, now));
+            assertEquals(1, cf.getColumnCount());
+            assertEquals(value, cf.getColumn(name).value());
+        }
+        assertEquals(20, Util.getRangeSlice(cfs).size());
+    }
+
+    /**
+     * @return the number of rows a compaction of the given type over all the sstables of cfs would copy as is
+     */
+    private static int copiedRows(ColumnFamilyStore cfs, OperationType type) throws Exception
+    {
+        Set<SSTableReader> sstables = new HashSet<>(cfs.getSSTables());
+        int rows = 0;
+        int copied = 0;
+        try (AbstractCompactionStrategy.ScannerList scanners = cfs.getCompactionStrategy().getScanners(sstables);
+             CompactionController controller = new CompactionController(cfs, sstables, cfs.gcBefore(System.currentTimeMillis()));
+             CloseableIterator<AbstractCompactedRow> iter = new CompactionIterable(type, scanners.scanners, controller).iterator())
+        {
+            while (iter.hasNext())
+            {
+                AbstractCompactedRow row = iter.next();
+                if (row instanceof CopiedCompactedRow)
+                    copied++;
+                rows++;
+                row.close();
+            }
+        }
+        assertEquals(20, rows);
+        return copied;
+    }
+
+    /**
+     * @return the digest of every row a compaction of the given type over all the sstables of cfs would write
+     */
+    private static Map<DecoratedKey, String> digests(ColumnFamilyStore cfs, OperationType type) throws Exception
+    {
+        Set<SSTableReader> sstables = new HashSet<>(cfs.getSSTables());
+        Map<DecoratedKey, String> digests = new HashMap<>();
+        try (AbstractCompactionStrategy.ScannerList scanners = cfs.getCompactionStrategy().getScanners(sstables);
+             CompactionController controller = new CompactionController(cfs, sstables, cfs.gcBefore(System.currentTimeMillis()));
+             CloseableIterator<AbstractCompactedRow> iter = new CompactionIterable(type, scanners.scanners, controller).iterator())
+        {
+            while (iter.hasNext())
+            {
+                AbstractCompactedRow row = iter.next();
+                MessageDigest digest = FBUtilities.newMessageDigest("MD5");
+                row.update(digest);
+                digests.put(row.key, Hex.bytesToHex(digest.digest()));
+            }
+        }
+        return digests;
+    }
+
+    @Test
+    public void testSubrangeCompactionFailure() throws Exception
+    {
+        testSubrangeCompactionFailure(false);
+    }
+
+    @Test
+    public void testSubrangeCompactionPreemption() throws Exception
+    {
+        // preemption stops a single subrange, like a failure
+        testSubrangeCompactionFailure(true);
+    }
+
+    private void testSubrangeCompactionFailure(final boolean stop) throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(STANDARD1);
+        cfs.clearUnsafe();
+        cfs.disableAutoCompaction();
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[64]);
+        for (int sstable = 0; sstable < 2; sstable++)
+        {
+            for (int i = 0; i < 1000; i++)
+            {
+                Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes(i));
+                rm.add(STANDARD1, Util.cellname("c" + sstable), value, 0);
+                rm.apply();
+            }
+            cfs.forceBlockingFlush();
+        }
+        Set<SSTableReader> sstables = new HashSet<>(cfs.getSSTables());
+        assertEquals(2, sstables.size());
+
+        // the second subrange to start fails or is stopped, while the others may be running or yet to start
+        final AtomicInteger started = new AtomicInteger();
+        CompactionManager.CompactionExecutorStatsCollector collector = new CompactionManager.CompactionExecutorStatsCollector()
+        {
+            public void beginCompaction(CompactionInfo.Holder ci)
+            {
+                if (started.incrementAndGet() != 2)
+                    return;
+                if (!stop)
+                    throw new RuntimeException("failed subrange");
+                ci.stop();
+            }
+
+            public void finishCompaction(CompactionInfo.Holder ci)
+            {
+            }
+        };
+        CompactionTask task = new CompactionTask(cfs, sstables, CompactionManager.getDefaultGcBefore(cfs), false)
+        {
+            @Override
+            int getSubrangeCount()
+            {
+                return 4;
+            }
+        };
+
+        assertTrue(cfs.getDataTracker().markCompacting(sstables));
+        try
+        {
+            task.execute(collector);
+            fail("the compaction should have failed");
+        }
+        catch (CompactionInterruptedException e)
+        {
+            assertTrue(stop);
+        }
+        catch (RuntimeException e)
+        {
+            assertFalse(stop);
+            assertEquals("failed subrange", e.getMessage());
+        }
+        assertTrue(started.get() > 1);
+
+        // the compacted sstables are left as they were, and nothing the subranges wrote remains
+        assertEquals(sstables, new HashSet<>(cfs.getSSTables()));
+        for (SSTableReader sstable : sstables)
+            assertFalse(sstable.isMarkedCompacted());
+        assertTrue(cfs.getDataTracker().getCompacting().isEmpty());
+        SSTableDeletingTask.waitForDeletions();
+        for (File directory : cfs.directories.getCFDirectories())
+        {
+            for (String file : directory.list())
+            {
+                assertFalse(file, file.contains("-tmp-") || file.contains("-tmplink-"));
+                if (file.endsWith("-Data.db"))
+                    assertTrue(file, Iterables.any(sstables, hasDataFile(file)));
+            }
+        }
+        assertEquals(1000, Util.getRangeSlice(cfs).size());
+    }
+
+    private static Predicate<SSTableReader> hasDataFile(final String file)
+    {
+        return new Predicate<SSTableReader>()
+        {
+            public boolean apply(SSTableReader sstable)
+            {
+                return new File(sstable.getFilename()).getName().equals(file);
+            }
+        };
+    }
+
+    @Test
+    public void testIncrementalMajorCompaction() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(STANDARD1);
+        cfs.clearUnsafe();
+        cfs.disableAutoCompaction();
+
+        // every sstable holds a column of each partition, so that none of them is released before the last slice
+        ByteBuffer value = ByteBuffer.wrap(new byte[64]);
+        for (int sstable = 0; sstable < 4; sstable++)
+        {
+            for (int i = 0; i < 1000; i++)
+            {
+                Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes(i));
+                rm.add(STANDARD1, Util.cellname("c" + sstable), value, 0);
+                rm.apply();
+            }
+            cfs.forceBlockingFlush();
+        }
+        Collection<SSTableReader> sstables = cfs.getSSTables();
+        assertEquals(4, sstables.size());
+
+        assertTrue(cfs.getDataTracker().markCompacting(sstables));
+        long sliceSize = SSTableReader.getTotalBytes(sstables) / 4;
+        IncrementalCompactionTask task = new IncrementalCompactionTask(cfs, sstables, CompactionManager.getDefaultGcBefore(cfs), sliceSize);
+        // nothing is released before the last slice, so the first run takes as much space as a regular compaction
+        assertEquals(task.getExpectedWriteSize(), task.getPeakWriteSize());
+        task.execute(null);
+
+        // one sstable per slice, which don't overlap
+        List<SSTableReader> compacted = new ArrayList<>(cfs.getSSTables());
+        assertTrue(compacted.size() > 1);
+        Collections.sort(compacted, SSTableReader.sstableComparator);
+        for (int i = 1; i < compacted.size(); i++)
+            assertTrue(compacted.get(i - 1).last.compareTo(compacted.get(i).first) < 0);
+        for (SSTableReader sstable : sstables)
+            assertTrue(sstable.isMarkedCompacted());
+
+        // while the sstables it wrote are released along the way by the next run
+        IncrementalCompactionTask next = new IncrementalCompactionTask(cfs, compacted, CompactionManager.getDefaultGcBefore(cfs), sliceSize);
+        assertTrue(next.getPeakWriteSize() < next.getExpectedWriteSize());
+
+        assertEquals(1000, Util.getRangeSlice(cfs).size());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i += 100)
+        {
+            DecoratedKey key = Util.dk(ByteBufferUtil.bytes(i));
+            assertEquals(4, cfs.getColumnFamily(QueryFilter.getIdentityFilter(key, STANDARD1, now)).getColumnCount());
+        }
+    }
+
+    @Test
+    public void testIncrementalMajorCompactionKeepsShadowingTombstones() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        final ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(STANDARD1);
+        cfs.clearUnsafe();
+        cfs.disableAutoCompaction();
+
+        // an sstable spanning all the slices...
+        ByteBuffer value = ByteBuffer.wrap(new byte[64]);
+        for (int i = 0; i < 1000; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes(i));
+            rm.add(STANDARD1, Util.cellname("c"), value, 0);
+            rm.apply();
+        }
+        cfs.forceBlockingFlush();
+        final SSTableReader spanning = cfs.getSSTables().iterator().next();
+
+        // ...and one completed by the first slice, with a gc-able tombstone shadowing a cell of the former
+        final DecoratedKey key = Util.dk(ByteBufferUtil.bytes(5));
+        for (int i = 0; i < 10; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes(i));
+            rm.add(STANDARD1, Util.cellname("d"), value, 0);
+            if (i == 5)
+                rm.delete(STANDARD1, Util.cellname("c"), 1);
+            rm.apply();
+        }
+        cfs.forceBlockingFlush();
+        Collection<SSTableReader> sstables = cfs.getSSTables();
+        assertEquals(2, sstables.size());
+
+        // the sstables are way smaller than the preemptive open interval, so the start of the spanning sstable
+        // isn't moved and its cells stay visible until the last slice
+        final List<Boolean> shadowed = new ArrayList<>();
+        CompactionManager.CompactionExecutorStatsCollector collector = new CompactionManager.CompactionExecutorStatsCollector()
+        {
+            public void beginCompaction(CompactionInfo.Holder ci)
+            {
+                if (spanning.isMarkedCompacted())
+                    return;
+                shadowed.add(isShadowed(cfs, key, "c"));
+            }
+
+            public void finishCompaction(CompactionInfo.Holder ci)
+            {
+            }
+        };
+
+        assertTrue(cfs.getDataTracker().markCompacting(sstables));
+        long sliceSize = SSTableReader.getTotalBytes(sstables) / 4;
+        new IncrementalCompactionTask(cfs, sstables, Integer.MAX_VALUE, sliceSize).execute(collector);
+
+        // checked before every slice that didn't complete the spanning sstable, the first included
+        assertTrue(shadowed.size() > 1);
+        assertFalse(shadowed.contains(false));
+        assertTrue(isShadowed(cfs, key, "c"));
+    }
+
+    private static boolean isShadowed(ColumnFamilyStore cfs, DecoratedKey key, String name)
+    {
+        ColumnFamily cf = cfs.getColumnFamily(QueryFilter.getIdentityFilter(key, cfs.name, System.currentTimeMillis()));
+        Cell cell = cf == null ? null : cf.getColumn(Util.cellname(name));
+        return cell == null || !cell.isLive();
+    }
+
     @Test
     public void testUncheckedTombstoneSizeTieredCompaction() throws Exception
     {
@@ -182,11 +514,12 @@ public class CompactionsTest extends SchemaLoader
         store.disableAutoCompaction();
 
         //Populate sstable1 with with keys [0..9]
-        populate(KEYSPACE1, STANDARD1, 0, 9, 3); //ttl=3s
+        long timestamp = populate(KEYSPACE1, STANDARD1, 0, 9, 3); //ttl=3s
         store.forceBlockingFlush();
 
         //Populate sstable2 with with keys [10..19] (keys do not overlap with SSTable1)
-        long timestamp2 = populate(KEYSPACE1, STANDARD1, 10, 19, 3); //ttl=3s
+        //using the same timestamp, so that neither sstable only holds data newer than the other's
+        long timestamp2 = populate(KEYSPACE1, STANDARD1, 10, 19, 3, timestamp); //ttl=3s
         store.forceBlockingFlush();
 
         assertEquals(2, store.getSSTables().size());
@@ -240,6 +573,46 @@ public class CompactionsTest extends SchemaLoader
         assertMaxTimestamp(store, timestamp2);
     }
 
+    @Test
+    public void testTombstoneCompactionOfOlderOverlappingSSTable() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore(STANDARD1);
+        store.clearUnsafe();
+        store.metadata.gcGraceSeconds(1);
+        store.metadata.compactionStrategyOptions.put("tombstone_compaction_interval", "1");
+        store.metadata.compactionStrategyOptions.put("unchecked_tombstone_compaction", "false");
+        store.reload();
+        store.setCompactionStrategyClass(SizeTieredCompactionStrategy.class.getName());
+        store.disableAutoCompaction();
+
+        // two sstables with overlapping token ranges, the second one only holding data newer than the first one's
+        long timestamp = System.currentTimeMillis();
+        populate(KEYSPACE1, STANDARD1, 0, 9, 3, timestamp); //ttl=3s
+        store.forceBlockingFlush();
+        SSTableReader older = Iterables.getOnlyElement(store.getSSTables());
+        populate(KEYSPACE1, STANDARD1, 10, 19, 3, timestamp + 1); //ttl=3s
+        store.forceBlockingFlush();
+        SSTableReader newer = Iterables.getOnlyElement(Sets.difference(new HashSet<>(store.getSSTables()), Collections.singleton(older)));
+
+        // wait enough for the ttls to expire and the tombstone compaction interval to elapse
+        TimeUnit.SECONDS.sleep(5);
+
+        // the tombstones of the older sstable can't shadow anything in the newer one, but not the other way around
+        int gcBefore = CompactionManager.getDefaultGcBefore(store);
+        AbstractCompactionStrategy strategy = store.getCompactionStrategy();
+        assertTrue(strategy.getPurgeableTombstoneRatio(older, gcBefore) > strategy.getPurgeableTombstoneRatio(newer, gcBefore));
+        assertEquals(Collections.singleton(older), strategy.getTombstoneCompactionCandidates(gcBefore).keySet());
+
+        // the scheduler compacts it even though background compactions are not run
+        store.enableAutoCompaction();
+        FBUtilities.waitOnFutures(CompactionManager.instance.submitTombstoneCompactions());
+        assertEquals(2, store.getSSTables().size());
+        assertTrue(store.getSSTables().contains(newer));
+        SSTableReader compacted = Iterables.getOnlyElement(Sets.difference(new HashSet<>(store.getSSTables()), Collections.singleton(newer)));
+        assertTrue(compacted.uncompressedLength() < older.uncompressedLength());
+    }
+
     public static void assertMaxTimestamp(ColumnFamilyStore cfs, long maxTimestampExpected)
     {
         long maxTimestampObserved = Long.MIN_VALUE;
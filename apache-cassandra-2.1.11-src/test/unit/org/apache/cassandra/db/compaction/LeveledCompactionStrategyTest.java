@@ -19,7 +19,10 @@ package org.apache.cassandra.db.compaction;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
@@ -46,6 +49,7 @@ import org.apache.cassandra.utils.FBUtilities;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(OrderedJUnit4ClassRunner.class)
@@ -278,4 +282,44 @@ public class LeveledCompactionStrategyTest extends SchemaLoader
         assertTrue(unrepaired.manifest.getLevel(1).contains(sstable2));
         assertFalse(repaired.manifest.getLevel(1).contains(sstable2));
     }
+
+    @Test
+    public void testConcurrentL0Candidates() throws Exception
+    {
+        cfs.disableAutoCompaction();
+        LeveledCompactionStrategy strategy = (LeveledCompactionStrategy) ((WrappingCompactionStrategy) cfs.getCompactionStrategy()).getWrappedStrategies().get(1);
+
+        // four L0 sstables over disjoint key ranges
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+        for (String prefix : Arrays.asList("a", "b", "c", "d"))
+        {
+            for (int r = 0; r < 10; r++)
+            {
+                Mutation rm = new Mutation(ksname, Util.dk(prefix + r).getKey());
+                rm.add(cfname, Util.cellname("column"), value, 0);
+                rm.apply();
+            }
+            cfs.forceBlockingFlush();
+        }
+        List<SSTableReader> sstables = new ArrayList<>(cfs.getSSTables());
+        Collections.sort(sstables, SSTableReader.sstableComparator);
+        assertEquals(4, sstables.size());
+        assertEquals(4, strategy.manifest.getLevel(0).size());
+
+        // a compaction of the first and third sstables only blocks their own spans, not the second sstable between them
+        List<SSTableReader> compacting = Arrays.asList(sstables.get(0), sstables.get(2));
+        assertTrue(cfs.getDataTracker().markCompacting(compacting));
+        LeveledManifest.CompactionCandidate candidate = strategy.manifest.getCompactionCandidates();
+        assertEquals(new HashSet<>(Arrays.asList(sstables.get(1), sstables.get(3))), new HashSet<>(candidate.sstables));
+
+        // nothing more can be handed out while the candidate is compacting
+        assertTrue(cfs.getDataTracker().markCompacting(candidate.sstables));
+        assertNull(strategy.manifest.getCompactionCandidates());
+
+        // and once all the compactions are over, the candidates handed out are forgotten
+        cfs.getDataTracker().unmarkCompacting(compacting);
+        cfs.getDataTracker().unmarkCompacting(candidate.sstables);
+        candidate = strategy.manifest.getCompactionCandidates();
+        assertEquals(new HashSet<>(sstables), new HashSet<>(candidate.sstables));
+    }
 }
@@ -165,4 +165,43 @@ public class SizeTieredCompactionStrategyTest extends SchemaLoader
         assertEquals(String.format("bucket hotness (%f) should be close to %f", bucket.right, expectedBucketHotness),
                      expectedBucketHotness, bucket.right, 1.0);
     }
+
+    @Test
+    public void testEstimatedRemainingBytes() throws Exception
+    {
+        String ksname = "Keyspace1";
+        String cfname = "Standard1";
+        Keyspace keyspace = Keyspace.open(ksname);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(cfname);
+        cfs.truncateBlocking();
+        cfs.disableAutoCompaction();
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+
+        // create min threshold sstables, which all fall in the same bucket
+        for (int r = 0; r < cfs.getMinimumCompactionThreshold(); r++)
+        {
+            DecoratedKey key = Util.dk(String.valueOf(r));
+            Mutation rm = new Mutation(ksname, key.getKey());
+            rm.add(cfname, Util.cellname("column"), value, 0);
+            rm.apply();
+            cfs.forceBlockingFlush();
+        }
+
+        SizeTieredCompactionStrategy strategy = new SizeTieredCompactionStrategy(cfs, Collections.<String, String>emptyMap());
+        for (SSTableReader sstable : cfs.getSSTables())
+            strategy.addSSTable(sstable);
+        assertEquals(0, strategy.getEstimatedRemainingBytes());
+
+        AbstractCompactionTask task = strategy.getNextBackgroundTask(0);
+        assertNotNull(task);
+        try
+        {
+            assertEquals(SSTableReader.getTotalBytes(cfs.getSSTables()), strategy.getEstimatedRemainingBytes());
+        }
+        finally
+        {
+            cfs.getDataTracker().unmarkCompacting(cfs.getSSTables());
+        }
+    }
 }
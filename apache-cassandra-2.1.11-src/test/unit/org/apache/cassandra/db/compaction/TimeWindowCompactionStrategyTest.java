@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.utils.Pair;
+
+import static org.apache.cassandra.db.compaction.TimeWindowCompactionStrategyOptions.*;
+import static org.junit.Assert.*;
+
+public class TimeWindowCompactionStrategyTest
+{
+    @Test
+    public void testOptionsValidation() throws ConfigurationException
+    {
+        Map<String, String> options = new HashMap<>();
+        options.put(COMPACTION_WINDOW_UNIT_KEY, "HOURS");
+        options.put(COMPACTION_WINDOW_SIZE_KEY, "6");
+        options.put(SizeTieredCompactionStrategyOptions.MIN_SSTABLE_SIZE_KEY, "1000");
+        Map<String, String> unvalidated = TimeWindowCompactionStrategy.validateOptions(options);
+        assertTrue(unvalidated.isEmpty());
+        assertEquals(6L * 3600 * 1000 * 1000, new TimeWindowCompactionStrategyOptions(options).windowSize);
+
+        for (String[] invalid : new String[][]{ { COMPACTION_WINDOW_UNIT_KEY, "SECONDS" },
+                                                { COMPACTION_WINDOW_UNIT_KEY, "WEEKS" },
+                                                { COMPACTION_WINDOW_SIZE_KEY, "0" },
+                                                { COMPACTION_WINDOW_SIZE_KEY, "one" } })
+        {
+            Map<String, String> invalidOptions = new HashMap<>(options);
+            invalidOptions.put(invalid[0], invalid[1]);
+            try
+            {
+                TimeWindowCompactionStrategy.validateOptions(invalidOptions);
+                fail(String.format("%s: %s should be rejected", invalid[0], invalid[1]));
+            }
+            catch (ConfigurationException e)
+            {
+            }
+        }
+
+        options.put("bad_option", "1.0");
+        unvalidated = TimeWindowCompactionStrategy.validateOptions(options);
+        assertTrue(unvalidated.containsKey("bad_option"));
+    }
+
+    @Test
+    public void testWindowLowerBound()
+    {
+        assertEquals(0, TimeWindowCompactionStrategy.getWindowLowerBound(0, 10));
+        assertEquals(0, TimeWindowCompactionStrategy.getWindowLowerBound(9, 10));
+        assertEquals(10, TimeWindowCompactionStrategy.getWindowLowerBound(10, 10));
+        assertEquals(-10, TimeWindowCompactionStrategy.getWindowLowerBound(-1, 10));
+        assertEquals(-10, TimeWindowCompactionStrategy.getWindowLowerBound(-10, 10));
+    }
+
+    @Test
+    public void testGetBuckets()
+    {
+        List<Pair<String, Long>> pairs = Arrays.asList(Pair.create("a", 199L),
+                                                       Pair.create("b", 299L),
+                                                       Pair.create("c", 100L),
+                                                       Pair.create("d", 250L),
+                                                       Pair.create("e", 1000L));
+        NavigableMap<Long, List<String>> buckets = TimeWindowCompactionStrategy.getBuckets(pairs, 100L);
+
+        // newest window first
+        assertEquals(Arrays.asList(1000L, 200L, 100L), new ArrayList<>(buckets.keySet()));
+        assertEquals(Arrays.asList("e"), buckets.get(1000L));
+        assertEquals(Arrays.asList("b", "d"), buckets.get(200L));
+        assertEquals(Arrays.asList("a", "c"), buckets.get(100L));
+    }
+}
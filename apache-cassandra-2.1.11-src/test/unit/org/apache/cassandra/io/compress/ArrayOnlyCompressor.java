@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.compress;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compressor implementing ICompressor alone, like those written before IByteBufferCompressor.
+ */
+public class ArrayOnlyCompressor implements ICompressor
+{
+    public static ArrayOnlyCompressor create(Map<String, String> options)
+    {
+        return new ArrayOnlyCompressor();
+    }
+
+    public int initialCompressedBufferLength(int chunkLength)
+    {
+        return LZ4Compressor.instance.initialCompressedBufferLength(chunkLength);
+    }
+
+    public int compress(byte[] input, int inputOffset, int inputLength, WrappedArray output, int outputOffset) throws IOException
+    {
+        return LZ4Compressor.instance.compress(input, inputOffset, inputLength, output, outputOffset);
+    }
+
+    public int uncompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws IOException
+    {
+        return LZ4Compressor.instance.uncompress(input, inputOffset, inputLength, output, outputOffset);
+    }
+
+    public Set<String> supportedOptions()
+    {
+        return Collections.emptySet();
+    }
+}
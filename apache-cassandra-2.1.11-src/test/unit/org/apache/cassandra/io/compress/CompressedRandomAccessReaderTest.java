@@ -26,17 +26,23 @@ import java.util.Random;
 
 import org.junit.Test;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.db.composites.SimpleDenseCellNameType;
 import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.io.util.CompressedPoolingSegmentedFile;
+import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileMark;
+import org.apache.cassandra.io.util.MmappedSegmentedFile;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.io.util.SequentialWriter;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class CompressedRandomAccessReaderTest
 {
@@ -96,6 +102,153 @@ public class CompressedRandomAccessReaderTest
         }
     }
 
+    @Test
+    public void testMmappedChunkSegments() throws IOException, ConfigurationException
+    {
+        File f = File.createTempFile("compressedmmap", "1");
+        String filename = f.getAbsolutePath();
+        long maxSegmentSize = MmappedSegmentedFile.MAX_SEGMENT_SIZE;
+        try
+        {
+            byte[] data = new byte[1 << 13];
+            new Random(0).nextBytes(data);
+            MetadataCollector sstableMetadataCollector = new MetadataCollector(new SimpleDenseCellNameType(BytesType.instance)).replayPosition(null);
+            CompressedSequentialWriter writer = new CompressedSequentialWriter(f, filename + ".metadata", new CompressionParameters(LZ4Compressor.instance, 64, Collections.<String, String>emptyMap()), sstableMetadataCollector);
+            writer.write(data);
+            writer.close();
+
+            // force many mapped regions, each holding a few chunks
+            MmappedSegmentedFile.MAX_SEGMENT_SIZE = 256;
+            CompressedPoolingSegmentedFile file = new CompressedPoolingSegmentedFile(filename, new CompressionMetadata(filename + ".metadata", f.length(), true));
+            try
+            {
+                RandomAccessReader reader = file.createReader();
+                byte[] read = new byte[data.length];
+                reader.readFully(read);
+                reader.close();
+                assertArrayEquals(data, read);
+
+                Random random = new Random(0);
+                for (int i = 0; i < 100; i++)
+                {
+                    int position = random.nextInt(data.length);
+                    FileDataInput in = file.getSegment(position);
+                    assertEquals(data[position], in.readByte());
+                    in.close();
+                }
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+        finally
+        {
+            MmappedSegmentedFile.MAX_SEGMENT_SIZE = maxSegmentSize;
+            if (f.exists())
+                f.delete();
+            File metadata = new File(filename + ".metadata");
+            if (metadata.exists())
+                metadata.delete();
+        }
+    }
+
+    @Test
+    public void testArrayOnlyCompressor() throws IOException, ConfigurationException
+    {
+        File f = File.createTempFile("arraycompressor", "1");
+        String filename = f.getAbsolutePath();
+        try
+        {
+            byte[] data = new byte[1 << 12];
+            new Random(1).nextBytes(data);
+            MetadataCollector sstableMetadataCollector = new MetadataCollector(new SimpleDenseCellNameType(BytesType.instance)).replayPosition(null);
+            CompressedSequentialWriter writer = new CompressedSequentialWriter(f, filename + ".metadata", new CompressionParameters(new ArrayOnlyCompressor(), 1024, Collections.<String, String>emptyMap()), sstableMetadataCollector);
+            writer.write(data);
+            writer.close();
+
+            // compressors without the ByteBuffer methods are read through their byte array ones
+            CompressionMetadata metadata = new CompressionMetadata(filename + ".metadata", f.length(), true);
+            assertTrue(metadata.compressor() instanceof ArrayOnlyCompressor);
+            RandomAccessReader reader = CompressedRandomAccessReader.open(filename, metadata);
+            byte[] read = new byte[data.length];
+            reader.readFully(read);
+            reader.close();
+            metadata.close();
+            assertArrayEquals(data, read);
+        }
+        finally
+        {
+            f.delete();
+            new File(filename + ".metadata").delete();
+        }
+    }
+
+    @Test
+    public void testChunkCache() throws IOException, ConfigurationException
+    {
+        File f = File.createTempFile("chunkcache", "1");
+        String filename = f.getAbsolutePath();
+        try
+        {
+            byte[] data = new byte[1 << 12];
+            new Random(1).nextBytes(data);
+            MetadataCollector sstableMetadataCollector = new MetadataCollector(new SimpleDenseCellNameType(BytesType.instance)).replayPosition(null);
+            CompressedSequentialWriter writer = new CompressedSequentialWriter(f, filename + ".metadata", new CompressionParameters(LZ4Compressor.instance, 1024, Collections.<String, String>emptyMap()), sstableMetadataCollector);
+            writer.write(data);
+            writer.close();
+
+            ChunkCache cache = ChunkCache.instance;
+            cache.setCapacity(1 << 20);
+            CompressedPoolingSegmentedFile file = new CompressedPoolingSegmentedFile(filename, new CompressionMetadata(filename + ".metadata", f.length(), true));
+            CompressedPoolingSegmentedFile other = null;
+            try
+            {
+                // four chunks; all misses the first time around, all hits the second
+                assertCachedRead(file, data, 0);
+                assertCachedRead(file, data, 4);
+                assertEquals(4, cache.size());
+
+                // another opening of the same path, like an sstable opened early then for good, has its own chunks
+                other = new CompressedPoolingSegmentedFile(filename, new CompressionMetadata(filename + ".metadata", f.length(), true));
+                assertCachedRead(other, data, 0);
+                assertEquals(8, cache.size());
+
+                // closing the file only drops its own chunks
+                file.close();
+                file = null;
+                assertEquals(4, cache.size());
+                assertCachedRead(other, data, 4);
+            }
+            finally
+            {
+                if (file != null)
+                    file.close();
+                if (other != null)
+                    other.close();
+            }
+            assertEquals(0, cache.size());
+        }
+        finally
+        {
+            ChunkCache.instance.clear();
+            ChunkCache.instance.setCapacity(0);
+            f.delete();
+            new File(filename + ".metadata").delete();
+        }
+    }
+
+    private static void assertCachedRead(CompressedPoolingSegmentedFile file, byte[] data, int expectedHits) throws IOException
+    {
+        long hits = ChunkCache.instance.metrics.hits.count();
+        RandomAccessReader reader = file.createReader();
+        byte[] read = new byte[data.length];
+        reader.readFully(read);
+        reader.close();
+        assertArrayEquals(data, read);
+        assertEquals(expectedHits, ChunkCache.instance.metrics.hits.count() - hits);
+    }
+
     private void testResetAndTruncate(File f, boolean compressed, int junkSize) throws IOException
     {
         final String filename = f.getAbsolutePath();
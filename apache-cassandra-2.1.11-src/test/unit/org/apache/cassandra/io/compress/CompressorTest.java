@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompressorTest
+{
+    private static List<IByteBufferCompressor> compressors()
+    {
+        List<IByteBufferCompressor> compressors = new ArrayList<>();
+        compressors.add(LZ4Compressor.create(Collections.<String, String>emptyMap()));
+        compressors.add(DeflateCompressor.create(Collections.<String, String>emptyMap()));
+        if (SnappyCompressor.isAvailable())
+            compressors.add(SnappyCompressor.create(Collections.<String, String>emptyMap()));
+        return compressors;
+    }
+
+    private static ByteBuffer allocate(int size, boolean direct, int offset)
+    {
+        // offset the heap buffers within their backing array to catch arrayOffset() mistakes
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(offset + size) : ByteBuffer.allocate(offset + size);
+        buffer.position(offset);
+        return buffer.slice();
+    }
+
+    private static void test(IByteBufferCompressor compressor, byte[] data, boolean directInput, boolean directOutput) throws IOException
+    {
+        ByteBuffer input = allocate(data.length, directInput, 3);
+        input.put(data).flip();
+
+        ByteBuffer compressed = allocate(compressor.initialCompressedBufferLength(data.length), directOutput, 5);
+        int compressedLength = compressor.compress(input, compressed);
+        assertFalse(input.hasRemaining());
+        assertEquals(compressedLength, compressed.position());
+
+        compressed.flip();
+        ByteBuffer restored = allocate(data.length + 7, directInput, 7);
+        int decompressedLength = compressor.uncompress(compressed, restored);
+        assertFalse(compressed.hasRemaining());
+        assertEquals(data.length, decompressedLength);
+        assertEquals(data.length, restored.position());
+
+        restored.flip();
+        byte[] result = new byte[data.length];
+        restored.get(result);
+        assertArrayEquals(data, result);
+    }
+
+    private static void testAll(byte[] data) throws IOException
+    {
+        for (IByteBufferCompressor compressor : compressors())
+        {
+            test(compressor, data, false, false);
+            test(compressor, data, false, true);
+            test(compressor, data, true, false);
+            test(compressor, data, true, true);
+        }
+    }
+
+    @Test
+    public void testShortBuffer() throws IOException
+    {
+        testAll("Cassandra".getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testLongBuffer() throws IOException
+    {
+        byte[] data = new byte[1 << 16];
+        testAll(data);
+        new Random(0).nextBytes(data);
+        testAll(data);
+    }
+
+    @Test
+    public void testMatchesArrayFormat() throws IOException
+    {
+        byte[] data = new byte[1 << 12];
+        new Random(0).nextBytes(data);
+        for (IByteBufferCompressor compressor : compressors())
+        {
+            ByteBuffer compressed = ByteBuffer.allocateDirect(compressor.initialCompressedBufferLength(data.length));
+            int compressedLength = compressor.compress(ByteBuffer.wrap(data), compressed);
+            byte[] compressedBytes = new byte[compressedLength];
+            compressed.flip();
+            compressed.get(compressedBytes);
+
+            byte[] restored = new byte[data.length];
+            assertEquals(data.length, compressor.uncompress(compressedBytes, 0, compressedLength, restored, 0));
+            assertArrayEquals(data, restored);
+        }
+    }
+}
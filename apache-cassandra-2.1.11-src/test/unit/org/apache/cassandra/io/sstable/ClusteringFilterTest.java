@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.BufferCell;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.RangeTombstone;
+import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.composites.CellNameType;
+import org.apache.cassandra.db.composites.CellNames;
+import org.apache.cassandra.db.filter.ColumnSlice;
+import org.apache.cassandra.db.filter.NamesQueryFilter;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.*;
+
+public class ClusteringFilterTest
+{
+    private static final IPartitioner partitioner = new Murmur3Partitioner();
+
+    @Test
+    public void testFilter() throws IOException
+    {
+        File file = FileUtils.createTempFile("clustering", "db");
+        ClusteringFilterBuilder builder = new ClusteringFilterBuilder(file.getPath(), 0.001);
+
+        builder.startPartition(ByteBufferUtil.bytes("cells"), DeletionTime.LIVE);
+        builder.add(new BufferCell(name("b1", "x"), ByteBufferUtil.EMPTY_BYTE_BUFFER));
+        builder.add(new BufferCell(name("b1", "y"), ByteBufferUtil.EMPTY_BYTE_BUFFER));
+        builder.add(new BufferCell(name("b2", "x"), ByteBufferUtil.EMPTY_BYTE_BUFFER));
+
+        builder.startPartition(ByteBufferUtil.bytes("tombstone"), DeletionTime.LIVE);
+        builder.add(new RangeTombstone(name("b1").start(), name("b1").end(), 1, 1));
+
+        builder.startPartition(ByteBufferUtil.bytes("deleted"), new DeletionTime(1, 1));
+
+        builder.startPartition(ByteBufferUtil.bytes("wide tombstone"), DeletionTime.LIVE);
+        builder.add(new RangeTombstone(name("b1").start(), name("b2").end(), 1, 1));
+        builder.finish();
+
+        try (ClusteringFilter filter = ClusteringFilter.load(file.getPath()))
+        {
+            assertTrue(filter.mayContain(dk("cells"), prefixes("b1")));
+            assertTrue(filter.mayContain(dk("cells"), prefixes("b0", "b2")));
+            assertTrue(filter.mayContain(dk("tombstone"), prefixes("b1")));
+            // deletions spanning more than one component apply to all of them
+            assertTrue(filter.mayContain(dk("deleted"), prefixes("b3")));
+            assertTrue(filter.mayContain(dk("wide tombstone"), prefixes("b3")));
+
+            int falsePositives = 0;
+            for (int i = 3; i < 1000; i++)
+            {
+                if (filter.mayContain(dk("cells"), prefixes("b" + i)))
+                    falsePositives++;
+                if (filter.mayContain(dk("tombstone"), prefixes("b" + i)))
+                    falsePositives++;
+            }
+            assertTrue(falsePositives < 20);
+            assertFalse(filter.mayContain(dk("cells"), Collections.<ByteBuffer>emptyList()));
+        }
+        finally
+        {
+            FileUtils.deleteWithConfirm(file);
+        }
+    }
+
+    @Test
+    public void testRequiredPrefixes()
+    {
+        ColumnSlice b1 = new ColumnSlice(name("b1", "x"), name("b1").end());
+        ColumnSlice b2 = new ColumnSlice(name("b2").start(), name("b2").end());
+        assertEquals(prefixes("b1", "b2"), ClusteringFilter.requiredPrefixes(new SliceQueryFilter(new ColumnSlice[]{ b1, b2 }, false, 10)));
+        assertNull(ClusteringFilter.requiredPrefixes(new SliceQueryFilter(name("b1").start(), name("b2").end(), false, 10)));
+        assertNull(ClusteringFilter.requiredPrefixes(new SliceQueryFilter(ColumnSlice.ALL_COLUMNS_ARRAY, false, 10)));
+
+        CellNameType type = CellNames.fromAbstractType(CompositeType.getInstance(UTF8Type.instance, UTF8Type.instance), true);
+        TreeSet<CellName> names = new TreeSet<>(type);
+        names.addAll(Arrays.asList(name("b1", "x"), name("b1", "y"), name("b2", "x")));
+        assertEquals(prefixes("b1", "b2"), ClusteringFilter.requiredPrefixes(new NamesQueryFilter(names)));
+    }
+
+    private static CellName name(String... components)
+    {
+        ByteBuffer[] bbs = new ByteBuffer[components.length];
+        for (int i = 0; i < components.length; i++)
+            bbs[i] = UTF8Type.instance.decompose(components[i]);
+        return CellNames.compositeDense(bbs);
+    }
+
+    private static List<ByteBuffer> prefixes(String... prefixes)
+    {
+        ByteBuffer[] bbs = new ByteBuffer[prefixes.length];
+        for (int i = 0; i < prefixes.length; i++)
+            bbs[i] = UTF8Type.instance.decompose(prefixes[i]);
+        return Arrays.asList(bbs);
+    }
+
+    private static DecoratedKey dk(String key)
+    {
+        return partitioner.decorateKey(ByteBufferUtil.bytes(key));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionIndexTest
+{
+    @Test
+    public void testPrefixKeys() throws IOException
+    {
+        // keys that are prefixes of one another end on inner nodes of the trie
+        List<String> keys = Arrays.asList("", "a", "ab", "abc", "abd", "b", "ba", "bab", "c");
+        checkIndex(new ByteOrderedPartitioner(), keys, Arrays.asList("aa", "abcd", "bb", "d"));
+    }
+
+    @Test
+    public void testSingleKey() throws IOException
+    {
+        checkIndex(new Murmur3Partitioner(), Collections.singletonList("key"), Collections.singletonList("other"));
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        checkIndex(new Murmur3Partitioner(), Collections.<String>emptyList(), Collections.singletonList("key"));
+    }
+
+    @Test
+    public void testMurmur3Keys() throws IOException
+    {
+        checkRandomKeys(new Murmur3Partitioner());
+    }
+
+    @Test
+    public void testRandomPartitionerKeys() throws IOException
+    {
+        checkRandomKeys(new RandomPartitioner());
+    }
+
+    private void checkRandomKeys(IPartitioner partitioner) throws IOException
+    {
+        List<String> keys = new ArrayList<>();
+        List<String> absent = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+            (i % 10 == 0 ? absent : keys).add("key" + i);
+        checkIndex(partitioner, keys, absent);
+    }
+
+    private void checkIndex(IPartitioner partitioner, List<String> keys, List<String> absent) throws IOException
+    {
+        List<DecoratedKey> sorted = new ArrayList<>();
+        for (String key : keys)
+            sorted.add(partitioner.decorateKey(ByteBufferUtil.bytes(key)));
+        Collections.sort(sorted);
+
+        File file = FileUtils.createTempFile("partitions", "db");
+        PartitionIndexBuilder builder = new PartitionIndexBuilder(file.getPath(), partitioner);
+        // the positions of the entries of the keys in the primary index
+        Map<DecoratedKey, Long> positions = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++)
+        {
+            positions.put(sorted.get(i), i * 100L);
+            builder.add(sorted.get(i), i * 100L);
+        }
+        builder.finish();
+
+        try (PartitionIndex index = PartitionIndex.open(file.getPath(), partitioner))
+        {
+            for (DecoratedKey key : sorted)
+                assertEquals(key.toString(), (long) positions.get(key), index.get(key));
+
+            // an absent key may lead to another key's entry, which the reader then rejects
+            for (String key : absent)
+            {
+                DecoratedKey decorated = partitioner.decorateKey(ByteBufferUtil.bytes(key));
+                long position = index.get(decorated);
+                assertTrue(key, position == -1 || positions.containsValue(position));
+            }
+        }
+        finally
+        {
+            FileUtils.deleteWithConfirm(file);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockedBloomFilterTest
+{
+    public IFilter bf;
+
+    @Before
+    public void setup()
+    {
+        bf = FilterFactory.getFilter(10000L, FilterTestHelper.MAX_FAILURE_RATE, FilterFactory.Type.BLOCKED, true);
+    }
+
+    @After
+    public void destroy()
+    {
+        bf.close();
+    }
+
+    @Test
+    public void testBlockAligned()
+    {
+        assertTrue(bf instanceof BlockedBloomFilter);
+        assertEquals(0, ((BlockedBloomFilter) bf).bitset.capacity() % BlockedBloomFilter.BLOCK_BITS);
+    }
+
+    @Test
+    public void testFalsePositivesInt()
+    {
+        FilterTestHelper.testFalsePositives(bf, FilterTestHelper.intKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    @Test
+    public void testFalsePositivesRandom()
+    {
+        FilterTestHelper.testFalsePositives(bf, FilterTestHelper.randomKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    @Test
+    public void testSerialize() throws IOException
+    {
+        IFilter deserialized = BloomFilterTest.testSerialize(bf);
+        assertTrue(deserialized instanceof BlockedBloomFilter);
+        assertEquals(bf.serializedSize(), deserialized.serializedSize());
+        deserialized.close();
+    }
+
+    @Test
+    public void testFilterTypes() throws Exception
+    {
+        assertEquals(FilterFactory.Type.BLOCKED, FilterFactory.Type.fromString("blocked"));
+        assertEquals(FilterFactory.Type.STANDARD, FilterFactory.Type.fromString(FilterFactory.Type.STANDARD.toString()));
+    }
+}